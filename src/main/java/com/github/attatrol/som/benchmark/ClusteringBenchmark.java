@@ -12,6 +12,13 @@ public interface ClusteringBenchmark {
      */
     double getValue();
 
+    /**
+     * @return values of all indices of benchmark, the first one is {@link #getValue()}
+     */
+    default double[] getValues() {
+        return new double[] {getValue()};
+    }
+
     /**
      * @return true if benchmarking has failed, its value is invalid.
      */
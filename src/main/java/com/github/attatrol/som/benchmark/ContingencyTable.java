@@ -0,0 +1,305 @@
+package com.github.attatrol.som.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+
+import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
+import com.github.attatrol.som.datasource.RandomAccessTokenDataSource;
+import com.github.attatrol.som.som.SomClusterResult;
+
+/**
+ * Numbers of records of every cluster that hold every value of a reference column.
+ * Table is filled in a single parallel pass: cluster of a record is taken
+ * from the primitive assignments of {@link SomClusterResult} by its ordinal,
+ * so only reference tokens are read from the data source. Every pool thread
+ * counts into its own partial table, partial tables are merged in the end.
+ * All external indices are calculated from the table, see {@link ExternalIndex}.
+ * @author atta_troll
+ *
+ */
+public class ContingencyTable {
+
+    /**
+     * Number of records in a single task.
+     */
+    public static final int CHUNK_SIZE = 4096;
+
+    /**
+     * Number of chunks in flight per pool thread.
+     */
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    /**
+     * Distinct values of the reference column, indexed by class indexes.
+     */
+    private final Object[] classValues;
+
+    /**
+     * Numbers of records, indexed by class indexes and cluster indexes.
+     */
+    private final long[][] counts;
+
+    private final long[] clusterSizes;
+
+    private final long[] classSizes;
+
+    private final long recordCount;
+
+    private ContingencyTable(Map<Object, long[]> table, int clusterCount) {
+        classValues = new Object[table.size()];
+        counts = new long[table.size()][];
+        clusterSizes = new long[clusterCount];
+        classSizes = new long[table.size()];
+        long total = 0L;
+        int i = 0;
+        for (Map.Entry<Object, long[]> entry : table.entrySet()) {
+            classValues[i] = entry.getKey();
+            counts[i] = entry.getValue();
+            for (int j = 0; j < clusterCount; j++) {
+                clusterSizes[j] += counts[i][j];
+                classSizes[i] += counts[i][j];
+            }
+            total += classSizes[i];
+            i++;
+        }
+        recordCount = total;
+    }
+
+    /**
+     * @return number of clusters, including empty ones
+     */
+    public int getClusterCount() {
+        return clusterSizes.length;
+    }
+
+    /**
+     * @return number of distinct values of the reference column
+     */
+    public int getClassCount() {
+        return classValues.length;
+    }
+
+    /**
+     * @param classIndex class index
+     * @return value of the reference column that forms the class
+     */
+    public Object getClassValue(int classIndex) {
+        return classValues[classIndex];
+    }
+
+    /**
+     * @param clusterIndex cluster index
+     * @param classIndex class index
+     * @return number of records of the cluster that belong to the class
+     */
+    public long getCount(int clusterIndex, int classIndex) {
+        return counts[classIndex][clusterIndex];
+    }
+
+    /**
+     * @param clusterIndex cluster index
+     * @return number of records of the cluster
+     */
+    public long getClusterSize(int clusterIndex) {
+        return clusterSizes[clusterIndex];
+    }
+
+    /**
+     * @param classIndex class index
+     * @return number of records of the class
+     */
+    public long getClassSize(int classIndex) {
+        return classSizes[classIndex];
+    }
+
+    /**
+     * @return total number of records
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Fills table through the whole data source.
+     * @param clusterResult result of applying SOM to the same data source
+     * @param dataSource data source, its records must be in the same order as when
+     *        the cluster result was produced
+     * @param referenceColumn index of the reference column
+     * @param pool executor of chunk tasks
+     * @return contingency table
+     * @throws IOException on data source i/o error
+     * @throws IllegalArgumentException if reference column is out of record or data source
+     *         differs from the one of the cluster result
+     */
+    public static ContingencyTable create(SomClusterResult clusterResult, AbstractTokenDataSource<?> dataSource,
+            int referenceColumn, ForkJoinPool pool) throws IOException, IllegalArgumentException {
+        if (referenceColumn < 0 || referenceColumn >= dataSource.getRecordLength()) {
+            throw new IllegalArgumentException("Reference column is out of record");
+        }
+        final Counter counter = new Counter(clusterResult, referenceColumn, pool);
+        if (dataSource instanceof RandomAccessTokenDataSource) {
+            counter.countRandomAccess((RandomAccessTokenDataSource) dataSource);
+        }
+        else {
+            counter.countSequential(dataSource);
+        }
+        return new ContingencyTable(counter.merge(), clusterResult.getClusterNumber());
+    }
+
+    /**
+     * Single pass over data source.
+     * @author atta_troll
+     *
+     */
+    private static final class Counter {
+
+        private final SomClusterResult clusterResult;
+
+        private final int referenceColumn;
+
+        private final ForkJoinPool pool;
+
+        /**
+         * Partial tables not used by any task at the moment.
+         */
+        private final ConcurrentLinkedQueue<Map<Object, long[]>> idleTables = new ConcurrentLinkedQueue<>();
+
+        /**
+         * All partial tables created during the pass.
+         */
+        private final ConcurrentLinkedQueue<Map<Object, long[]>> tables = new ConcurrentLinkedQueue<>();
+
+        private final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+        Counter(SomClusterResult clusterResult, int referenceColumn, ForkJoinPool pool) {
+            this.clusterResult = clusterResult;
+            this.referenceColumn = referenceColumn;
+            this.pool = pool;
+        }
+
+        /**
+         * Counts records read by pool threads.
+         * @param dataSource random access data source
+         */
+        void countRandomAccess(RandomAccessTokenDataSource dataSource) {
+            final long recordCount = dataSource.getRecordCount();
+            checkRecordCount(recordCount);
+            for (int start = 0; start < recordCount; start += CHUNK_SIZE) {
+                final int from = start;
+                final int to = (int) Math.min(recordCount, (long) start + CHUNK_SIZE);
+                tasks.add(pool.submit(() -> {
+                    final Map<Object, long[]> table = acquireTable();
+                    for (int ordinal = from; ordinal < to; ordinal++) {
+                        count(table, dataSource.getToken(ordinal, referenceColumn), ordinal);
+                    }
+                    idleTables.add(table);
+                }));
+            }
+            join();
+        }
+
+        /**
+         * Counts records read by the current thread.
+         * @param dataSource data source
+         * @throws IOException on data source i/o error
+         */
+        void countSequential(AbstractTokenDataSource<?> dataSource) throws IOException {
+            final Semaphore chunksInFlight = new Semaphore(pool.getParallelism() * CHUNKS_PER_THREAD);
+            try {
+                dataSource.reset();
+                long ordinal = 0L;
+                while (dataSource.hasNext()) {
+                    final Object[] tokens = new Object[CHUNK_SIZE];
+                    int size = 0;
+                    while (size < CHUNK_SIZE && dataSource.hasNext()) {
+                        tokens[size++] = ((Object[]) dataSource.next().getData())[referenceColumn];
+                    }
+                    checkRecordCount(ordinal + size);
+                    final int chunkSize = size;
+                    final int firstOrdinal = (int) ordinal;
+                    ordinal += size;
+                    chunksInFlight.acquireUninterruptibly();
+                    tasks.add(pool.submit(() -> {
+                        try {
+                            final Map<Object, long[]> table = acquireTable();
+                            for (int i = 0; i < chunkSize; i++) {
+                                count(table, tokens[i], firstOrdinal + i);
+                            }
+                            idleTables.add(table);
+                        }
+                        finally {
+                            chunksInFlight.release();
+                        }
+                    }));
+                }
+            }
+            finally {
+                for (ForkJoinTask<?> task : tasks) {
+                    task.quietlyJoin();
+                }
+            }
+            join();
+        }
+
+        /**
+         * Merges all partial tables.
+         * @return merged table
+         */
+        Map<Object, long[]> merge() {
+            final Map<Object, long[]> result = new LinkedHashMap<>();
+            for (Map<Object, long[]> table : tables) {
+                for (Map.Entry<Object, long[]> entry : table.entrySet()) {
+                    final long[] counts = result.get(entry.getKey());
+                    if (counts == null) {
+                        result.put(entry.getKey(), entry.getValue());
+                    }
+                    else {
+                        final long[] otherCounts = entry.getValue();
+                        for (int i = 0; i < counts.length; i++) {
+                            counts[i] += otherCounts[i];
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        private void count(Map<Object, long[]> table, Object token, int ordinal) {
+            long[] counts = table.get(token);
+            if (counts == null) {
+                counts = new long[clusterResult.getClusterNumber()];
+                table.put(token, counts);
+            }
+            counts[clusterResult.getCluster(ordinal)]++;
+        }
+
+        private Map<Object, long[]> acquireTable() {
+            Map<Object, long[]> table = idleTables.poll();
+            if (table == null) {
+                table = new LinkedHashMap<>();
+                tables.add(table);
+            }
+            return table;
+        }
+
+        private void join() {
+            for (ForkJoinTask<?> task : tasks) {
+                // rethrows failure of a task
+                task.join();
+            }
+        }
+
+        private void checkRecordCount(long recordCount) {
+            if (recordCount > clusterResult.getRecordCount()) {
+                throw new IllegalArgumentException("Data source has more records than cluster result");
+            }
+        }
+    }
+}
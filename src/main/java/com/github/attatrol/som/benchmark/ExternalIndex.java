@@ -0,0 +1,174 @@
+package com.github.attatrol.som.benchmark;
+
+/**
+ * External indices of clustering quality, they compare clusters with classes
+ * formed by values of a reference column. All of them are calculated from
+ * a {@link ContingencyTable}, so data source is read once for any number of indices.
+ * @author atta_troll
+ *
+ */
+public enum ExternalIndex {
+
+    /**
+     * Fraction of records that belong to the dominant class of their cluster.
+     * It belongs to range from 0. to 1., the higher is better.
+     */
+    PURITY {
+        @Override
+        public double calculate(ContingencyTable table) {
+            if (table.getRecordCount() == 0L) {
+                return 1.;
+            }
+            long dominantCount = 0L;
+            for (int i = 0; i < table.getClusterCount(); i++) {
+                long maxCount = 0L;
+                for (int j = 0; j < table.getClassCount(); j++) {
+                    maxCount = Math.max(maxCount, table.getCount(i, j));
+                }
+                dominantCount += maxCount;
+            }
+            return ((double) dominantCount) / table.getRecordCount();
+        }
+    },
+
+    /**
+     * Entropy of classes within clusters weighted by cluster sizes and normalized
+     * by the entropy of the uniform class distribution.
+     * It belongs to range from 0. to 1., the lower is better.
+     */
+    ENTROPY {
+        @Override
+        public double calculate(ContingencyTable table) {
+            if (table.getRecordCount() == 0L || table.getClassCount() < 2) {
+                return 0.;
+            }
+            double entropy = 0.;
+            for (int i = 0; i < table.getClusterCount(); i++) {
+                final long clusterSize = table.getClusterSize(i);
+                for (int j = 0; j < table.getClassCount(); j++) {
+                    entropy -= clusterSize * plogp(table.getCount(i, j), clusterSize);
+                }
+            }
+            return entropy / table.getRecordCount() / Math.log(table.getClassCount());
+        }
+    },
+
+    /**
+     * Mutual information of clusters and classes normalized by the geometric mean
+     * of their entropies. It belongs to range from 0. to 1., the higher is better.
+     */
+    NORMALIZED_MUTUAL_INFORMATION {
+        @Override
+        public double calculate(ContingencyTable table) {
+            final long recordCount = table.getRecordCount();
+            if (recordCount == 0L) {
+                return 1.;
+            }
+            double clusterEntropy = 0.;
+            for (int i = 0; i < table.getClusterCount(); i++) {
+                clusterEntropy -= plogp(table.getClusterSize(i), recordCount);
+            }
+            double classEntropy = 0.;
+            for (int j = 0; j < table.getClassCount(); j++) {
+                classEntropy -= plogp(table.getClassSize(j), recordCount);
+            }
+            if (clusterEntropy == 0. || classEntropy == 0.) {
+                return clusterEntropy == classEntropy ? 1. : 0.;
+            }
+            double information = 0.;
+            for (int i = 0; i < table.getClusterCount(); i++) {
+                for (int j = 0; j < table.getClassCount(); j++) {
+                    final long count = table.getCount(i, j);
+                    if (count != 0L) {
+                        information += ((double) count) / recordCount * Math.log(((double) count)
+                                * recordCount / table.getClusterSize(i) / table.getClassSize(j));
+                    }
+                }
+            }
+            return information / Math.sqrt(clusterEntropy * classEntropy);
+        }
+    },
+
+    /**
+     * Rand index of pairs of records corrected for chance agreement.
+     * It is 1. for identical partitions and about 0. for random ones, the higher is better.
+     */
+    ADJUSTED_RAND_INDEX {
+        @Override
+        public double calculate(ContingencyTable table) {
+            double pairIndex = 0.;
+            double clusterPairs = 0.;
+            for (int i = 0; i < table.getClusterCount(); i++) {
+                clusterPairs += pairs(table.getClusterSize(i));
+                for (int j = 0; j < table.getClassCount(); j++) {
+                    pairIndex += pairs(table.getCount(i, j));
+                }
+            }
+            double classPairs = 0.;
+            for (int j = 0; j < table.getClassCount(); j++) {
+                classPairs += pairs(table.getClassSize(j));
+            }
+            final double totalPairs = pairs(table.getRecordCount());
+            final double expectedIndex = totalPairs == 0. ? 0. : clusterPairs * classPairs / totalPairs;
+            final double maxIndex = (clusterPairs + classPairs) / 2.;
+            if (maxIndex == expectedIndex) {
+                return 1.;
+            }
+            return (pairIndex - expectedIndex) / (maxIndex - expectedIndex);
+        }
+    },
+
+    /**
+     * Harmonic mean of precision and recall of the best matching cluster of every class,
+     * weighted by class sizes. It belongs to range from 0. to 1., the higher is better.
+     */
+    F_MEASURE {
+        @Override
+        public double calculate(ContingencyTable table) {
+            if (table.getRecordCount() == 0L) {
+                return 1.;
+            }
+            double fMeasure = 0.;
+            for (int j = 0; j < table.getClassCount(); j++) {
+                final long classSize = table.getClassSize(j);
+                double maxF = 0.;
+                for (int i = 0; i < table.getClusterCount(); i++) {
+                    final long count = table.getCount(i, j);
+                    if (count != 0L) {
+                        maxF = Math.max(maxF, 2. * count / (table.getClusterSize(i) + classSize));
+                    }
+                }
+                fMeasure += maxF * classSize;
+            }
+            return fMeasure / table.getRecordCount();
+        }
+    };
+
+    /**
+     * Calculates index value.
+     * @param table contingency table of clusters and classes
+     * @return index value
+     */
+    public abstract double calculate(ContingencyTable table);
+
+    /**
+     * @param count number of records of a part
+     * @param total number of records of the whole
+     * @return p * ln(p) where p is fraction of the part, 0 for empty part
+     */
+    private static double plogp(long count, long total) {
+        if (count == 0L) {
+            return 0.;
+        }
+        final double p = ((double) count) / total;
+        return p * Math.log(p);
+    }
+
+    /**
+     * @param count number of records
+     * @return number of unordered pairs of records
+     */
+    private static double pairs(long count) {
+        return count * (count - 1.) / 2.;
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.attatrol.som.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
+import com.github.attatrol.som.som.SomClusterResult;
+
+/**
+ * Calculates several external indices against a reference column
+ * in a single pass over data source, see {@link ContingencyTable}.
+ * Value of the benchmark is the value of the first index.
+ * @author atta_troll
+ *
+ */
+public class ExternalIndicesBenchmark implements ClusteringBenchmark {
+
+    private final ExternalIndex[] indices;
+
+    private final double[] values;
+
+    private boolean hasFailed;
+
+    /**
+     * Default ctor.
+     * @param clusterResult result of applying SOM to the data source
+     * @param tokenDataSource data source
+     * @param refColumnIndex index of the reference column
+     * @param pool executor of the pass
+     * @param indices calculated indices
+     * @throws IllegalArgumentException if no indices are given
+     */
+    public ExternalIndicesBenchmark(SomClusterResult clusterResult, AbstractTokenDataSource<?> tokenDataSource,
+            int refColumnIndex, ForkJoinPool pool, ExternalIndex... indices) throws IllegalArgumentException {
+        if (indices.length == 0) {
+            throw new IllegalArgumentException("No external indices");
+        }
+        this.indices = indices.clone();
+        values = new double[indices.length];
+        try {
+            final ContingencyTable table = ContingencyTable.create(clusterResult, tokenDataSource,
+                    refColumnIndex, pool);
+            for (int i = 0; i < indices.length; i++) {
+                values[i] = indices[i].calculate(table);
+            }
+        }
+        catch (IOException ex) {
+            hasFailed = true;
+        }
+    }
+
+    /**
+     * @param index external index
+     * @return value of the index
+     * @throws IllegalArgumentException if the index has not been calculated
+     */
+    public double getValue(ExternalIndex index) throws IllegalArgumentException {
+        for (int i = 0; i < indices.length; i++) {
+            if (indices[i] == index) {
+                return values[i];
+            }
+        }
+        throw new IllegalArgumentException("Index " + index + " has not been calculated");
+    }
+
+    /**
+     * @return calculated indices in order of their values
+     */
+    public ExternalIndex[] getIndices() {
+        return indices.clone();
+    }
+
+    @Override
+    public double getValue() {
+        return values[0];
+    }
+
+    @Override
+    public double[] getValues() {
+        return values.clone();
+    }
+
+    @Override
+    public boolean hasFailed() {
+        return hasFailed;
+    }
+
+}
@@ -0,0 +1,238 @@
+package com.github.attatrol.som.datasource;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
+import com.github.attatrol.preprocessing.datasource.Record;
+import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
+
+/**
+ * Converts a token data source into binary columnar file, see {@link ColumnarFileLayout},
+ * which is read by {@link MappedTokenDataSource}.<br/>
+ * Data source is read twice: the 1st pass counts records, the 2nd one writes them.
+ * Only dictionaries of coded columns and small write buffers are kept in heap,
+ * so data sets larger than heap may be converted.
+ * @author atta_troll
+ *
+ */
+public final class BinaryColumnarConverter {
+
+    /**
+     * Size of write buffer of a section.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private BinaryColumnarConverter() {
+    }
+
+    /**
+     * Writes all records of a data source into a binary columnar file.
+     * @param dataSource data source, it is reset and read to the end twice
+     * @param tokenTypes token types of columns
+     * @param file file to be created or overwritten
+     * @return number of written records
+     * @throws IOException on i/o error
+     * @throws IllegalArgumentException if token types don't match records or a token
+     *         of a coded column is of unsupported class
+     */
+    public static long convert(AbstractTokenDataSource<?> dataSource, TokenType[] tokenTypes, Path file)
+            throws IOException, IllegalArgumentException {
+        if (tokenTypes.length != dataSource.getRecordLength()) {
+            throw new IllegalArgumentException("Token types don't match record length");
+        }
+        long recordCount = 0;
+        boolean hasIndexes = false;
+        dataSource.reset();
+        while (dataSource.hasNext()) {
+            hasIndexes |= dataSource.next().getIndex() != recordCount;
+            recordCount++;
+        }
+        final byte[] header = createHeader(tokenTypes, recordCount, hasIndexes);
+        final ColumnarFileLayout layout = new ColumnarFileLayout(tokenTypes, recordCount, hasIndexes,
+                header.length);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, ByteBuffer.wrap(header), 0);
+            final SectionWriter[] valueWriters = new SectionWriter[tokenTypes.length];
+            final SectionWriter[] nullWriters = new SectionWriter[tokenTypes.length];
+            final long[] nullBits = new long[tokenTypes.length];
+            @SuppressWarnings("unchecked")
+            final Map<Object, Integer>[] codes = new Map[tokenTypes.length];
+            final List<List<Object>> values = new ArrayList<>();
+            for (int i = 0; i < tokenTypes.length; i++) {
+                valueWriters[i] = new SectionWriter(channel, layout.getValueOffset(i));
+                if (ColumnarFileLayout.isCoded(tokenTypes[i])) {
+                    codes[i] = new HashMap<>();
+                    values.add(new ArrayList<>());
+                }
+                else {
+                    nullWriters[i] = new SectionWriter(channel, layout.getNullOffset(i));
+                    values.add(null);
+                }
+            }
+            final SectionWriter indexWriter = hasIndexes
+                    ? new SectionWriter(channel, layout.getIndexOffset()) : null;
+            long ordinal = 0;
+            dataSource.reset();
+            while (dataSource.hasNext() && ordinal < recordCount) {
+                final Record<Object[]> record = dataSource.next();
+                final Object[] data = record.getData();
+                for (int i = 0; i < tokenTypes.length; i++) {
+                    final Object token = data[i];
+                    final SectionWriter writer = valueWriters[i];
+                    switch (tokenTypes[i]) {
+                    case FLOAT:
+                        if (token != null && !(token instanceof Double)) {
+                            throw new IllegalArgumentException("Token of float column " + i + " is not a Double");
+                        }
+                        writer.ensureRoom(Double.BYTES).putDouble(token == null ? 0. : (Double) token);
+                        break;
+                    case INTEGER:
+                        if (token != null && !(token instanceof Integer)) {
+                            throw new IllegalArgumentException("Token of integer column " + i + " is not an Integer");
+                        }
+                        writer.ensureRoom(Integer.BYTES).putInt(token == null ? 0 : (Integer) token);
+                        break;
+                    default:
+                        Integer code = codes[i].get(token);
+                        if (code == null) {
+                            code = codes[i].size();
+                            codes[i].put(token, code);
+                            values.get(i).add(token);
+                        }
+                        writer.ensureRoom(Integer.BYTES).putInt(code);
+                        break;
+                    }
+                    if (nullWriters[i] != null) {
+                        if (token == null) {
+                            nullBits[i] |= 1L << (ordinal % Long.SIZE);
+                        }
+                        if (ordinal % Long.SIZE == Long.SIZE - 1) {
+                            nullWriters[i].ensureRoom(Long.BYTES).putLong(nullBits[i]);
+                            nullBits[i] = 0;
+                        }
+                    }
+                }
+                if (indexWriter != null) {
+                    indexWriter.ensureRoom(Long.BYTES).putLong(record.getIndex());
+                }
+                ordinal++;
+            }
+            if (ordinal != recordCount) {
+                throw new IllegalArgumentException("Data source has changed during conversion");
+            }
+            for (int i = 0; i < tokenTypes.length; i++) {
+                if (nullWriters[i] != null && recordCount % Long.SIZE != 0) {
+                    nullWriters[i].ensureRoom(Long.BYTES).putLong(nullBits[i]);
+                }
+                valueWriters[i].flush();
+                if (nullWriters[i] != null) {
+                    nullWriters[i].flush();
+                }
+            }
+            if (indexWriter != null) {
+                indexWriter.flush();
+            }
+            channel.position(layout.getDictionaryOffset());
+            final DataOutputStream dictionaryStream = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel)));
+            for (int i = 0; i < tokenTypes.length; i++) {
+                if (values.get(i) != null) {
+                    dictionaryStream.writeInt(values.get(i).size());
+                    for (Object value : values.get(i)) {
+                        ColumnarFileLayout.writeValue(dictionaryStream, value);
+                    }
+                }
+            }
+            dictionaryStream.flush();
+        }
+        return recordCount;
+    }
+
+    /**
+     * Produces file header.
+     * @param tokenTypes token types of columns
+     * @param recordCount number of records
+     * @param hasIndexes true if record indexes are stored
+     * @return header bytes
+     * @throws IOException never
+     */
+    private static byte[] createHeader(TokenType[] tokenTypes, long recordCount, boolean hasIndexes)
+            throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final DataOutputStream bodyStream = new DataOutputStream(body);
+        bodyStream.writeInt(tokenTypes.length);
+        bodyStream.writeLong(recordCount);
+        bodyStream.writeBoolean(hasIndexes);
+        for (TokenType tokenType : tokenTypes) {
+            bodyStream.writeUTF(tokenType.name());
+        }
+        bodyStream.flush();
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        final DataOutputStream headerStream = new DataOutputStream(header);
+        headerStream.writeInt(ColumnarFileLayout.MAGIC);
+        headerStream.writeInt(ColumnarFileLayout.VERSION);
+        headerStream.writeInt(body.size());
+        body.writeTo(headerStream);
+        headerStream.flush();
+        return header.toByteArray();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Buffered sequential writer of a file section.
+     * @author atta_troll
+     *
+     */
+    private static class SectionWriter {
+
+        private final FileChannel channel;
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        private long position;
+
+        SectionWriter(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        /**
+         * Flushes buffer if it hasn't room for the next value.
+         * @param length length of the next value
+         * @return buffer
+         * @throws IOException on write error
+         */
+        ByteBuffer ensureRoom(int length) throws IOException {
+            if (buffer.remaining() < length) {
+                flush();
+            }
+            return buffer;
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            final int length = buffer.remaining();
+            writeFully(channel, buffer, position);
+            position += length;
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,527 @@
+package com.github.attatrol.som.datasource;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
+import com.github.attatrol.preprocessing.datasource.DataSource;
+import com.github.attatrol.preprocessing.datasource.Record;
+import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
+
+/**
+ * Token data source that holds parsed records of another token data source in RAM,
+ * so the original source is read and parsed only once, all later passes are served from memory.<br/>
+ * Records are stored column by column in primitive arrays: float tokens as doubles,
+ * integer tokens as ints, tokens of all other columns as codes of column dictionaries
+ * built while reading. Restored records have the same indexes and equal tokens,
+ * categorical tokens are the very instances of the first occurrence.
+ * Tokens may be read without boxing as well, see {@link #getNumber(long, int)}
+ * and {@link #getCode(long, int)}.<br/>
+ * Footprint of a cache may be limited, then reading stops as soon as the estimated
+ * footprint exceeds the limit, see {@link #createCache(AbstractTokenDataSource, TokenType[], long)}.<br/>
+ * Use {@link TokenDataSourceCache} in order to share a single copy of a data source.
+ * @author atta_troll
+ *
+ */
+public class CachedTokenDataSource extends AbstractTokenDataSource<Object[]>
+        implements RandomAccessTokenDataSource {
+
+    private final ColumnarDataSource columns;
+
+    private CachedTokenDataSource(ColumnarDataSource columns, int recordLength) {
+        super(columns, recordLength);
+        this.columns = columns;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected Record<Object[]> parseRecord(Record<? extends Object[]> record)
+            throws IllegalArgumentException {
+        return (Record<Object[]>) record;
+    }
+
+    /**
+     * @return number of cached records
+     */
+    @Override
+    public long getRecordCount() {
+        return columns.recordCount;
+    }
+
+    /**
+     * Restores a cached record without moving the cursor of this.
+     * @param ordinal ordinal number of the record in the data source
+     * @return record
+     * @throws IndexOutOfBoundsException if there is no such record
+     */
+    @Override
+    public Record<Object[]> getRecord(long ordinal) throws IndexOutOfBoundsException {
+        checkOrdinal(ordinal);
+        return columns.restoreRecord((int) ordinal);
+    }
+
+    @Override
+    public Object getToken(long ordinal, int column) throws IndexOutOfBoundsException {
+        checkOrdinal(ordinal);
+        return columns.restoreToken((int) ordinal, column);
+    }
+
+    /**
+     * @param ordinal ordinal number of the record in the data source
+     * @param column column index
+     * @return true if the token is null
+     * @throws IndexOutOfBoundsException if there is no such record
+     */
+    public boolean isNull(long ordinal, int column) throws IndexOutOfBoundsException {
+        checkOrdinal(ordinal);
+        return columns.nullMarks[column] != null && columns.nullMarks[column].get((int) ordinal);
+    }
+
+    /**
+     * Reads a token of a float or integer column without boxing.
+     * @param ordinal ordinal number of the record in the data source
+     * @param column index of a float or integer column
+     * @return token value, unspecified if the token is null
+     * @throws IndexOutOfBoundsException if there is no such record
+     * @throws IllegalArgumentException if column is neither float nor integer one
+     */
+    public double getNumber(long ordinal, int column) throws IndexOutOfBoundsException,
+            IllegalArgumentException {
+        checkOrdinal(ordinal);
+        switch (columns.tokenTypes[column]) {
+        case FLOAT:
+            return columns.doubleColumns[column][(int) ordinal];
+        case INTEGER:
+            return columns.intColumns[column][(int) ordinal];
+        default:
+            throw new IllegalArgumentException("Column " + column + " is not numeric");
+        }
+    }
+
+    /**
+     * Reads code of a token of a coded column, i.e. neither float nor integer one.
+     * @param ordinal ordinal number of the record in the data source
+     * @param column index of a coded column
+     * @return code of the token in the column dictionary, see {@link #getColumnValues(int)}
+     * @throws IndexOutOfBoundsException if there is no such record
+     * @throws IllegalArgumentException if column is not coded
+     */
+    public int getCode(long ordinal, int column) throws IndexOutOfBoundsException, IllegalArgumentException {
+        checkOrdinal(ordinal);
+        if (columns.columnValues[column] == null) {
+            throw new IllegalArgumentException("Column " + column + " is not coded");
+        }
+        return columns.intColumns[column][(int) ordinal];
+    }
+
+    /**
+     * @param column index of a coded column
+     * @return distinct tokens of the column ordered by their codes, it is a copy
+     * @throws IllegalArgumentException if column is not coded
+     */
+    public Object[] getColumnValues(int column) throws IllegalArgumentException {
+        if (columns.columnValues[column] == null) {
+            throw new IllegalArgumentException("Column " + column + " is not coded");
+        }
+        return columns.columnValues[column].clone();
+    }
+
+    /**
+     * @return estimated number of heap bytes taken by cached records, 0 if this is closed
+     */
+    public long getFootprint() {
+        return columns.isClosed ? 0L : columns.estimateFootprint(columns.capacity);
+    }
+
+    /**
+     * @return true if this is closed and its memory is released
+     */
+    public boolean isClosed() {
+        return columns.isClosed;
+    }
+
+    private void checkOrdinal(long ordinal) throws IndexOutOfBoundsException {
+        if (ordinal < 0 || ordinal >= columns.recordCount) {
+            throw new IndexOutOfBoundsException("No record with ordinal " + ordinal);
+        }
+    }
+
+    /**
+     * Reads all records of a data source into a new cache.
+     * @param dataSource cached data source, it is reset and read to the end
+     * @param tokenTypes token types of columns
+     * @return cached data source
+     * @throws IOException on data source i/o error
+     * @throws IllegalArgumentException if token types don't match records
+     *         or data source is too large to be cached
+     */
+    public static CachedTokenDataSource createCache(AbstractTokenDataSource<?> dataSource,
+            TokenType[] tokenTypes) throws IOException, IllegalArgumentException {
+        final CachedTokenDataSource cache = createCache(dataSource, tokenTypes, Long.MAX_VALUE);
+        if (cache == null) {
+            throw new IllegalArgumentException("Data source is too large to be cached");
+        }
+        return cache;
+    }
+
+    /**
+     * Reads records of a data source into a new cache while its estimated footprint
+     * fits the limit, see {@link #getFootprint()}.
+     * @param dataSource cached data source, it is reset and read
+     * @param tokenTypes token types of columns
+     * @param maxFootprint max number of heap bytes taken by cached records
+     * @return cached data source, null if data source doesn't fit the limit
+     *         or has more than {@link Integer#MAX_VALUE} records
+     * @throws IOException on data source i/o error
+     * @throws IllegalArgumentException if token types don't match records
+     */
+    public static CachedTokenDataSource createCache(AbstractTokenDataSource<?> dataSource,
+            TokenType[] tokenTypes, long maxFootprint) throws IOException, IllegalArgumentException {
+        final int recordLength = dataSource.getRecordLength();
+        if (tokenTypes.length != recordLength) {
+            throw new IllegalArgumentException("Token types don't match record length");
+        }
+        final ColumnarDataSource columns = new ColumnarDataSource(tokenTypes, maxFootprint);
+        dataSource.reset();
+        while (dataSource.hasNext()) {
+            if (!columns.addRecord(dataSource.next())) {
+                columns.close();
+                return null;
+            }
+        }
+        columns.trim();
+        return new CachedTokenDataSource(columns, recordLength);
+    }
+
+    /**
+     * Internal storage of records, it is also the cursor over them.
+     * @author atta_troll
+     *
+     */
+    private static class ColumnarDataSource implements DataSource<Object[]> {
+
+        private static final int INITIAL_CAPACITY = 1024;
+
+        /**
+         * Estimated heap bytes per dictionary value: the value itself, its code
+         * and a hash map entry.
+         */
+        private static final long DICTIONARY_VALUE_BYTES = 96L;
+
+        private final TokenType[] tokenTypes;
+
+        /**
+         * Max estimated footprint, records beyond it are not added.
+         */
+        private final long maxFootprint;
+
+        /**
+         * Bytes of values of a record in columns.
+         */
+        private final int recordWidth;
+
+        /**
+         * Number of numeric columns, they may have null marks.
+         */
+        private final int nullableColumnCount;
+
+        /**
+         * Values of float columns, null for other columns.
+         */
+        private final double[][] doubleColumns;
+
+        /**
+         * Values of integer columns or dictionary codes of other columns,
+         * null for float columns.
+         */
+        private final int[][] intColumns;
+
+        /**
+         * Marks of null tokens of numeric columns, null if a column has none.
+         */
+        private final BitSet[] nullMarks;
+
+        /**
+         * Dictionaries of coded columns, values ordered by codes.
+         */
+        private final Object[][] columnValues;
+
+        /**
+         * Codes of values of coded columns, used only while reading.
+         */
+        private Map<Object, Integer>[] codes;
+
+        /**
+         * Indexes of records, null while every index is equal to ordinal number of a record.
+         */
+        private long[] indexes;
+
+        private int recordCount;
+
+        private long dictionaryValueCount;
+
+        private int capacity = INITIAL_CAPACITY;
+
+        private int counter;
+
+        private boolean isClosed;
+
+        @SuppressWarnings("unchecked")
+        ColumnarDataSource(TokenType[] tokenTypes, long maxFootprint) {
+            this.tokenTypes = tokenTypes.clone();
+            this.maxFootprint = maxFootprint;
+            int width = 0;
+            int nullableCount = 0;
+            for (TokenType tokenType : tokenTypes) {
+                width += tokenType == TokenType.FLOAT ? Double.BYTES : Integer.BYTES;
+                if (tokenType == TokenType.FLOAT || tokenType == TokenType.INTEGER) {
+                    nullableCount++;
+                }
+            }
+            recordWidth = width;
+            nullableColumnCount = nullableCount;
+            doubleColumns = new double[tokenTypes.length][];
+            intColumns = new int[tokenTypes.length][];
+            nullMarks = new BitSet[tokenTypes.length];
+            columnValues = new Object[tokenTypes.length][];
+            codes = new Map[tokenTypes.length];
+            for (int i = 0; i < tokenTypes.length; i++) {
+                switch (tokenTypes[i]) {
+                case FLOAT:
+                    doubleColumns[i] = new double[capacity];
+                    break;
+                case INTEGER:
+                    intColumns[i] = new int[capacity];
+                    break;
+                default:
+                    intColumns[i] = new int[capacity];
+                    columnValues[i] = new Object[0];
+                    codes[i] = new HashMap<>();
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Appends a record to columns.
+         * @param record parsed record
+         * @return false if record doesn't fit max footprint or max number of records,
+         *         then columns are left in unspecified state
+         * @throws IllegalArgumentException if a token doesn't match its column type
+         */
+        boolean addRecord(Record<Object[]> record) throws IllegalArgumentException {
+            if (recordCount == capacity && !grow()) {
+                return false;
+            }
+            final Object[] data = record.getData();
+            for (int i = 0; i < tokenTypes.length; i++) {
+                final Object token = data[i];
+                switch (tokenTypes[i]) {
+                case FLOAT:
+                    if (token == null) {
+                        markNull(i);
+                    }
+                    else if (token instanceof Double) {
+                        doubleColumns[i][recordCount] = (Double) token;
+                    }
+                    else {
+                        throw new IllegalArgumentException("Token of float column " + i + " is not a Double");
+                    }
+                    break;
+                case INTEGER:
+                    if (token == null) {
+                        markNull(i);
+                    }
+                    else if (token instanceof Integer) {
+                        intColumns[i][recordCount] = (Integer) token;
+                    }
+                    else {
+                        throw new IllegalArgumentException("Token of integer column " + i + " is not an Integer");
+                    }
+                    break;
+                default:
+                    intColumns[i][recordCount] = getCode(i, token);
+                    break;
+                }
+            }
+            if (indexes == null && record.getIndex() != recordCount) {
+                indexes = new long[capacity];
+                for (int i = 0; i < recordCount; i++) {
+                    indexes[i] = i;
+                }
+            }
+            if (indexes != null) {
+                indexes[recordCount] = record.getIndex();
+            }
+            recordCount++;
+            return estimateFootprint(capacity) <= maxFootprint;
+        }
+
+        /**
+         * Estimates heap bytes taken by columns of some capacity with the current dictionaries.
+         * @param columnCapacity number of records in columns
+         * @return estimated footprint
+         */
+        long estimateFootprint(long columnCapacity) {
+            final long indexWidth = indexes == null ? 0L : Long.BYTES;
+            return columnCapacity * (recordWidth + indexWidth) + columnCapacity / Byte.SIZE * nullableColumnCount
+                    + dictionaryValueCount * DICTIONARY_VALUE_BYTES;
+        }
+
+        /**
+         * Restores a record.
+         * @param ordinal ordinal number of record
+         * @return record
+         */
+        Record<Object[]> restoreRecord(int ordinal) {
+            final Object[] data = new Object[tokenTypes.length];
+            for (int i = 0; i < tokenTypes.length; i++) {
+                data[i] = restoreToken(ordinal, i);
+            }
+            return new Record<>(indexes == null ? ordinal : indexes[ordinal], data);
+        }
+
+        /**
+         * Restores a token.
+         * @param ordinal ordinal number of record
+         * @param column column index
+         * @return token, may be null
+         */
+        Object restoreToken(int ordinal, int column) {
+            if (nullMarks[column] != null && nullMarks[column].get(ordinal)) {
+                return null;
+            }
+            switch (tokenTypes[column]) {
+            case FLOAT:
+                return doubleColumns[column][ordinal];
+            case INTEGER:
+                return intColumns[column][ordinal];
+            default:
+                return columnValues[column][intColumns[column][ordinal]];
+            }
+        }
+
+        /**
+         * Shrinks arrays to the number of records, drops read-time structures.
+         */
+        void trim() {
+            capacity = recordCount;
+            for (int i = 0; i < tokenTypes.length; i++) {
+                if (doubleColumns[i] != null) {
+                    doubleColumns[i] = Arrays.copyOf(doubleColumns[i], capacity);
+                }
+                if (intColumns[i] != null) {
+                    intColumns[i] = Arrays.copyOf(intColumns[i], capacity);
+                }
+                if (columnValues[i] != null) {
+                    columnValues[i] = Arrays.copyOf(columnValues[i], codes[i].size());
+                }
+            }
+            if (indexes != null) {
+                indexes = Arrays.copyOf(indexes, capacity);
+            }
+            codes = null;
+        }
+
+        @Override
+        public Record<Object[]> next()
+                throws IOException, IllegalArgumentException, NoSuchElementException {
+            stateCheck();
+            if (counter >= recordCount) {
+                throw new NoSuchElementException("Cached data source is out of elements");
+            }
+            return restoreRecord(counter++);
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            stateCheck();
+            return counter < recordCount;
+        }
+
+        @Override
+        public void reset() throws IOException {
+            stateCheck();
+            counter = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            isClosed = true;
+            Arrays.fill(doubleColumns, null);
+            Arrays.fill(intColumns, null);
+            Arrays.fill(nullMarks, null);
+            Arrays.fill(columnValues, null);
+            indexes = null;
+        }
+
+        /**
+         * Finds code of a token, adds the token to the column dictionary if it is new.
+         * @param column column index
+         * @param token token, may be null
+         * @return code
+         */
+        private int getCode(int column, Object token) {
+            final Map<Object, Integer> columnCodes = codes[column];
+            Integer code = columnCodes.get(token);
+            if (code == null) {
+                code = columnCodes.size();
+                columnCodes.put(token, code);
+                if (code == columnValues[column].length) {
+                    columnValues[column] = Arrays.copyOf(columnValues[column], Math.max(16, 2 * code));
+                }
+                columnValues[column][code] = token;
+                dictionaryValueCount++;
+            }
+            return code;
+        }
+
+        private void markNull(int column) {
+            if (nullMarks[column] == null) {
+                nullMarks[column] = new BitSet();
+            }
+            nullMarks[column].set(recordCount);
+        }
+
+        /**
+         * Doubles capacity of columns, grows them less if the doubled ones
+         * don't fit max footprint.
+         * @return false if columns can't grow any more
+         */
+        private boolean grow() {
+            long newCapacity = Math.min(Integer.MAX_VALUE, 2L * capacity);
+            while (newCapacity > capacity && estimateFootprint(newCapacity) > maxFootprint) {
+                newCapacity = capacity + (newCapacity - capacity) / 2;
+            }
+            if (newCapacity == capacity) {
+                return false;
+            }
+            capacity = (int) newCapacity;
+            for (int i = 0; i < tokenTypes.length; i++) {
+                if (doubleColumns[i] != null) {
+                    doubleColumns[i] = Arrays.copyOf(doubleColumns[i], capacity);
+                }
+                if (intColumns[i] != null) {
+                    intColumns[i] = Arrays.copyOf(intColumns[i], capacity);
+                }
+            }
+            if (indexes != null) {
+                indexes = Arrays.copyOf(indexes, capacity);
+            }
+            return true;
+        }
+
+        /**
+         * Checks if IO operation is available.
+         */
+        private void stateCheck() {
+            if (isClosed) {
+                throw new IllegalStateException("Illegal access to closed resource");
+            }
+        }
+    }
+}
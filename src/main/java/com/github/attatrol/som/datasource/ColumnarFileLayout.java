@@ -0,0 +1,257 @@
+package com.github.attatrol.som.datasource;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
+
+/**
+ * Layout of binary columnar file written by {@link BinaryColumnarConverter}
+ * and read by {@link MappedTokenDataSource}.<br/>
+ * File starts with a header: magic number, version, number of columns, number of records,
+ * flag of stored record indexes and names of column token types. Header is followed by
+ * sections aligned to 8 bytes:
+ * <ol>
+ * <li>for every column its values: doubles for float columns, ints for integer columns,
+ * int dictionary codes for other columns;</li>
+ * <li>for every numeric column bitmap of null tokens, a long per 64 records;</li>
+ * <li>record indexes as longs, if they differ from ordinal numbers of records;</li>
+ * <li>dictionary section: for every coded column number of its values and the values
+ * ordered by codes, every value is a type tag followed by the value itself,
+ * see {@link #writeValue(DataOutput, Object)}.</li>
+ * </ol>
+ * All numbers are big-endian.
+ * @author atta_troll
+ *
+ */
+final class ColumnarFileLayout {
+
+    static final int MAGIC = 0x534F4D43;
+
+    static final int VERSION = 2;
+
+    /*
+     * Type tags of dictionary values.
+     */
+    private static final byte NULL_TAG = 0;
+
+    private static final byte STRING_TAG = 1;
+
+    private static final byte LONG_STRING_TAG = 2;
+
+    private static final byte INTEGER_TAG = 3;
+
+    private static final byte LONG_TAG = 4;
+
+    private static final byte DOUBLE_TAG = 5;
+
+    private static final byte BOOLEAN_TAG = 6;
+
+    private static final byte CHARACTER_TAG = 7;
+
+    /**
+     * Max length of string written by {@link DataOutput#writeUTF(String)}.
+     */
+    private static final int MAX_UTF_LENGTH = 0xFFFF;
+
+    private final TokenType[] tokenTypes;
+
+    private final long recordCount;
+
+    private final boolean hasIndexes;
+
+    private final long[] valueOffsets;
+
+    /**
+     * Offsets of null bitmaps, -1 for coded columns.
+     */
+    private final long[] nullOffsets;
+
+    private final long indexOffset;
+
+    private final long dictionaryOffset;
+
+    /**
+     * Default ctor.
+     * @param tokenTypes token types of columns
+     * @param recordCount number of records
+     * @param hasIndexes true if record indexes are stored
+     * @param headerLength length of header
+     */
+    ColumnarFileLayout(TokenType[] tokenTypes, long recordCount, boolean hasIndexes, long headerLength) {
+        this.tokenTypes = tokenTypes.clone();
+        this.recordCount = recordCount;
+        this.hasIndexes = hasIndexes;
+        valueOffsets = new long[tokenTypes.length];
+        nullOffsets = new long[tokenTypes.length];
+        long offset = align(headerLength);
+        for (int i = 0; i < tokenTypes.length; i++) {
+            valueOffsets[i] = offset;
+            offset = align(offset + recordCount * getValueWidth(tokenTypes[i]));
+        }
+        for (int i = 0; i < tokenTypes.length; i++) {
+            if (isCoded(tokenTypes[i])) {
+                nullOffsets[i] = -1;
+            }
+            else {
+                nullOffsets[i] = offset;
+                offset += getBitmapLength(recordCount);
+            }
+        }
+        indexOffset = offset;
+        if (hasIndexes) {
+            offset += recordCount * Long.BYTES;
+        }
+        dictionaryOffset = offset;
+    }
+
+    TokenType[] getTokenTypes() {
+        return tokenTypes;
+    }
+
+    long getRecordCount() {
+        return recordCount;
+    }
+
+    boolean hasIndexes() {
+        return hasIndexes;
+    }
+
+    long getValueOffset(int column) {
+        return valueOffsets[column];
+    }
+
+    long getValueLength(int column) {
+        return recordCount * getValueWidth(tokenTypes[column]);
+    }
+
+    long getNullOffset(int column) {
+        return nullOffsets[column];
+    }
+
+    long getIndexOffset() {
+        return indexOffset;
+    }
+
+    long getDictionaryOffset() {
+        return dictionaryOffset;
+    }
+
+    /**
+     * @param tokenType token type of a column
+     * @return true if tokens of column are stored as dictionary codes
+     */
+    static boolean isCoded(TokenType tokenType) {
+        return tokenType != TokenType.FLOAT && tokenType != TokenType.INTEGER;
+    }
+
+    /**
+     * @param tokenType token type of a column
+     * @return number of bytes per value
+     */
+    static int getValueWidth(TokenType tokenType) {
+        return tokenType == TokenType.FLOAT ? Double.BYTES : Integer.BYTES;
+    }
+
+    /**
+     * @param recordCount number of records
+     * @return length of null bitmap in bytes
+     */
+    static long getBitmapLength(long recordCount) {
+        return (recordCount + Long.SIZE - 1) / Long.SIZE * Long.BYTES;
+    }
+
+    /**
+     * Writes a dictionary value as its type tag followed by the value.
+     * Strings too long for modified UTF-8 are written as length and UTF-8 bytes.
+     * @param output output
+     * @param value token, may be null
+     * @throws IOException on write error
+     * @throws IllegalArgumentException if value is of unsupported class
+     */
+    static void writeValue(DataOutput output, Object value) throws IOException, IllegalArgumentException {
+        if (value == null) {
+            output.writeByte(NULL_TAG);
+        }
+        else if (value instanceof String) {
+            final String string = (String) value;
+            // every char takes at most 3 bytes of modified UTF-8
+            if (string.length() * 3 <= MAX_UTF_LENGTH) {
+                output.writeByte(STRING_TAG);
+                output.writeUTF(string);
+            }
+            else {
+                final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                output.writeByte(LONG_STRING_TAG);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            }
+        }
+        else if (value instanceof Integer) {
+            output.writeByte(INTEGER_TAG);
+            output.writeInt((Integer) value);
+        }
+        else if (value instanceof Long) {
+            output.writeByte(LONG_TAG);
+            output.writeLong((Long) value);
+        }
+        else if (value instanceof Double) {
+            output.writeByte(DOUBLE_TAG);
+            output.writeDouble((Double) value);
+        }
+        else if (value instanceof Boolean) {
+            output.writeByte(BOOLEAN_TAG);
+            output.writeBoolean((Boolean) value);
+        }
+        else if (value instanceof Character) {
+            output.writeByte(CHARACTER_TAG);
+            output.writeChar((Character) value);
+        }
+        else {
+            throw new IllegalArgumentException("Token of class " + value.getClass().getName()
+                    + " can't be stored in binary columnar file");
+        }
+    }
+
+    /**
+     * Reads a dictionary value written by {@link #writeValue(DataOutput, Object)}.
+     * @param input input
+     * @return token, may be null
+     * @throws IOException on read error or unknown type tag
+     */
+    static Object readValue(DataInput input) throws IOException {
+        final byte tag = input.readByte();
+        switch (tag) {
+        case NULL_TAG:
+            return null;
+        case STRING_TAG:
+            return input.readUTF();
+        case LONG_STRING_TAG:
+            final int length = input.readInt();
+            if (length < 0) {
+                throw new IOException("Broken dictionary section");
+            }
+            final byte[] bytes = new byte[length];
+            input.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        case INTEGER_TAG:
+            return input.readInt();
+        case LONG_TAG:
+            return input.readLong();
+        case DOUBLE_TAG:
+            return input.readDouble();
+        case BOOLEAN_TAG:
+            return input.readBoolean();
+        case CHARACTER_TAG:
+            return input.readChar();
+        default:
+            throw new IOException("Unknown type tag in dictionary section: " + tag);
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + Long.BYTES - 1) / Long.BYTES * Long.BYTES;
+    }
+}
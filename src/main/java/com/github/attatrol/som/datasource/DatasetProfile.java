@@ -0,0 +1,359 @@
+package com.github.attatrol.som.datasource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
+import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
+
+/**
+ * Immutable statistics of a data set collected in a single pass: number of records,
+ * for every column number of null tokens, for numeric columns min, max, mean and variance
+ * of non-null values, for categorical columns distinct values in order of their
+ * first occurrence and numbers of their occurrences (null token is a value too).
+ * MISSING columns have only null counts.<br/>
+ * Data sources with random access ({@link CachedTokenDataSource}, {@link MappedTokenDataSource})
+ * may be profiled in parallel: chunks of records are profiled separately, then partial
+ * profiles are merged in order of chunks, so the result is the same as of a single pass.<br/>
+ * Use {@link TokenDataSourceCache#getProfile(AbstractTokenDataSource, TokenType[])}
+ * in order to profile a data source only once.
+ * @author atta_troll
+ *
+ */
+public final class DatasetProfile {
+
+    /**
+     * Least number of records in a parallel chunk.
+     */
+    private static final int MIN_CHUNK_SIZE = 1 << 14;
+
+    /**
+     * Number of chunks per worker of pool.
+     */
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private final TokenType[] tokenTypes;
+
+    private final long recordCount;
+
+    private final long[] nullCounts;
+
+    /**
+     * Numbers of non-null values of numeric columns.
+     */
+    private final long[] valueCounts;
+
+    private final double[] mins;
+
+    private final double[] maxs;
+
+    private final double[] means;
+
+    /**
+     * Sums of squared deviations from mean of numeric columns.
+     */
+    private final double[] squareDeviationSums;
+
+    /**
+     * Distinct values of categorical columns, null for other columns.
+     */
+    private final Object[][] distinctValues;
+
+    /**
+     * Numbers of occurrences of distinct values.
+     */
+    private final long[][] occurrences;
+
+    private DatasetProfile(Accumulator accumulator) {
+        tokenTypes = accumulator.tokenTypes;
+        recordCount = accumulator.recordCount;
+        nullCounts = accumulator.nullCounts;
+        valueCounts = accumulator.valueCounts;
+        mins = accumulator.mins;
+        maxs = accumulator.maxs;
+        means = accumulator.means;
+        squareDeviationSums = accumulator.squareDeviationSums;
+        distinctValues = new Object[tokenTypes.length][];
+        occurrences = new long[tokenTypes.length][];
+        for (int i = 0; i < tokenTypes.length; i++) {
+            final Map<Object, long[]> columnOccurrences = accumulator.occurrences[i];
+            if (columnOccurrences != null) {
+                distinctValues[i] = new Object[columnOccurrences.size()];
+                occurrences[i] = new long[columnOccurrences.size()];
+                int code = 0;
+                for (Map.Entry<Object, long[]> entry : columnOccurrences.entrySet()) {
+                    distinctValues[i][code] = entry.getKey();
+                    occurrences[i][code] = entry.getValue()[0];
+                    code++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return token types of columns
+     */
+    public TokenType[] getTokenTypes() {
+        return tokenTypes.clone();
+    }
+
+    /**
+     * @return number of records
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @param column column index
+     * @return number of null tokens in column
+     */
+    public long getNullCount(int column) {
+        return nullCounts[column];
+    }
+
+    /**
+     * @param column index of numeric column
+     * @return number of non-null values in column, 0 for non-numeric columns
+     */
+    public long getValueCount(int column) {
+        return valueCounts[column];
+    }
+
+    /**
+     * @param column index of numeric column
+     * @return min value, NaN if column has no values
+     */
+    public double getMin(int column) {
+        return valueCounts[column] == 0 ? Double.NaN : mins[column];
+    }
+
+    /**
+     * @param column index of numeric column
+     * @return max value, NaN if column has no values
+     */
+    public double getMax(int column) {
+        return valueCounts[column] == 0 ? Double.NaN : maxs[column];
+    }
+
+    /**
+     * @param column index of numeric column
+     * @return mean value, NaN if column has no values
+     */
+    public double getMean(int column) {
+        return valueCounts[column] == 0 ? Double.NaN : means[column];
+    }
+
+    /**
+     * @param column index of numeric column
+     * @return population variance of values, NaN if column has no values
+     */
+    public double getVariance(int column) {
+        return valueCounts[column] == 0 ? Double.NaN : squareDeviationSums[column] / valueCounts[column];
+    }
+
+    /**
+     * @param column index of categorical column
+     * @return distinct values in order of their first occurrence, null for non-categorical columns
+     */
+    public Object[] getDistinctValues(int column) {
+        return distinctValues[column] == null ? null : distinctValues[column].clone();
+    }
+
+    /**
+     * @param column index of categorical column
+     * @return numbers of occurrences of distinct values, null for non-categorical columns
+     */
+    public long[] getOccurrences(int column) {
+        return occurrences[column] == null ? null : occurrences[column].clone();
+    }
+
+    /**
+     * Profiles a data source in a single sequential pass.
+     * @param dataSource data source
+     * @param tokenTypes token types of columns
+     * @return profile
+     * @throws IOException on data source i/o error
+     * @throws IllegalArgumentException if token types don't match record length
+     */
+    public static DatasetProfile collect(AbstractTokenDataSource<?> dataSource, TokenType[] tokenTypes)
+            throws IOException, IllegalArgumentException {
+        if (tokenTypes.length != dataSource.getRecordLength()) {
+            throw new IllegalArgumentException("Token types don't match record length");
+        }
+        final Accumulator accumulator = new Accumulator(tokenTypes);
+        dataSource.reset();
+        while (dataSource.hasNext()) {
+            accumulator.accept(dataSource.next().getData());
+        }
+        return new DatasetProfile(accumulator);
+    }
+
+    /**
+     * Profiles a data source, data sources with random access are profiled in parallel,
+     * other ones in a single sequential pass.
+     * @param dataSource data source
+     * @param tokenTypes token types of columns
+     * @param pool pool that profiles chunks of records
+     * @return profile
+     * @throws IOException on data source i/o error
+     * @throws IllegalArgumentException if token types don't match record length
+     */
+    public static DatasetProfile collect(AbstractTokenDataSource<?> dataSource, TokenType[] tokenTypes,
+            ForkJoinPool pool) throws IOException, IllegalArgumentException {
+        if (!(dataSource instanceof RandomAccessTokenDataSource)) {
+            return collect(dataSource, tokenTypes);
+        }
+        final RandomAccessTokenDataSource randomAccessSource = (RandomAccessTokenDataSource) dataSource;
+        final long recordCount = randomAccessSource.getRecordCount();
+        if (tokenTypes.length != dataSource.getRecordLength()) {
+            throw new IllegalArgumentException("Token types don't match record length");
+        }
+        final long chunkSize = Math.max(MIN_CHUNK_SIZE,
+                (recordCount + CHUNKS_PER_WORKER * pool.getParallelism() - 1)
+                / (CHUNKS_PER_WORKER * pool.getParallelism()));
+        final List<ForkJoinTask<Accumulator>> tasks = new ArrayList<>();
+        for (long start = 0; start < recordCount; start += chunkSize) {
+            final long from = start;
+            final long to = Math.min(recordCount, start + chunkSize);
+            tasks.add(pool.submit(() -> {
+                final Accumulator accumulator = new Accumulator(tokenTypes);
+                for (long ordinal = from; ordinal < to; ordinal++) {
+                    accumulator.accept(randomAccessSource.getRecord(ordinal).getData());
+                }
+                return accumulator;
+            }));
+        }
+        final Accumulator result = new Accumulator(tokenTypes);
+        for (ForkJoinTask<Accumulator> task : tasks) {
+            result.merge(task.join());
+        }
+        return new DatasetProfile(result);
+    }
+
+    /**
+     * Mutable partial profile.
+     * @author atta_troll
+     *
+     */
+    private static class Accumulator {
+
+        private final TokenType[] tokenTypes;
+
+        private long recordCount;
+
+        private final long[] nullCounts;
+
+        private final long[] valueCounts;
+
+        private final double[] mins;
+
+        private final double[] maxs;
+
+        private final double[] means;
+
+        private final double[] squareDeviationSums;
+
+        private final Map<Object, long[]>[] occurrences;
+
+        @SuppressWarnings("unchecked")
+        Accumulator(TokenType[] tokenTypes) {
+            this.tokenTypes = tokenTypes.clone();
+            final int recordLength = tokenTypes.length;
+            nullCounts = new long[recordLength];
+            valueCounts = new long[recordLength];
+            mins = new double[recordLength];
+            maxs = new double[recordLength];
+            means = new double[recordLength];
+            squareDeviationSums = new double[recordLength];
+            Arrays.fill(mins, Double.POSITIVE_INFINITY);
+            Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+            occurrences = new Map[recordLength];
+            for (int i = 0; i < recordLength; i++) {
+                if (isCategorical(tokenTypes[i])) {
+                    occurrences[i] = new LinkedHashMap<>();
+                }
+            }
+        }
+
+        /**
+         * Adds a record to profile.
+         * @param tokens record data
+         */
+        void accept(Object[] tokens) {
+            recordCount++;
+            for (int i = 0; i < tokenTypes.length; i++) {
+                final Object token = tokens[i];
+                if (token == null) {
+                    nullCounts[i]++;
+                }
+                if (occurrences[i] != null) {
+                    final long[] occurrence = occurrences[i].get(token);
+                    if (occurrence == null) {
+                        occurrences[i].put(token, new long[] {1L});
+                    }
+                    else {
+                        occurrence[0]++;
+                    }
+                }
+                else if (token != null && isNumeric(tokenTypes[i])) {
+                    final double value = ((Number) token).doubleValue();
+                    mins[i] = Math.min(mins[i], value);
+                    maxs[i] = Math.max(maxs[i], value);
+                    // Welford's update
+                    final long count = ++valueCounts[i];
+                    final double delta = value - means[i];
+                    means[i] += delta / count;
+                    squareDeviationSums[i] += delta * (value - means[i]);
+                }
+            }
+        }
+
+        /**
+         * Merges a profile of records that follow records of this.
+         * @param later partial profile of later records
+         */
+        void merge(Accumulator later) {
+            recordCount += later.recordCount;
+            for (int i = 0; i < tokenTypes.length; i++) {
+                nullCounts[i] += later.nullCounts[i];
+                if (occurrences[i] != null) {
+                    for (Map.Entry<Object, long[]> entry : later.occurrences[i].entrySet()) {
+                        final long[] occurrence = occurrences[i].get(entry.getKey());
+                        if (occurrence == null) {
+                            occurrences[i].put(entry.getKey(), entry.getValue());
+                        }
+                        else {
+                            occurrence[0] += entry.getValue()[0];
+                        }
+                    }
+                }
+                else if (later.valueCounts[i] > 0) {
+                    mins[i] = Math.min(mins[i], later.mins[i]);
+                    maxs[i] = Math.max(maxs[i], later.maxs[i]);
+                    // Chan's parallel update
+                    final long count = valueCounts[i] + later.valueCounts[i];
+                    final double delta = later.means[i] - means[i];
+                    squareDeviationSums[i] += later.squareDeviationSums[i]
+                            + delta * delta * valueCounts[i] * later.valueCounts[i] / count;
+                    means[i] += delta * later.valueCounts[i] / count;
+                    valueCounts[i] = count;
+                }
+            }
+        }
+    }
+
+    private static boolean isNumeric(TokenType tokenType) {
+        return tokenType == TokenType.INTEGER || tokenType == TokenType.FLOAT;
+    }
+
+    private static boolean isCategorical(TokenType tokenType) {
+        return !isNumeric(tokenType) && tokenType != TokenType.MISSING;
+    }
+}
@@ -0,0 +1,322 @@
+package com.github.attatrol.som.datasource;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
+import com.github.attatrol.preprocessing.datasource.DataSource;
+import com.github.attatrol.preprocessing.datasource.Record;
+import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
+
+/**
+ * Token data source over a binary columnar file produced by {@link BinaryColumnarConverter}.
+ * File sections are memory mapped, so records are read straight from the page cache,
+ * nothing is parsed and reset costs nothing. Only dictionaries of coded columns
+ * are loaded into heap.
+ * @author atta_troll
+ *
+ */
+public class MappedTokenDataSource extends AbstractTokenDataSource<Object[]>
+        implements RandomAccessTokenDataSource {
+
+    private final MappedDataSource mappedDataSource;
+
+    private final Path file;
+
+    private MappedTokenDataSource(MappedDataSource mappedDataSource, int recordLength, Path file) {
+        super(mappedDataSource, recordLength);
+        this.mappedDataSource = mappedDataSource;
+        this.file = file;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected Record<Object[]> parseRecord(Record<? extends Object[]> record)
+            throws IllegalArgumentException {
+        return (Record<Object[]>) record;
+    }
+
+    /**
+     * @return mapped file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return token types of columns
+     */
+    public TokenType[] getTokenTypes() {
+        return mappedDataSource.layout.getTokenTypes().clone();
+    }
+
+    /**
+     * @return number of records
+     */
+    @Override
+    public long getRecordCount() {
+        return mappedDataSource.layout.getRecordCount();
+    }
+
+    /**
+     * Reads a record without moving the cursor of this.
+     * @param ordinal ordinal number of the record in the data source
+     * @return record
+     * @throws IndexOutOfBoundsException if there is no such record
+     */
+    @Override
+    public Record<Object[]> getRecord(long ordinal) throws IndexOutOfBoundsException {
+        if (ordinal < 0 || ordinal >= getRecordCount()) {
+            throw new IndexOutOfBoundsException("No record with ordinal " + ordinal);
+        }
+        return mappedDataSource.readRecord(ordinal);
+    }
+
+    @Override
+    public Object getToken(long ordinal, int column) throws IndexOutOfBoundsException {
+        if (ordinal < 0 || ordinal >= getRecordCount()) {
+            throw new IndexOutOfBoundsException("No record with ordinal " + ordinal);
+        }
+        return mappedDataSource.readToken(ordinal, column);
+    }
+
+    /**
+     * Opens a binary columnar file.
+     * @param file file produced by {@link BinaryColumnarConverter}
+     * @return data source
+     * @throws IOException on i/o error or if file has a wrong format
+     */
+    public static MappedTokenDataSource open(Path file) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            final MappedDataSource mappedDataSource = new MappedDataSource(channel);
+            return new MappedTokenDataSource(mappedDataSource,
+                    mappedDataSource.layout.getTokenTypes().length, file);
+        }
+        catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Internal cursor over mapped sections.
+     * @author atta_troll
+     *
+     */
+    private static class MappedDataSource implements DataSource<Object[]> {
+
+        private final FileChannel channel;
+
+        private final ColumnarFileLayout layout;
+
+        private final MappedSection[] valueSections;
+
+        private final MappedSection[] nullSections;
+
+        private final MappedSection indexSection;
+
+        /**
+         * Dictionaries of coded columns, values ordered by codes.
+         */
+        private final Object[][] columnValues;
+
+        private long counter;
+
+        private boolean isClosed;
+
+        MappedDataSource(FileChannel channel) throws IOException {
+            this.channel = channel;
+            layout = readLayout(channel);
+            final TokenType[] tokenTypes = layout.getTokenTypes();
+            valueSections = new MappedSection[tokenTypes.length];
+            nullSections = new MappedSection[tokenTypes.length];
+            columnValues = new Object[tokenTypes.length][];
+            for (int i = 0; i < tokenTypes.length; i++) {
+                valueSections[i] = new MappedSection(channel, layout.getValueOffset(i), layout.getValueLength(i));
+                if (!ColumnarFileLayout.isCoded(tokenTypes[i])) {
+                    nullSections[i] = new MappedSection(channel, layout.getNullOffset(i),
+                            ColumnarFileLayout.getBitmapLength(layout.getRecordCount()));
+                }
+            }
+            indexSection = layout.hasIndexes() ? new MappedSection(channel, layout.getIndexOffset(),
+                    layout.getRecordCount() * Long.BYTES) : null;
+            channel.position(layout.getDictionaryOffset());
+            final DataInputStream dictionaryStream = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(channel)));
+            for (int i = 0; i < tokenTypes.length; i++) {
+                if (ColumnarFileLayout.isCoded(tokenTypes[i])) {
+                    final int valueCount = dictionaryStream.readInt();
+                    if (valueCount < 0) {
+                        throw new IOException("Broken dictionary section");
+                    }
+                    columnValues[i] = new Object[valueCount];
+                    for (int j = 0; j < valueCount; j++) {
+                        columnValues[i][j] = ColumnarFileLayout.readValue(dictionaryStream);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Reads a record.
+         * @param ordinal ordinal number of record
+         * @return record
+         */
+        Record<Object[]> readRecord(long ordinal) {
+            final Object[] data = new Object[valueSections.length];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = readToken(ordinal, i);
+            }
+            final long index = indexSection == null ? ordinal : indexSection.getLong(ordinal * Long.BYTES);
+            return new Record<>(index, data);
+        }
+
+        /**
+         * Reads a token.
+         * @param ordinal ordinal number of record
+         * @param column column index
+         * @return token, may be null
+         */
+        Object readToken(long ordinal, int column) {
+            if (nullSections[column] != null
+                    && (nullSections[column].getLong(ordinal / Long.SIZE * Long.BYTES)
+                    & 1L << (ordinal % Long.SIZE)) != 0) {
+                return null;
+            }
+            switch (layout.getTokenTypes()[column]) {
+            case FLOAT:
+                return valueSections[column].getDouble(ordinal * Double.BYTES);
+            case INTEGER:
+                return valueSections[column].getInt(ordinal * Integer.BYTES);
+            default:
+                return columnValues[column][valueSections[column].getInt(ordinal * Integer.BYTES)];
+            }
+        }
+
+        @Override
+        public Record<Object[]> next()
+                throws IOException, IllegalArgumentException, NoSuchElementException {
+            stateCheck();
+            if (counter >= layout.getRecordCount()) {
+                throw new NoSuchElementException("Mapped data source is out of elements");
+            }
+            return readRecord(counter++);
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            stateCheck();
+            return counter < layout.getRecordCount();
+        }
+
+        @Override
+        public void reset() throws IOException {
+            stateCheck();
+            counter = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            isClosed = true;
+            channel.close();
+        }
+
+        /**
+         * Reads and checks header of file.
+         * @param channel file channel
+         * @return file layout
+         * @throws IOException on i/o error or wrong format
+         */
+        private static ColumnarFileLayout readLayout(FileChannel channel) throws IOException {
+            final ByteBuffer prefix = readFully(channel, 0, 3 * Integer.BYTES);
+            if (prefix.getInt() != ColumnarFileLayout.MAGIC) {
+                throw new IOException("Not a binary columnar file");
+            }
+            if (prefix.getInt() != ColumnarFileLayout.VERSION) {
+                throw new IOException("Unsupported version of binary columnar file");
+            }
+            final int bodyLength = prefix.getInt();
+            final ByteBuffer body = readFully(channel, prefix.capacity(), bodyLength);
+            final DataInputStream bodyStream = new DataInputStream(
+                    new ByteArrayInputStream(body.array()));
+            final TokenType[] tokenTypes = new TokenType[bodyStream.readInt()];
+            final long recordCount = bodyStream.readLong();
+            final boolean hasIndexes = bodyStream.readBoolean();
+            try {
+                for (int i = 0; i < tokenTypes.length; i++) {
+                    tokenTypes[i] = TokenType.valueOf(bodyStream.readUTF());
+                }
+            }
+            catch (IllegalArgumentException ex) {
+                throw new IOException("Unknown token type in binary columnar file", ex);
+            }
+            return new ColumnarFileLayout(tokenTypes, recordCount, hasIndexes, prefix.capacity() + bodyLength);
+        }
+
+        private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of binary columnar file");
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        /**
+         * Checks if IO operation is available.
+         */
+        private void stateCheck() {
+            if (isClosed) {
+                throw new IllegalStateException("Illegal access to closed resource");
+            }
+        }
+    }
+
+    /**
+     * Read-only mapping of a file section. A single mapping is limited by 2 GB,
+     * so a section is mapped in chunks, values never cross chunk borders.
+     * @author atta_troll
+     *
+     */
+    private static class MappedSection {
+
+        private static final int CHUNK_SHIFT = 30;
+
+        private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+        private final MappedByteBuffer[] chunks;
+
+        MappedSection(FileChannel channel, long offset, long length) throws IOException {
+            chunks = new MappedByteBuffer[(int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT)];
+            for (int i = 0; i < chunks.length; i++) {
+                final long chunkOffset = (long) i << CHUNK_SHIFT;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + chunkOffset,
+                        Math.min(length - chunkOffset, CHUNK_MASK + 1));
+            }
+        }
+
+        double getDouble(long position) {
+            return chunks[(int) (position >>> CHUNK_SHIFT)].getDouble((int) (position & CHUNK_MASK));
+        }
+
+        int getInt(long position) {
+            return chunks[(int) (position >>> CHUNK_SHIFT)].getInt((int) (position & CHUNK_MASK));
+        }
+
+        long getLong(long position) {
+            return chunks[(int) (position >>> CHUNK_SHIFT)].getLong((int) (position & CHUNK_MASK));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.github.attatrol.som.datasource;
+
+import com.github.attatrol.preprocessing.datasource.Record;
+
+/**
+ * Token data source whose records may be read by their ordinal numbers without
+ * moving its cursor. Records are read concurrently by several threads.
+ * @author atta_troll
+ *
+ */
+public interface RandomAccessTokenDataSource {
+
+    /**
+     * @return number of records
+     */
+    long getRecordCount();
+
+    /**
+     * Reads a record without moving the cursor of this.
+     * @param ordinal ordinal number of the record in the data source
+     * @return record
+     * @throws IndexOutOfBoundsException if there is no such record
+     */
+    Record<Object[]> getRecord(long ordinal) throws IndexOutOfBoundsException;
+
+    /**
+     * Reads a single token without restoring the rest of its record.
+     * @param ordinal ordinal number of the record in the data source
+     * @param column column index
+     * @return token, may be null
+     * @throws IndexOutOfBoundsException if there is no such record or column
+     */
+    Object getToken(long ordinal, int column) throws IndexOutOfBoundsException;
+}
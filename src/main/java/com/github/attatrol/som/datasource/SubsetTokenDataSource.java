@@ -0,0 +1,134 @@
+package com.github.attatrol.som.datasource;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
+import com.github.attatrol.preprocessing.datasource.DataSource;
+import com.github.attatrol.preprocessing.datasource.Record;
+
+/**
+ * Token data source over chosen records of a random access data source,
+ * e.g. records of a single cluster. Records are read on demand, so a pass
+ * costs only the chosen records, and nothing is copied in advance.
+ * @author atta_troll
+ *
+ */
+public class SubsetTokenDataSource extends AbstractTokenDataSource<Object[]>
+        implements RandomAccessTokenDataSource {
+
+    private final SubsetDataSource subsetDataSource;
+
+    private SubsetTokenDataSource(SubsetDataSource subsetDataSource, int recordLength) {
+        super(subsetDataSource, recordLength);
+        this.subsetDataSource = subsetDataSource;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected Record<Object[]> parseRecord(Record<? extends Object[]> record)
+            throws IllegalArgumentException {
+        return (Record<Object[]>) record;
+    }
+
+    /**
+     * @return number of chosen records
+     */
+    @Override
+    public long getRecordCount() {
+        return subsetDataSource.ordinals.length;
+    }
+
+    /**
+     * Reads a chosen record without moving the cursor of this.
+     * @param ordinal ordinal number of the record in this
+     * @return record
+     * @throws IndexOutOfBoundsException if there is no such record
+     */
+    @Override
+    public Record<Object[]> getRecord(long ordinal) throws IndexOutOfBoundsException {
+        if (ordinal < 0 || ordinal >= subsetDataSource.ordinals.length) {
+            throw new IndexOutOfBoundsException("No record with ordinal " + ordinal);
+        }
+        return subsetDataSource.source.getRecord(subsetDataSource.ordinals[(int) ordinal]);
+    }
+
+    @Override
+    public Object getToken(long ordinal, int column) throws IndexOutOfBoundsException {
+        if (ordinal < 0 || ordinal >= subsetDataSource.ordinals.length) {
+            throw new IndexOutOfBoundsException("No record with ordinal " + ordinal);
+        }
+        return subsetDataSource.source.getToken(subsetDataSource.ordinals[(int) ordinal], column);
+    }
+
+    /**
+     * Creates a view over chosen records.
+     * @param dataSource random access data source
+     * @param ordinals ordinal numbers of the chosen records in the data source,
+     *        they are not copied
+     * @return data source of the chosen records in the given order
+     * @throws IllegalArgumentException if data source has no random access
+     */
+    public static SubsetTokenDataSource createSubset(AbstractTokenDataSource<?> dataSource,
+            int[] ordinals) throws IllegalArgumentException {
+        if (!(dataSource instanceof RandomAccessTokenDataSource)) {
+            throw new IllegalArgumentException("Data source has no random access");
+        }
+        return new SubsetTokenDataSource(new SubsetDataSource((RandomAccessTokenDataSource) dataSource,
+                ordinals), dataSource.getRecordLength());
+    }
+
+    /**
+     * Cursor over the chosen records.
+     * @author atta_troll
+     *
+     */
+    private static class SubsetDataSource implements DataSource<Object[]> {
+
+        private final RandomAccessTokenDataSource source;
+
+        private final int[] ordinals;
+
+        private int counter;
+
+        private boolean isClosed;
+
+        SubsetDataSource(RandomAccessTokenDataSource source, int[] ordinals) {
+            this.source = source;
+            this.ordinals = ordinals;
+        }
+
+        @Override
+        public Record<Object[]> next()
+                throws IOException, IllegalArgumentException, NoSuchElementException {
+            stateCheck();
+            if (counter >= ordinals.length) {
+                throw new NoSuchElementException("Subset data source is out of elements");
+            }
+            return source.getRecord(ordinals[counter++]);
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            stateCheck();
+            return counter < ordinals.length;
+        }
+
+        @Override
+        public void reset() throws IOException {
+            stateCheck();
+            counter = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            isClosed = true;
+        }
+
+        private void stateCheck() {
+            if (isClosed) {
+                throw new IllegalStateException("Illegal access to closed resource");
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.github.attatrol.som.datasource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
+import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
+import com.github.attatrol.preprocessing.ui.TokenDataSourceAndMisc;
+
+/**
+ * Registry of cached data sources, it keeps a single {@link CachedTokenDataSource}
+ * per original data source, so SOM, its results and benchmarks share one copy of
+ * a data set in RAM. Cache is created on the first request.<br/>
+ * All caches together may take only a fraction of max heap size. A data set whose cache
+ * doesn't fit the rest of this fraction is converted into a temporary binary columnar file
+ * instead, see {@link BinaryColumnarConverter}, and {@link MappedTokenDataSource}
+ * over the file is served. The file is deleted on release.<br/>
+ * Caches and {@link MappedTokenDataSource} are served as they are, mapped data
+ * sets may not fit into heap.<br/>
+ * Registry also keeps {@link DatasetProfile} of every profiled data source
+ * while the data source is reachable.
+ * @author atta_troll
+ *
+ */
+public final class TokenDataSourceCache {
+
+    /**
+     * Fraction of max heap size available for all caches.
+     */
+    public static final double MAX_HEAP_FRACTION = 0.5;
+
+    private static final Map<AbstractTokenDataSource<?>, CachedTokenDataSource> CACHES =
+            new IdentityHashMap<>();
+
+    /**
+     * Temporary mapped copies of data sources which didn't fit heap.
+     */
+    private static final Map<AbstractTokenDataSource<?>, MappedTokenDataSource> MAPPED_COPIES =
+            new IdentityHashMap<>();
+
+    private static final Map<AbstractTokenDataSource<?>, DatasetProfile> PROFILES = new WeakHashMap<>();
+
+    private TokenDataSourceCache() {
+    }
+
+    /**
+     * Finds cache of a data source, creates it if necessary.
+     * @param dataSource original data source
+     * @param tokenTypes token types of columns
+     * @return cached data source, its mapped copy if its cache doesn't fit heap,
+     *         the data source itself if it is a cache or a mapped data source
+     * @throws IOException on data source or temporary file i/o error
+     * @throws IllegalArgumentException if token types don't match records
+     */
+    public static synchronized AbstractTokenDataSource<?> getCachedDataSource(
+            AbstractTokenDataSource<?> dataSource, TokenType[] tokenTypes)
+            throws IOException, IllegalArgumentException {
+        if (dataSource instanceof RandomAccessTokenDataSource) {
+            return dataSource;
+        }
+        final MappedTokenDataSource mappedCopy = MAPPED_COPIES.get(dataSource);
+        if (mappedCopy != null) {
+            return mappedCopy;
+        }
+        CachedTokenDataSource cache = CACHES.get(dataSource);
+        if (cache == null || cache.isClosed()) {
+            cache = CachedTokenDataSource.createCache(dataSource, tokenTypes, getFreeFootprint());
+            if (cache == null) {
+                final MappedTokenDataSource newMappedCopy = createMappedCopy(dataSource, tokenTypes);
+                MAPPED_COPIES.put(dataSource, newMappedCopy);
+                return newMappedCopy;
+            }
+            CACHES.put(dataSource, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Converts a data source into a temporary binary columnar file and maps it.
+     * @param dataSource data source
+     * @param tokenTypes token types of columns
+     * @return mapped data source
+     * @throws IOException on data source or file i/o error
+     * @throws IllegalArgumentException if token types don't match records
+     */
+    private static MappedTokenDataSource createMappedCopy(AbstractTokenDataSource<?> dataSource,
+            TokenType[] tokenTypes) throws IOException, IllegalArgumentException {
+        final Path file = Files.createTempFile("som", ".columnar");
+        file.toFile().deleteOnExit();
+        try {
+            BinaryColumnarConverter.convert(dataSource, tokenTypes, file);
+            return MappedTokenDataSource.open(file);
+        }
+        catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(file);
+            throw ex;
+        }
+    }
+
+    /**
+     * @return number of heap bytes that may be taken by a new cache
+     */
+    private static long getFreeFootprint() {
+        long freeFootprint = (long) (Runtime.getRuntime().maxMemory() * MAX_HEAP_FRACTION);
+        for (CachedTokenDataSource cache : CACHES.values()) {
+            freeFootprint -= cache.getFootprint();
+        }
+        return freeFootprint;
+    }
+
+    /**
+     * Finds cache of a data source, creates it if necessary.
+     * @param tdsm token data source and misc
+     * @return cached data source, see {@link #getCachedDataSource(AbstractTokenDataSource, TokenType[])}
+     * @throws IOException on data source i/o error
+     * @throws IllegalArgumentException if token types don't match records
+     */
+    public static AbstractTokenDataSource<?> getCachedDataSource(TokenDataSourceAndMisc tdsm)
+            throws IOException, IllegalArgumentException {
+        return getCachedDataSource(tdsm.getTokenDataSource(), tdsm.getTokenTypes());
+    }
+
+    /**
+     * Finds profile of a data source, collects it if necessary.
+     * Caches and mapped data sources are profiled in parallel.
+     * @param dataSource data source
+     * @param tokenTypes token types of columns
+     * @return profile
+     * @throws IOException on data source i/o error
+     * @throws IllegalArgumentException if token types don't match record length
+     */
+    public static synchronized DatasetProfile getProfile(AbstractTokenDataSource<?> dataSource,
+            TokenType[] tokenTypes) throws IOException, IllegalArgumentException {
+        DatasetProfile profile = PROFILES.get(dataSource);
+        if (profile == null || !Arrays.equals(profile.getTokenTypes(), tokenTypes)) {
+            profile = DatasetProfile.collect(dataSource, tokenTypes, ForkJoinPool.commonPool());
+            PROFILES.put(dataSource, profile);
+        }
+        return profile;
+    }
+
+    /**
+     * Closes cache or mapped copy of a data source, forgets it and profiles of both.
+     * File of mapped copy is deleted.
+     * @param dataSource original data source
+     * @throws IOException on cache closing error
+     */
+    public static synchronized void release(AbstractTokenDataSource<?> dataSource) throws IOException {
+        final CachedTokenDataSource cache = CACHES.remove(dataSource);
+        final MappedTokenDataSource mappedCopy = MAPPED_COPIES.remove(dataSource);
+        PROFILES.remove(dataSource);
+        if (cache != null) {
+            PROFILES.remove(cache);
+            cache.close();
+        }
+        if (mappedCopy != null) {
+            PROFILES.remove(mappedCopy);
+            mappedCopy.close();
+            try {
+                Files.deleteIfExists(mappedCopy.getFile());
+            }
+            catch (IOException ex) {
+                // live mappings may keep the file on some platforms, it is deleted on exit then
+            }
+        }
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * Token data sources that speed up repeated passes over a data set.
+ */
+
+package com.github.attatrol.som.datasource;
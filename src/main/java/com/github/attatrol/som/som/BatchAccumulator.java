@@ -0,0 +1,267 @@
+package com.github.attatrol.som.som;
+
+import java.util.Arrays;
+
+import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
+import com.github.attatrol.som.som.encoding.CategoricalDictionary;
+import com.github.attatrol.som.som.neuron.NeuronBatchUpdate;
+
+/**
+ * Per BMU sums of records collected through a batch learning epoch. Not thread-safe,
+ * every thread fills its own accumulator, then all of them are merged.
+ * Categorical votes are sparse, so an accumulator doesn't grow with dictionary sizes.
+ * Accumulator is reusable, see {@link #clear()}.
+ * @author atta_troll
+ *
+ */
+final class BatchAccumulator {
+
+    private final TokenType[] tokenTypes;
+
+    private final CategoricalDictionary[] dictionaries;
+
+    /**
+     * Number of records won by every neuron.
+     */
+    private final long[] winCounts;
+
+    /**
+     * Sums of numeric tokens of records won by every neuron.
+     */
+    private final double[][] numericSums;
+
+    /**
+     * Occurrences of categorical tokens in records won by every neuron,
+     * indexed by token indexes, null for numeric tokens.
+     */
+    private final VoteTable[] categoricalVotes;
+
+    /**
+     * The most distant record for every neuron.
+     */
+    private final Object[][] distantRecords;
+
+    private final double[] distantRecordDistances;
+
+    /**
+     * Sum of distances to records won by every neuron.
+     */
+    private final double[] errorSums;
+
+    private double errorSum;
+
+    private long recordCount;
+
+    /**
+     * Number of records whose BMU changed since the previous epoch.
+     */
+    private long bmuChangeCount;
+
+    /**
+     * Number of records whose second best matching unit is known.
+     */
+    private long secondBmuCount;
+
+    /**
+     * Number of records whose best and second best matching units are not adjacent.
+     */
+    private long topographicErrorCount;
+
+    /**
+     * Default ctor.
+     * @param neuronCount number of neurons
+     * @param tokenTypes token types of a record
+     * @param dictionaries dictionaries of categorical tokens
+     */
+    BatchAccumulator(int neuronCount, TokenType[] tokenTypes, CategoricalDictionary[] dictionaries) {
+        this.tokenTypes = tokenTypes;
+        this.dictionaries = dictionaries;
+        winCounts = new long[neuronCount];
+        numericSums = new double[neuronCount][tokenTypes.length];
+        categoricalVotes = new VoteTable[tokenTypes.length];
+        for (int j = 0; j < tokenTypes.length; j++) {
+            if (dictionaries[j] != null) {
+                categoricalVotes[j] = new VoteTable(neuronCount);
+            }
+        }
+        distantRecords = new Object[neuronCount][];
+        distantRecordDistances = new double[neuronCount];
+        errorSums = new double[neuronCount];
+    }
+
+    /**
+     * Adds a record to its BMU sums.
+     * @param bmuIndex index of BMU
+     * @param data record data
+     * @param distance distance between BMU and the record
+     */
+    void accumulate(int bmuIndex, Object[] data, double distance) {
+        winCounts[bmuIndex]++;
+        errorSums[bmuIndex] += distance;
+        errorSum += distance;
+        recordCount++;
+        final double[] sums = numericSums[bmuIndex];
+        for (int i = 0; i < tokenTypes.length; i++) {
+            switch (tokenTypes[i]) {
+            case FLOAT:
+                sums[i] += (Double) data[i];
+                break;
+            case INTEGER:
+                sums[i] += (Integer) data[i];
+                break;
+            case BINARY:
+            case BINARY_DIGITAL:
+            case CATEGORICAL_STRING:
+                final int code = dictionaries[i].getCode(data[i]);
+                if (code != CategoricalDictionary.UNKNOWN_CODE) {
+                    categoricalVotes[i].increment(bmuIndex, code);
+                }
+                break;
+            default:
+                // do nothing
+                break;
+            }
+        }
+        if (distantRecords[bmuIndex] == null || distance > distantRecordDistances[bmuIndex]) {
+            distantRecords[bmuIndex] = data;
+            distantRecordDistances[bmuIndex] = distance;
+        }
+    }
+
+    /**
+     * Erases all sums, storage is kept for the next epoch.
+     */
+    void clear() {
+        Arrays.fill(winCounts, 0L);
+        for (double[] sums : numericSums) {
+            Arrays.fill(sums, 0.);
+        }
+        for (VoteTable votes : categoricalVotes) {
+            if (votes != null) {
+                votes.clear();
+            }
+        }
+        Arrays.fill(distantRecords, null);
+        Arrays.fill(distantRecordDistances, 0.);
+        Arrays.fill(errorSums, 0.);
+        errorSum = 0.;
+        recordCount = 0L;
+        bmuChangeCount = 0L;
+        secondBmuCount = 0L;
+        topographicErrorCount = 0L;
+    }
+
+    /**
+     * Counts a record whose BMU changed since the previous epoch.
+     */
+    void countBmuChange() {
+        bmuChangeCount++;
+    }
+
+    /**
+     * Counts a record whose second best matching unit is known.
+     * @param isAdjacent true if the best and second best matching units are adjacent
+     */
+    void countSecondBmu(boolean isAdjacent) {
+        secondBmuCount++;
+        if (!isAdjacent) {
+            topographicErrorCount++;
+        }
+    }
+
+    /**
+     * Adds all sums of other accumulator to this one.
+     * @param other other accumulator
+     */
+    void merge(BatchAccumulator other) {
+        errorSum += other.errorSum;
+        recordCount += other.recordCount;
+        bmuChangeCount += other.bmuChangeCount;
+        secondBmuCount += other.secondBmuCount;
+        topographicErrorCount += other.topographicErrorCount;
+        for (int j = 0; j < tokenTypes.length; j++) {
+            if (categoricalVotes[j] != null) {
+                categoricalVotes[j].merge(other.categoricalVotes[j]);
+            }
+        }
+        for (int i = 0; i < winCounts.length; i++) {
+            if (other.winCounts[i] == 0) {
+                continue;
+            }
+            winCounts[i] += other.winCounts[i];
+            errorSums[i] += other.errorSums[i];
+            for (int j = 0; j < tokenTypes.length; j++) {
+                if (categoricalVotes[j] == null) {
+                    numericSums[i][j] += other.numericSums[i][j];
+                }
+            }
+            if (distantRecords[i] == null || other.distantRecordDistances[i] > distantRecordDistances[i]) {
+                distantRecords[i] = other.distantRecords[i];
+                distantRecordDistances[i] = other.distantRecordDistances[i];
+            }
+        }
+    }
+
+    /**
+     * Groups categorical votes by neurons, must be called after the last merge.
+     */
+    void compact() {
+        for (VoteTable votes : categoricalVotes) {
+            if (votes != null) {
+                votes.compact();
+            }
+        }
+    }
+
+    /**
+     * Adds records won by a neuron to a neuron update, see
+     * {@link NeuronBatchUpdate#add(double, long, double[])}. Accumulator must be compacted.
+     * @param neuronIndex index of the winner neuron
+     * @param factor neighborhood factor of the winner neuron
+     * @param update update of a neuron
+     */
+    void addTo(int neuronIndex, double factor, NeuronBatchUpdate update) {
+        update.add(factor, winCounts[neuronIndex], numericSums[neuronIndex]);
+        for (int j = 0; j < categoricalVotes.length; j++) {
+            final VoteTable votes = categoricalVotes[j];
+            if (votes != null) {
+                final int end = votes.getEnd(neuronIndex);
+                for (int k = votes.getStart(neuronIndex); k < end; k++) {
+                    update.addVotes(j, votes.getCode(k), factor * votes.getCount(k));
+                }
+            }
+        }
+    }
+
+    long getWinCount(int neuronIndex) {
+        return winCounts[neuronIndex];
+    }
+
+    double getNeuronErrorSum(int neuronIndex) {
+        return errorSums[neuronIndex];
+    }
+
+    Object[] getDistantRecord(int neuronIndex) {
+        return distantRecords[neuronIndex];
+    }
+
+    double getErrorSum() {
+        return errorSum;
+    }
+
+    long getRecordCount() {
+        return recordCount;
+    }
+
+    long getBmuChangeCount() {
+        return bmuChangeCount;
+    }
+
+    long getSecondBmuCount() {
+        return secondBmuCount;
+    }
+
+    long getTopographicErrorCount() {
+        return topographicErrorCount;
+    }
+}
@@ -0,0 +1,173 @@
+package com.github.attatrol.som.som;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+
+import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
+import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
+import com.github.attatrol.som.som.bmu.BmuResult;
+import com.github.attatrol.som.som.bmu.BmuSearch;
+import com.github.attatrol.som.som.encoding.CategoricalDictionary;
+import com.github.attatrol.som.som.topology.SomTopology;
+
+/**
+ * Data-parallel part of batch learning epochs. Current thread reads records
+ * in chunks and submits them to the pool, pool threads find BMUs and fill
+ * their own accumulators, which are merged in the end. Number of chunks in flight
+ * is limited, so memory consumption doesn't depend on the data source size.
+ * Accumulators are kept and reused by later epochs.
+ * @author atta_troll
+ *
+ */
+final class BatchEpoch {
+
+    /**
+     * Number of records in a single task.
+     */
+    static final int CHUNK_SIZE = 1024;
+
+    /**
+     * Number of chunks in flight per pool thread.
+     */
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    private final int neuronCount;
+
+    private final TokenType[] tokenTypes;
+
+    private final CategoricalDictionary[] dictionaries;
+
+    /**
+     * Accumulators not used by any task at the moment.
+     */
+    private final ConcurrentLinkedQueue<BatchAccumulator> idleAccumulators = new ConcurrentLinkedQueue<>();
+
+    /**
+     * All accumulators created so far.
+     */
+    private final ConcurrentLinkedQueue<BatchAccumulator> accumulators = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Default ctor.
+     * @param neuronCount number of neurons
+     * @param tokenTypes token types of a record
+     * @param dictionaries dictionaries of categorical tokens
+     */
+    BatchEpoch(int neuronCount, TokenType[] tokenTypes, CategoricalDictionary[] dictionaries) {
+        this.neuronCount = neuronCount;
+        this.tokenTypes = tokenTypes;
+        this.dictionaries = dictionaries;
+    }
+
+    /**
+     * Runs an epoch through the whole data source. Result is valid until the next run.
+     * @param dataSource data source
+     * @param bmuSearch BMU search, must be thread-safe
+     * @param pool executor of chunk tasks
+     * @param recordBmus BMU indexes of records in the previous epoch, they are replaced
+     *        with the new ones; null if BMU changes are not tracked
+     * @param topology topology of neurons, it is used to count the topographic error;
+     *        null if the error is not tracked
+     * @return merged and compacted sums of all records
+     * @throws IOException on data source i/o error
+     */
+    BatchAccumulator run(AbstractTokenDataSource<?> dataSource, BmuSearch bmuSearch, ForkJoinPool pool,
+            int[] recordBmus, SomTopology topology) throws IOException {
+        idleAccumulators.clear();
+        for (BatchAccumulator accumulator : accumulators) {
+            accumulator.clear();
+            idleAccumulators.add(accumulator);
+        }
+        final Semaphore chunksInFlight = new Semaphore(pool.getParallelism() * CHUNKS_PER_THREAD);
+        final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        try {
+            dataSource.reset();
+            long ordinal = 0L;
+            while (dataSource.hasNext()) {
+                final Object[][] chunk = new Object[CHUNK_SIZE][];
+                int size = 0;
+                while (size < CHUNK_SIZE && dataSource.hasNext()) {
+                    chunk[size++] = dataSource.next().getData();
+                }
+                final int chunkSize = size;
+                final long firstOrdinal = ordinal;
+                ordinal += size;
+                chunksInFlight.acquireUninterruptibly();
+                tasks.add(pool.submit(() -> {
+                    try {
+                        process(chunk, chunkSize, firstOrdinal, bmuSearch, recordBmus, topology);
+                    }
+                    finally {
+                        chunksInFlight.release();
+                    }
+                }));
+            }
+        }
+        finally {
+            for (ForkJoinTask<?> task : tasks) {
+                task.quietlyJoin();
+            }
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            // rethrows failure of a task
+            task.join();
+        }
+        BatchAccumulator result = accumulators.peek();
+        if (result == null) {
+            result = new BatchAccumulator(neuronCount, tokenTypes, dictionaries);
+            accumulators.add(result);
+        }
+        for (BatchAccumulator accumulator : accumulators) {
+            if (accumulator != result) {
+                result.merge(accumulator);
+            }
+        }
+        result.compact();
+        return result;
+    }
+
+    /**
+     * Processes a chunk of records.
+     * @param chunk records
+     * @param size number of records in chunk
+     * @param firstOrdinal ordinal of the first record of chunk in the data source
+     * @param bmuSearch BMU search
+     * @param recordBmus BMU indexes of records in the previous epoch, null if not tracked
+     * @param topology topology of neurons, null if the topographic error is not tracked
+     */
+    private void process(Object[][] chunk, int size, long firstOrdinal, BmuSearch bmuSearch,
+            int[] recordBmus, SomTopology topology) {
+        BatchAccumulator accumulator = idleAccumulators.poll();
+        if (accumulator == null) {
+            accumulator = new BatchAccumulator(neuronCount, tokenTypes, dictionaries);
+            accumulators.add(accumulator);
+        }
+        final BmuResult bmu = new BmuResult();
+        for (int i = 0; i < size; i++) {
+            final long ordinal = firstOrdinal + i;
+            // chunks cover disjoint ranges of records
+            final boolean isTracked = recordBmus != null && ordinal < recordBmus.length;
+            final int previousBmu = isTracked ? recordBmus[(int) ordinal] : -1;
+            if (topology != null) {
+                bmuSearch.findTwoBmus(chunk[i], previousBmu, bmu);
+                if (bmu.getSecondIndex() >= 0) {
+                    accumulator.countSecondBmu(topology.isAdjacent(bmu.getIndex(), bmu.getSecondIndex()));
+                }
+            }
+            else {
+                bmuSearch.findBmu(chunk[i], previousBmu, bmu);
+            }
+            accumulator.accumulate(bmu.getIndex(), chunk[i], bmu.getDistance());
+            if (isTracked && previousBmu != bmu.getIndex()) {
+                recordBmus[(int) ordinal] = bmu.getIndex();
+                accumulator.countBmuChange();
+            }
+        }
+        idleAccumulators.add(accumulator);
+    }
+}
@@ -0,0 +1,387 @@
+package com.github.attatrol.som.som;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
+import com.github.attatrol.preprocessing.datasource.Record;
+import com.github.attatrol.preprocessing.distance.DistanceFunction;
+import com.github.attatrol.som.datasource.RandomAccessTokenDataSource;
+import com.github.attatrol.som.som.distance.ColumnwiseDistanceFunction;
+import com.github.attatrol.som.som.neuron.AbstractNeuron;
+
+/**
+ * Parallel assignment of data source records to neurons of a trained SOM.
+ * Records are split into chunks, pool threads find the best and the second best
+ * matching units of every record against a snapshot of neuron weights taken
+ * at creation, so the result doesn't depend on later weight changes.
+ * Random access data sources are read by pool threads, other ones are read
+ * by the current thread. Quantization and topographic errors are gathered
+ * in the same pass.
+ * @author atta_troll
+ *
+ */
+public class ClusterAssignment {
+
+    /**
+     * Number of records in a single task.
+     */
+    public static final int CHUNK_SIZE = 4096;
+
+    /**
+     * Number of chunks in flight per pool thread.
+     */
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    /**
+     * Listener of assignment progress.
+     * @author atta_troll
+     *
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+
+        /**
+         * Called by pool threads after every chunk.
+         * @param assignedCount number of assigned records
+         * @param recordCount total number of records, -1 if it is unknown
+         */
+        void progressChanged(long assignedCount, long recordCount);
+    }
+
+    private final List<AbstractNeuron> neurons;
+
+    /**
+     * Copies of neuron weights, indexed by neuron ids.
+     */
+    private final Object[][] weights;
+
+    /**
+     * Indexes of adjacent neurons, indexed by neuron ids.
+     */
+    private final int[][] adjacentNeurons;
+
+    private final DistanceFunction distanceFunction;
+
+    /**
+     * The same distance function if it may be abandoned early, null otherwise.
+     */
+    private final ColumnwiseDistanceFunction columnwiseDistanceFunction;
+
+    private final ForkJoinPool pool;
+
+    private ProgressListener progressListener;
+
+    private volatile boolean isCancelled;
+
+    private final AtomicLong assignedCount = new AtomicLong();
+
+    /**
+     * Default ctor, takes snapshot of neuron weights.
+     * @param som trained SOM
+     * @param pool executor of chunk tasks
+     */
+    public ClusterAssignment(Som som, ForkJoinPool pool) {
+        neurons = som.getNeurons();
+        weights = new Object[neurons.size()][];
+        adjacentNeurons = new int[neurons.size()][];
+        for (int i = 0; i < neurons.size(); i++) {
+            weights[i] = neurons.get(i).getWeights().clone();
+            adjacentNeurons[i] = som.getTopology().getAdjacentNeurons(i);
+        }
+        distanceFunction = som.getDistanceFunction();
+        columnwiseDistanceFunction = distanceFunction instanceof ColumnwiseDistanceFunction
+                ? (ColumnwiseDistanceFunction) distanceFunction : null;
+        this.pool = pool;
+    }
+
+    /**
+     * Sets listener of assignment progress.
+     * @param progressListener listener, null if progress is not tracked
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Requests cancellation of the running assignment, chunks in flight are finished.
+     */
+    public void cancel() {
+        isCancelled = true;
+    }
+
+    /**
+     * @return true if assignment has been cancelled
+     */
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    /**
+     * Assigns all records of a data source to neurons.
+     * @param dataSource data source
+     * @return cluster result, cluster indexes are neuron ids
+     * @throws IOException on data source i/o error
+     * @throws CancellationException if assignment has been cancelled
+     * @throws IllegalArgumentException if data source holds more than
+     *         {@link Integer#MAX_VALUE} records
+     */
+    public SomClusterResult assign(AbstractTokenDataSource<?> dataSource)
+            throws IOException, CancellationException, IllegalArgumentException {
+        assignedCount.set(0L);
+        final ChunkResult[] chunks = dataSource instanceof RandomAccessTokenDataSource
+                ? assignRandomAccess((RandomAccessTokenDataSource) dataSource)
+                : assignSequential(dataSource);
+        int recordCount = 0;
+        for (ChunkResult chunk : chunks) {
+            recordCount += chunk.size;
+        }
+        final int[] clusters;
+        final int[] secondClusters;
+        long[] indexes;
+        if (chunks.length == 1) {
+            clusters = chunks[0].clusters;
+            secondClusters = chunks[0].secondClusters;
+            indexes = chunks[0].indexes.length == recordCount ? chunks[0].indexes
+                    : Arrays.copyOf(chunks[0].indexes, recordCount);
+        }
+        else {
+            clusters = new int[recordCount];
+            secondClusters = new int[recordCount];
+            indexes = new long[recordCount];
+            int offset = 0;
+            for (ChunkResult chunk : chunks) {
+                System.arraycopy(chunk.clusters, 0, clusters, offset, chunk.size);
+                System.arraycopy(chunk.secondClusters, 0, secondClusters, offset, chunk.size);
+                System.arraycopy(chunk.indexes, 0, indexes, offset, chunk.size);
+                offset += chunk.size;
+            }
+        }
+        final double[] errorSums = new double[neurons.size()];
+        long topographicErrorCount = 0L;
+        boolean isIdentity = true;
+        boolean isSorted = true;
+        for (ChunkResult chunk : chunks) {
+            for (int i = 0; i < errorSums.length; i++) {
+                errorSums[i] += chunk.errorSums[i];
+            }
+            topographicErrorCount += chunk.topographicErrorCount;
+        }
+        for (int i = 0; i < recordCount; i++) {
+            isIdentity &= indexes[i] == i;
+            isSorted &= i == 0 || indexes[i - 1] < indexes[i];
+        }
+        if (isIdentity) {
+            indexes = null;
+        }
+        return new SomClusterResult(clusters, secondClusters, indexes, isSorted, neurons,
+                errorSums, topographicErrorCount);
+    }
+
+    /**
+     * Assigns records of a random access data source, pool threads read them.
+     * @param dataSource data source
+     * @return results of chunks in ordinal order
+     * @throws CancellationException if assignment has been cancelled
+     * @throws IllegalArgumentException if data source is too large
+     */
+    private ChunkResult[] assignRandomAccess(RandomAccessTokenDataSource dataSource)
+            throws CancellationException, IllegalArgumentException {
+        final long recordCount = dataSource.getRecordCount();
+        if (recordCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Data source is too large");
+        }
+        final int[] clusters = new int[(int) recordCount];
+        final int[] secondClusters = new int[(int) recordCount];
+        final long[] indexes = new long[(int) recordCount];
+        final List<ForkJoinTask<ChunkResult>> tasks = new ArrayList<>();
+        for (int start = 0; start < recordCount; start += CHUNK_SIZE) {
+            final int from = start;
+            final int to = (int) Math.min(recordCount, (long) start + CHUNK_SIZE);
+            tasks.add(pool.submit(() -> {
+                final ChunkResult result = new ChunkResult(clusters, secondClusters, indexes, to - from);
+                if (!isCancelled) {
+                    for (int ordinal = from; ordinal < to; ordinal++) {
+                        final Record<Object[]> record = dataSource.getRecord(ordinal);
+                        indexes[ordinal] = record.getIndex();
+                        assignRecord(record.getData(), ordinal, result);
+                    }
+                    reportProgress(to - from, recordCount);
+                }
+                return result;
+            }));
+        }
+        final ChunkResult[] results = join(tasks);
+        final ChunkResult result = new ChunkResult(clusters, secondClusters, indexes, (int) recordCount);
+        for (ChunkResult chunk : results) {
+            result.merge(chunk);
+        }
+        return new ChunkResult[] {result};
+    }
+
+    /**
+     * Assigns records of a data source read by the current thread.
+     * @param dataSource data source
+     * @return results of chunks in ordinal order
+     * @throws IOException on data source i/o error
+     * @throws CancellationException if assignment has been cancelled
+     * @throws IllegalArgumentException if data source is too large
+     */
+    private ChunkResult[] assignSequential(AbstractTokenDataSource<?> dataSource)
+            throws IOException, CancellationException, IllegalArgumentException {
+        final Semaphore chunksInFlight = new Semaphore(pool.getParallelism() * CHUNKS_PER_THREAD);
+        final List<ForkJoinTask<ChunkResult>> tasks = new ArrayList<>();
+        try {
+            dataSource.reset();
+            long ordinal = 0L;
+            while (!isCancelled && dataSource.hasNext()) {
+                final Object[][] chunk = new Object[CHUNK_SIZE][];
+                final long[] indexes = new long[CHUNK_SIZE];
+                int size = 0;
+                while (size < CHUNK_SIZE && dataSource.hasNext()) {
+                    final Record<?> record = dataSource.next();
+                    indexes[size] = record.getIndex();
+                    chunk[size++] = (Object[]) record.getData();
+                }
+                if (ordinal + size > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Data source is too large");
+                }
+                final int chunkSize = size;
+                ordinal += size;
+                chunksInFlight.acquireUninterruptibly();
+                tasks.add(pool.submit(() -> {
+                    try {
+                        final ChunkResult result = new ChunkResult(new int[chunkSize], new int[chunkSize],
+                                indexes, chunkSize);
+                        for (int i = 0; i < chunkSize; i++) {
+                            assignRecord(chunk[i], i, result);
+                        }
+                        reportProgress(chunkSize, -1L);
+                        return result;
+                    }
+                    finally {
+                        chunksInFlight.release();
+                    }
+                }));
+            }
+        }
+        finally {
+            for (ForkJoinTask<?> task : tasks) {
+                task.quietlyJoin();
+            }
+        }
+        return join(tasks);
+    }
+
+    /**
+     * Waits for all tasks and checks cancellation.
+     * @param tasks tasks
+     * @return results of tasks in the same order
+     * @throws CancellationException if assignment has been cancelled
+     */
+    private ChunkResult[] join(List<ForkJoinTask<ChunkResult>> tasks) throws CancellationException {
+        for (ForkJoinTask<?> task : tasks) {
+            task.quietlyJoin();
+        }
+        final ChunkResult[] results = new ChunkResult[tasks.size()];
+        for (int i = 0; i < results.length; i++) {
+            // rethrows failure of a task
+            results[i] = tasks.get(i).join();
+        }
+        if (isCancelled) {
+            throw new CancellationException("Cluster assignment has been cancelled");
+        }
+        return results;
+    }
+
+    /**
+     * Finds the best and the second best matching units of a record.
+     * If several neurons are equally close, the one with the least index wins.
+     * @param data record data
+     * @param position position of the record in the result arrays
+     * @param result result of the chunk
+     */
+    private void assignRecord(Object[] data, int position, ChunkResult result) {
+        int bmuIndex = -1;
+        double bmuDistance = Double.POSITIVE_INFINITY;
+        int secondIndex = -1;
+        double secondDistance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < weights.length; i++) {
+            final double distance = columnwiseDistanceFunction != null
+                    ? columnwiseDistanceFunction.calculate(weights[i], data, secondDistance)
+                    : distanceFunction.calculate(weights[i], data);
+            if (distance < bmuDistance || bmuIndex < 0) {
+                secondIndex = bmuIndex;
+                secondDistance = bmuDistance;
+                bmuIndex = i;
+                bmuDistance = distance;
+            }
+            else if (distance < secondDistance || secondIndex < 0) {
+                secondIndex = i;
+                secondDistance = distance;
+            }
+        }
+        result.clusters[position] = bmuIndex;
+        result.secondClusters[position] = secondIndex;
+        result.errorSums[bmuIndex] += bmuDistance;
+        if (secondIndex >= 0 && !isAdjacent(bmuIndex, secondIndex)) {
+            result.topographicErrorCount++;
+        }
+    }
+
+    private boolean isAdjacent(int first, int second) {
+        for (int neighbor : adjacentNeurons[first]) {
+            if (neighbor == second) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void reportProgress(int chunkSize, long recordCount) {
+        final long count = assignedCount.addAndGet(chunkSize);
+        final ProgressListener listener = progressListener;
+        if (listener != null) {
+            listener.progressChanged(count, recordCount);
+        }
+    }
+
+    /**
+     * Assignments and errors of a chunk of records.
+     */
+    private final class ChunkResult {
+
+        private final int[] clusters;
+
+        private final int[] secondClusters;
+
+        private final long[] indexes;
+
+        private final int size;
+
+        private final double[] errorSums = new double[weights.length];
+
+        private long topographicErrorCount;
+
+        private ChunkResult(int[] clusters, int[] secondClusters, long[] indexes, int size) {
+            this.clusters = clusters;
+            this.secondClusters = secondClusters;
+            this.indexes = indexes;
+            this.size = size;
+        }
+
+        private void merge(ChunkResult other) {
+            for (int i = 0; i < errorSums.length; i++) {
+                errorSums[i] += other.errorSums[i];
+            }
+            topographicErrorCount += other.topographicErrorCount;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.attatrol.som.som;
+
+/**
+ * Occupancy of the record prefetching ring during a single online epoch.
+ * Nearly empty ring and long learning thread waits mean that learning is bound
+ * by data source reading, nearly full ring and long producer waits mean that
+ * it is bound by BMU search and weight changes.
+ * @author atta_troll
+ *
+ */
+public class PrefetchStatistics {
+
+    private final int capacity;
+
+    private final int producerCount;
+
+    private final long recordCount;
+
+    private final double averageOccupancy;
+
+    private final long consumerStallCount;
+
+    private final long consumerWaitNanos;
+
+    private final long producerStallCount;
+
+    private final long producerWaitNanos;
+
+    /**
+     * Default ctor.
+     * @param capacity number of slots in the ring, 0 if records are read by the learning thread
+     * @param producerCount number of producer threads, 0 if records are read by the learning thread
+     * @param recordCount number of consumed records
+     * @param averageOccupancy average number of filled slots when a record is consumed
+     * @param consumerStallCount number of times learning thread found the ring empty
+     * @param consumerWaitNanos total wait time of learning thread
+     * @param producerStallCount number of times producers found the ring full
+     * @param producerWaitNanos total wait time of all producers
+     */
+    public PrefetchStatistics(int capacity, int producerCount, long recordCount, double averageOccupancy,
+            long consumerStallCount, long consumerWaitNanos, long producerStallCount,
+            long producerWaitNanos) {
+        this.capacity = capacity;
+        this.producerCount = producerCount;
+        this.recordCount = recordCount;
+        this.averageOccupancy = averageOccupancy;
+        this.consumerStallCount = consumerStallCount;
+        this.consumerWaitNanos = consumerWaitNanos;
+        this.producerStallCount = producerStallCount;
+        this.producerWaitNanos = producerWaitNanos;
+    }
+
+    /**
+     * @return number of slots in the ring, 0 if records are read by the learning thread
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of producer threads, 0 if records are read by the learning thread
+     */
+    public int getProducerCount() {
+        return producerCount;
+    }
+
+    /**
+     * @return number of consumed records
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return average number of filled slots when a record is consumed, including that record
+     */
+    public double getAverageOccupancy() {
+        return averageOccupancy;
+    }
+
+    /**
+     * @return average fraction of filled slots when a record is consumed,
+     *         NaN if records are read by the learning thread
+     */
+    public double getFillRatio() {
+        return averageOccupancy / capacity;
+    }
+
+    /**
+     * @return number of times learning thread found the ring empty
+     */
+    public long getConsumerStallCount() {
+        return consumerStallCount;
+    }
+
+    /**
+     * @return total wait time of learning thread in nanoseconds
+     */
+    public long getConsumerWaitNanos() {
+        return consumerWaitNanos;
+    }
+
+    /**
+     * @return number of times producers found the ring full
+     */
+    public long getProducerStallCount() {
+        return producerStallCount;
+    }
+
+    /**
+     * @return total wait time of all producers in nanoseconds
+     */
+    public long getProducerWaitNanos() {
+        return producerWaitNanos;
+    }
+
+    /**
+     * @return true if learning thread waited for records longer than an average producer
+     *         waited for free slots, i.e. learning is bound by data source reading
+     */
+    public boolean isInputBound() {
+        return producerCount > 0 && consumerWaitNanos > producerWaitNanos / producerCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Prefetch: %d records, occupancy %.2f of %d, learning waits %d (%d ms),"
+                + " %d producers wait %d (%d ms)", recordCount, averageOccupancy, capacity,
+                consumerStallCount, consumerWaitNanos / 1000000L, producerCount, producerStallCount,
+                producerWaitNanos / 1000000L);
+    }
+}
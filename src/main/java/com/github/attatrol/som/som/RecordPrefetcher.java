@@ -0,0 +1,380 @@
+package com.github.attatrol.som.som;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
+import com.github.attatrol.preprocessing.datasource.Record;
+import com.github.attatrol.som.datasource.RandomAccessTokenDataSource;
+import com.github.attatrol.som.som.encoding.CachedRecordEncoder;
+import com.github.attatrol.som.som.encoding.EncodedRecord;
+import com.github.attatrol.som.som.encoding.RecordEncoder;
+
+/**
+ * Reader of a single online learning pass. Producer threads read and encode records
+ * into a bounded ring of reusable slots while the learning thread consumes them
+ * in the data source order, so parsing hides behind BMU search.
+ * Random access data sources are read by several producers, each one takes
+ * every n-th record; any other data source has a single cursor and is read by
+ * a single producer. Zero capacity disables prefetching: records are read and encoded
+ * in the learning thread. Records of a cache may be encoded straight from its columns,
+ * then their data is not restored at all.
+ * Slot is reused as soon as the consumer advances, record data arrays are not reused.
+ * @author atta_troll
+ *
+ */
+final class RecordPrefetcher {
+
+    /**
+     * Number of busy checks before a waiting thread starts to yield.
+     */
+    private static final int SPIN_COUNT = 64;
+
+    /**
+     * Number of yields before a waiting thread starts to park.
+     */
+    private static final int YIELD_COUNT = 64;
+
+    /**
+     * Park time of a waiting thread in nanoseconds.
+     */
+    private static final long PARK_NANOS = 20000L;
+
+    private final AbstractTokenDataSource<?> dataSource;
+
+    private final RecordEncoder recordEncoder;
+
+    /**
+     * Encoder of cached records, null if records are read as data.
+     */
+    private final CachedRecordEncoder cachedEncoder;
+
+    private final Slot[] slots;
+
+    private final Thread[] producers;
+
+    /**
+     * Number of records consumed, slots of their ordinals may be reused.
+     */
+    private volatile long consumedCount;
+
+    /**
+     * Number of records in the data source, unknown until a single producer reaches its end.
+     */
+    private volatile long recordCount = Long.MAX_VALUE;
+
+    private final AtomicLong producedCount = new AtomicLong();
+
+    private volatile Throwable failure;
+
+    private volatile boolean closed;
+
+    /**
+     * Ordinal of the current record, -1 before the first advance.
+     */
+    private long position = -1L;
+
+    private Slot current;
+
+    private long consumerStallCount;
+
+    private long consumerWaitNanos;
+
+    private long occupancySum;
+
+    private final LongAdder producerStallCount = new LongAdder();
+
+    private final LongAdder producerWaitNanos = new LongAdder();
+
+    /**
+     * Default ctor.
+     * @param dataSource data source
+     * @param recordEncoder encoder of records, null if records are not encoded
+     * @param cachedEncoder encoder of records of the data source that is a cache,
+     *        null if record data is read
+     * @param capacity number of slots, 0 disables prefetching
+     * @param producerCount number of producer threads, it is ignored if data source
+     *        is read sequentially
+     * @throws IllegalArgumentException if capacity is negative or producer count is not positive
+     */
+    RecordPrefetcher(AbstractTokenDataSource<?> dataSource, RecordEncoder recordEncoder,
+            CachedRecordEncoder cachedEncoder, int capacity, int producerCount) throws IllegalArgumentException {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Prefetch capacity is negative");
+        }
+        if (producerCount < 1) {
+            throw new IllegalArgumentException("Number of producers is not positive");
+        }
+        this.dataSource = dataSource;
+        this.recordEncoder = recordEncoder;
+        this.cachedEncoder = cachedEncoder;
+        slots = new Slot[Math.max(capacity, 1)];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot(recordEncoder == null ? null : recordEncoder.createRecord());
+        }
+        if (capacity == 0) {
+            producers = new Thread[0];
+        }
+        else if (isRandomAccess(dataSource)) {
+            producers = new Thread[Math.min(producerCount, capacity)];
+        }
+        else {
+            producers = new Thread[1];
+        }
+    }
+
+    /**
+     * Resets data source and starts producers.
+     * @throws IOException on data source i/o error
+     */
+    void start() throws IOException {
+        if ((producers.length > 0 || cachedEncoder != null) && isRandomAccess(dataSource)) {
+            recordCount = getRandomAccessCount(dataSource);
+        }
+        else {
+            dataSource.reset();
+        }
+        for (int i = 0; i < producers.length; i++) {
+            final int first = i;
+            producers[i] = new Thread(() -> produce(first), "som-prefetch-" + i);
+            producers[i].setDaemon(true);
+            producers[i].start();
+        }
+    }
+
+    /**
+     * Moves to the next record, the previous slot is released.
+     * @return true if there is the next record
+     * @throws IOException on data source i/o error in any producer
+     */
+    boolean advance() throws IOException {
+        final long ordinal = position + 1;
+        if (producers.length == 0) {
+            return readDirectly(ordinal);
+        }
+        consumedCount = ordinal;
+        if (ordinal >= recordCount) {
+            return false;
+        }
+        final Slot slot = slots[(int) (ordinal % slots.length)];
+        if (slot.published != ordinal) {
+            consumerStallCount++;
+            final long start = System.nanoTime();
+            int attempt = 0;
+            while (slot.published != ordinal) {
+                checkFailure();
+                if (ordinal >= recordCount) {
+                    consumerWaitNanos += System.nanoTime() - start;
+                    return false;
+                }
+                idle(attempt++);
+            }
+            consumerWaitNanos += System.nanoTime() - start;
+        }
+        occupancySum += producedCount.get() - ordinal;
+        position = ordinal;
+        current = slot;
+        return true;
+    }
+
+    /**
+     * @return data of the current record, it is not reused by this;
+     *         null if records are encoded straight from the cache
+     */
+    Object[] getData() {
+        return current.data;
+    }
+
+    /**
+     * @return encoded current record, valid until the next advance; null if records
+     *         are not encoded
+     */
+    EncodedRecord getEncodedRecord() {
+        return current.encoded;
+    }
+
+    /**
+     * Stops producers and waits for them, data source may be reused after that.
+     */
+    void close() {
+        closed = true;
+        boolean isInterrupted = false;
+        for (Thread producer : producers) {
+            if (producer == null) {
+                continue;
+            }
+            while (producer.isAlive()) {
+                try {
+                    producer.join();
+                }
+                catch (InterruptedException ex) {
+                    isInterrupted = true;
+                }
+            }
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return statistics of the ring occupancy during the pass so far
+     */
+    PrefetchStatistics getStatistics() {
+        return new PrefetchStatistics(producers.length == 0 ? 0 : slots.length, producers.length, position + 1,
+                position < 0 ? 0. : ((double) occupancySum) / (position + 1),
+                consumerStallCount, consumerWaitNanos,
+                producerStallCount.sum(), producerWaitNanos.sum());
+    }
+
+    private boolean readDirectly(long ordinal) throws IOException {
+        if (cachedEncoder != null) {
+            if (ordinal >= recordCount) {
+                return false;
+            }
+            fillEncoded(slots[0], ordinal);
+        }
+        else if (!dataSource.hasNext()) {
+            return false;
+        }
+        else {
+            fill(slots[0], dataSource.next());
+        }
+        position = ordinal;
+        current = slots[0];
+        return true;
+    }
+
+    /**
+     * Producer loop, it fills slots of ordinals first, first + n, first + 2n, ...
+     * @param first ordinal of the first record of this producer
+     */
+    private void produce(int first) {
+        try {
+            for (long ordinal = first; ordinal < recordCount; ordinal += producers.length) {
+                if (!awaitFreeSlot(ordinal)) {
+                    return;
+                }
+                final Slot slot = slots[(int) (ordinal % slots.length)];
+                if (cachedEncoder != null) {
+                    fillEncoded(slot, ordinal);
+                }
+                else {
+                    final Record<Object[]> record = readRecord(ordinal);
+                    if (record == null) {
+                        recordCount = ordinal;
+                        return;
+                    }
+                    fill(slot, record);
+                }
+                slot.published = ordinal;
+                producedCount.incrementAndGet();
+            }
+        }
+        catch (IOException | RuntimeException | Error ex) {
+            failure = ex;
+        }
+    }
+
+    /**
+     * Waits until the slot of the record is consumed in the previous round.
+     * @param ordinal record ordinal
+     * @return false if this is closed
+     */
+    private boolean awaitFreeSlot(long ordinal) {
+        if (ordinal - consumedCount < slots.length) {
+            return !closed;
+        }
+        producerStallCount.increment();
+        final long start = System.nanoTime();
+        int attempt = 0;
+        while (ordinal - consumedCount >= slots.length) {
+            if (closed) {
+                return false;
+            }
+            idle(attempt++);
+        }
+        producerWaitNanos.add(System.nanoTime() - start);
+        return !closed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Record<Object[]> readRecord(long ordinal) throws IOException {
+        if (dataSource instanceof RandomAccessTokenDataSource) {
+            return ((RandomAccessTokenDataSource) dataSource).getRecord(ordinal);
+        }
+        return dataSource.hasNext() ? (Record<Object[]>) dataSource.next() : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fill(Slot slot, Record<?> record) {
+        slot.data = ((Record<Object[]>) record).getData();
+        if (recordEncoder != null) {
+            recordEncoder.encode(slot.data, slot.encoded);
+        }
+    }
+
+    /**
+     * Fills slot straight from columns of the cache, record data is not restored.
+     * @param slot slot
+     * @param ordinal record ordinal
+     */
+    private void fillEncoded(Slot slot, long ordinal) {
+        slot.data = null;
+        cachedEncoder.encode(ordinal, slot.encoded);
+    }
+
+    private void checkFailure() throws IOException {
+        final Throwable cause = failure;
+        if (cause instanceof IOException) {
+            throw new IOException(cause.getMessage(), cause);
+        }
+        if (cause instanceof RuntimeException) {
+            throw new IllegalStateException("Prefetching failed", cause);
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+    }
+
+    private static void idle(int attempt) {
+        if (attempt < SPIN_COUNT) {
+            return;
+        }
+        if (attempt < SPIN_COUNT + YIELD_COUNT) {
+            Thread.yield();
+        }
+        else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    private static boolean isRandomAccess(AbstractTokenDataSource<?> dataSource) {
+        return dataSource instanceof RandomAccessTokenDataSource;
+    }
+
+    private static long getRandomAccessCount(AbstractTokenDataSource<?> dataSource) {
+        return ((RandomAccessTokenDataSource) dataSource).getRecordCount();
+    }
+
+    /**
+     * Reusable cell of the ring.
+     */
+    private static final class Slot {
+
+        private final EncodedRecord encoded;
+
+        private Object[] data;
+
+        /**
+         * Ordinal of the record held by this, -1 if none.
+         */
+        private volatile long published = -1L;
+
+        private Slot(EncodedRecord encoded) {
+            this.encoded = encoded;
+        }
+    }
+}
@@ -2,21 +2,31 @@ package com.github.attatrol.som.som;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
 
 import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
 import com.github.attatrol.preprocessing.datasource.Record;
+import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
 import com.github.attatrol.preprocessing.distance.DistanceFunction;
+import com.github.attatrol.som.datasource.CachedTokenDataSource;
+import com.github.attatrol.som.som.bmu.BmuResult;
+import com.github.attatrol.som.som.bmu.BmuSearch;
+import com.github.attatrol.som.som.bmu.SequentialBmuSearch;
+import com.github.attatrol.som.som.distance.EncodedDistanceFunction;
+import com.github.attatrol.som.som.encoding.CachedRecordEncoder;
+import com.github.attatrol.som.som.encoding.CategoricalDictionary;
+import com.github.attatrol.som.som.encoding.EncodedRecord;
+import com.github.attatrol.som.som.encoding.RecordEncoder;
 import com.github.attatrol.som.som.functions.learning.LearningFunction;
 import com.github.attatrol.som.som.functions.neighbourhood.NeighborhoodFunction;
 import com.github.attatrol.som.som.neuron.AbstractNeuron;
-import com.github.attatrol.som.som.topology.Point;
+import com.github.attatrol.som.som.neuron.EncodedFuzzyNeuron;
+import com.github.attatrol.som.som.neuron.NeuronBatchUpdate;
+import com.github.attatrol.som.som.stopping.EpochStatistics;
+import com.github.attatrol.som.som.stopping.StopReason;
+import com.github.attatrol.som.som.stopping.StoppingPolicy;
 import com.github.attatrol.som.som.topology.SomTopology;
 
 /**
@@ -26,83 +36,296 @@ import com.github.attatrol.som.som.topology.SomTopology;
  */
 public class Som {
 
-    private static final double LOCAL_NEIGHBORHOOD_RADIUS = 1.99;
-
     private final SomTopology topology;
 
     private final List<AbstractNeuron> neurons;
 
     private final AbstractTokenDataSource<?> dataSource;
 
+    /**
+     * Dictionaries of categorical tokens.
+     */
+    private final CategoricalDictionary[] dictionaries;
+
     private final DistanceFunction distanceFunction;
 
-    @SuppressWarnings("unused")
     private final long dataSourceSize;
 
     private NeighborhoodFunction neighborhoodFunction;
 
     private LearningFunction learningFunction;
 
-    private Map<AbstractNeuron, Long> winCount = new HashMap<>();
+    /**
+     * Strategy of BMU search, sequential by default.
+     */
+    private BmuSearch bmuSearch;
+
+    /**
+     * Holds BMU of the current record during learning.
+     */
+    private final BmuResult learningBmu = new BmuResult();
+
+    /**
+     * Learning mode, online by default.
+     */
+    private TrainingMode trainingMode = TrainingMode.ONLINE;
+
+    /**
+     * Executor of batch learning.
+     */
+    private ForkJoinPool batchPool = ForkJoinPool.commonPool();
+
+    /**
+     * Keeps buffers of batch learning between epochs, created on the first batch epoch.
+     */
+    private BatchEpoch batchEpoch;
+
+    private NeuronBatchUpdate batchUpdate;
+
+    /**
+     * Encoder of records if neurons learn on encoded records, null otherwise.
+     */
+    private final RecordEncoder recordEncoder;
+
+    /**
+     * Distance function for encoded records, null if neurons can't be compared with them.
+     */
+    private final EncodedDistanceFunction encodedDistanceFunction;
+
+    /**
+     * Encoder of records of the cached data source, created on the first use.
+     */
+    private CachedRecordEncoder cachedEncoder;
+
+    /**
+     * Number of slots of the online record prefetching ring, 0 if records are read
+     * by the learning thread.
+     */
+    private int prefetchCapacity;
+
+    /**
+     * Number of threads which prefetch records in online learning.
+     */
+    private int prefetchProducerCount = 1;
+
+    private PrefetchStatistics lastPrefetchStatistics;
+
+    /**
+     * Flag of the search for the second best matching unit, which is needed
+     * for the topographic error.
+     */
+    private boolean isTopographicErrorTracked;
+
+    /**
+     * Speed factors not greater than this are negligible, updates with them are skipped.
+     */
+    private double neighborhoodCutoff;
+
+    /**
+     * Max distance level of neurons changed in the current epoch.
+     */
+    private int updateLevel;
+
+    /**
+     * Holds indexes of neighbors of a neuron.
+     */
+    private final int[] neighborBuffer;
+
+    /**
+     * Holds distance levels of neighbors of a neuron.
+     */
+    private final int[] levelBuffer;
+
+    /**
+     * Number of records won by every neuron in the current epoch, indexed by neuron ids.
+     */
+    private final long[] winCount;
+
+    /**
+     * Sum of distances to records won by every neuron in the current epoch, indexed by neuron ids.
+     */
+    private final double[] neuronErrorSums;
+
+    /**
+     * Number of records in the current epoch whose second best matching unit is known.
+     */
+    private long secondBmuCount;
+
+    /**
+     * Number of records in the current epoch whose best and second best matching units
+     * are not adjacent.
+     */
+    private long topographicErrorCount;
+
+    /**
+     * The most distant record won by every neuron in the current epoch, indexed by neuron ids.
+     */
+    private final Object[][] distantRecords;
+
+    /**
+     * Encoded copies of distant records, null unless neurons are compared with encoded records.
+     */
+    private final EncodedRecord[] distantEncodedRecords;
+
+    /**
+     * Ordinals of distant records, -1 if a neuron has won nothing; null unless neurons
+     * are compared with encoded records.
+     */
+    private final long[] distantOrdinals;
+
+    /**
+     * Moves weak neurons towards strong ones before every epoch.
+     */
+    private final WeakNeuronDevourer weakNeuronDevourer;
+
+    /**
+     * BMU indexes of records in the last epoch, indexed by record ordinals;
+     * null unless BMU search or stopping policy needs them, or if data source
+     * is too large to track BMU changes.
+     */
+    private int[] recordBmus;
 
-    private Map<AbstractNeuron, Object[]> distantRecords = new HashMap<>();
+    /**
+     * Policy of early learning stop, null if learning lasts for all planned epochs.
+     */
+    private StoppingPolicy stoppingPolicy;
 
-    private final double medianClusterSize;
+    /**
+     * Time of the first epoch start in nanoseconds, or -1 before learning.
+     */
+    private long learningStartTime = -1L;
 
-    private double overMedianWeakFactor;
+    private EpochStatistics lastEpochStatistics;
 
-    private double overMedianStrongFactor;
+    private StopReason stopReason;
 
-    private final Map<AbstractNeuron, List<AbstractNeuron>> localNeighborhoods = new HashMap<>();
+    private int stopEpoch;
 
+    /**
+     * Default ctor.
+     * @param neurons neurons in the same order as {@link SomTopology#getNeuronPositions()} returns
+     *        their positions
+     * @param topology topology of neurons
+     * @param dataSource data source
+     * @param dictionaries dictionaries of categorical tokens
+     * @param distanceFunction distance function
+     * @param neighborhoodFunction neighborhood function
+     * @param learningFunction learning function
+     * @param dataSourceSize number of records in data source
+     * @param overMedianWeakFactor defines upper size threshold of a weak neurons
+     * @param overMedianStrongFactor defines lower size threshold of strong neurons
+     * @throws IllegalArgumentException if neurons are not ordered as topology positions
+     */
     public Som(List<AbstractNeuron> neurons, SomTopology topology, AbstractTokenDataSource<?> dataSource,
-            DistanceFunction distanceFunction, NeighborhoodFunction neighborhoodFunction,
+            CategoricalDictionary[] dictionaries, DistanceFunction distanceFunction, NeighborhoodFunction neighborhoodFunction,
             LearningFunction learningFunction, long dataSourceSize, double overMedianWeakFactor,
-            double overMedianStrongFactor) {
+            double overMedianStrongFactor) throws IllegalArgumentException {
         this.neurons = neurons;
         this.topology = topology;
         this.dataSource = dataSource;
+        this.dictionaries = dictionaries;
         this.dataSourceSize = dataSourceSize;
-        this.overMedianWeakFactor = overMedianWeakFactor;
-        this.overMedianStrongFactor = overMedianStrongFactor;
         this.distanceFunction = distanceFunction;
         this.neighborhoodFunction = neighborhoodFunction;
         this.learningFunction = learningFunction;
-        for (AbstractNeuron neuron : neurons) {
-            winCount.put(neuron, 0L);
-            List<AbstractNeuron> localNeighborhood = new ArrayList<>();
-            for (AbstractNeuron neuron1 : neurons) {
-                if (neuron1 != neuron && topology.getDistance(neuron.getPosition(),
-                        neuron1.getPosition()) <= LOCAL_NEIGHBORHOOD_RADIUS) {
-                    localNeighborhood.add(neuron1);
-                }
+        bmuSearch = new SequentialBmuSearch(neurons, distanceFunction);
+        recordEncoder = neurons.get(0).getRecordEncoder();
+        neighborBuffer = new int[neurons.size()];
+        levelBuffer = new int[neurons.size()];
+        winCount = new long[neurons.size()];
+        neuronErrorSums = new double[neurons.size()];
+        distantRecords = new Object[neurons.size()][];
+        encodedDistanceFunction = EncodedFuzzyNeuron.encodeDistance(distanceFunction, neurons);
+        if (encodedDistanceFunction != null) {
+            distantEncodedRecords = new EncodedRecord[neurons.size()];
+            for (int i = 0; i < distantEncodedRecords.length; i++) {
+                distantEncodedRecords[i] = recordEncoder.createRecord();
+            }
+            distantOrdinals = new long[neurons.size()];
+        }
+        else {
+            distantEncodedRecords = null;
+            distantOrdinals = null;
+        }
+        for (int i = 0; i < neurons.size(); i++) {
+            final AbstractNeuron neuron = neurons.get(i);
+            if (topology.getNeuronIndex(neuron.getPosition()) != i) {
+                throw new IllegalArgumentException("Neurons are not ordered as topology positions");
             }
-            localNeighborhoods.put(neuron, localNeighborhood);
+            neuron.setIndex(i);
         }
-        medianClusterSize = ((double) dataSourceSize) / neurons.size();
+        final double medianClusterSize = ((double) dataSourceSize) / neurons.size();
+        weakNeuronDevourer = new WeakNeuronDevourer(neurons, topology, overMedianWeakFactor * medianClusterSize,
+                overMedianStrongFactor * medianClusterSize);
     }
 
     /**
      * Learns SOM through complete iteration over data source.
+     * If stopping policy is set, it checks results of the epoch,
+     * see {@link #isLearningStopped()}.
      * 
      * @return average error of SOM
      * @throws IOException
      *             on data source i/o error
      */
     public double learnEpoch(int epochNumber) throws IOException {
-        final Map<Double, Double> speedFactorMap = calculateSpeedFactorMap(epochNumber);
-        devourWeakNeurons();
-        distantRecords.clear();
-        for (AbstractNeuron neuron : neurons) {
-            winCount.put(neuron, 0L);
+        if (learningStartTime < 0L) {
+            learningStartTime = System.nanoTime();
+        }
+        final double[] speedFactors = calculateSpeedFactors(epochNumber);
+        updateLevel = calculateUpdateLevel(speedFactors);
+        weakNeuronDevourer.devour(distantRecords);
+        if (recordBmus != null) {
+            // BMUs of the last epoch follow their weights
+            weakNeuronDevourer.remapNeuronIds(recordBmus);
         }
+        updateRecordBmus();
+        Arrays.fill(distantRecords, null);
+        if (distantOrdinals != null) {
+            Arrays.fill(distantOrdinals, -1L);
+        }
+        Arrays.fill(winCount, 0L);
+        Arrays.fill(neuronErrorSums, 0.);
+        secondBmuCount = 0L;
+        topographicErrorCount = 0L;
+        bmuSearch.startEpoch();
         //System.out.println(String.format("Epoch %d", epochNumber));
         double errorSum = 0.;
         long counter = 0L;
-        dataSource.reset();
-        while (dataSource.hasNext()) {
-            errorSum += learn(dataSource.next(), speedFactorMap);
-            counter++;
+        long bmuChangeCount = 0L;
+        if (trainingMode == TrainingMode.BATCH) {
+            final BatchAccumulator accumulator = learnBatch(speedFactors);
+            errorSum = accumulator.getErrorSum();
+            counter = accumulator.getRecordCount();
+            bmuChangeCount = accumulator.getBmuChangeCount();
+            secondBmuCount = accumulator.getSecondBmuCount();
+            topographicErrorCount = accumulator.getTopographicErrorCount();
+        }
+        else {
+            final CachedRecordEncoder epochCachedEncoder = getCachedEncoder();
+            final RecordPrefetcher prefetcher = new RecordPrefetcher(dataSource, recordEncoder,
+                    epochCachedEncoder, prefetchCapacity, prefetchProducerCount);
+            try {
+                prefetcher.start();
+                while (prefetcher.advance()) {
+                    final boolean isTracked = recordBmus != null && counter < recordBmus.length;
+                    final int previousBmu = isTracked ? recordBmus[(int) counter] : -1;
+                    errorSum += learn(prefetcher.getData(), prefetcher.getEncodedRecord(), counter,
+                            previousBmu, speedFactors);
+                    if (isTracked && previousBmu != learningBmu.getIndex()) {
+                        recordBmus[(int) counter] = learningBmu.getIndex();
+                        bmuChangeCount++;
+                    }
+                    counter++;
+                }
+            }
+            finally {
+                prefetcher.close();
+            }
+            lastPrefetchStatistics = prefetcher.getStatistics();
+            if (epochCachedEncoder != null) {
+                restoreDistantRecords(epochCachedEncoder.getDataSource());
+            }
         }
         for (AbstractNeuron neuron : neurons) {
             neuron.markEpochEnd();
@@ -110,9 +333,86 @@ public class Som {
         
         final double avgError = errorSum / counter;
         //System.out.println(String.format("Avg. error: %f, counter: %d", avgError, counter));
+        final double bmuChangeFraction = recordBmus == null ? Double.NaN
+                : ((double) bmuChangeCount) / counter;
+        final double topographicError = secondBmuCount == 0L ? Double.NaN
+                : ((double) topographicErrorCount) / secondBmuCount;
+        final double[] neuronErrors = new double[neurons.size()];
+        int deadNeuronCount = 0;
+        for (int i = 0; i < neuronErrors.length; i++) {
+            // candidates for devouring before the next epoch
+            weakNeuronDevourer.collect(i, winCount[i]);
+            if (winCount[i] == 0L) {
+                neuronErrors[i] = Double.NaN;
+                deadNeuronCount++;
+            }
+            else {
+                neuronErrors[i] = neuronErrorSums[i] / winCount[i];
+            }
+        }
+        lastEpochStatistics = new EpochStatistics(epochNumber, avgError, bmuChangeFraction,
+                (System.nanoTime() - learningStartTime) / 1000000L, topographicError, neuronErrors,
+                deadNeuronCount);
+        if (stoppingPolicy != null && stopReason == null) {
+            stopReason = stoppingPolicy.check(lastEpochStatistics);
+            if (stopReason != null) {
+                stopEpoch = epochNumber;
+            }
+        }
         return avgError;
     }
 
+    /**
+     * Sets policy of early learning stop, null means that learning lasts for all
+     * planned epochs. Policy forgets its history, time budget is counted from
+     * the next epoch.
+     * @param stoppingPolicy policy of early learning stop
+     */
+    public void setStoppingPolicy(StoppingPolicy stoppingPolicy) {
+        this.stoppingPolicy = stoppingPolicy;
+        if (stoppingPolicy != null) {
+            stoppingPolicy.reset();
+        }
+        learningStartTime = -1L;
+        stopReason = null;
+        stopEpoch = 0;
+    }
+
+    /**
+     * @return policy of early learning stop, null if not set
+     */
+    public StoppingPolicy getStoppingPolicy() {
+        return stoppingPolicy;
+    }
+
+    /**
+     * @return true if stopping policy decided that further epochs are not needed
+     */
+    public boolean isLearningStopped() {
+        return stopReason != null;
+    }
+
+    /**
+     * @return reason of early learning stop, null if learning has not been stopped
+     */
+    public StopReason getStopReason() {
+        return stopReason;
+    }
+
+    /**
+     * @return number of the epoch after which learning has been stopped, 0 if it has not
+     */
+    public int getStopEpoch() {
+        return stopEpoch;
+    }
+
+    /**
+     * @return results of the last learning epoch, null before learning
+     */
+    public EpochStatistics getLastEpochStatistics() {
+        return lastEpochStatistics;
+    }
+
     /**
      * Returns BMU for an input record. Method doesn't change SOM state and is
      * intended to be used by external consumers.
@@ -122,18 +422,140 @@ public class Som {
      * @return BMU
      */
     public AbstractNeuron getBmu(Record<Object[]> record) {
-        final Object[] data = record.getData();
-        AbstractNeuron bmu = neurons.get(0);
-        double bmuDistance = distanceFunction.calculate(neurons.get(0).getWeights(), data);
-        for (int i = 1; i < neurons.size(); i++) {
-            final AbstractNeuron neuron = neurons.get(i);
-            final double distance = distanceFunction.calculate(neuron.getWeights(), data);
-            if (distance < bmuDistance) {
-                bmuDistance = distance;
-                bmu = neuron;
-            }
+        final BmuResult result = new BmuResult();
+        bmuSearch.findBmu(record.getData(), result);
+        return neurons.get(result.getIndex());
+    }
+
+    /**
+     * Sets new strategy of BMU search, e.g. {@link com.github.attatrol.som.som.bmu.ParallelBmuSearch}
+     * or {@link com.github.attatrol.som.som.bmu.LocalBmuSearch}. During learning the search gets
+     * BMU of a record in the previous epoch as a hint.
+     * The strategy must be created over neurons of this SOM in the same order as
+     * {@link #getNeurons()} returns them.
+     * @param bmuSearch BMU search strategy
+     */
+    public void setBmuSearch(BmuSearch bmuSearch) {
+        this.bmuSearch = bmuSearch;
+    }
+
+    /**
+     * @return current strategy of BMU search
+     */
+    public BmuSearch getBmuSearch() {
+        return bmuSearch;
+    }
+
+    /**
+     * Sets learning mode, it takes effect from the next epoch.
+     * @param trainingMode learning mode
+     */
+    public void setTrainingMode(TrainingMode trainingMode) {
+        this.trainingMode = trainingMode;
+    }
+
+    /**
+     * @return learning mode
+     */
+    public TrainingMode getTrainingMode() {
+        return trainingMode;
+    }
+
+    /**
+     * Sets executor of batch learning, common pool is used by default.
+     * @param batchPool executor of batch learning
+     */
+    public void setBatchPool(ForkJoinPool batchPool) {
+        this.batchPool = batchPool;
+    }
+
+    /**
+     * Sets prefetching of records in online learning: producer threads read and encode
+     * records into a ring of the given number of slots while learning thread consumes them.
+     * Several producers are used only for cached and mapped data sources, other data sources
+     * are read by a single producer. It takes effect from the next epoch.
+     * @param capacity number of slots, 0 means that records are read by the learning thread
+     * @param producerCount number of producer threads
+     * @throws IllegalArgumentException if capacity is negative or producer count is not positive
+     */
+    public void setRecordPrefetching(int capacity, int producerCount) throws IllegalArgumentException {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Prefetch capacity is negative");
+        }
+        if (producerCount < 1) {
+            throw new IllegalArgumentException("Number of producers is not positive");
+        }
+        prefetchCapacity = capacity;
+        prefetchProducerCount = producerCount;
+    }
+
+    /**
+     * @return number of slots of the record prefetching ring, 0 if prefetching is off
+     */
+    public int getPrefetchCapacity() {
+        return prefetchCapacity;
+    }
+
+    /**
+     * @return occupancy of the record prefetching ring in the last online epoch,
+     *         null before online learning
+     */
+    public PrefetchStatistics getLastPrefetchStatistics() {
+        return lastPrefetchStatistics;
+    }
+
+    /**
+     * Sets tracking of the topographic error: BMU search also finds the second best
+     * matching unit of every record, and the fraction of records whose two units are
+     * not adjacent is collected into {@link EpochStatistics}. It makes the search
+     * slightly slower, so it is off by default. Local BMU search finds the second unit
+     * only in its exact epochs. It takes effect from the next epoch.
+     * @param isTracked true if topographic error is tracked
+     */
+    public void setTopographicErrorTracked(boolean isTracked) {
+        isTopographicErrorTracked = isTracked;
+    }
+
+    /**
+     * @return true if topographic error is tracked
+     */
+    public boolean isTopographicErrorTracked() {
+        return isTopographicErrorTracked;
+    }
+
+    /**
+     * Sets cutoff of neighborhood: neurons whose speed factor doesn't exceed it
+     * are not changed, so late epochs change only a small neighborhood of BMU.
+     * Zero cutoff skips only zero factors, so learning stays exact.
+     * @param neighborhoodCutoff non-negative cutoff
+     * @throws IllegalArgumentException if cutoff is negative
+     */
+    public void setNeighborhoodCutoff(double neighborhoodCutoff) throws IllegalArgumentException {
+        if (neighborhoodCutoff < 0.) {
+            throw new IllegalArgumentException("Neighborhood cutoff is negative");
         }
-        return bmu;
+        this.neighborhoodCutoff = neighborhoodCutoff;
+    }
+
+    /**
+     * @return cutoff of neighborhood
+     */
+    public double getNeighborhoodCutoff() {
+        return neighborhoodCutoff;
+    }
+
+    /**
+     * @return topology of neurons
+     */
+    public SomTopology getTopology() {
+        return topology;
+    }
+
+    /**
+     * @return devourer of weak neurons, it reports statistics of the last devouring
+     */
+    public WeakNeuronDevourer getWeakNeuronDevourer() {
+        return weakNeuronDevourer;
     }
 
     /**
@@ -151,171 +573,233 @@ public class Som {
     }
 
     /**
-     * Moves weak neurons towards strong ones (patrons), then assigns to them some values
-     * from strong ones. Each strong neuron may affect only one weak.
+     * Allocates BMU indexes of records when BMU search or stopping policy starts
+     * to need them and frees them when none of them does. Records with freshly
+     * allocated indexes have unknown previous BMUs.
      */
-    private void devourWeakNeurons() {
-        // 1. create sets of empty neurons and their patrons
-        Set<AbstractNeuron> weakNeurons = new HashSet<>();
-        TreeMap<Long, AbstractNeuron> patrons = new TreeMap<>();
-        for (Map.Entry<AbstractNeuron, Long> entry : winCount.entrySet()) {
-            final long winCount = entry.getValue();
-            if (winCount <= overMedianWeakFactor * medianClusterSize) {
-                weakNeurons.add(entry.getKey());
-            } else if (winCount >= overMedianStrongFactor * medianClusterSize) {
-                patrons.put(winCount, entry.getKey());
-            }
+    private void updateRecordBmus() {
+        final boolean isNeeded = dataSourceSize <= Integer.MAX_VALUE && (bmuSearch.isPreviousBmuUsed()
+                || stoppingPolicy != null && stoppingPolicy.isBmuChangeUsed());
+        if (!isNeeded) {
+            recordBmus = null;
         }
-        //System.out.println(String.format("Weak count: %d Strong count %d",
-                //weakNeurons.size(), patrons.size()));
-        // 2. pairing patrons to the closest weak neurons
-        List<AbstractNeuron> patronList = new ArrayList<>();
-        List<AbstractNeuron> patronedList = new ArrayList<>();
-        for (Map.Entry<Long, AbstractNeuron> entry : patrons.entrySet()) {
-            if (weakNeurons.isEmpty()) {
-                break;
-            } else {
-                final AbstractNeuron patron = entry.getValue();
-                Iterator<AbstractNeuron> iterator = weakNeurons.iterator();
-                AbstractNeuron closestEmptyNeuron = iterator.next();
-                double minDistance = topology.getDistance(patron.getPosition(), closestEmptyNeuron.getPosition());
-                while (iterator.hasNext()) {
-                    final AbstractNeuron weakNeuron = iterator.next();
-                    final double distance = topology.getDistance(patron.getPosition(), weakNeuron.getPosition());
-                    if (distance < minDistance) {
-                        minDistance = distance;
-                        closestEmptyNeuron = weakNeuron;
-                    }
-                }
-                patronList.add(patron);
-                patronedList.add(closestEmptyNeuron);
-            }
-        }
-        // 3. finding path from weak neurons to the patron's local neighborhood
-        // (greedy algorithm)
-        for (int j = 0; j < patronList.size(); j++) {
-            final AbstractNeuron patron = patronList.get(j);
-            final AbstractNeuron patronized = patronedList.get(j);
-            List<AbstractNeuron> path = new ArrayList<>();
-            AbstractNeuron current = patronized;
-            while (current != patron) {
-                path.add(current);
-                final List<AbstractNeuron> localNeighborhood = localNeighborhoods.get(current);
-                AbstractNeuron pathNeuron = localNeighborhood.get(0);
-                double minDistance = topology.getDistance(pathNeuron.getPosition(), patron.getPosition());
-                for (int i = 1; i < localNeighborhood.size(); i++) {
-                    final AbstractNeuron neighbor = localNeighborhood.get(i);
-                    final double distance = topology.getDistance(neighbor.getPosition(), patron.getPosition());
-                    if (distance < minDistance) {
-                        minDistance = distance;
-                        pathNeuron = neighbor;
-                    }
-                }
-                current = pathNeuron;
-            }
-            // 4. propagation of weak neuron towards patron
-            for (int i = 0; i < path.size() - 1; i++) {
-                AbstractNeuron swap1 = path.get(i);
-                AbstractNeuron swap2 = path.get(i + 1);
-                for (int k = j + 1; k < patronList.size(); k++) {
-                    boolean patronSwap = false;
-                    if (swap1 == patronList.get(k)) {
-                        patronList.set(k, swap2);
-                        patronSwap = true;
-                    } else if (swap1 == patronedList.get(k)) {
-                        patronedList.set(k, swap2);
-                    }
-                    if (swap2 == patronList.get(k)) {
-                        patronList.set(k, swap1);
-                        patronSwap = true;
-                    } else if (swap2 == patronedList.get(k)) {
-                        patronedList.set(k, swap1);
-                    }
-                    if (patronSwap) {
-                        final Object[] distant1 = distantRecords.get(swap1);
-                        final Object[] distant2 = distantRecords.get(swap2);
-                        if (distant1 != null) {
-                            distantRecords.put(swap2, distant1);
-                        }
-                        if (distant2 != null) {
-                            distantRecords.put(swap1, distant2);
-                        }
-                    }
-                }
-                swap1.swapWeights(swap2);
-            }
-            // 5. giving new value to the weak neurons
-            final Object[] newWeights = distantRecords.get(patron);
-            patronized.setNewWeights(newWeights);
+        else if (recordBmus == null) {
+            recordBmus = new int[(int) dataSourceSize];
+            Arrays.fill(recordBmus, -1);
         }
     }
 
     /**
-     * Calculates speed factors for current epoch. They are presented as a map
-     * where keys are distances between neurons.
+     * Calculates speed factors for current epoch. They are presented as an array
+     * indexed by distance levels of topology, see {@link SomTopology#getDistanceLevels()}.
      * 
      * @param epochNumber
      *            current epoch number
      * @return speed factors
      */
-    private Map<Double, Double> calculateSpeedFactorMap(int epochNumber) {
+    private double[] calculateSpeedFactors(int epochNumber) {
         final double learningFunctionValue = learningFunction.calculate(epochNumber);
-        final Map<Double, Double> decrementFactorMap = new HashMap<>();
-        for (AbstractNeuron neuron1 : neurons) {
-            for (AbstractNeuron neuron2 : neurons) {
-                final double distance = topology.getDistance(neuron1.getPosition(), neuron2.getPosition());
-                if (!decrementFactorMap.containsKey(distance)) {
-                    decrementFactorMap.put(distance,
-                            neighborhoodFunction.calculate(distance, epochNumber) * learningFunctionValue);
-                }
+        final double[] distanceLevels = topology.getDistanceLevels();
+        final double[] speedFactors = new double[distanceLevels.length];
+        for (int i = 0; i < distanceLevels.length; i++) {
+            speedFactors[i] = neighborhoodFunction.calculate(distanceLevels[i], epochNumber)
+                    * learningFunctionValue;
+        }
+        return speedFactors;
+    }
+
+    /**
+     * Finds the max distance level whose speed factor is not negligible.
+     * @param speedFactors speed factors of the current epoch
+     * @return max distance level to be changed, -1 if nothing is changed
+     */
+    private int calculateUpdateLevel(double[] speedFactors) {
+        int level = -1;
+        for (int i = 0; i < speedFactors.length; i++) {
+            if (speedFactors[i] > neighborhoodCutoff) {
+                level = i;
             }
         }
-        return decrementFactorMap;
+        return level;
     }
 
     /**
      * Executes single step of SOM learning.
      * 
      * @param data
-     *            a record (incoming vector)
-     * @param speedFactorMap
-     *            map that contains speed factors for weight changes
+     *            a record (incoming vector), null if it is encoded straight from the cache
+     * @param encoded
+     *            encoded record, null if neurons learn on raw records
+     * @param ordinal
+     *            ordinal of the record in data source
+     * @param previousBmu
+     *            index of BMU of the record in the previous epoch, -1 if unknown
+     * @param speedFactors
+     *            speed factors for weight changes indexed by distance levels
      * @param counter
      *            record count in this epoch distance for current epoch
      * @return distance between neuron and incoming vector
      */
-    private double learn(Record<Object[]> record, Map<Double, Double> speedFactorMap) {
-        final Object[] data = record.getData();
-        AbstractNeuron bmu = neurons.get(0);
-        double bmuDistance = distanceFunction.calculate(bmu.getWeights(), data);
-        for (int i = 1; i < neurons.size(); i++) {
-            final AbstractNeuron neuron = neurons.get(i);
-            final double weightDistance = distanceFunction.calculate(neuron.getWeights(), data);
-            if (weightDistance < bmuDistance) {
-                bmuDistance = weightDistance;
-                bmu = neuron;
+    private double learn(Object[] data, EncodedRecord encoded, long ordinal, int previousBmu,
+            double[] speedFactors) {
+        if (isTopographicErrorTracked) {
+            bmuSearch.findTwoBmus(data, encoded, previousBmu, learningBmu);
+        }
+        else {
+            bmuSearch.findBmu(data, encoded, previousBmu, learningBmu);
+        }
+        final int bmuIndex = learningBmu.getIndex();
+        final AbstractNeuron bmu = neurons.get(bmuIndex);
+        final double bmuDistance = learningBmu.getDistance();
+        winCount[bmuIndex]++;
+        neuronErrorSums[bmuIndex] += bmuDistance;
+        final int secondIndex = learningBmu.getSecondIndex();
+        if (secondIndex >= 0) {
+            secondBmuCount++;
+            if (!topology.isAdjacent(bmuIndex, secondIndex)) {
+                topographicErrorCount++;
             }
         }
-        winCount.put(bmu, winCount.get(bmu) + 1);
-        final Point bmuPosition = bmu.getPosition();
-        for (int i = 0; i < neurons.size(); i++) {
-            final AbstractNeuron neuron = neurons.get(i);
-            final double distance = topology.getDistance(bmuPosition, neuron.getPosition());
-            neuron.changeWeights(data, speedFactorMap.get(distance), bmu == neuron);
+        if (updateLevel < topology.getDistanceLevels().length - 1) {
+            final int neighborCount = topology.collectNeighbors(bmuIndex, updateLevel,
+                    neighborBuffer, levelBuffer);
+            for (int i = 0; i < neighborCount; i++) {
+                final AbstractNeuron neuron = neurons.get(neighborBuffer[i]);
+                changeWeights(neuron, data, encoded, speedFactors[levelBuffer[i]], bmu == neuron);
+            }
+        }
+        else {
+            for (int i = 0; i < neurons.size(); i++) {
+                final AbstractNeuron neuron = neurons.get(i);
+                final int level = topology.getDistanceLevel(bmuIndex, i);
+                changeWeights(neuron, data, encoded, speedFactors[level], bmu == neuron);
+            }
         }
-        Object[] distantData = distantRecords.get(bmu);
+        if (encodedDistanceFunction != null && encoded != null) {
+            updateDistantRecord(bmuIndex, data, encoded, ordinal);
+            return bmuDistance;
+        }
+        final Object[] distantData = distantRecords[bmuIndex];
         if (distantData == null) {
-            distantRecords.put(bmu, data);
+            distantRecords[bmuIndex] = data;
         } else {
             final double currentDistance = distanceFunction.calculate(bmu.getWeights(), data);
             final double oldDistance = distanceFunction.calculate(bmu.getWeights(), distantData);
             if (currentDistance > oldDistance) {
-                distantRecords.put(bmu, data);
+                distantRecords[bmuIndex] = data;
             }
         }
         return bmuDistance;
     }
 
+    /**
+     * Keeps a record if it is the most distant one won by the neuron so far,
+     * distances are evaluated on primitive weights.
+     * @param bmuIndex index of BMU of the record
+     * @param data record data, null if it is encoded straight from the cache
+     * @param encoded encoded record
+     * @param ordinal ordinal of the record in data source
+     */
+    private void updateDistantRecord(int bmuIndex, Object[] data, EncodedRecord encoded, long ordinal) {
+        final EncodedFuzzyNeuron bmu = (EncodedFuzzyNeuron) neurons.get(bmuIndex);
+        if (distantOrdinals[bmuIndex] < 0L
+                || bmu.calculateDistance(encodedDistanceFunction, encoded, Double.POSITIVE_INFINITY)
+                > bmu.calculateDistance(encodedDistanceFunction, distantEncodedRecords[bmuIndex],
+                        Double.POSITIVE_INFINITY)) {
+            distantEncodedRecords[bmuIndex].setValues(encoded);
+            distantOrdinals[bmuIndex] = ordinal;
+            distantRecords[bmuIndex] = data;
+        }
+    }
+
+    /**
+     * Restores data of distant records which were encoded straight from the cache.
+     * @param cache cached data source
+     */
+    private void restoreDistantRecords(CachedTokenDataSource cache) {
+        for (int i = 0; i < distantRecords.length; i++) {
+            if (distantRecords[i] == null && distantOrdinals[i] >= 0L) {
+                distantRecords[i] = cache.getRecord(distantOrdinals[i]).getData();
+            }
+        }
+    }
+
+    /**
+     * @return encoder of records of the cached data source if online learning needs
+     *         no record data, null otherwise
+     */
+    private CachedRecordEncoder getCachedEncoder() {
+        if (encodedDistanceFunction == null || !bmuSearch.isEncodedRecordUsed()
+                || !(dataSource instanceof CachedTokenDataSource)) {
+            return null;
+        }
+        if (cachedEncoder == null) {
+            cachedEncoder = new CachedRecordEncoder(recordEncoder, (CachedTokenDataSource) dataSource);
+        }
+        return cachedEncoder;
+    }
+
+    /**
+     * Changes weights of a single neuron unless speed factor is negligible.
+     * Encoded record is used if neurons support it.
+     * @param neuron neuron
+     * @param data record data
+     * @param encoded encoded record, null if neurons learn on raw records
+     * @param speedFactor speed factor
+     * @param isBmu true if the neuron is BMU
+     */
+    private void changeWeights(AbstractNeuron neuron, Object[] data, EncodedRecord encoded,
+            double speedFactor, boolean isBmu) {
+        if (speedFactor > neighborhoodCutoff) {
+            if (encoded != null) {
+                neuron.changeWeights(encoded, speedFactor, isBmu);
+            }
+            else {
+                neuron.changeWeights(data, speedFactor, isBmu);
+            }
+        }
+    }
+
+    /**
+     * Executes batch learning epoch: records are assigned to BMUs in parallel, then
+     * every neuron is changed at once with neighborhood weighted sums of records
+     * won by all neurons.
+     * 
+     * @param speedFactors
+     *            speed factors for weight changes indexed by distance levels
+     * @return merged sums of all records
+     * @throws IOException
+     *             on data source i/o error
+     */
+    private BatchAccumulator learnBatch(double[] speedFactors) throws IOException {
+        if (batchEpoch == null) {
+            final TokenType[] tokenTypes = neurons.get(0).getTokenTypes();
+            batchEpoch = new BatchEpoch(neurons.size(), tokenTypes, dictionaries);
+            batchUpdate = new NeuronBatchUpdate(tokenTypes, dictionaries);
+        }
+        final BatchAccumulator accumulator = batchEpoch.run(dataSource, bmuSearch, batchPool, recordBmus,
+                isTopographicErrorTracked ? topology : null);
+        for (int i = 0; i < neurons.size(); i++) {
+            winCount[i] = accumulator.getWinCount(i);
+            neuronErrorSums[i] = accumulator.getNeuronErrorSum(i);
+            distantRecords[i] = accumulator.getDistantRecord(i);
+        }
+        final NeuronBatchUpdate update = batchUpdate;
+        for (int i = 0; i < neurons.size(); i++) {
+            update.clear();
+            final int neighborCount = topology.collectNeighbors(i, updateLevel, neighborBuffer, levelBuffer);
+            for (int j = 0; j < neighborCount; j++) {
+                final int winner = neighborBuffer[j];
+                final double factor = speedFactors[levelBuffer[j]];
+                if (factor > neighborhoodCutoff && accumulator.getWinCount(winner) > 0) {
+                    accumulator.addTo(winner, factor, update);
+                }
+            }
+            neurons.get(i).changeWeights(update);
+        }
+        return accumulator;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
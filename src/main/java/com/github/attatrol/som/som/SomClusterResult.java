@@ -2,74 +2,200 @@ package com.github.attatrol.som.som;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
 import com.github.attatrol.preprocessing.datasource.Record;
+import com.github.attatrol.som.datasource.RandomAccessTokenDataSource;
+import com.github.attatrol.som.datasource.SubsetTokenDataSource;
 import com.github.attatrol.som.som.neuron.AbstractNeuron;
 
 /**
  * Result of applying a trained SOM to a data source.
  * Data source instances now are mapped to neurons, so this class
- * holds such map.
+ * holds such map. Cluster indexes of records are kept in a primitive array,
+ * along with inverted index: ordinals of records of every cluster are stored
+ * contiguously, so records of a cluster are found without data source scan
+ * and read directly from random access data sources.<br/>
+ * Second best matching units and errors of the mapping are produced
+ * by the same assignment pass, see {@link ClusterAssignment}.
  * @author atta_troll
  *
  */
 public class SomClusterResult {
 
     /**
-     * Maps record indexes to cluster indexes.
+     * Cluster indexes of records, indexed by record ordinals.
      */
-    private final Map<Long, Integer> clusterMap;
+    private final int[] clusters;
 
     /**
-     * Maps neurons to cluster indexes.
+     * Indexes of clusters of the second best matching units, indexed by record ordinals;
+     * -1 if SOM has a single neuron.
      */
-    private final Map<Integer, AbstractNeuron> clusterToNeuronMap;
+    private final int[] secondClusters;
 
     /**
-     * Maps cluster indexes to neurons.
+     * Record indexes, indexed by record ordinals; null if they are equal to ordinals.
      */
-    private final Map<AbstractNeuron, Integer> neuronToClusterMap;
+    private final long[] indexes;
 
     /**
-     * Private ctor, use {{@link #produceClusterResult(Som, AbstractTokenDataSource)}
-     * @param clusterMap
-     * @param clusterToNeuronMap
-     * @param neuronToClusterMap
+     * Sorted record indexes, null if record indexes are sorted by themselves.
      */
-    public SomClusterResult(Map<Long, Integer> clusterMap, Map<Integer, AbstractNeuron> clusterToNeuronMap,
-            Map<AbstractNeuron, Integer> neuronToClusterMap) {
-        this.clusterMap = clusterMap;
-        this.clusterToNeuronMap = clusterToNeuronMap;
-        this.neuronToClusterMap = neuronToClusterMap;
+    private final long[] sortedIndexes;
+
+    /**
+     * Record ordinals aligned with sorted record indexes, null along with them.
+     */
+    private final int[] sortedOrdinals;
+
+    /**
+     * Ordinals of records grouped by clusters, sorted within every cluster.
+     */
+    private final int[] clusterOrdinals;
+
+    /**
+     * Start of every cluster in {@link #clusterOrdinals}, the last element is
+     * the total number of records.
+     */
+    private final int[] clusterStarts;
+
+    /**
+     * Neurons indexed by cluster indexes, cluster index of a neuron is its id.
+     */
+    private final List<AbstractNeuron> neurons;
+
+    /**
+     * Sums of distances between records and their BMUs, indexed by cluster indexes.
+     */
+    private final double[] errorSums;
+
+    /**
+     * Number of records whose best and second best matching units are not adjacent.
+     */
+    private final long topographicErrorCount;
+
+    /**
+     * Package-private ctor, use {@link #produceClusterResult(Som, AbstractTokenDataSource)}
+     * or {@link ClusterAssignment#assign(AbstractTokenDataSource)}
+     * @param clusters cluster indexes of records indexed by record ordinals
+     * @param secondClusters cluster indexes of the second best matching units of records
+     * @param indexes record indexes, null if they are equal to record ordinals
+     * @param isSorted true if record indexes are strictly increasing
+     * @param neurons neurons ordered by their ids, which are cluster indexes
+     * @param errorSums sums of distances between records and their BMUs indexed by cluster indexes
+     * @param topographicErrorCount number of records whose best and second best matching units
+     *        are not adjacent
+     */
+    SomClusterResult(int[] clusters, int[] secondClusters, long[] indexes, boolean isSorted,
+            List<AbstractNeuron> neurons, double[] errorSums, long topographicErrorCount) {
+        this.clusters = clusters;
+        this.secondClusters = secondClusters;
+        this.indexes = indexes;
+        this.errorSums = errorSums;
+        this.topographicErrorCount = topographicErrorCount;
+        this.neurons = neurons;
+        if (indexes == null || isSorted) {
+            sortedIndexes = null;
+            sortedOrdinals = null;
+        }
+        else {
+            sortedIndexes = indexes.clone();
+            sortedOrdinals = new int[indexes.length];
+            sortByIndexes(sortedIndexes, sortedOrdinals);
+        }
+        clusterStarts = new int[neurons.size() + 1];
+        for (int cluster : clusters) {
+            clusterStarts[cluster + 1]++;
+        }
+        for (int i = 0; i < neurons.size(); i++) {
+            clusterStarts[i + 1] += clusterStarts[i];
+        }
+        final int[] positions = Arrays.copyOf(clusterStarts, neurons.size());
+        clusterOrdinals = new int[clusters.length];
+        for (int i = 0; i < clusters.length; i++) {
+            clusterOrdinals[positions[clusters[i]]++] = i;
+        }
     }
 
     /**
      * Assigns actual cluster index to the record.
      * @param record record from data source
-     * @return cluster index
+     * @return cluster index, null if the record has not been assigned
      */
     public Integer getCluster(Record<Object[]> record) {
-        return clusterMap.get(record.getIndex());
+        final int ordinal = findOrdinal(record.getIndex());
+        return ordinal < 0 ? null : clusters[ordinal];
+    }
+
+    /**
+     * @param ordinal record ordinal in the data source
+     * @return cluster index of the record
+     * @throws IndexOutOfBoundsException if there is no such record
+     */
+    public int getCluster(int ordinal) throws IndexOutOfBoundsException {
+        if (ordinal < 0 || ordinal >= clusters.length) {
+            throw new IndexOutOfBoundsException("No record with ordinal " + ordinal);
+        }
+        return clusters[ordinal];
+    }
+
+    /**
+     * Finds cluster of the second best matching unit of the record.
+     * @param record record from data source
+     * @return cluster index, null if the record has not been assigned or SOM has a single neuron
+     */
+    public Integer getSecondCluster(Record<Object[]> record) {
+        final int ordinal = findOrdinal(record.getIndex());
+        return ordinal < 0 || secondClusters[ordinal] < 0 ? null : secondClusters[ordinal];
     }
 
     /**
      * Returns neuron that holds the record
      * @param record record record from data source
-     * @return neuron
+     * @return neuron, null if the record has not been assigned
      */
     public AbstractNeuron getNeuron(Record<Object[]> record) {
-        return clusterToNeuronMap.get(getCluster(record));
+        final int ordinal = findOrdinal(record.getIndex());
+        return ordinal < 0 ? null : neurons.get(clusters[ordinal]);
     }
 
     /**
      * @return total number of clusters, including empty ones
      */
     public int getClusterNumber() {
-        return clusterToNeuronMap.size();
+        return neurons.size();
+    }
+
+    /**
+     * @return number of assigned records
+     */
+    public int getRecordCount() {
+        return clusters.length;
+    }
+
+    /**
+     * @param ordinal record ordinal in the data source
+     * @return index of the record
+     * @throws IndexOutOfBoundsException if there is no such record
+     */
+    public long getRecordIndex(int ordinal) throws IndexOutOfBoundsException {
+        if (ordinal < 0 || ordinal >= clusters.length) {
+            throw new IndexOutOfBoundsException("No record with ordinal " + ordinal);
+        }
+        return indexes == null ? ordinal : indexes[ordinal];
+    }
+
+    /**
+     * @param clusterIndex index of cluster
+     * @return sorted ordinals of records that belong to this cluster, a copy
+     */
+    public int[] getClusterOrdinals(int clusterIndex) {
+        return Arrays.copyOfRange(clusterOrdinals, clusterStarts[clusterIndex],
+                clusterStarts[clusterIndex + 1]);
     }
 
     /**
@@ -82,19 +208,74 @@ public class SomClusterResult {
      */
     public List<Record<Object[]>> getClusterRecords(AbstractTokenDataSource<?> dataSource,
             int clusterIndex, int numberOfRecords) throws IOException {
-        List<Record<Object[]>> records = new ArrayList<>(numberOfRecords);
-        int counter = 0;
+        return getClusterRecords(dataSource, clusterIndex, 0, numberOfRecords);
+    }
+
+    /**
+     * Generates a page of records that belong to this cluster. Records are read
+     * directly from random access data sources, other data sources are read
+     * up to the last record of the page.
+     * @param dataSource data source
+     * @param clusterIndex index of cluster
+     * @param from number of cluster records to be skipped
+     * @param numberOfRecords limit of records to be put in list
+     * @return list of records
+     * @throws IOException in case of internal data source failure
+     */
+    @SuppressWarnings("unchecked")
+    public List<Record<Object[]>> getClusterRecords(AbstractTokenDataSource<?> dataSource,
+            int clusterIndex, int from, int numberOfRecords) throws IOException {
+        final int start = clusterStarts[clusterIndex] + Math.max(from, 0);
+        final int end = (int) Math.min(clusterStarts[clusterIndex + 1], (long) start + numberOfRecords);
+        List<Record<Object[]>> records = new ArrayList<>(Math.max(end - start, 0));
+        if (dataSource instanceof RandomAccessTokenDataSource) {
+            final RandomAccessTokenDataSource randomAccessSource = (RandomAccessTokenDataSource) dataSource;
+            for (int i = start; i < end; i++) {
+                records.add(randomAccessSource.getRecord(clusterOrdinals[i]));
+            }
+            return records;
+        }
+        int ordinal = 0;
+        int position = start;
         dataSource.reset();
-        while (dataSource.hasNext() && counter < numberOfRecords ) {
-            final Record<Object[]> record = dataSource.next();
-            if (clusterIndex == getCluster(record)) {
-                records.add(record);
-                counter++;
+        while (position < end && dataSource.hasNext()) {
+            final Record<?> record = dataSource.next();
+            if (ordinal == clusterOrdinals[position]) {
+                records.add((Record<Object[]>) record);
+                position++;
             }
+            ordinal++;
         }
         return records;
     }
 
+    /**
+     * Creates data source of records that belong to this cluster, its records
+     * are read on demand.
+     * @param dataSource random access data source this result is produced for
+     * @param clusterIndex index of cluster
+     * @return data source of the cluster records
+     * @throws IllegalArgumentException if data source has no random access
+     */
+    public AbstractTokenDataSource<Object[]> getClusterDataSource(AbstractTokenDataSource<?> dataSource,
+            int clusterIndex) throws IllegalArgumentException {
+        return SubsetTokenDataSource.createSubset(dataSource, getClusterOrdinals(clusterIndex));
+    }
+
+    /**
+     * Creates data source of records that belong to this neuron, its records
+     * are read on demand.
+     * @param dataSource random access data source this result is produced for
+     * @param neuron neuron
+     * @return data source of the cluster records
+     * @throws IllegalArgumentException if data source has no random access
+     *         or neuron doesn't belong to the SOM
+     */
+    public AbstractTokenDataSource<Object[]> getClusterDataSource(AbstractTokenDataSource<?> dataSource,
+            AbstractNeuron neuron) throws IllegalArgumentException {
+        return getClusterDataSource(dataSource, getClusterIndex(neuron));
+    }
+
     /**
      * Generates list of records that belong to this neuron.
      * @param dataSource data source
@@ -102,52 +283,187 @@ public class SomClusterResult {
      * @param numberOfRecords limit of records to be put in list
      * @return list of records
      * @throws IOException in case of internal data source failure
+     * @throws IllegalArgumentException if neuron doesn't belong to the SOM
      */
     public List<Record<Object[]>> getClusterRecords(AbstractTokenDataSource<?> dataSource,
             AbstractNeuron neuron, int numberOfRecords) throws IOException {
-        return getClusterRecords(dataSource, neuronToClusterMap.get(neuron), numberOfRecords);
+        return getClusterRecords(dataSource, getClusterIndex(neuron), numberOfRecords);
     }
 
+    /**
+     * @param clusterIndex index of cluster
+     * @return number of records in the cluster
+     */
     public long getClusterSize(int clusterIndex) {
-        long counter = 0;
-        for (Map.Entry<Long, Integer> entry : clusterMap.entrySet()) {
-            if (entry.getValue() == clusterIndex) {
-                counter++;
-            }
-        }
-        return counter;
+        return clusterStarts[clusterIndex + 1] - clusterStarts[clusterIndex];
     }
 
     /**
      * @param neuron neuron
      * @return size of cluster associated with this neuron
+     * @throws IllegalArgumentException if neuron doesn't belong to the SOM
      */
     public long getClusterSize(AbstractNeuron neuron) {
-        return getClusterSize(neuronToClusterMap.get(neuron));
+        return getClusterSize(getClusterIndex(neuron));
     }
+
+    /**
+     * @return numbers of records in clusters indexed by cluster indexes
+     */
+    public long[] getClusterSizes() {
+        final long[] clusterSizes = new long[neurons.size()];
+        for (int i = 0; i < clusterSizes.length; i++) {
+            clusterSizes[i] = getClusterSize(i);
+        }
+        return clusterSizes;
+    }
+
+    /**
+     * @return average distance between records and their BMUs, NaN if there are no records
+     */
+    public double getQuantizationError() {
+        double errorSum = 0.;
+        for (double clusterErrorSum : errorSums) {
+            errorSum += clusterErrorSum;
+        }
+        return errorSum / clusters.length;
+    }
+
+    /**
+     * @param clusterIndex index of cluster
+     * @return average distance between records of the cluster and its neuron,
+     *         NaN if the cluster is empty
+     */
+    public double getQuantizationError(int clusterIndex) {
+        return errorSums[clusterIndex] / getClusterSize(clusterIndex);
+    }
+
+    /**
+     * @return fraction of records whose best and second best matching units are not
+     *         adjacent, NaN if there are no records
+     */
+    public double getTopographicError() {
+        return ((double) topographicErrorCount) / clusters.length;
+    }
+
     /**
-     * Factory method for SOM cluster result
+     * @param neuron neuron of the SOM this result is produced by
+     * @return cluster index of the neuron
+     * @throws IllegalArgumentException if neuron doesn't belong to the SOM
+     */
+    private int getClusterIndex(AbstractNeuron neuron) throws IllegalArgumentException {
+        final int clusterIndex = neuron.getIndex();
+        if (clusterIndex < 0 || clusterIndex >= neurons.size() || neurons.get(clusterIndex) != neuron) {
+            throw new IllegalArgumentException("Neuron doesn't belong to SOM of this cluster result");
+        }
+        return clusterIndex;
+    }
+
+    /**
+     * Finds ordinal of a record.
+     * @param recordIndex record index
+     * @return ordinal, -1 if the record has not been assigned
+     */
+    private int findOrdinal(long recordIndex) {
+        if (indexes == null) {
+            return recordIndex >= 0L && recordIndex < clusters.length ? (int) recordIndex : -1;
+        }
+        if (sortedIndexes == null) {
+            final int ordinal = Arrays.binarySearch(indexes, recordIndex);
+            return ordinal < 0 ? -1 : ordinal;
+        }
+        final int position = Arrays.binarySearch(sortedIndexes, recordIndex);
+        return position < 0 ? -1 : sortedOrdinals[position];
+    }
+
+    /**
+     * Factory method for SOM cluster result, records are assigned in parallel
+     * by the common pool.
      * @param som SOM
      * @param dataSource data source in use
      * @return SOM cluster result instance
      * @throws IOException on data source i/o error
+     * @throws IllegalArgumentException if data source holds more than
+     *         {@link Integer#MAX_VALUE} records
      */
     public static SomClusterResult produceClusterResult(Som som,
-            AbstractTokenDataSource<?> dataSource) throws IOException {
-        Map<Long, Integer> clusterMap = new HashMap<>();
-        Map<Integer, AbstractNeuron> clusterToNeuronMap = new HashMap<>();
-        final List<AbstractNeuron> neurons = som.getNeurons();
-        for (int i = 0; i < neurons.size(); i++) {
-            clusterToNeuronMap.put(i, neurons.get(i));
+            AbstractTokenDataSource<?> dataSource) throws IOException, IllegalArgumentException {
+        return new ClusterAssignment(som, ForkJoinPool.commonPool()).assign(dataSource);
+    }
+
+    /**
+     * Sorts record indexes and collects their ordinals, so records can be found
+     * by binary search. Equal indexes keep ordinal order.<br/>
+     * If range of indexes leaves room for ordinals in a long, index offsets and ordinals
+     * are packed into longs and sorted as plain numbers, otherwise ordinals
+     * are merge sorted by their indexes.
+     * @param indexes record indexes in ordinal order, they are sorted
+     * @param ordinals receives ordinals aligned with sorted record indexes
+     */
+    private static void sortByIndexes(long[] indexes, int[] ordinals) {
+        if (indexes.length == 0) {
+            return;
         }
-        Map<AbstractNeuron, Integer> neuronToClusterMap = new HashMap<>();
-        clusterToNeuronMap.forEach((cluster, neuron) -> neuronToClusterMap.put(neuron, cluster));
-        dataSource.reset();
-        while (dataSource.hasNext()) {
-            final Record<Object[]> record = dataSource.next();
-            final AbstractNeuron bmu = som.getBmu(record);
-            clusterMap.put(record.getIndex(), neuronToClusterMap.get(bmu));
+        long minIndex = indexes[0];
+        long maxIndex = indexes[0];
+        for (long index : indexes) {
+            minIndex = Math.min(minIndex, index);
+            maxIndex = Math.max(maxIndex, index);
+        }
+        final int ordinalBits = Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(indexes.length - 1));
+        final long range = maxIndex - minIndex;
+        if (range >= 0L && range >>> (Long.SIZE - 1 - ordinalBits) == 0L) {
+            final long[] keys = new long[indexes.length];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = (indexes[i] - minIndex) << ordinalBits | i;
+            }
+            Arrays.sort(keys);
+            final long ordinalMask = (1L << ordinalBits) - 1L;
+            for (int i = 0; i < keys.length; i++) {
+                ordinals[i] = (int) (keys[i] & ordinalMask);
+                indexes[i] = (keys[i] >>> ordinalBits) + minIndex;
+            }
+        }
+        else {
+            for (int i = 0; i < ordinals.length; i++) {
+                ordinals[i] = i;
+            }
+            final long[] unsortedIndexes = indexes.clone();
+            mergeSortByIndexes(ordinals, new int[ordinals.length], unsortedIndexes, 0, ordinals.length);
+            for (int i = 0; i < ordinals.length; i++) {
+                indexes[i] = unsortedIndexes[ordinals[i]];
+            }
+        }
+    }
+
+    /**
+     * Stable merge sort of a range of ordinals by record indexes.
+     * @param ordinals ordinals, the range is sorted
+     * @param buffer buffer of the same length
+     * @param indexes record indexes indexed by ordinals
+     * @param from start of the range, inclusive
+     * @param to end of the range, exclusive
+     */
+    private static void mergeSortByIndexes(int[] ordinals, int[] buffer, long[] indexes, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        final int middle = (from + to) >>> 1;
+        mergeSortByIndexes(ordinals, buffer, indexes, from, middle);
+        mergeSortByIndexes(ordinals, buffer, indexes, middle, to);
+        if (indexes[ordinals[middle - 1]] <= indexes[ordinals[middle]]) {
+            return;
+        }
+        System.arraycopy(ordinals, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || left < middle && indexes[buffer[left]] <= indexes[buffer[right]]) {
+                ordinals[i] = buffer[left++];
+            }
+            else {
+                ordinals[i] = buffer[right++];
+            }
         }
-        return new SomClusterResult(clusterMap, clusterToNeuronMap, neuronToClusterMap);
     }
 }
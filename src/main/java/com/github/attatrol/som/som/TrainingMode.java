@@ -0,0 +1,21 @@
+package com.github.attatrol.som.som;
+
+/**
+ * Way SOM changes neuron weights through a learning epoch.
+ * @author atta_troll
+ *
+ */
+public enum TrainingMode {
+
+    /**
+     * Classic Kohonen's learning, weights are changed after each record.
+     */
+    ONLINE,
+
+    /**
+     * Batch (offline) learning, records are assigned to BMUs with fixed weights,
+     * then all weights are changed at once at the end of the epoch. Records are
+     * processed in parallel.
+     */
+    BATCH
+}
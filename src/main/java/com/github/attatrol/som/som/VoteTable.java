@@ -0,0 +1,192 @@
+package com.github.attatrol.som.som;
+
+import java.util.Arrays;
+
+/**
+ * Occurrences of values of a categorical token in records won by every neuron.
+ * Only (neuron, value code) pairs that occur are stored, so memory depends on
+ * the number of distinct pairs met rather than on map size times dictionary size.
+ * Table is reusable: clearing costs as much as the number of stored pairs.
+ * After {@link #compact()} occurrences are read by neurons in index ranges.
+ * Not thread-safe.
+ * @author atta_troll
+ *
+ */
+final class VoteTable {
+
+    private static final long EMPTY_KEY = -1L;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Keys of pairs, neuron index in high bits and value code in low bits, open addressing.
+     */
+    private long[] keys;
+
+    private long[] counts;
+
+    /**
+     * Slots of stored pairs in order of insertion.
+     */
+    private int[] usedSlots;
+
+    private int size;
+
+    /**
+     * Start of range of every neuron in compact arrays, indexed by neuron indexes,
+     * the last element is the number of pairs.
+     */
+    private final int[] neuronStarts;
+
+    private int[] compactCodes;
+
+    private long[] compactCounts;
+
+    /**
+     * Default ctor.
+     * @param neuronCount number of neurons
+     */
+    VoteTable(int neuronCount) {
+        keys = new long[INITIAL_CAPACITY];
+        Arrays.fill(keys, EMPTY_KEY);
+        counts = new long[INITIAL_CAPACITY];
+        usedSlots = new int[INITIAL_CAPACITY / 2];
+        neuronStarts = new int[neuronCount + 1];
+        compactCodes = new int[0];
+        compactCounts = new long[0];
+    }
+
+    /**
+     * Counts a single occurrence.
+     * @param neuronIndex index of neuron that won the record
+     * @param code value code
+     */
+    void increment(int neuronIndex, int code) {
+        add((((long) neuronIndex) << Integer.SIZE) | code, 1L);
+    }
+
+    /**
+     * Adds all occurrences of other table to this one.
+     * @param other other table
+     */
+    void merge(VoteTable other) {
+        for (int i = 0; i < other.size; i++) {
+            final int slot = other.usedSlots[i];
+            add(other.keys[slot], other.counts[slot]);
+        }
+    }
+
+    /**
+     * Erases all occurrences, storage is kept.
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            keys[usedSlots[i]] = EMPTY_KEY;
+        }
+        size = 0;
+    }
+
+    /**
+     * Groups occurrences by neurons, must be called after the last change.
+     */
+    void compact() {
+        if (compactCodes.length < size) {
+            compactCodes = new int[size];
+            compactCounts = new long[size];
+        }
+        Arrays.fill(neuronStarts, 0);
+        for (int i = 0; i < size; i++) {
+            neuronStarts[(int) (keys[usedSlots[i]] >>> Integer.SIZE) + 1]++;
+        }
+        for (int i = 1; i < neuronStarts.length; i++) {
+            neuronStarts[i] += neuronStarts[i - 1];
+        }
+        for (int i = 0; i < size; i++) {
+            final int slot = usedSlots[i];
+            // start of neuron serves as its fill pointer, it ends at the start of the next neuron
+            final int position = neuronStarts[(int) (keys[slot] >>> Integer.SIZE)]++;
+            compactCodes[position] = (int) keys[slot];
+            compactCounts[position] = counts[slot];
+        }
+        // fill pointers are shifted back to starts
+        for (int i = neuronStarts.length - 1; i > 0; i--) {
+            neuronStarts[i] = neuronStarts[i - 1];
+        }
+        neuronStarts[0] = 0;
+    }
+
+    /**
+     * @param neuronIndex neuron index
+     * @return index of the first pair of neuron in compact arrays
+     */
+    int getStart(int neuronIndex) {
+        return neuronStarts[neuronIndex];
+    }
+
+    /**
+     * @param neuronIndex neuron index
+     * @return index after the last pair of neuron in compact arrays
+     */
+    int getEnd(int neuronIndex) {
+        return neuronStarts[neuronIndex + 1];
+    }
+
+    /**
+     * @param index index of pair in compact arrays
+     * @return value code of pair
+     */
+    int getCode(int index) {
+        return compactCodes[index];
+    }
+
+    /**
+     * @param index index of pair in compact arrays
+     * @return number of occurrences of pair
+     */
+    long getCount(int index) {
+        return compactCounts[index];
+    }
+
+    private void add(long key, long count) {
+        int slot = findSlot(keys, key);
+        if (keys[slot] == EMPTY_KEY) {
+            if (2 * (size + 1) > keys.length) {
+                grow();
+                slot = findSlot(keys, key);
+            }
+            keys[slot] = key;
+            counts[slot] = count;
+            usedSlots[size++] = slot;
+        }
+        else {
+            counts[slot] += count;
+        }
+    }
+
+    private void grow() {
+        final long[] oldKeys = keys;
+        final long[] oldCounts = counts;
+        final int[] oldUsedSlots = usedSlots;
+        keys = new long[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY_KEY);
+        counts = new long[keys.length];
+        usedSlots = new int[keys.length / 2];
+        for (int i = 0; i < size; i++) {
+            final int oldSlot = oldUsedSlots[i];
+            final int slot = findSlot(keys, oldKeys[oldSlot]);
+            keys[slot] = oldKeys[oldSlot];
+            counts[slot] = oldCounts[oldSlot];
+            usedSlots[i] = slot;
+        }
+    }
+
+    private static int findSlot(long[] keys, long key) {
+        final int mask = keys.length - 1;
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ (hash >>> Integer.SIZE)) & mask;
+        while (keys[slot] != EMPTY_KEY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
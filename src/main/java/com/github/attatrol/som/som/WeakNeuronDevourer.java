@@ -0,0 +1,398 @@
+package com.github.attatrol.som.som;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.attatrol.som.som.neuron.AbstractNeuron;
+import com.github.attatrol.som.som.topology.SomTopology;
+
+/**
+ * Moves weak neurons (ones that win too few records) towards strong ones (patrons),
+ * then assigns to them the most distant records of patrons. Each strong neuron
+ * may affect only one weak, patrons are served in ascending order of win counts,
+ * the least index first among equal counts.<br/>
+ * Per epoch cost depends on numbers of weak and strong neurons and lengths of paths
+ * between them rather than on the map size: candidates are passed by SOM in its pass
+ * over epoch results, see {@link #collect(int, long)}, the closest weak neuron is found in
+ * expanding rings around the patron, paths go through adjacent neurons provided by topology,
+ * only neurons moved by the last devouring are reset.
+ * @author atta_troll
+ *
+ */
+public final class WeakNeuronDevourer {
+
+    private final List<AbstractNeuron> neurons;
+
+    private final SomTopology topology;
+
+    /**
+     * Neurons winning not more records are weak.
+     */
+    private final double weakThreshold;
+
+    /**
+     * Neurons winning not less records are strong.
+     */
+    private final double strongThreshold;
+
+    /**
+     * Ids of neurons adjacent to every neuron, indexed by neuron ids.
+     */
+    private final int[][] localNeighborhoods;
+
+    /**
+     * Marks of weak neurons, it serves as a spatial index for ring search.
+     */
+    private final boolean[] isWeak;
+
+    /**
+     * Buffers for ring search.
+     */
+    private final int[] neighborBuffer;
+
+    private final int[] levelBuffer;
+
+    /**
+     * Number of low bits of a patron sort key that hold neuron id.
+     */
+    private final int idBits;
+
+    /**
+     * Weak neurons collected since the last devouring in ascending order.
+     */
+    private final int[] weakNeurons;
+
+    private int weakCount;
+
+    /**
+     * Sort keys (win count, id) of strong neurons collected since the last devouring.
+     */
+    private final long[] patrons;
+
+    private int strongCount;
+
+    /**
+     * Neurons whose weights were moved or replaced by the last devouring.
+     */
+    private final int[] movedNeurons;
+
+    private int movedCount;
+
+    /**
+     * Marks of neurons listed in moved neurons.
+     */
+    private final boolean[] isMoved;
+
+    /**
+     * Id of the neuron whose weights of the last epoch a neuron holds after devouring,
+     * -1 if it got new weights, indexed by neuron ids.
+     */
+    private final int[] weightOrigins;
+
+    /**
+     * Id of the neuron which holds weights of the last epoch of a neuron after devouring,
+     * -1 if they are replaced, indexed by neuron ids.
+     */
+    private final int[] weightTargets;
+
+    private long lastDurationNanos;
+
+    private int lastWeakCount;
+
+    private int lastPatronCount;
+
+    private long lastPathLength;
+
+    /**
+     * Default ctor.
+     * @param neurons neurons in the same order as topology positions
+     * @param topology topology of neurons
+     * @param weakThreshold neurons winning not more records are weak
+     * @param strongThreshold neurons winning not less records are strong
+     */
+    WeakNeuronDevourer(List<AbstractNeuron> neurons, SomTopology topology, double weakThreshold,
+            double strongThreshold) {
+        this.neurons = neurons;
+        this.topology = topology;
+        this.weakThreshold = weakThreshold;
+        this.strongThreshold = strongThreshold;
+        final int neuronCount = neurons.size();
+        localNeighborhoods = new int[neuronCount][];
+        for (int i = 0; i < neuronCount; i++) {
+            localNeighborhoods[i] = topology.getAdjacentNeurons(i);
+            // the least index wins ties of next hops
+            Arrays.sort(localNeighborhoods[i]);
+        }
+        isWeak = new boolean[neuronCount];
+        neighborBuffer = new int[neuronCount];
+        levelBuffer = new int[neuronCount];
+        idBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(neuronCount));
+        weightOrigins = new int[neuronCount];
+        weightTargets = new int[neuronCount];
+        for (int i = 0; i < neuronCount; i++) {
+            weightOrigins[i] = i;
+            weightTargets[i] = i;
+        }
+        weakNeurons = new int[neuronCount];
+        patrons = new long[neuronCount];
+        movedNeurons = new int[neuronCount];
+        isMoved = new boolean[neuronCount];
+    }
+
+    /**
+     * Collects a neuron as a candidate for the next devouring if it is weak or strong.
+     * Must be called for every neuron in ascending order of ids once per epoch.
+     * @param neuronIndex neuron id
+     * @param winCount number of records won by neuron in the epoch
+     */
+    void collect(int neuronIndex, long winCount) {
+        if (winCount <= weakThreshold) {
+            weakNeurons[weakCount++] = neuronIndex;
+        } else if (winCount >= strongThreshold) {
+            // sort key is (win count, id), win count takes 63 - idBits bits,
+            // so counts of 2^(63 - idBits) - 1 and more saturate and compare as equal
+            patrons[strongCount++] = (Math.min(winCount, Long.MAX_VALUE >>> idBits) << idBits) | neuronIndex;
+        }
+    }
+
+    /**
+     * Devours weak neurons collected since the last devouring.
+     * @param distantRecords the most distant record won by every neuron in the last epoch,
+     *        they are swapped together with patrons
+     */
+    void devour(Object[][] distantRecords) {
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < movedCount; i++) {
+            final int neuron = movedNeurons[i];
+            weightOrigins[neuron] = neuron;
+            weightTargets[neuron] = neuron;
+            isMoved[neuron] = false;
+        }
+        movedCount = 0;
+        // 1. create sets of empty neurons and their patrons
+        for (int i = 0; i < weakCount; i++) {
+            isWeak[weakNeurons[i]] = true;
+        }
+        // 2. pairing patrons to the closest weak neurons
+        Arrays.sort(patrons, 0, strongCount);
+        final int[] patronList = new int[weakCount == 0 ? 0 : strongCount];
+        final int[] patronedList = new int[patronList.length];
+        int patronCount = 0;
+        if (weakCount > 0) {
+            final long idMask = (1L << idBits) - 1L;
+            for (int i = 0; i < strongCount; i++) {
+                final int patron = (int) (patrons[i] & idMask);
+                patronList[patronCount] = patron;
+                patronedList[patronCount] = findClosestWeakNeuron(patron, weakNeurons, weakCount);
+                patronCount++;
+            }
+        }
+        for (int i = 0; i < weakCount; i++) {
+            isWeak[weakNeurons[i]] = false;
+        }
+        // 3. finding path from weak neurons to the patron's local neighborhood
+        // (greedy algorithm)
+        long pathLength = 0L;
+        for (int j = 0; j < patronCount; j++) {
+            final int patron = patronList[j];
+            final int patronized = patronedList[j];
+            int current = patronized;
+            // 4. propagation of weak neuron towards patron
+            int next = findNextHop(current, patron);
+            while (next != patron) {
+                swap(current, next, j, patronCount, patronList, patronedList, distantRecords);
+                current = next;
+                next = findNextHop(current, patron);
+                pathLength++;
+            }
+            // 5. giving new value to the weak neuron
+            neurons.get(patronized).setNewWeights(distantRecords[patron]);
+            if (weightOrigins[patronized] >= 0) {
+                markMoved(patronized);
+                markMoved(weightOrigins[patronized]);
+                weightTargets[weightOrigins[patronized]] = -1;
+                weightOrigins[patronized] = -1;
+            }
+        }
+        lastWeakCount = weakCount;
+        lastPatronCount = patronCount;
+        lastPathLength = pathLength;
+        weakCount = 0;
+        strongCount = 0;
+        lastDurationNanos = System.nanoTime() - startTime;
+    }
+
+    /**
+     * Replaces ids of neurons with ids of neurons which hold their weights
+     * after the last devouring.
+     * @param neuronIds neuron ids, -1 for unknown ones; ids of neurons
+     *        which got new weights become unknown
+     */
+    void remapNeuronIds(int[] neuronIds) {
+        if (lastPatronCount == 0) {
+            return;
+        }
+        for (int i = 0; i < neuronIds.length; i++) {
+            if (neuronIds[i] >= 0) {
+                neuronIds[i] = weightTargets[neuronIds[i]];
+            }
+        }
+    }
+
+    /**
+     * @return duration of the last devouring in nanoseconds
+     */
+    public long getLastDurationNanos() {
+        return lastDurationNanos;
+    }
+
+    /**
+     * @return number of weak neurons found in the last devouring
+     */
+    public int getLastWeakCount() {
+        return lastWeakCount;
+    }
+
+    /**
+     * @return number of patrons paired with weak neurons in the last devouring
+     */
+    public int getLastPatronCount() {
+        return lastPatronCount;
+    }
+
+    /**
+     * @return total number of steps made by weak neurons in the last devouring
+     */
+    public long getLastPathLength() {
+        return lastPathLength;
+    }
+
+    /**
+     * Finds the closest weak neuron, the least index wins ties. Rings around patron
+     * are searched while they are smaller than the list of weak neurons, otherwise
+     * the list itself is scanned.
+     * @param patron patron
+     * @param weakNeurons weak neurons in ascending order
+     * @param weakCount number of weak neurons
+     * @return the closest weak neuron
+     */
+    private int findClosestWeakNeuron(int patron, int[] weakNeurons, int weakCount) {
+        final int levelCount = topology.getDistanceLevels().length;
+        int maxLevel = 1;
+        while (maxLevel < levelCount) {
+            final int neighborCount = topology.collectNeighbors(patron, maxLevel, neighborBuffer, levelBuffer);
+            if (neighborCount > weakCount) {
+                break;
+            }
+            int closest = -1;
+            int closestLevel = 0;
+            for (int i = 0; i < neighborCount; i++) {
+                final int neighbor = neighborBuffer[i];
+                if (closest >= 0 && levelBuffer[i] > closestLevel) {
+                    break;
+                }
+                if (isWeak[neighbor] && (closest < 0 || neighbor < closest)) {
+                    closest = neighbor;
+                    closestLevel = levelBuffer[i];
+                }
+            }
+            if (closest >= 0) {
+                return closest;
+            }
+            maxLevel *= 2;
+        }
+        int closest = weakNeurons[0];
+        double minDistance = topology.getDistance(patron, closest);
+        for (int i = 1; i < weakCount; i++) {
+            final double distance = topology.getDistance(patron, weakNeurons[i]);
+            if (distance < minDistance) {
+                minDistance = distance;
+                closest = weakNeurons[i];
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Finds the local neighbor closest to the target.
+     * @param current current neuron
+     * @param target target neuron
+     * @return next neuron of the path
+     */
+    private int findNextHop(int current, int target) {
+        final int[] localNeighborhood = localNeighborhoods[current];
+        int next = localNeighborhood[0];
+        double minDistance = topology.getDistance(next, target);
+        for (int i = 1; i < localNeighborhood.length; i++) {
+            final int neighbor = localNeighborhood[i];
+            final double distance = topology.getDistance(neighbor, target);
+            if (distance < minDistance) {
+                minDistance = distance;
+                next = neighbor;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Swaps weights of 2 neurons and updates pairs after the current one. Bookkeeping
+     * is kept as it was in Som: a pair entry equal to the 2nd neuron is moved to the 1st,
+     * an entry equal to the 1st is moved to the 2nd and back; distant records are swapped
+     * once per later pair whose patron is one of the neurons, missing records are not moved.
+     * Weight origins follow the weights.
+     */
+    private void swap(int neuron1, int neuron2, int currentPair, int patronCount, int[] patronList,
+            int[] patronedList, Object[][] distantRecords) {
+        for (int k = currentPair + 1; k < patronCount; k++) {
+            boolean isPatronSwap = false;
+            if (neuron1 == patronList[k]) {
+                patronList[k] = neuron2;
+                isPatronSwap = true;
+            } else if (neuron1 == patronedList[k]) {
+                patronedList[k] = neuron2;
+            }
+            if (neuron2 == patronList[k]) {
+                patronList[k] = neuron1;
+                isPatronSwap = true;
+            } else if (neuron2 == patronedList[k]) {
+                patronedList[k] = neuron1;
+            }
+            if (isPatronSwap) {
+                final Object[] distantRecord1 = distantRecords[neuron1];
+                final Object[] distantRecord2 = distantRecords[neuron2];
+                if (distantRecord1 != null) {
+                    distantRecords[neuron2] = distantRecord1;
+                }
+                if (distantRecord2 != null) {
+                    distantRecords[neuron1] = distantRecord2;
+                }
+            }
+        }
+        neurons.get(neuron1).swapWeights(neurons.get(neuron2));
+        final int weightOrigin1 = weightOrigins[neuron1];
+        final int weightOrigin2 = weightOrigins[neuron2];
+        markMoved(neuron1);
+        markMoved(neuron2);
+        weightOrigins[neuron1] = weightOrigin2;
+        weightOrigins[neuron2] = weightOrigin1;
+        if (weightOrigin1 >= 0) {
+            markMoved(weightOrigin1);
+            weightTargets[weightOrigin1] = neuron2;
+        }
+        if (weightOrigin2 >= 0) {
+            markMoved(weightOrigin2);
+            weightTargets[weightOrigin2] = neuron1;
+        }
+    }
+
+    /**
+     * Lists a neuron whose weight origin or target is changed, so it is reset
+     * by the next devouring.
+     */
+    private void markMoved(int neuron) {
+        if (!isMoved[neuron]) {
+            isMoved[neuron] = true;
+            movedNeurons[movedCount++] = neuron;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.attatrol.som.som.bmu;
+
+/**
+ * Mutable holder of the BMU search result. Every thread that searches for BMU
+ * should use its own instance, so that search itself allocates nothing.
+ * @author atta_troll
+ *
+ */
+public class BmuResult {
+
+    /**
+     * Index of BMU in the neuron list.
+     */
+    private int index = -1;
+
+    /**
+     * Distance between BMU weights and incoming vector.
+     */
+    private double distance = Double.POSITIVE_INFINITY;
+
+    /**
+     * Index of the second best matching unit, -1 if it is unknown.
+     */
+    private int secondIndex = -1;
+
+    /**
+     * Distance between weights of the second best matching unit and incoming vector.
+     */
+    private double secondDistance = Double.POSITIVE_INFINITY;
+
+    /**
+     * @return index of BMU in the neuron list
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return distance between BMU weights and incoming vector
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * @return index of the second best matching unit, -1 if it is unknown
+     */
+    public int getSecondIndex() {
+        return secondIndex;
+    }
+
+    /**
+     * @return distance between weights of the second best matching unit and incoming vector,
+     *         infinity if it is unknown
+     */
+    public double getSecondDistance() {
+        return secondDistance;
+    }
+
+    /**
+     * Sets new values of the result, the second best matching unit becomes unknown.
+     * @param index index of BMU
+     * @param distance distance to BMU
+     */
+    public void set(int index, double distance) {
+        set(index, distance, -1, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Sets new values of the result.
+     * @param index index of BMU
+     * @param distance distance to BMU
+     * @param secondIndex index of the second best matching unit, -1 if it is unknown
+     * @param secondDistance distance to the second best matching unit
+     */
+    public void set(int index, double distance, int secondIndex, double secondDistance) {
+        this.index = index;
+        this.distance = distance;
+        this.secondIndex = secondIndex;
+        this.secondDistance = secondDistance;
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.attatrol.som.som.bmu;
+
+import com.github.attatrol.som.som.encoding.EncodedRecord;
+
+/**
+ * Strategy of the best matching unit search.<br/>
+ * All realizations must be thread safe and must break ties in favor of
+ * the neuron with the least index, exactly like a plain sequential scan does.
+ * @author atta_troll
+ *
+ */
+@FunctionalInterface
+public interface BmuSearch {
+
+    /**
+     * Finds BMU for an incoming vector.
+     * @param data incoming vector
+     * @param result holder where BMU index and distance are stored
+     */
+    void findBmu(Object[] data, BmuResult result);
+
+    /**
+     * Finds BMU for an incoming vector whose BMU in the previous epoch is known.
+     * Heuristic realizations may use it as a starting point and are exempt from
+     * the tie rule, others ignore it.
+     * @param data incoming vector
+     * @param previousBmu index of BMU of the vector in the previous epoch, -1 if unknown
+     * @param result holder where BMU index and distance are stored
+     */
+    default void findBmu(Object[] data, int previousBmu, BmuResult result) {
+        findBmu(data, result);
+    }
+
+    /**
+     * Finds BMU and the second best matching unit, otherwise it is the same as
+     * {@link #findBmu(Object[], int, BmuResult)}. Ties of the second unit are broken
+     * in favor of the least index as well. It may be slower, as evaluation of
+     * a neuron is abandoned only when it is farther than the second unit.
+     * Realizations that can't find the second unit leave it unknown.
+     * @param data incoming vector
+     * @param previousBmu index of BMU of the vector in the previous epoch, -1 if unknown
+     * @param result holder where indexes and distances of both units are stored
+     */
+    default void findTwoBmus(Object[] data, int previousBmu, BmuResult result) {
+        findBmu(data, previousBmu, result);
+    }
+
+    /**
+     * Finds BMU for an incoming vector that is encoded as well, otherwise it is the same as
+     * {@link #findBmu(Object[], int, BmuResult)}. Realizations that don't use encoded records
+     * search by the vector.
+     * @param data incoming vector, it may be null if {@link #isEncodedRecordUsed()}
+     * @param encoded the same vector in the primitive layout of neurons
+     * @param previousBmu index of BMU of the vector in the previous epoch, -1 if unknown
+     * @param result holder where BMU index and distance are stored
+     */
+    default void findBmu(Object[] data, EncodedRecord encoded, int previousBmu, BmuResult result) {
+        findBmu(data, previousBmu, result);
+    }
+
+    /**
+     * Finds BMU and the second best matching unit for an incoming vector that is encoded
+     * as well, otherwise it is the same as {@link #findTwoBmus(Object[], int, BmuResult)}.
+     * @param data incoming vector, it may be null if {@link #isEncodedRecordUsed()}
+     * @param encoded the same vector in the primitive layout of neurons
+     * @param previousBmu index of BMU of the vector in the previous epoch, -1 if unknown
+     * @param result holder where indexes and distances of both units are stored
+     */
+    default void findTwoBmus(Object[] data, EncodedRecord encoded, int previousBmu, BmuResult result) {
+        findTwoBmus(data, previousBmu, result);
+    }
+
+    /**
+     * @return true if search by encoded records doesn't read the incoming vector,
+     *         then SOM may skip restoring it
+     */
+    default boolean isEncodedRecordUsed() {
+        return false;
+    }
+
+    /**
+     * Notifies search that a new learning epoch starts.
+     */
+    default void startEpoch() {
+    }
+
+    /**
+     * @return true if search makes use of BMU of the previous epoch, then SOM
+     *         has to remember BMUs of all records
+     */
+    default boolean isPreviousBmuUsed() {
+        return false;
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.github.attatrol.som.som.bmu;
+
+import java.util.List;
+
+import com.github.attatrol.preprocessing.distance.DistanceFunction;
+import com.github.attatrol.som.som.neuron.AbstractNeuron;
+import com.github.attatrol.som.som.topology.SomTopology;
+
+/**
+ * Simple factory for a BMU search.
+ * Must be implemented for every BMU search for
+ * use in view. Search is bound to neurons of a single SOM,
+ * so it is produced after SOM creation.
+ * @author atta_troll
+ *
+ */
+public interface BmuSearchFactory<V extends BmuSearch> {
+
+    /**
+     * @param neurons neurons of SOM in the same order as topology positions
+     * @param distanceFunction distance function of SOM
+     * @param topology topology of SOM
+     * @return BMU search instance
+     */
+    V produceBmuSearch(List<AbstractNeuron> neurons, DistanceFunction distanceFunction, SomTopology topology);
+
+}
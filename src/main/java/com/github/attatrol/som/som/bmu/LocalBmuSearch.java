@@ -0,0 +1,309 @@
+package com.github.attatrol.som.som.bmu;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.attatrol.preprocessing.distance.DistanceFunction;
+import com.github.attatrol.som.som.encoding.EncodedRecord;
+import com.github.attatrol.som.som.neuron.AbstractNeuron;
+import com.github.attatrol.som.som.topology.SomTopology;
+
+/**
+ * Heuristic BMU search for learning. Records rarely move far on the map between
+ * epochs, so search starts from the previous BMU of a record and moves
+ * to the closest neuron of its topological neighborhood while it is closer
+ * to the record (hill climbing). Records with unknown previous BMU are scanned fully.<br/>
+ * Heuristic may stop in a local minimum, so it is controlled in two ways:
+ * a random part of local results is checked with the full scan, and every
+ * few epochs are exact, i.e. all records are scanned fully. Checked records get
+ * the exact BMU, mismatch counters show how often heuristic failed. If mismatch rate
+ * of an epoch exceeds the limit, the next epoch is exact too.
+ * @author atta_troll
+ *
+ */
+public class LocalBmuSearch extends SequentialBmuSearch {
+
+    /**
+     * Default distance level of the neighborhood examined around a candidate,
+     * for grid topologies it includes diagonal neighbors.
+     */
+    public static final int DEFAULT_SEARCH_LEVEL = 2;
+
+    /**
+     * Default number of epochs between exact epochs.
+     */
+    public static final int DEFAULT_EXACT_EPOCH_PERIOD = 10;
+
+    /**
+     * Default fraction of local results checked with the full scan.
+     */
+    public static final double DEFAULT_CHECK_RATE = 0.01;
+
+    /**
+     * Default max mismatch rate of an epoch that allows the next epoch to be local.
+     */
+    public static final double DEFAULT_MAX_MISMATCH_RATE = 0.05;
+
+    /**
+     * Ids of neurons examined around every neuron, indexed by neuron ids.
+     */
+    private final int[][] neighborhoods;
+
+    private final int exactEpochPeriod;
+
+    private final double checkRate;
+
+    private final double maxMismatchRate;
+
+    private int epochCounter;
+
+    /**
+     * Flag of the current epoch that uses full scan only.
+     */
+    private volatile boolean exactEpoch;
+
+    private final LongAdder localSearchCount = new LongAdder();
+
+    private final LongAdder checkCount = new LongAdder();
+
+    private final LongAdder mismatchCount = new LongAdder();
+
+    private final LongAdder epochCheckCount = new LongAdder();
+
+    private final LongAdder epochMismatchCount = new LongAdder();
+
+    /**
+     * Holders of local results checked in exact epochs, one per thread.
+     */
+    private final ThreadLocal<BmuResult> localResults = ThreadLocal.withInitial(BmuResult::new);
+
+    /**
+     * Ctor with default parameters.
+     * @param neurons neurons of SOM in the same order as topology positions
+     * @param distanceFunction distance function, must be thread safe
+     * @param topology topology of neurons
+     */
+    public LocalBmuSearch(List<AbstractNeuron> neurons, DistanceFunction distanceFunction,
+            SomTopology topology) {
+        this(neurons, distanceFunction, topology, DEFAULT_SEARCH_LEVEL, DEFAULT_EXACT_EPOCH_PERIOD,
+                DEFAULT_CHECK_RATE, DEFAULT_MAX_MISMATCH_RATE);
+    }
+
+    /**
+     * Default ctor.
+     * @param neurons neurons of SOM in the same order as topology positions
+     * @param distanceFunction distance function, must be thread safe
+     * @param topology topology of neurons
+     * @param searchLevel max distance level of the neighborhood examined around a candidate
+     * @param exactEpochPeriod every epoch with this period is exact, starting from the first one;
+     *        0 means that only the first epoch is exact
+     * @param checkRate fraction of local results checked with the full scan
+     * @param maxMismatchRate max mismatch rate of an epoch that allows the next epoch to be local
+     * @throws IllegalArgumentException if parameters are out of range
+     */
+    public LocalBmuSearch(List<AbstractNeuron> neurons, DistanceFunction distanceFunction,
+            SomTopology topology, int searchLevel, int exactEpochPeriod, double checkRate,
+            double maxMismatchRate) throws IllegalArgumentException {
+        super(neurons, distanceFunction);
+        if (searchLevel < 1) {
+            throw new IllegalArgumentException("Search level is not positive");
+        }
+        if (exactEpochPeriod < 0) {
+            throw new IllegalArgumentException("Exact epoch period is negative");
+        }
+        if (!(checkRate >= 0. && checkRate <= 1.)) {
+            throw new IllegalArgumentException("Check rate is outside [0, 1]");
+        }
+        if (!(maxMismatchRate >= 0. && maxMismatchRate <= 1.)) {
+            throw new IllegalArgumentException("Max mismatch rate is outside [0, 1]");
+        }
+        this.exactEpochPeriod = exactEpochPeriod;
+        this.checkRate = checkRate;
+        this.maxMismatchRate = maxMismatchRate;
+        final int[] neighbors = new int[neurons.size()];
+        final int[] levels = new int[neurons.size()];
+        neighborhoods = new int[neurons.size()][];
+        for (int i = 0; i < neurons.size(); i++) {
+            final int neighborCount = topology.collectNeighbors(i, searchLevel, neighbors, levels);
+            final int[] neighborhood = new int[neighborCount - 1];
+            int counter = 0;
+            for (int j = 0; j < neighborCount; j++) {
+                if (neighbors[j] != i) {
+                    neighborhood[counter++] = neighbors[j];
+                }
+            }
+            neighborhoods[i] = neighborhood;
+        }
+        exactEpoch = true;
+    }
+
+    @Override
+    public void findBmu(Object[] data, EncodedRecord encoded, int previousBmu, BmuResult result) {
+        if (previousBmu < 0 || previousBmu >= neurons.size()) {
+            search(data, encoded, 0, neurons.size(), result);
+        }
+        else if (exactEpoch) {
+            search(data, encoded, 0, neurons.size(), result);
+            checkLocalResult(data, encoded, previousBmu, result);
+        }
+        else {
+            localSearchCount.increment();
+            climb(data, encoded, previousBmu, result);
+            if (checkRate > 0. && ThreadLocalRandom.current().nextDouble() < checkRate) {
+                final int localBmu = result.getIndex();
+                search(data, encoded, 0, neurons.size(), result);
+                countCheck(result.getIndex() != localBmu);
+            }
+        }
+    }
+
+    @Override
+    public boolean isPreviousBmuUsed() {
+        return true;
+    }
+
+    /**
+     * Exact epochs and records with unknown previous BMU find both units with the full scan,
+     * local search finds BMU only and leaves the second unit unknown.
+     */
+    @Override
+    public void findTwoBmus(Object[] data, EncodedRecord encoded, int previousBmu, BmuResult result) {
+        if (previousBmu < 0 || previousBmu >= neurons.size()) {
+            searchTwo(data, encoded, 0, neurons.size(), result);
+        }
+        else if (exactEpoch) {
+            searchTwo(data, encoded, 0, neurons.size(), result);
+            checkLocalResult(data, encoded, previousBmu, result);
+        }
+        else {
+            findBmu(data, encoded, previousBmu, result);
+        }
+    }
+
+    /**
+     * Every exact epoch is followed by <code>exactEpochPeriod - 1</code> local ones,
+     * unless mismatch rate of the previous epoch exceeds the limit.
+     * Must not be called concurrently with search.
+     */
+    @Override
+    public void startEpoch() {
+        final long epochChecks = epochCheckCount.sumThenReset();
+        final long epochMismatches = epochMismatchCount.sumThenReset();
+        exactEpoch = epochCounter == 0 || exactEpochPeriod > 0 && epochCounter % exactEpochPeriod == 0
+                || epochMismatches > maxMismatchRate * epochChecks;
+        epochCounter++;
+    }
+
+    /**
+     * @return true if the current epoch uses full scan only
+     */
+    public boolean isExactEpoch() {
+        return exactEpoch;
+    }
+
+    /**
+     * @return number of searches done by hill climbing
+     */
+    public long getLocalSearchCount() {
+        return localSearchCount.sum();
+    }
+
+    /**
+     * @return number of local results compared with the exact ones
+     */
+    public long getCheckCount() {
+        return checkCount.sum();
+    }
+
+    /**
+     * @return number of compared local results that differed from the exact ones
+     */
+    public long getMismatchCount() {
+        return mismatchCount.sum();
+    }
+
+    /**
+     * @return fraction of compared local results that differed from the exact ones,
+     *         NaN if nothing was compared
+     */
+    public double getMismatchRate() {
+        final long checks = checkCount.sum();
+        return checks == 0L ? Double.NaN : ((double) mismatchCount.sum()) / checks;
+    }
+
+    /**
+     * Sets all counters to zero, it doesn't affect choice of exact epochs.
+     */
+    public void resetCounters() {
+        localSearchCount.reset();
+        checkCount.reset();
+        mismatchCount.reset();
+    }
+
+    /**
+     * Moves from the start neuron to the closest neuron of its neighborhood
+     * while it is closer to the vector.
+     * @param data incoming vector
+     * @param encoded the same vector in the primitive layout of neurons, null if unknown
+     * @param start index of the start neuron
+     * @param result holder where local BMU index and distance are stored
+     */
+    private void climb(Object[] data, EncodedRecord encoded, int start, BmuResult result) {
+        int bmuIndex = start;
+        double bmuDistance = calculateDistance(start, data, encoded, Double.POSITIVE_INFINITY);
+        int current;
+        do {
+            current = bmuIndex;
+            for (int neighbor : neighborhoods[current]) {
+                final double distance = calculateDistance(neighbor, data, encoded, bmuDistance);
+                if (distance < bmuDistance || distance == bmuDistance && neighbor < bmuIndex) {
+                    bmuDistance = distance;
+                    bmuIndex = neighbor;
+                }
+            }
+        } while (bmuIndex != current);
+        result.set(bmuIndex, bmuDistance);
+    }
+
+    /**
+     * Compares local result with the exact one found in an exact epoch.
+     * @param data incoming vector
+     * @param encoded the same vector in the primitive layout of neurons, null if unknown
+     * @param previousBmu start neuron of the local search
+     * @param exactResult exact BMU
+     */
+    private void checkLocalResult(Object[] data, EncodedRecord encoded, int previousBmu,
+            BmuResult exactResult) {
+        final BmuResult localResult = localResults.get();
+        climb(data, encoded, previousBmu, localResult);
+        countCheck(localResult.getIndex() != exactResult.getIndex());
+    }
+
+    /**
+     * Counts comparison of local result with the exact one.
+     * @param isMismatch true if results differ
+     */
+    private void countCheck(boolean isMismatch) {
+        checkCount.increment();
+        epochCheckCount.increment();
+        if (isMismatch) {
+            mismatchCount.increment();
+            epochMismatchCount.increment();
+        }
+    }
+
+    /**
+     * Factory for a local BMU search with default parameters.
+     * @author atta_troll
+     *
+     */
+    public static class Factory implements BmuSearchFactory<LocalBmuSearch> {
+
+        @Override
+        public LocalBmuSearch produceBmuSearch(List<AbstractNeuron> neurons,
+                DistanceFunction distanceFunction, SomTopology topology) {
+            return new LocalBmuSearch(neurons, distanceFunction, topology);
+        }
+    }
+}
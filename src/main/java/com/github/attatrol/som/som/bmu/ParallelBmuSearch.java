@@ -0,0 +1,211 @@
+package com.github.attatrol.som.som.bmu;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import com.github.attatrol.preprocessing.distance.DistanceFunction;
+import com.github.attatrol.som.som.encoding.EncodedRecord;
+import com.github.attatrol.som.som.neuron.AbstractNeuron;
+import com.github.attatrol.som.som.topology.SomTopology;
+
+/**
+ * BMU search that partitions neuron list across a fork-join pool and
+ * reduces partial results to the global minimum. Ties are broken in favor of
+ * the least index, so the result is identical to {@link SequentialBmuSearch}.<br/>
+ * Small maps are scanned sequentially as split overhead dominates there.
+ * Search is sequential as well when it is called from inside of a fork-join
+ * worker, this prevents nested parallelism when records themselves are processed
+ * in parallel.
+ * @author atta_troll
+ *
+ */
+public class ParallelBmuSearch extends SequentialBmuSearch {
+
+    /**
+     * Default least number of neurons which is searched in parallel.
+     */
+    public static final int DEFAULT_SEQUENTIAL_THRESHOLD = 512;
+
+    /**
+     * Least number of neurons scanned by a single task.
+     */
+    private static final int MIN_LEAF_SIZE = 64;
+
+    /**
+     * Number of leaf tasks per pool thread, more leaves give better balance.
+     */
+    private static final int LEAVES_PER_THREAD = 4;
+
+    /**
+     * Pool where search tasks are executed.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Maps with less neurons are searched sequentially.
+     */
+    private final int sequentialThreshold;
+
+    /**
+     * Max number of neurons scanned by a single task.
+     */
+    private final int leafSize;
+
+    /**
+     * Ctor with default sequential threshold.
+     * @param neurons neurons of SOM, the list must provide fast random access
+     * @param distanceFunction distance function, must be thread safe
+     * @param pool fork-join pool used for search
+     */
+    public ParallelBmuSearch(List<AbstractNeuron> neurons, DistanceFunction distanceFunction,
+            ForkJoinPool pool) {
+        this(neurons, distanceFunction, pool, DEFAULT_SEQUENTIAL_THRESHOLD);
+    }
+
+    /**
+     * Default ctor.
+     * @param neurons neurons of SOM, the list must provide fast random access
+     * @param distanceFunction distance function, must be thread safe
+     * @param pool fork-join pool used for search
+     * @param sequentialThreshold maps with less neurons are searched sequentially
+     */
+    public ParallelBmuSearch(List<AbstractNeuron> neurons, DistanceFunction distanceFunction,
+            ForkJoinPool pool, int sequentialThreshold) {
+        super(neurons, distanceFunction);
+        if (pool == null) {
+            throw new IllegalArgumentException("Fork-join pool is missing");
+        }
+        this.pool = pool;
+        this.sequentialThreshold = sequentialThreshold;
+        final int leaves = pool.getParallelism() * LEAVES_PER_THREAD;
+        final int size = (neurons.size() + leaves - 1) / leaves;
+        leafSize = size < MIN_LEAF_SIZE ? MIN_LEAF_SIZE : size;
+    }
+
+    @Override
+    public void findBmu(Object[] data, EncodedRecord encoded, int previousBmu, BmuResult result) {
+        final int size = neurons.size();
+        if (size < sequentialThreshold || size <= leafSize || ForkJoinTask.inForkJoinPool()) {
+            search(data, encoded, 0, size, result);
+        }
+        else {
+            final SearchTask task = new SearchTask(data, encoded, 0, size, false);
+            pool.invoke(task);
+            result.set(task.result.getIndex(), task.result.getDistance());
+        }
+    }
+
+    @Override
+    public void findTwoBmus(Object[] data, EncodedRecord encoded, int previousBmu, BmuResult result) {
+        final int size = neurons.size();
+        if (size < sequentialThreshold || size <= leafSize || ForkJoinTask.inForkJoinPool()) {
+            searchTwo(data, encoded, 0, size, result);
+        }
+        else {
+            final SearchTask task = new SearchTask(data, encoded, 0, size, true);
+            pool.invoke(task);
+            final BmuResult taskResult = task.result;
+            result.set(taskResult.getIndex(), taskResult.getDistance(), taskResult.getSecondIndex(),
+                    taskResult.getSecondDistance());
+        }
+    }
+
+    /**
+     * @return fork-join pool used for search
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Searches BMU in some range of neurons, splits range if it is too big.
+     * @author atta_troll
+     *
+     */
+    private class SearchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 2871625329413390582L;
+
+        private final Object[] data;
+
+        private final EncodedRecord encoded;
+
+        private final int from;
+
+        private final int to;
+
+        /**
+         * Flag of the search for the second best matching unit too.
+         */
+        private final boolean isTwo;
+
+        private final BmuResult result = new BmuResult();
+
+        SearchTask(Object[] data, EncodedRecord encoded, int from, int to, boolean isTwo) {
+            this.data = data;
+            this.encoded = encoded;
+            this.from = from;
+            this.to = to;
+            this.isTwo = isTwo;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= leafSize) {
+                if (isTwo) {
+                    searchTwo(data, encoded, from, to, result);
+                }
+                else {
+                    search(data, encoded, from, to, result);
+                }
+            }
+            else {
+                final int middle = (from + to) >>> 1;
+                final SearchTask left = new SearchTask(data, encoded, from, middle, isTwo);
+                final SearchTask right = new SearchTask(data, encoded, middle, to, isTwo);
+                invokeAll(left, right);
+                // left range holds lesser indexes, so it wins ties
+                final BmuResult leftResult = left.result;
+                final BmuResult rightResult = right.result;
+                if (!isTwo) {
+                    final BmuResult winner = rightResult.getDistance() < leftResult.getDistance()
+                            ? rightResult : leftResult;
+                    result.set(winner.getIndex(), winner.getDistance());
+                }
+                else if (rightResult.getDistance() < leftResult.getDistance()) {
+                    // the second unit is either the left winner or the right second one
+                    final boolean isRightSecond = rightResult.getSecondIndex() >= 0
+                            && rightResult.getSecondDistance() < leftResult.getDistance();
+                    result.set(rightResult.getIndex(), rightResult.getDistance(),
+                            isRightSecond ? rightResult.getSecondIndex() : leftResult.getIndex(),
+                            isRightSecond ? rightResult.getSecondDistance() : leftResult.getDistance());
+                }
+                else {
+                    // the second unit is either the left second one or the right winner
+                    final boolean isRightSecond = leftResult.getSecondIndex() < 0
+                            || rightResult.getDistance() < leftResult.getSecondDistance();
+                    result.set(leftResult.getIndex(), leftResult.getDistance(),
+                            isRightSecond ? rightResult.getIndex() : leftResult.getSecondIndex(),
+                            isRightSecond ? rightResult.getDistance() : leftResult.getSecondDistance());
+                }
+            }
+        }
+    }
+
+    /**
+     * Factory for a parallel BMU search in the common fork-join pool
+     * with the default sequential threshold.
+     * @author atta_troll
+     *
+     */
+    public static class Factory implements BmuSearchFactory<ParallelBmuSearch> {
+
+        @Override
+        public ParallelBmuSearch produceBmuSearch(List<AbstractNeuron> neurons,
+                DistanceFunction distanceFunction, SomTopology topology) {
+            return new ParallelBmuSearch(neurons, distanceFunction, ForkJoinPool.commonPool());
+        }
+    }
+}
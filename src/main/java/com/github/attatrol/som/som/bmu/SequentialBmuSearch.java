@@ -0,0 +1,172 @@
+package com.github.attatrol.som.som.bmu;
+
+import java.util.List;
+
+import com.github.attatrol.preprocessing.distance.DistanceFunction;
+import com.github.attatrol.som.som.distance.ColumnwiseDistanceFunction;
+import com.github.attatrol.som.som.distance.EncodedDistanceFunction;
+import com.github.attatrol.som.som.encoding.EncodedRecord;
+import com.github.attatrol.som.som.neuron.AbstractNeuron;
+import com.github.attatrol.som.som.neuron.EncodedFuzzyNeuron;
+import com.github.attatrol.som.som.topology.SomTopology;
+
+/**
+ * Classic BMU search, scans all neurons one by one. If distance function
+ * is {@link ColumnwiseDistanceFunction}, evaluation of a neuron is abandoned
+ * as soon as it is farther than the current best one. If neurons are
+ * {@link EncodedFuzzyNeuron} and the distance function may be encoded, encoded
+ * records are compared with primitive weights, boxed weights are not read.
+ * @author atta_troll
+ *
+ */
+public class SequentialBmuSearch implements BmuSearch {
+
+    /**
+     * Neurons of SOM.
+     */
+    protected final List<AbstractNeuron> neurons;
+
+    /**
+     * Distance between neuron weights and records.
+     */
+    protected final DistanceFunction distanceFunction;
+
+    /**
+     * The same distance function if it may be abandoned early, null otherwise.
+     */
+    private final ColumnwiseDistanceFunction columnwiseDistanceFunction;
+
+    /**
+     * The same distance function for encoded records, null if neurons can't be searched by them.
+     */
+    private final EncodedDistanceFunction encodedDistanceFunction;
+
+    /**
+     * Default ctor.
+     * @param neurons neurons of SOM, the list must provide fast random access
+     * @param distanceFunction distance function
+     */
+    public SequentialBmuSearch(List<AbstractNeuron> neurons, DistanceFunction distanceFunction) {
+        this.neurons = neurons;
+        this.distanceFunction = distanceFunction;
+        columnwiseDistanceFunction = distanceFunction instanceof ColumnwiseDistanceFunction
+                ? (ColumnwiseDistanceFunction) distanceFunction : null;
+        encodedDistanceFunction = EncodedFuzzyNeuron.encodeDistance(distanceFunction, neurons);
+    }
+
+    @Override
+    public void findBmu(Object[] data, BmuResult result) {
+        findBmu(data, null, -1, result);
+    }
+
+    @Override
+    public void findBmu(Object[] data, int previousBmu, BmuResult result) {
+        findBmu(data, null, previousBmu, result);
+    }
+
+    @Override
+    public void findTwoBmus(Object[] data, int previousBmu, BmuResult result) {
+        findTwoBmus(data, null, previousBmu, result);
+    }
+
+    @Override
+    public void findBmu(Object[] data, EncodedRecord encoded, int previousBmu, BmuResult result) {
+        search(data, encoded, 0, neurons.size(), result);
+    }
+
+    @Override
+    public void findTwoBmus(Object[] data, EncodedRecord encoded, int previousBmu, BmuResult result) {
+        searchTwo(data, encoded, 0, neurons.size(), result);
+    }
+
+    @Override
+    public boolean isEncodedRecordUsed() {
+        return encodedDistanceFunction != null;
+    }
+
+    /**
+     * Scans neurons with indexes from range [from, to). If several neurons are
+     * equally close to the vector, the one with the least index wins.
+     * @param data incoming vector
+     * @param encoded the same vector in the primitive layout of neurons, null if unknown
+     * @param from first index of the range, inclusive
+     * @param to last index of the range, exclusive
+     * @param result holder where BMU index and distance are stored
+     */
+    public void search(Object[] data, EncodedRecord encoded, int from, int to, BmuResult result) {
+        int bmuIndex = from;
+        double bmuDistance = calculateDistance(from, data, encoded, Double.POSITIVE_INFINITY);
+        for (int i = from + 1; i < to; i++) {
+            final double distance = calculateDistance(i, data, encoded, bmuDistance);
+            if (distance < bmuDistance) {
+                bmuDistance = distance;
+                bmuIndex = i;
+            }
+        }
+        result.set(bmuIndex, bmuDistance);
+    }
+
+    /**
+     * Scans neurons with indexes from range [from, to) for BMU and the second best
+     * matching unit. Ties are broken in favor of the least index.
+     * @param data incoming vector
+     * @param encoded the same vector in the primitive layout of neurons, null if unknown
+     * @param from first index of the range, inclusive
+     * @param to last index of the range, exclusive
+     * @param result holder where indexes and distances of both units are stored
+     */
+    public void searchTwo(Object[] data, EncodedRecord encoded, int from, int to, BmuResult result) {
+        int bmuIndex = from;
+        double bmuDistance = calculateDistance(from, data, encoded, Double.POSITIVE_INFINITY);
+        int secondIndex = -1;
+        double secondDistance = Double.POSITIVE_INFINITY;
+        for (int i = from + 1; i < to; i++) {
+            final double distance = calculateDistance(i, data, encoded, secondDistance);
+            if (distance < bmuDistance) {
+                secondIndex = bmuIndex;
+                secondDistance = bmuDistance;
+                bmuDistance = distance;
+                bmuIndex = i;
+            }
+            else if (distance < secondDistance || secondIndex < 0) {
+                secondDistance = distance;
+                secondIndex = i;
+            }
+        }
+        result.set(bmuIndex, bmuDistance, secondIndex, secondDistance);
+    }
+
+    /**
+     * Calculates distance between neuron weights and incoming vector unless it
+     * exceeds the bound. Encoded vector is used if neurons may be searched by it.
+     * @param neuronIndex index of the neuron
+     * @param data incoming vector
+     * @param encoded the same vector in the primitive layout of neurons, null if unknown
+     * @param bound distance to the current best neuron
+     * @return distance if it doesn't exceed the bound, otherwise distance or any
+     *         value greater than the bound
+     */
+    protected double calculateDistance(int neuronIndex, Object[] data, EncodedRecord encoded, double bound) {
+        if (encoded != null && encodedDistanceFunction != null) {
+            return ((EncodedFuzzyNeuron) neurons.get(neuronIndex)).calculateDistance(encodedDistanceFunction,
+                    encoded, bound);
+        }
+        final Object[] weights = neurons.get(neuronIndex).getWeights();
+        return columnwiseDistanceFunction != null ? columnwiseDistanceFunction.calculate(weights, data, bound)
+                : distanceFunction.calculate(weights, data);
+    }
+
+    /**
+     * Factory for a sequential BMU search.
+     * @author atta_troll
+     *
+     */
+    public static class Factory implements BmuSearchFactory<SequentialBmuSearch> {
+
+        @Override
+        public SequentialBmuSearch produceBmuSearch(List<AbstractNeuron> neurons,
+                DistanceFunction distanceFunction, SomTopology topology) {
+            return new SequentialBmuSearch(neurons, distanceFunction);
+        }
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * Strategies of the best matching unit (BMU) search are placed here.
+ */
+
+package com.github.attatrol.som.som.bmu;
@@ -0,0 +1,40 @@
+package com.github.attatrol.som.som.distance;
+
+import com.github.attatrol.preprocessing.distance.DistanceFunction;
+import com.github.attatrol.som.som.encoding.RecordEncoder;
+
+/**
+ * Distance function which is accumulated column by column, so its evaluation
+ * may be abandoned as soon as the partial result exceeds a bound. BMU search
+ * uses the distance to the current best neuron as the bound, so most neurons
+ * are rejected after a few columns.
+ * @author atta_troll
+ *
+ */
+public interface ColumnwiseDistanceFunction extends DistanceFunction {
+
+    /**
+     * Calculates distance between 2 vectors unless it exceeds the bound.
+     * Evaluation is never abandoned if distance is equal to the bound.
+     * @param vector1 1st vector
+     * @param vector2 2nd vector
+     * @param bound max distance of interest
+     * @return distance if it doesn't exceed the bound,
+     *         otherwise any value greater than the bound
+     */
+    double calculate(Object[] vector1, Object[] vector2, double bound);
+
+    @Override
+    default double calculate(Object[] vector1, Object[] vector2) {
+        return calculate(vector1, vector2, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Produces the same distance for weights and records in the primitive layout.
+     * @param encoder encoder of records
+     * @return encoded distance, null if this can't be evaluated on encoded records
+     */
+    default EncodedDistanceFunction encode(RecordEncoder encoder) {
+        return null;
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.attatrol.som.som.distance;
+
+import com.github.attatrol.som.som.encoding.EncodedRecord;
+
+/**
+ * Distance between primitive neuron weights and an encoded record, it reads
+ * no boxed tokens. It is equal to the distance function it is produced from,
+ * see {@link ColumnwiseDistanceFunction#encode(com.github.attatrol.som.som.encoding.RecordEncoder)}.
+ * @author atta_troll
+ *
+ */
+@FunctionalInterface
+public interface EncodedDistanceFunction {
+
+    /**
+     * Calculates distance between weights and record unless it exceeds the bound.
+     * @param numericWeights weights of numeric slots
+     * @param categoricalWeights codes of weights of categorical slots
+     * @param record encoded record
+     * @param bound max distance of interest
+     * @return distance if it doesn't exceed the bound,
+     *         otherwise any value greater than the bound
+     */
+    double calculate(double[] numericWeights, int[] categoricalWeights, EncodedRecord record, double bound);
+}
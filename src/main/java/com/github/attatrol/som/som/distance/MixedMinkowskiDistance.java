@@ -0,0 +1,277 @@
+package com.github.attatrol.som.som.distance;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
+import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
+import com.github.attatrol.som.datasource.DatasetProfile;
+import com.github.attatrol.som.datasource.TokenDataSourceCache;
+import com.github.attatrol.som.som.encoding.RecordEncoder;
+import com.github.attatrol.som.som.initializers.SampleFrequencyCalculator;
+
+/**
+ * Minkowski distance for mixed data:
+ * <code>(sum(d<sub>i</sub><sup>p</sup>) / n)<sup>1/p</sup></code>,
+ * where <code>d<sub>i</sub></code> is a column distance: absolute difference divided
+ * by column range for numerical tokens, 0 for equal and 1 for different
+ * categorical tokens. With p = 1 it is Gower distance with range-normalized numerical
+ * and simple matching categorical similarities.<br/>
+ * Missing tokens are equal to each other only. Columns of missing type are ignored.<br/>
+ * Columns are evaluated in descending order of their expected contribution,
+ * so evaluation is abandoned early. The same distance is evaluated on encoded records,
+ * see {@link #encode(RecordEncoder)}.
+ * @author atta_troll
+ *
+ */
+public class MixedMinkowskiDistance implements ColumnwiseDistanceFunction {
+
+    /**
+     * Relative tolerance of the bound comparison, it prevents abandoning
+     * due to rounding when distance is equal to the bound.
+     */
+    private static final double BOUND_TOLERANCE = 1E-9;
+
+    private final double p;
+
+    /**
+     * Indexes of evaluated columns in order of evaluation.
+     */
+    private final int[] columnOrder;
+
+    /**
+     * Multipliers of numerical differences, NaN for categorical columns.
+     */
+    private final double[] scales;
+
+    /**
+     * Number of evaluated columns.
+     */
+    private final int columnCount;
+
+    private final TokenType[] tokenTypes;
+
+    /**
+     * Default ctor.
+     * @param tokenTypes token types of a record
+     * @param ranges ranges of numerical columns, values for other columns are ignored
+     * @param columnOrder indexes of columns in order of evaluation, it must contain
+     *        all columns whose type is not missing
+     * @param p exponent, not less than 1
+     * @throws IllegalArgumentException if p is less than 1 or column order is inconsistent
+     *         with token types
+     */
+    public MixedMinkowskiDistance(TokenType[] tokenTypes, double[] ranges, int[] columnOrder, double p)
+            throws IllegalArgumentException {
+        if (!(p >= 1.)) {
+            throw new IllegalArgumentException("Exponent is less than 1");
+        }
+        int supportedCount = 0;
+        for (TokenType tokenType : tokenTypes) {
+            if (tokenType != TokenType.MISSING) {
+                supportedCount++;
+            }
+        }
+        final boolean[] isOrdered = new boolean[tokenTypes.length];
+        for (int column : columnOrder) {
+            if (column < 0 || column >= tokenTypes.length || tokenTypes[column] == TokenType.MISSING
+                    || isOrdered[column]) {
+                throw new IllegalArgumentException("Column order is inconsistent with token types");
+            }
+            isOrdered[column] = true;
+        }
+        if (columnOrder.length != supportedCount) {
+            throw new IllegalArgumentException("Column order is inconsistent with token types");
+        }
+        this.p = p;
+        this.tokenTypes = tokenTypes.clone();
+        this.columnOrder = columnOrder.clone();
+        columnCount = columnOrder.length;
+        scales = new double[tokenTypes.length];
+        for (int i = 0; i < tokenTypes.length; i++) {
+            if (SampleFrequencyCalculator.isNumericalTokenType(tokenTypes[i])) {
+                scales[i] = ranges[i] > 0. ? 1. / ranges[i] : 0.;
+            }
+            else {
+                scales[i] = Double.NaN;
+            }
+        }
+    }
+
+    /**
+     * Creates distance for a data source. Column ranges and expected column
+     * distances are calculated from the data source profile.
+     * @param dataSource data source
+     * @param tokenTypes token types of a record
+     * @param p exponent, not less than 1
+     * @return distance
+     * @throws IOException on data source i/o error
+     * @throws IllegalArgumentException if p is less than 1
+     */
+    public static MixedMinkowskiDistance produceDistance(AbstractTokenDataSource<?> dataSource,
+            TokenType[] tokenTypes, double p) throws IOException, IllegalArgumentException {
+        final DatasetProfile profile = TokenDataSourceCache.getProfile(dataSource, tokenTypes);
+        final int recordLength = tokenTypes.length;
+        final double[] ranges = new double[recordLength];
+        final double[] contributions = new double[recordLength];
+        final Integer[] columns = new Integer[recordLength];
+        int columnCount = 0;
+        for (int i = 0; i < recordLength; i++) {
+            if (tokenTypes[i] == TokenType.MISSING) {
+                continue;
+            }
+            columns[columnCount++] = i;
+            if (SampleFrequencyCalculator.isNumericalTokenType(tokenTypes[i])) {
+                ranges[i] = profile.getMax(i) > profile.getMin(i) ? profile.getMax(i) - profile.getMin(i) : 0.;
+                if (ranges[i] > 0.) {
+                    // distance between 2 random records is about sqrt(2) standard deviations
+                    final double deviation = Math.sqrt(2. * profile.getVariance(i)) / ranges[i];
+                    contributions[i] = Math.pow(deviation, p);
+                }
+            }
+            else {
+                // probability that 2 random records differ
+                final long[] occurrences = profile.getOccurrences(i);
+                double sameProbability = 0.;
+                for (long occurrence : occurrences) {
+                    final double frequency = ((double) occurrence) / profile.getRecordCount();
+                    sameProbability += frequency * frequency;
+                }
+                contributions[i] = 1. - sameProbability;
+            }
+        }
+        final Integer[] orderedColumns = Arrays.copyOf(columns, columnCount);
+        Arrays.sort(orderedColumns, Comparator.comparingDouble((Integer column) -> contributions[column])
+                .reversed());
+        final int[] columnOrder = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columnOrder[i] = orderedColumns[i];
+        }
+        return new MixedMinkowskiDistance(tokenTypes, ranges, columnOrder, p);
+    }
+
+    @Override
+    public double calculate(Object[] vector1, Object[] vector2, double bound) {
+        final double limit = calculateLimit(bound);
+        double sum = 0.;
+        for (int column : columnOrder) {
+            sum += power(calculateColumnDistance(column, vector1[column], vector2[column]));
+            if (sum > limit) {
+                return Double.POSITIVE_INFINITY;
+            }
+        }
+        return calculateMean(sum);
+    }
+
+    /**
+     * Integer weights are rounded exactly like boxed weights of neurons are.
+     */
+    @Override
+    public EncodedDistanceFunction encode(RecordEncoder encoder) {
+        final int[] numericSlots = new int[tokenTypes.length];
+        final int[] categoricalSlots = new int[tokenTypes.length];
+        Arrays.fill(numericSlots, -1);
+        Arrays.fill(categoricalSlots, -1);
+        for (int i = 0; i < encoder.getNumericCount(); i++) {
+            numericSlots[encoder.getNumericColumn(i)] = i;
+        }
+        for (int i = 0; i < encoder.getCategoricalCount(); i++) {
+            categoricalSlots[encoder.getCategoricalColumn(i)] = i;
+        }
+        final int[] slots = new int[columnCount];
+        final boolean[] isNumeric = new boolean[columnCount];
+        final boolean[] isRounded = new boolean[columnCount];
+        final double[] slotScales = new double[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            final int column = columnOrder[i];
+            if (numericSlots[column] >= 0 && !Double.isNaN(scales[column])) {
+                slots[i] = numericSlots[column];
+                isNumeric[i] = true;
+                isRounded[i] = tokenTypes[column] == TokenType.INTEGER;
+                slotScales[i] = scales[column];
+            }
+            else if (categoricalSlots[column] >= 0 && Double.isNaN(scales[column])) {
+                slots[i] = categoricalSlots[column];
+            }
+            else {
+                return null;
+            }
+        }
+        return (numericWeights, categoricalWeights, record, bound) -> {
+            final double limit = calculateLimit(bound);
+            final double[] numericValues = record.getNumericValues();
+            final int[] categoricalCodes = record.getCategoricalCodes();
+            double sum = 0.;
+            for (int i = 0; i < slots.length; i++) {
+                final int slot = slots[i];
+                if (isNumeric[i]) {
+                    final double weight = isRounded[i] ? Math.round(numericWeights[slot]) : numericWeights[slot];
+                    sum += power(Math.abs(weight - numericValues[slot]) * slotScales[i]);
+                }
+                else if (categoricalWeights[slot] != categoricalCodes[slot]) {
+                    sum += 1.;
+                }
+                if (sum > limit) {
+                    return Double.POSITIVE_INFINITY;
+                }
+            }
+            return calculateMean(sum);
+        };
+    }
+
+    /**
+     * @return exponent
+     */
+    public double getP() {
+        return p;
+    }
+
+    /**
+     * @return indexes of columns in order of evaluation
+     */
+    public int[] getColumnOrder() {
+        return columnOrder.clone();
+    }
+
+    private double calculateColumnDistance(int column, Object token1, Object token2) {
+        if (token1 == null || token2 == null) {
+            return token1 == token2 ? 0. : 1.;
+        }
+        final double scale = scales[column];
+        if (Double.isNaN(scale)) {
+            return token1.equals(token2) ? 0. : 1.;
+        }
+        return Math.abs(((Number) token1).doubleValue() - ((Number) token2).doubleValue()) * scale;
+    }
+
+    /**
+     * @param bound max distance of interest
+     * @return max sum of column distance powers of interest
+     */
+    private double calculateLimit(double bound) {
+        return bound == Double.POSITIVE_INFINITY ? Double.POSITIVE_INFINITY
+                : power(bound) * columnCount * (1. + BOUND_TOLERANCE);
+    }
+
+    /**
+     * @param sum sum of column distance powers
+     * @return distance
+     */
+    private double calculateMean(double sum) {
+        if (columnCount == 0) {
+            return 0.;
+        }
+        final double mean = sum / columnCount;
+        return p == 1. ? mean : p == 2. ? Math.sqrt(mean) : Math.pow(mean, 1. / p);
+    }
+
+    private double power(double value) {
+        return p == 1. ? value : p == 2. ? value * value : Math.pow(value, p);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Mixed Minkowski distance, p = %f", p);
+    }
+}
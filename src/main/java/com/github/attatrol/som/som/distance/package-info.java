@@ -0,0 +1,5 @@
+/**
+ * Distance functions that SOM may evaluate column by column are placed here.
+ */
+
+package com.github.attatrol.som.som.distance;
@@ -0,0 +1,75 @@
+package com.github.attatrol.som.som.encoding;
+
+import com.github.attatrol.som.datasource.CachedTokenDataSource;
+
+/**
+ * Fills encoded records straight from columns of {@link CachedTokenDataSource},
+ * tokens are neither restored nor boxed. Column codes of the cache are translated
+ * to dictionary codes once, when this is created.
+ * Encoder is immutable and thread-safe while the cache is open.
+ * @author atta_troll
+ *
+ */
+public final class CachedRecordEncoder {
+
+    private final RecordEncoder encoder;
+
+    private final CachedTokenDataSource dataSource;
+
+    /**
+     * Dictionary codes of every categorical slot indexed by column codes of the cache.
+     */
+    private final int[][] codeTranslations;
+
+    /**
+     * Default ctor.
+     * @param encoder encoder of records
+     * @param dataSource cached data source with the same token types
+     * @throws IllegalArgumentException if a column of the cache doesn't match its slot
+     */
+    public CachedRecordEncoder(RecordEncoder encoder, CachedTokenDataSource dataSource)
+            throws IllegalArgumentException {
+        this.encoder = encoder;
+        this.dataSource = dataSource;
+        codeTranslations = new int[encoder.getCategoricalCount()][];
+        for (int i = 0; i < codeTranslations.length; i++) {
+            final Object[] values = dataSource.getColumnValues(encoder.getCategoricalColumn(i));
+            final CategoricalDictionary dictionary = encoder.getDictionary(i);
+            codeTranslations[i] = new int[values.length];
+            for (int code = 0; code < values.length; code++) {
+                codeTranslations[i][code] = dictionary.getCode(values[code]);
+            }
+        }
+    }
+
+    /**
+     * Encodes a cached record, allocates nothing. Source of the encoded record is null.
+     * @param ordinal ordinal number of the record in the cache
+     * @param target record to be filled
+     * @throws IndexOutOfBoundsException if there is no such record
+     * @throws IllegalArgumentException if a numeric token is null
+     */
+    public void encode(long ordinal, EncodedRecord target) throws IndexOutOfBoundsException,
+            IllegalArgumentException {
+        final double[] numericValues = target.getNumericValues();
+        for (int i = 0; i < numericValues.length; i++) {
+            final int column = encoder.getNumericColumn(i);
+            if (dataSource.isNull(ordinal, column)) {
+                throw new IllegalArgumentException("Numeric token is null in column " + column);
+            }
+            numericValues[i] = dataSource.getNumber(ordinal, column);
+        }
+        final int[] categoricalCodes = target.getCategoricalCodes();
+        for (int i = 0; i < categoricalCodes.length; i++) {
+            categoricalCodes[i] = codeTranslations[i][dataSource.getCode(ordinal, encoder.getCategoricalColumn(i))];
+        }
+        target.setSource(null);
+    }
+
+    /**
+     * @return cached data source
+     */
+    public CachedTokenDataSource getDataSource() {
+        return dataSource;
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.attatrol.som.som.encoding;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable dictionary of a categorical column, maps every value to a dense
+ * int code and holds sample frequency of every value.
+ * @author atta_troll
+ *
+ */
+public final class CategoricalDictionary {
+
+    /**
+     * Code of a value absent in the dictionary.
+     */
+    public static final int UNKNOWN_CODE = -1;
+
+    /**
+     * Values ordered by their codes.
+     */
+    private final Object[] values;
+
+    /**
+     * Sample frequencies ordered by codes.
+     */
+    private final double[] frequencies;
+
+    private final Map<Object, Integer> codes;
+
+    /**
+     * Default ctor.
+     * @param values distinct values of a column, index of a value becomes its code
+     * @param frequencies sample frequencies of the values
+     * @throws IllegalArgumentException if values are not distinct or arrays lengths differ
+     */
+    public CategoricalDictionary(Object[] values, double[] frequencies) throws IllegalArgumentException {
+        if (values.length != frequencies.length) {
+            throw new IllegalArgumentException("Values and frequencies lengths differ");
+        }
+        this.values = values.clone();
+        this.frequencies = frequencies.clone();
+        codes = new HashMap<>(values.length * 2);
+        for (int i = 0; i < values.length; i++) {
+            if (codes.put(values[i], i) != null) {
+                throw new IllegalArgumentException("Duplicate value in dictionary: " + values[i]);
+            }
+        }
+    }
+
+    /**
+     * @param value some value
+     * @return code of the value or {@link #UNKNOWN_CODE}
+     */
+    public int getCode(Object value) {
+        final Integer code = codes.get(value);
+        return code == null ? UNKNOWN_CODE : code;
+    }
+
+    /**
+     * @param code value code
+     * @return value
+     */
+    public Object getValue(int code) {
+        return values[code];
+    }
+
+    /**
+     * @param code value code
+     * @return sample frequency of the value
+     */
+    public double getFrequency(int code) {
+        return frequencies[code];
+    }
+
+    /**
+     * @return number of distinct values
+     */
+    public int size() {
+        return values.length;
+    }
+}
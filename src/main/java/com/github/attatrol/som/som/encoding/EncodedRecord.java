@@ -0,0 +1,66 @@
+package com.github.attatrol.som.som.encoding;
+
+/**
+ * Record in primitive layout: FLOAT and INTEGER tokens are packed into a double array,
+ * categorical tokens are replaced with their dictionary codes. Instance is mutable
+ * and intended to be reused, see {@link RecordEncoder#encode(Object[], EncodedRecord)}.
+ * @author atta_troll
+ *
+ */
+public final class EncodedRecord {
+
+    private final double[] numericValues;
+
+    private final int[] categoricalCodes;
+
+    /**
+     * Original record data.
+     */
+    private Object[] source;
+
+    /**
+     * Default ctor.
+     * @param numericCount number of numeric tokens
+     * @param categoricalCount number of categorical tokens
+     */
+    public EncodedRecord(int numericCount, int categoricalCount) {
+        numericValues = new double[numericCount];
+        categoricalCodes = new int[categoricalCount];
+    }
+
+    /**
+     * @return numeric tokens ordered by their numeric slots, not a copy
+     */
+    public double[] getNumericValues() {
+        return numericValues;
+    }
+
+    /**
+     * @return codes of categorical tokens ordered by their categorical slots, not a copy
+     */
+    public int[] getCategoricalCodes() {
+        return categoricalCodes;
+    }
+
+    /**
+     * @return original record data, null if record is read straight from a cache,
+     *         see {@link CachedRecordEncoder}
+     */
+    public Object[] getSource() {
+        return source;
+    }
+
+    /**
+     * Copies all values of another record of the same size, allocates nothing.
+     * @param other encoded record
+     */
+    public void setValues(EncodedRecord other) {
+        System.arraycopy(other.numericValues, 0, numericValues, 0, numericValues.length);
+        System.arraycopy(other.categoricalCodes, 0, categoricalCodes, 0, categoricalCodes.length);
+        source = other.source;
+    }
+
+    void setSource(Object[] source) {
+        this.source = source;
+    }
+}
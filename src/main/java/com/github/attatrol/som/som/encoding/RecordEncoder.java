@@ -0,0 +1,156 @@
+package com.github.attatrol.som.som.encoding;
+
+import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
+import com.github.attatrol.som.som.initializers.SampleFrequencyCalculator;
+
+/**
+ * Converts records to the primitive layout. Every numeric column gets a slot in
+ * {@link EncodedRecord#getNumericValues()}, every categorical column gets a slot
+ * in {@link EncodedRecord#getCategoricalCodes()}, other columns are skipped.
+ * Encoder is immutable and thread-safe.
+ * @author atta_troll
+ *
+ */
+public final class RecordEncoder {
+
+    private final TokenType[] tokenTypes;
+
+    /**
+     * Column index of every numeric slot.
+     */
+    private final int[] numericColumns;
+
+    /**
+     * Column index of every categorical slot.
+     */
+    private final int[] categoricalColumns;
+
+    /**
+     * Dictionary of every categorical slot.
+     */
+    private final CategoricalDictionary[] dictionaries;
+
+    /**
+     * Default ctor.
+     * @param tokenTypes token types of columns
+     * @param columnDictionaries dictionaries of columns, entries of non-categorical columns are ignored
+     * @throws IllegalArgumentException if a categorical column has no dictionary
+     */
+    public RecordEncoder(TokenType[] tokenTypes, CategoricalDictionary[] columnDictionaries)
+            throws IllegalArgumentException {
+        this.tokenTypes = tokenTypes;
+        int numericCount = 0;
+        int categoricalCount = 0;
+        for (TokenType tokenType : tokenTypes) {
+            if (SampleFrequencyCalculator.isNumericalTokenType(tokenType)) {
+                numericCount++;
+            }
+            else if (SampleFrequencyCalculator.isCategoricalTokenType(tokenType)) {
+                categoricalCount++;
+            }
+        }
+        numericColumns = new int[numericCount];
+        categoricalColumns = new int[categoricalCount];
+        dictionaries = new CategoricalDictionary[categoricalCount];
+        numericCount = 0;
+        categoricalCount = 0;
+        for (int i = 0; i < tokenTypes.length; i++) {
+            if (SampleFrequencyCalculator.isNumericalTokenType(tokenTypes[i])) {
+                numericColumns[numericCount++] = i;
+            }
+            else if (SampleFrequencyCalculator.isCategoricalTokenType(tokenTypes[i])) {
+                if (columnDictionaries[i] == null) {
+                    throw new IllegalArgumentException("No dictionary for categorical column " + i);
+                }
+                categoricalColumns[categoricalCount] = i;
+                dictionaries[categoricalCount++] = columnDictionaries[i];
+            }
+        }
+    }
+
+    /**
+     * @return new empty record of a proper size
+     */
+    public EncodedRecord createRecord() {
+        return new EncodedRecord(numericColumns.length, categoricalColumns.length);
+    }
+
+    /**
+     * Encodes record data, allocates nothing.
+     * @param data record data
+     * @param target record to be filled
+     */
+    public void encode(Object[] data, EncodedRecord target) {
+        final double[] numericValues = target.getNumericValues();
+        for (int i = 0; i < numericColumns.length; i++) {
+            final int column = numericColumns[i];
+            if (tokenTypes[column] == TokenType.INTEGER) {
+                numericValues[i] = (Integer) data[column];
+            }
+            else {
+                numericValues[i] = (Double) data[column];
+            }
+        }
+        final int[] categoricalCodes = target.getCategoricalCodes();
+        for (int i = 0; i < categoricalColumns.length; i++) {
+            categoricalCodes[i] = dictionaries[i].getCode(data[categoricalColumns[i]]);
+        }
+        target.setSource(data);
+    }
+
+    /**
+     * Encodes record data into a new record.
+     * @param data record data
+     * @return encoded record
+     */
+    public EncodedRecord encode(Object[] data) {
+        final EncodedRecord record = createRecord();
+        encode(data, record);
+        return record;
+    }
+
+    /**
+     * @return token types of columns
+     */
+    public TokenType[] getTokenTypes() {
+        return tokenTypes;
+    }
+
+    /**
+     * @return number of numeric slots
+     */
+    public int getNumericCount() {
+        return numericColumns.length;
+    }
+
+    /**
+     * @return number of categorical slots
+     */
+    public int getCategoricalCount() {
+        return categoricalColumns.length;
+    }
+
+    /**
+     * @param slot numeric slot
+     * @return column index of the slot
+     */
+    public int getNumericColumn(int slot) {
+        return numericColumns[slot];
+    }
+
+    /**
+     * @param slot categorical slot
+     * @return column index of the slot
+     */
+    public int getCategoricalColumn(int slot) {
+        return categoricalColumns[slot];
+    }
+
+    /**
+     * @param slot categorical slot
+     * @return dictionary of the slot
+     */
+    public CategoricalDictionary getDictionary(int slot) {
+        return dictionaries[slot];
+    }
+}
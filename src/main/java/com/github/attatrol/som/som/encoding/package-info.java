@@ -0,0 +1,5 @@
+/**
+ * Primitive encoding of records and neuron weights is placed here.
+ */
+
+package com.github.attatrol.som.som.encoding;
@@ -3,14 +3,15 @@ package com.github.attatrol.som.som.initializers;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.Random;
 
 import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
 import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
 import com.github.attatrol.preprocessing.distance.DistanceFunction;
 import com.github.attatrol.preprocessing.ui.TokenDataSourceAndMisc;
+import com.github.attatrol.som.datasource.TokenDataSourceCache;
 import com.github.attatrol.som.som.Som;
+import com.github.attatrol.som.som.encoding.CategoricalDictionary;
 import com.github.attatrol.som.som.functions.learning.LearningFunction;
 import com.github.attatrol.som.som.functions.neighbourhood.NeighborhoodFunction;
 import com.github.attatrol.som.som.neuron.AbstractNeuron;
@@ -20,7 +21,9 @@ import com.github.attatrol.som.som.topology.SomTopology;
 
 /**
  * This initializer randomly picks some vector from data source and uses its values
- * to initialize neurons' weights.
+ * to initialize neurons' weights. Vectors of all neurons are picked in a single pass
+ * by {@link ReservoirSampler}, so neurons get distinct vectors while data source has enough
+ * distinct records.
  * <b>Must be used with non-empty data sources, data set must be checked to have at
  * least single record in it before usage of this.</b>
  * @author atta_troll
@@ -28,60 +31,54 @@ import com.github.attatrol.som.som.topology.SomTopology;
  */
 public class RandomRecordsInitializer implements SomInitializer {
 
+    private final boolean isSeeded;
+
+    private final long seed;
+
+    private final int stratificationColumn;
+
+    /**
+     * Default ctor, sampling is neither reproducible nor stratified.
+     */
+    public RandomRecordsInitializer() {
+        isSeeded = false;
+        seed = 0L;
+        stratificationColumn = ReservoirSampler.NO_STRATIFICATION;
+    }
+
+    /**
+     * Creates initializer with reproducible sampling.
+     * @param seed seed of randomizer, the same seed gives the same weights for the same data source
+     * @param stratificationColumn index of categorical column whose values are represented
+     *        proportionally among neurons, or {@link ReservoirSampler#NO_STRATIFICATION}
+     */
+    public RandomRecordsInitializer(long seed, int stratificationColumn) {
+        isSeeded = true;
+        this.seed = seed;
+        this.stratificationColumn = stratificationColumn;
+    }
+
     @Override
     public synchronized Som createSom(TokenDataSourceAndMisc tdsm, DistanceFunction distanceFunction,
             SomTopology topology, NeighborhoodFunction neighborhoodFunction,
             LearningFunction learningFunction, FuzzyNeuronFactory<?> neuronFactory,
             double overMedianWeakFactor, double overMedianStrongFactor) throws IOException {
-        final AbstractTokenDataSource<?> dataSource = tdsm.getTokenDataSource();
-        final long numberOfRecords = getNumberOfRecords(dataSource);
+        final AbstractTokenDataSource<?> dataSource = TokenDataSourceCache.getCachedDataSource(tdsm);
+        final long numberOfRecords = SampleFrequencyCalculator.getDataSourceSize(dataSource);
         final List<Point> neuronPositions = topology.getNeuronPositions();
         final TokenType[] tokenTypes = tdsm.getTokenTypes();
-        final Map<Object, Double>[] sampleFrequencies = SampleFrequencyCalculator
-                .getSampleFrequencies(dataSource, tokenTypes);
+        final CategoricalDictionary[] dictionaries = SampleFrequencyCalculator
+                .getCategoricalDictionaries(dataSource, tokenTypes);
+        final ReservoirSampler sampler = new ReservoirSampler(isSeeded ? new Random(seed) : new Random(),
+                stratificationColumn);
+        final List<Object[]> samples = sampler.sample(dataSource, tokenTypes, neuronPositions.size());
         List<AbstractNeuron> neurons = new ArrayList<>();
-        for (Point position : neuronPositions) {
-            neurons.add(neuronFactory.createNeuron(getRandomData(dataSource,
-                    numberOfRecords), position, tokenTypes, sampleFrequencies));
+        for (int i = 0; i < neuronPositions.size(); i++) {
+            neurons.add(neuronFactory.createNeuron(samples.get(i), neuronPositions.get(i),
+                    tokenTypes, dictionaries));
         }
-        final long dataSourceSize = SampleFrequencyCalculator.getDataSourceSize(dataSource);
-        return new Som(neurons, topology, dataSource, distanceFunction,
-                neighborhoodFunction, learningFunction, dataSourceSize, overMedianWeakFactor,
+        return new Som(neurons, topology, dataSource, dictionaries, distanceFunction,
+                neighborhoodFunction, learningFunction, numberOfRecords, overMedianWeakFactor,
                 overMedianStrongFactor);
     }
-
-    /**
-     * Calculates number of records in data source.
-     * @param dataSource data source
-     * @return number of records in data source
-     * @throws IOException on data source i/o error
-     */
-    private static long getNumberOfRecords(AbstractTokenDataSource<?> dataSource)
-            throws IOException {
-        dataSource.reset();
-        long counter = 0;
-        while (dataSource.hasNext()) {
-            dataSource.next();
-            counter++;
-        }
-        return counter;
-    }
-
-    /**
-     * Randomly chooses record from data source
-     * @param dataSource data source
-     * @param numberOfRecords total number of records in data source
-     * @return a random record
-     * @throws IOException on data source i/o error
-     */
-    private Object[] getRandomData(AbstractTokenDataSource<?> dataSource,
-            long numberOfRecords)
-                    throws IOException {
-        dataSource.reset();
-        long counter = ThreadLocalRandom.current().nextLong(numberOfRecords);
-        while(--counter > 0) {
-            dataSource.next();
-        }
-        return dataSource.next().getData();
-    }
 }
@@ -3,17 +3,17 @@ package com.github.attatrol.som.som.initializers;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
-import java.util.Set;
 
 import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
 import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
 import com.github.attatrol.preprocessing.distance.DistanceFunction;
 import com.github.attatrol.preprocessing.ui.TokenDataSourceAndMisc;
+import com.github.attatrol.som.datasource.DatasetProfile;
+import com.github.attatrol.som.datasource.TokenDataSourceCache;
 import com.github.attatrol.som.som.Som;
+import com.github.attatrol.som.som.encoding.CategoricalDictionary;
 import com.github.attatrol.som.som.functions.learning.LearningFunction;
 import com.github.attatrol.som.som.functions.neighbourhood.NeighborhoodFunction;
 import com.github.attatrol.som.som.neuron.AbstractNeuron;
@@ -40,55 +40,58 @@ public class RandomWeightsInitializer implements SomInitializer {
             double overMedianStrongFactor)
             throws IOException {
         final TokenType[] tokenTypes = tdsm.getTokenTypes();
-        final AbstractTokenDataSource<?> dataSource = tdsm.getTokenDataSource();
+        final AbstractTokenDataSource<?> dataSource = TokenDataSourceCache.getCachedDataSource(tdsm);
         final AbstractRandomValueProducer<?>[] initialValueProducers =
                 getRandomValueProducers(dataSource, tokenTypes);
         final List<Point> neuronPositions = topology.getNeuronPositions();
         final int recordLength = dataSource.getRecordLength();
-        final Map<Object, Double>[] sampleFrequencies = SampleFrequencyCalculator
-                .getSampleFrequencies(dataSource, tokenTypes);
+        final CategoricalDictionary[] dictionaries = SampleFrequencyCalculator
+                .getCategoricalDictionaries(dataSource, tokenTypes);
         List<AbstractNeuron> neurons = new ArrayList<>();
         for (Point position : neuronPositions) {
             Object[] weights = new Object[recordLength];
             for (int i = 0; i < recordLength; i++) {
                 weights[i] = initialValueProducers[i].produceValue();
             }
-            neurons.add(neuronFactory.createNeuron(weights, position, tokenTypes, sampleFrequencies));
+            neurons.add(neuronFactory.createNeuron(weights, position, tokenTypes, dictionaries));
         }
         final long dataSourceSize = SampleFrequencyCalculator.getDataSourceSize(dataSource);
-        return new Som(neurons, topology, dataSource, distanceFunction, neighborhoodFunction,
-                learningFunction, dataSourceSize, overMedianWeakFactor, overMedianStrongFactor);
+        return new Som(neurons, topology, dataSource, dictionaries, distanceFunction,
+                neighborhoodFunction, learningFunction, dataSourceSize, overMedianWeakFactor,
+                overMedianStrongFactor);
     }
 
     /**
-     * Creates random value producers for each token
+     * Creates random value producers for each token out of the data source profile.
      * @param dataSource current data source
      * @param tokenTypes array of token types
      * @return array of random value producers
+     * @throws IOException on i/o data source error
      */
     private AbstractRandomValueProducer<?>[]
-            getRandomValueProducers(AbstractTokenDataSource<?> dataSource, TokenType[] tokenTypes) {
+            getRandomValueProducers(AbstractTokenDataSource<?> dataSource, TokenType[] tokenTypes)
+                    throws IOException {
+        final DatasetProfile profile = TokenDataSourceCache.getProfile(dataSource, tokenTypes);
         final int recordLength = dataSource.getRecordLength();
         AbstractRandomValueProducer<?>[] initialValueProducers =
                 new AbstractRandomValueProducer<?>[recordLength];
         for (int i = 0; i < recordLength; i++) {
             switch (tokenTypes[i]) {
             case INTEGER:
-                initialValueProducers[i] = new IntegerRandomValueProducer(dataSource, i);
+                initialValueProducers[i] = new IntegerRandomValueProducer(profile, i);
                 break;
             case FLOAT:
-                initialValueProducers[i] = new DoubleRandomValueProducer(dataSource, i);
+                initialValueProducers[i] = new DoubleRandomValueProducer(profile, i);
                 break;
             case BINARY:
             case BINARY_DIGITAL:
-                initialValueProducers[i] = new BooleanRandomValueProducer(dataSource, i);
+                initialValueProducers[i] = new BooleanRandomValueProducer();
                 break;
             case CATEGORICAL_STRING:
-                initialValueProducers[i] =
-                        new CategoricalRandomValueProducer<String>(dataSource, i);
+                initialValueProducers[i] = new CategoricalRandomValueProducer(profile, i);
                 break;
             default:
-                initialValueProducers[i] = new StubRandomValueProducer(dataSource, i);
+                initialValueProducers[i] = new StubRandomValueProducer();
                 break;
             }
         }
@@ -103,163 +106,78 @@ public class RandomWeightsInitializer implements SomInitializer {
      */
     private abstract class AbstractRandomValueProducer<V> {
 
-        /**
-         * Current data source.
-         */
-        protected final AbstractTokenDataSource<?> dataSource;
-
-        /**
-         * Token index in record.
-         */
-        protected final int index;
-
         /**
          * Randomizer instance.
          */
         protected final Random random = new Random();
 
-        public AbstractRandomValueProducer(AbstractTokenDataSource<?> dataSource, int index) {
-            this.dataSource = dataSource;
-            this.index = index;
-        }
-
-        public abstract V produceValue() throws IOException;
+        public abstract V produceValue();
     }
 
     /**
-     * Random value producer for any categorical data.
+     * Random value producer for any categorical data,
+     * values are chosen among distinct values of column.
      * @author atta_troll
      *
-     * @param <V> type of categorical data
      */
-    private class CategoricalRandomValueProducer<V> extends AbstractRandomValueProducer<V> {
-
-        private boolean isReady;
+    private class CategoricalRandomValueProducer extends AbstractRandomValueProducer<Object> {
 
-        private List<V> values;
+        private final Object[] values;
 
-        public CategoricalRandomValueProducer(AbstractTokenDataSource<?> dataSource, int index) {
-            super(dataSource, index);
+        public CategoricalRandomValueProducer(DatasetProfile profile, int index) {
+            values = profile.getDistinctValues(index);
         }
 
         @Override
-        public V produceValue() throws IOException {
-            if (!isReady) {
-                prepare();
-            }
-            return values.get(random.nextInt(values.size()));
-        }
-
-        /**
-         * Creates a set of all unique values of target token.
-         * @throws IOException on i/o data source error
-         */
-        @SuppressWarnings("unchecked")
-        private void prepare() throws IOException {
-            Set<V> possibleValues = new HashSet<>();
-            dataSource.reset();
-            while (dataSource.hasNext()) {
-                possibleValues.add((V) dataSource.next().getData()[index]);
-            }
-            values = new ArrayList<>(possibleValues);
+        public Object produceValue() {
+            return values.length == 0 ? null : values[random.nextInt(values.length)];
         }
     }
 
     /**
-     * Random value producer for integer values.
+     * Random value producer for integer values within range of column.
      * @author atta_troll
      *
      */
     private class IntegerRandomValueProducer extends AbstractRandomValueProducer<Integer> {
 
-        private boolean isReady;
-
-        private int minValue;
+        private final int minValue;
 
-        private int maxValue;
+        private final int maxValue;
 
-        public IntegerRandomValueProducer(AbstractTokenDataSource<?> dataSource, int index) {
-            super(dataSource, index);
+        public IntegerRandomValueProducer(DatasetProfile profile, int index) {
+            final boolean hasValues = profile.getValueCount(index) > 0;
+            minValue = hasValues ? (int) profile.getMin(index) : 0;
+            maxValue = hasValues ? (int) profile.getMax(index) : 0;
         }
 
         @Override
-        public Integer produceValue() throws IOException {
-            if (!isReady) {
-                prepare();
-            }
-            Integer result = minValue + random.nextInt(maxValue - minValue + 1);
-            return result;
-        }
-
-        /**
-         * Figures out integer range in data source.
-         * @throws IOException on i/o data source error
-         */
-        private void prepare() throws IOException {
-            dataSource.reset();
-            if (dataSource.hasNext()) {
-                final Integer currentValue = (Integer) dataSource.next().getData()[index];
-                minValue = currentValue;
-                maxValue = currentValue;
-            }
-            while (dataSource.hasNext()) {
-                final Integer currentValue = (Integer) dataSource.next().getData()[index];
-                if (currentValue < minValue) {
-                    minValue = currentValue;
-                }
-                else if (currentValue > maxValue) {
-                    maxValue = currentValue;
-                }
-            }
+        public Integer produceValue() {
+            return (int) (minValue + (long) (random.nextDouble() * ((long) maxValue - minValue + 1)));
         }
     }
 
     /**
-     * Random value producer for double values.
+     * Random value producer for double values within range of column.
      * @author atta_troll
      *
      */
     private class DoubleRandomValueProducer extends AbstractRandomValueProducer<Double> {
 
-        private boolean isReady;
+        private final double minValue;
 
-        private double minValue;
+        private final double maxValue;
 
-        private double maxValue;
-
-        public DoubleRandomValueProducer(AbstractTokenDataSource<?> dataSource, int index) {
-            super(dataSource, index);
+        public DoubleRandomValueProducer(DatasetProfile profile, int index) {
+            final boolean hasValues = profile.getValueCount(index) > 0;
+            minValue = hasValues ? profile.getMin(index) : 0.;
+            maxValue = hasValues ? profile.getMax(index) : 0.;
         }
 
         @Override
-        public Double produceValue() throws IOException {
-            if (!isReady) {
-                prepare();
-            }
+        public Double produceValue() {
             return minValue + random.nextDouble() * (maxValue - minValue);
         }
-
-        /**
-         * Figures out range of double values in data source.
-         * @throws IOException on i/o data source error
-         */
-        private void prepare() throws IOException {
-            dataSource.reset();
-            if (dataSource.hasNext()) {
-                final Double currentValue = (Double) dataSource.next().getData()[index];
-                minValue = currentValue;
-                maxValue = currentValue;
-            }
-            while (dataSource.hasNext()) {
-                final Double currentValue = (Double) dataSource.next().getData()[index];
-                if (currentValue < minValue) {
-                    minValue = currentValue;
-                }
-                else if (currentValue > maxValue) {
-                    maxValue = currentValue;
-                }
-            }
-        }
     }
 
     /**
@@ -269,12 +187,8 @@ public class RandomWeightsInitializer implements SomInitializer {
      */
     private class BooleanRandomValueProducer extends AbstractRandomValueProducer<Boolean> {
 
-        public BooleanRandomValueProducer(AbstractTokenDataSource<?> dataSource, int index) {
-            super(dataSource, index);
-        }
-
         @Override
-        public Boolean produceValue() throws IOException {
+        public Boolean produceValue() {
             return random.nextBoolean();
         }
     }
@@ -286,12 +200,8 @@ public class RandomWeightsInitializer implements SomInitializer {
      */
     private class StubRandomValueProducer extends AbstractRandomValueProducer<Object> {
 
-        public StubRandomValueProducer(AbstractTokenDataSource<?> dataSource, int index) {
-            super(dataSource, index);
-        }
-
         @Override
-        public Object produceValue() throws IOException {
+        public Object produceValue() {
             return null;
         }
 
@@ -0,0 +1,210 @@
+package com.github.attatrol.som.som.initializers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
+import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
+import com.github.attatrol.som.datasource.DatasetProfile;
+import com.github.attatrol.som.datasource.TokenDataSourceCache;
+
+/**
+ * Picks random records of a data source in a single pass (reservoir sampling),
+ * every record has the same chance to be picked.<br/>
+ * Records with equal data are picked at most once while the data source has enough
+ * distinct records, otherwise picked records are repeated.<br/>
+ * Sampling may be stratified by a categorical column: every value of the column gets
+ * a share of sample proportional to its frequency (largest remainder rounding),
+ * records are sampled separately within every share.
+ * @author atta_troll
+ *
+ */
+public final class ReservoirSampler {
+
+    /**
+     * Stratification column index which means plain sampling.
+     */
+    public static final int NO_STRATIFICATION = -1;
+
+    private final Random random;
+
+    private final int stratificationColumn;
+
+    /**
+     * Default ctor.
+     * @param random source of randomness, seeded one makes sampling reproducible
+     * @param stratificationColumn index of categorical column or {@link #NO_STRATIFICATION}
+     */
+    public ReservoirSampler(Random random, int stratificationColumn) {
+        this.random = random;
+        this.stratificationColumn = stratificationColumn;
+    }
+
+    /**
+     * Picks records in random order.
+     * @param dataSource data source
+     * @param tokenTypes token types of columns
+     * @param sampleSize number of picked records
+     * @return data of picked records, every entry is a separate array;
+     *         empty list if data source is empty
+     * @throws IOException on data source i/o error
+     * @throws IllegalArgumentException if sample size is negative
+     *         or stratification column is not categorical
+     */
+    public List<Object[]> sample(AbstractTokenDataSource<?> dataSource, TokenType[] tokenTypes,
+            int sampleSize) throws IOException, IllegalArgumentException {
+        if (sampleSize < 0) {
+            throw new IllegalArgumentException("Negative sample size");
+        }
+        final Map<Object, Reservoir> strata = new HashMap<>();
+        Reservoir commonReservoir = null;
+        if (stratificationColumn == NO_STRATIFICATION) {
+            commonReservoir = new Reservoir(sampleSize);
+        }
+        else {
+            if (stratificationColumn < 0 || stratificationColumn >= tokenTypes.length
+                    || !SampleFrequencyCalculator.isCategoricalTokenType(tokenTypes[stratificationColumn])) {
+                throw new IllegalArgumentException("Stratification column is not categorical");
+            }
+            final DatasetProfile profile = TokenDataSourceCache.getProfile(dataSource, tokenTypes);
+            final Object[] values = profile.getDistinctValues(stratificationColumn);
+            final int[] quotas = calculateQuotas(profile.getOccurrences(stratificationColumn),
+                    profile.getRecordCount(), sampleSize);
+            for (int i = 0; i < values.length; i++) {
+                if (quotas[i] > 0) {
+                    strata.put(values[i], new Reservoir(quotas[i]));
+                }
+            }
+        }
+        dataSource.reset();
+        while (dataSource.hasNext()) {
+            final Object[] data = dataSource.next().getData();
+            final Reservoir reservoir = commonReservoir != null ? commonReservoir
+                    : strata.get(data[stratificationColumn]);
+            if (reservoir != null) {
+                reservoir.offer(data);
+            }
+        }
+        final List<Object[]> picked = new ArrayList<>(sampleSize);
+        if (commonReservoir != null) {
+            commonReservoir.fill(picked);
+        }
+        else {
+            for (Reservoir reservoir : strata.values()) {
+                reservoir.fill(picked);
+            }
+        }
+        if (picked.isEmpty()) {
+            return picked;
+        }
+        // not enough distinct records
+        for (int i = 0; picked.size() < sampleSize; i++) {
+            picked.add(picked.get(i).clone());
+        }
+        Collections.shuffle(picked, random);
+        return picked;
+    }
+
+    /**
+     * Divides sample between strata proportionally to their sizes.
+     * @param sizes sizes of strata
+     * @param total total size
+     * @param sampleSize sample size
+     * @return shares of strata
+     */
+    private static int[] calculateQuotas(long[] sizes, long total, int sampleSize) {
+        final int[] quotas = new int[sizes.length];
+        final double[] remainders = new double[sizes.length];
+        int distributed = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            final double share = ((double) sizes[i]) * sampleSize / total;
+            quotas[i] = (int) share;
+            remainders[i] = share - quotas[i];
+            distributed += quotas[i];
+        }
+        final Integer[] order = new Integer[sizes.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> Double.compare(remainders[j], remainders[i]));
+        for (int i = 0; distributed < sampleSize && i < order.length; i++) {
+            quotas[order[i]]++;
+            distributed++;
+        }
+        return quotas;
+    }
+
+    /**
+     * Reservoir of fixed capacity that keeps records with distinct data.
+     * @author atta_troll
+     *
+     */
+    private class Reservoir {
+
+        private final Object[][] records;
+
+        /**
+         * Data of kept records, used to reject duplicates.
+         */
+        private final Set<List<Object>> keys = new HashSet<>();
+
+        private int size;
+
+        /**
+         * Number of offered records.
+         */
+        private long seen;
+
+        Reservoir(int capacity) {
+            records = new Object[capacity][];
+        }
+
+        /**
+         * Offers a record, it replaces a kept record with probability capacity / seen.
+         * @param data record data
+         */
+        void offer(Object[] data) {
+            seen++;
+            if (records.length == 0) {
+                return;
+            }
+            int slot;
+            if (size < records.length) {
+                slot = size;
+            }
+            else {
+                final long position = (long) (random.nextDouble() * seen);
+                if (position >= records.length) {
+                    return;
+                }
+                slot = (int) position;
+            }
+            // data source may reuse data arrays
+            final Object[] copy = data.clone();
+            if (!keys.add(Arrays.asList(copy))) {
+                return;
+            }
+            if (slot < size) {
+                keys.remove(Arrays.asList(records[slot]));
+            }
+            else {
+                size++;
+            }
+            records[slot] = copy;
+        }
+
+        void fill(List<Object[]> picked) {
+            for (int i = 0; i < size; i++) {
+                picked.add(records[i]);
+            }
+        }
+    }
+}
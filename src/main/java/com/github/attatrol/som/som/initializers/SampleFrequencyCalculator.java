@@ -7,9 +7,15 @@ import java.util.Map;
 
 import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
 import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
+import com.github.attatrol.som.datasource.DatasetProfile;
+import com.github.attatrol.som.datasource.RandomAccessTokenDataSource;
+import com.github.attatrol.som.datasource.TokenDataSourceCache;
+import com.github.attatrol.som.som.encoding.CategoricalDictionary;
 
 /**
  * Calculates sample frequencies of tokens in data set.
+ * Statistics are taken from {@link DatasetProfile} of data source which is
+ * collected once per data source, see {@link TokenDataSourceCache}.
  * 
  * @author atta_troll
  *
@@ -30,49 +36,59 @@ public final class SampleFrequencyCalculator {
      */
     public static Map<Object, Double>[] getSampleFrequencies(AbstractTokenDataSource<?> dataSource,
             TokenType[] types) throws IOException {
-        final int recordLength = dataSource.getRecordLength();
+        final CategoricalDictionary[] dictionaries = getCategoricalDictionaries(dataSource, types);
         @SuppressWarnings("unchecked")
-        final Map<Object, Long>[] occurrencies = new Map[recordLength];
-        for (int i = 0; i < recordLength; i++) {
-            occurrencies[i] = new HashMap<>();
-        }
-        long counter = 0;
-        dataSource.reset();
-        while (dataSource.hasNext()) {
-            Object[] tokens = dataSource.next().getData();
-            for (int i = 0; i < recordLength; i++) {
-                if (isCategoricalTokenType(types[i])) {
-                    final Long occurrence = occurrencies[i].get(tokens[i]);
-                    if (occurrence == null) {
-                        occurrencies[i].put(tokens[i], 1L);
-                    }
-                    else {
-                        occurrencies[i].put(tokens[i], occurrence + 1);
-                    }
+        Map<Object, Double>[] frequencies = new Map[dictionaries.length];
+        for (int i = 0; i < dictionaries.length; i++) {
+            frequencies[i] = new HashMap<>();
+            if (dictionaries[i] != null) {
+                for (int code = 0; code < dictionaries[i].size(); code++) {
+                    frequencies[i].put(dictionaries[i].getValue(code), dictionaries[i].getFrequency(code));
                 }
             }
-            counter++;
         }
-        @SuppressWarnings("unchecked")
-        Map<Object, Double>[] frequencies = new Map[recordLength];
+        return frequencies;
+    }
+
+    /**
+     * Creates dictionaries of categorical tokens out of the data source profile.
+     * Codes are assigned in order of the first occurrence of values.
+     * @param dataSource
+     *        data source
+     * @param types
+     *        token types
+     * @return dictionaries, null for non-categorical tokens
+     * @throws IOException data source i/o error
+     */
+    public static CategoricalDictionary[] getCategoricalDictionaries(AbstractTokenDataSource<?> dataSource,
+            TokenType[] types) throws IOException {
+        final DatasetProfile profile = TokenDataSourceCache.getProfile(dataSource, types);
+        final int recordLength = dataSource.getRecordLength();
+        final CategoricalDictionary[] dictionaries = new CategoricalDictionary[recordLength];
         for (int i = 0; i < recordLength; i++) {
-            frequencies[i] = new HashMap<>();
-            if (counter != 0L) {
-                for (Map.Entry<Object, Long> entry : occurrencies[i].entrySet()) {
-                    frequencies[i].put(entry.getKey(), ((double) entry.getValue()) / counter);
+            if (isCategoricalTokenType(types[i])) {
+                final long[] occurrences = profile.getOccurrences(i);
+                final double[] frequencies = new double[occurrences.length];
+                for (int code = 0; code < occurrences.length; code++) {
+                    frequencies[code] = ((double) occurrences[code]) / profile.getRecordCount();
                 }
+                dictionaries[i] = new CategoricalDictionary(profile.getDistinctValues(i), frequencies);
             }
         }
-        return frequencies;
+        return dictionaries;
     }
 
     /**
-     * Calculates total number of records in a data source
+     * Calculates total number of records in a data source.
+     * Caches and mapped data sources know it, other ones are read.
      * @param dataSource data source
      * @return data source size
      * @throws IOException on i/o data source error
      */
     public static long getDataSourceSize(AbstractTokenDataSource<?> dataSource) throws IOException {
+        if (dataSource instanceof RandomAccessTokenDataSource) {
+            return ((RandomAccessTokenDataSource) dataSource).getRecordCount();
+        }
         long counter = 0L;
         dataSource.reset();
         while (dataSource.hasNext()) {
@@ -110,49 +126,24 @@ public final class SampleFrequencyCalculator {
         }
     }
 
+    /**
+     * Finds bounds of numeric tokens out of the data source profile.
+     * @param dataSource data source
+     * @param types token types
+     * @return bounds, null for non-numeric tokens, zeros for columns without values
+     * @throws IOException on i/o data source error
+     */
     public static MinAndMax[] getNumericTokenBounds(AbstractTokenDataSource<?> dataSource,
             TokenType[] types) throws IOException {
+        final DatasetProfile profile = TokenDataSourceCache.getProfile(dataSource, types);
         final int recordLength = dataSource.getRecordLength();
         MinAndMax[] result = new MinAndMax[recordLength];
         for (int i = 0; i < recordLength; i++) {
             if (isNumericalTokenType(types[i])) {
                 result[i] = new MinAndMax();
-            }
-        }
-        dataSource.reset();
-        if (dataSource.hasNext()) {
-            Object[] tokens = dataSource.next().getData();
-            for (int i = 0; i < recordLength; i++) {
-                if (isNumericalTokenType(types[i])) {
-                    double val = 0.;
-                    if (types[i] == TokenType.INTEGER) {
-                        val = (Integer) tokens[i];
-                    }
-                    else if (types[i] == TokenType.FLOAT) {
-                        val = (Double) tokens[i];
-                    }
-                    result[i].setMax(val);
-                    result[i].setMin(val);
-                }
-            }
-        }
-        while (dataSource.hasNext()) {
-            Object[] tokens = dataSource.next().getData();
-            for (int i = 0; i < recordLength; i++) {
-                if (isNumericalTokenType(types[i])) {
-                    double val = 0.;
-                    if (types[i] == TokenType.INTEGER) {
-                        val = (Integer) tokens[i];
-                    }
-                    else if (types[i] == TokenType.FLOAT) {
-                        val = (Double) tokens[i];
-                    }
-                    if (val > result[i].getMax()) {
-                        result[i].setMax(val);
-                    }
-                    else if (val < result[i].getMin()) {
-                        result[i].setMin(val);
-                    }
+                if (profile.getValueCount(i) > 0) {
+                    result[i].setMin(profile.getMin(i));
+                    result[i].setMax(profile.getMax(i));
                 }
             }
         }
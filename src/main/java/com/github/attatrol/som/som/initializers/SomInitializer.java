@@ -3,8 +3,10 @@ package com.github.attatrol.som.som.initializers;
 
 import java.io.IOException;
 
+import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
 import com.github.attatrol.preprocessing.distance.DistanceFunction;
 import com.github.attatrol.preprocessing.ui.TokenDataSourceAndMisc;
+import com.github.attatrol.som.datasource.TokenDataSourceCache;
 import com.github.attatrol.som.som.Som;
 import com.github.attatrol.som.som.functions.learning.LearningFunction;
 import com.github.attatrol.som.som.functions.neighbourhood.NeighborhoodFunction;
@@ -52,7 +54,8 @@ public interface SomInitializer {
             double overMedianWeakFactor, double overMedianStrongFactor) throws IOException;
 
     /**
-     * Checks if data source is non empty, then calls
+     * Caches data source in RAM, see {@link TokenDataSourceCache},
+     * checks if it is non empty, then calls
      * {@link #createSom(TokenDataSourceAndMisc, DistanceFunction, RectangleTopology, NeighborhoodFunction)}
      * 
      * @param tdsm
@@ -82,8 +85,9 @@ public interface SomInitializer {
             NeighborhoodFunction neighborhoodFunction, LearningFunction learningFunction,
             FuzzyNeuronFactory<?> neuronFactory, double overMedianWeakFactor,
             double overMedianStrongFactor) throws IOException, IllegalStateException {
-        tdsm.getTokenDataSource().reset();
-        if (tdsm.getTokenDataSource().hasNext()) {
+        final AbstractTokenDataSource<?> dataSource = TokenDataSourceCache.getCachedDataSource(tdsm);
+        dataSource.reset();
+        if (dataSource.hasNext()) {
             return createSom(tdsm, distanceFunction, topology, neighborhoodFunction,
                     learningFunction, neuronFactory, overMedianWeakFactor, overMedianStrongFactor);
         }
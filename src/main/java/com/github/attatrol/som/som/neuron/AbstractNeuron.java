@@ -1,6 +1,8 @@
 package com.github.attatrol.som.som.neuron;
 
 import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
+import com.github.attatrol.som.som.encoding.EncodedRecord;
+import com.github.attatrol.som.som.encoding.RecordEncoder;
 import com.github.attatrol.som.som.topology.Point;
 
 /**
@@ -25,6 +27,11 @@ public abstract class AbstractNeuron {
      */
     protected TokenType[] tokenTypes;
 
+    /**
+     * Dense integer id of the neuron, assigned by SOM out of its topology.
+     */
+    private int index;
+
     /**
      * Simple value ctor.
      * @param weights starting weights of a neuron
@@ -44,6 +51,21 @@ public abstract class AbstractNeuron {
         return position;
     }
 
+    /**
+     * @return dense integer id of the neuron, index of its position in topology
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Sets dense integer id of the neuron.
+     * @param index index of the neuron position in topology
+     */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
     /**
      * @return weights of the neuron
      */
@@ -51,6 +73,20 @@ public abstract class AbstractNeuron {
         return weights;
     }
 
+    /**
+     * @return token types of the weights
+     */
+    public TokenType[] getTokenTypes() {
+        return tokenTypes;
+    }
+
+    /**
+     * @return encoder of records if neuron learns on encoded records, null otherwise
+     */
+    public RecordEncoder getRecordEncoder() {
+        return null;
+    }
+
     /**
      * Swaps weights of 2 neurons.
      * @param other other neuron
@@ -65,6 +101,23 @@ public abstract class AbstractNeuron {
      */
     public abstract void changeWeights(Object[] newWeights, double diminishingFactor, boolean isBmu);
 
+    /**
+     * Main procedure of a learning cycle on an encoded record, by default
+     * it falls back to the original record data.
+     * @param record encoded record, encoder is {@link #getRecordEncoder()}
+     * @param diminishingFactor
+     * @param isBmu
+     */
+    public void changeWeights(EncodedRecord record, double diminishingFactor, boolean isBmu) {
+        changeWeights(record.getSource(), diminishingFactor, isBmu);
+    }
+
+    /**
+     * Batch learning step, applies all changes accumulated through an epoch at once.
+     * @param update neighborhood weighted sums of records
+     */
+    public abstract void changeWeights(NeuronBatchUpdate update);
+
     /**
      * Tells neuron that the epoch has ended.
      */
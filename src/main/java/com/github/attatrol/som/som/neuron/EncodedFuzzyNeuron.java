@@ -0,0 +1,325 @@
+package com.github.attatrol.som.som.neuron;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
+import com.github.attatrol.preprocessing.distance.DistanceFunction;
+import com.github.attatrol.som.som.distance.ColumnwiseDistanceFunction;
+import com.github.attatrol.som.som.distance.EncodedDistanceFunction;
+import com.github.attatrol.som.som.encoding.CategoricalDictionary;
+import com.github.attatrol.som.som.encoding.EncodedRecord;
+import com.github.attatrol.som.som.encoding.RecordEncoder;
+import com.github.attatrol.som.som.topology.Point;
+
+/**
+ * Fuzzy neuron that learns exactly like {@link FuzzyNeuron}, but keeps its weights
+ * in the primitive layout of {@link EncodedRecord}: numeric weights in a double array,
+ * categorical weights as dictionary codes and fuzzy sets as double arrays indexed by
+ * those codes. Learning on encoded records allocates nothing, distance to encoded
+ * records is evaluated on the primitive weights as well, see
+ * {@link #calculateDistance(EncodedDistanceFunction, EncodedRecord, double)}.
+ * Boxed weights returned by {@link #getWeights()} are refreshed lazily when they are requested,
+ * changes are published to other threads on the epoch end.
+ * @author atta_troll
+ *
+ */
+public class EncodedFuzzyNeuron extends AbstractNeuron {
+
+    protected final static double INITIAL_CATEGORICAL_WEIGHT = 1.5;
+
+    protected final RecordEncoder encoder;
+
+    /**
+     * Numeric weights ordered by numeric slots, INTEGER weights are not rounded.
+     */
+    protected double[] numericWeights;
+
+    /**
+     * Codes of categorical weights ordered by categorical slots.
+     */
+    protected int[] categoricalWeights;
+
+    /**
+     * Power of every categorical weight.
+     */
+    protected double[] weightsPower;
+
+    /**
+     * Fuzzy set of every categorical slot indexed by value code.
+     */
+    protected double[][] weightFuzzySets;
+
+    /**
+     * True if boxed weights are out of date, it is set by learning thread on every update.
+     */
+    private boolean weightsChanged;
+
+    /**
+     * True if boxed weights are out of date, it is set once per epoch,
+     * so other threads see changes of the past epoch.
+     */
+    private volatile boolean weightsStale;
+
+    /**
+     * Buffer for encoding of boxed records that change weights.
+     */
+    private EncodedRecord encodedRecord;
+
+    public EncodedFuzzyNeuron(Object[] initialWeights, Point position, TokenType[] tokenTypes,
+            RecordEncoder encoder) {
+        super(initialWeights.clone(), position, tokenTypes);
+        this.encoder = encoder;
+        numericWeights = new double[encoder.getNumericCount()];
+        categoricalWeights = new int[encoder.getCategoricalCount()];
+        weightsPower = new double[encoder.getCategoricalCount()];
+        weightFuzzySets = new double[encoder.getCategoricalCount()][];
+        for (int i = 0; i < weightFuzzySets.length; i++) {
+            weightFuzzySets[i] = new double[encoder.getDictionary(i).size()];
+        }
+        resetWeights();
+    }
+
+    @Override
+    public RecordEncoder getRecordEncoder() {
+        return encoder;
+    }
+
+    @Override
+    public Object[] getWeights() {
+        if (weightsChanged || weightsStale) {
+            synchronized (this) {
+                if (weightsChanged || weightsStale) {
+                    refreshWeights();
+                    weightsChanged = false;
+                    weightsStale = false;
+                }
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * @return numeric weights ordered by numeric slots, not a copy
+     */
+    public double[] getNumericWeights() {
+        return numericWeights;
+    }
+
+    /**
+     * @return codes of categorical weights ordered by categorical slots, not a copy
+     */
+    public int[] getCategoricalWeights() {
+        return categoricalWeights;
+    }
+
+    /**
+     * Calculates distance between weights of this and an encoded record, allocates nothing.
+     * @param distanceFunction encoded distance function
+     * @param record encoded record, encoder is {@link #getRecordEncoder()}
+     * @param bound max distance of interest
+     * @return distance if it doesn't exceed the bound,
+     *         otherwise any value greater than the bound
+     */
+    public double calculateDistance(EncodedDistanceFunction distanceFunction, EncodedRecord record,
+            double bound) {
+        return distanceFunction.calculate(numericWeights, categoricalWeights, record, bound);
+    }
+
+    /**
+     * Produces encoded distance function for a list of neurons.
+     * @param distanceFunction distance function
+     * @param neurons neurons
+     * @return encoded distance function, null unless all neurons are encoded ones
+     *         with the same encoder and distance function may be encoded
+     */
+    public static EncodedDistanceFunction encodeDistance(DistanceFunction distanceFunction,
+            List<AbstractNeuron> neurons) {
+        if (!(distanceFunction instanceof ColumnwiseDistanceFunction) || neurons.isEmpty()) {
+            return null;
+        }
+        final RecordEncoder encoder = neurons.get(0).getRecordEncoder();
+        for (AbstractNeuron neuron : neurons) {
+            if (!(neuron instanceof EncodedFuzzyNeuron) || neuron.getRecordEncoder() != encoder) {
+                return null;
+            }
+        }
+        return ((ColumnwiseDistanceFunction) distanceFunction).encode(encoder);
+    }
+
+    @Override
+    public void swapWeights(AbstractNeuron other) {
+        if (other instanceof EncodedFuzzyNeuron) {
+            EncodedFuzzyNeuron encodedOther = (EncodedFuzzyNeuron) other;
+            Object[] tempWeights = weights;
+            double[] tempNumericWeights = numericWeights;
+            int[] tempCategoricalWeights = categoricalWeights;
+            double[] tempWeightsPower = weightsPower;
+            double[][] tempWeightFuzzySets = weightFuzzySets;
+            boolean tempWeightsChanged = weightsChanged;
+            boolean tempWeightsStale = weightsStale;
+            weights = encodedOther.weights;
+            numericWeights = encodedOther.numericWeights;
+            categoricalWeights = encodedOther.categoricalWeights;
+            weightsPower = encodedOther.weightsPower;
+            weightFuzzySets = encodedOther.weightFuzzySets;
+            weightsChanged = encodedOther.weightsChanged;
+            weightsStale = encodedOther.weightsStale;
+            encodedOther.weights = tempWeights;
+            encodedOther.numericWeights = tempNumericWeights;
+            encodedOther.categoricalWeights = tempCategoricalWeights;
+            encodedOther.weightsPower = tempWeightsPower;
+            encodedOther.weightFuzzySets = tempWeightFuzzySets;
+            encodedOther.weightsChanged = tempWeightsChanged;
+            encodedOther.weightsStale = tempWeightsStale;
+        }
+        else {
+            throw new IllegalArgumentException("Swapping weights of incompatible neurons");
+        }
+    }
+
+    @Override
+    public void changeWeights(Object[] newWeights, double diminishingFactor, boolean isBmu) {
+        if (encodedRecord == null) {
+            encodedRecord = encoder.createRecord();
+        }
+        encoder.encode(newWeights, encodedRecord);
+        changeWeights(encodedRecord, diminishingFactor, isBmu);
+    }
+
+    @Override
+    public void changeWeights(EncodedRecord record, double diminishingFactor, boolean isBmu) {
+        final double[] numericValues = record.getNumericValues();
+        for (int i = 0; i < numericWeights.length; i++) {
+            numericWeights[i] += diminishingFactor * (numericValues[i] - numericWeights[i]);
+        }
+        final int[] categoricalCodes = record.getCategoricalCodes();
+        for (int i = 0; i < categoricalWeights.length; i++) {
+            final int code = categoricalCodes[i];
+            if (code == CategoricalDictionary.UNKNOWN_CODE) {
+                continue;
+            }
+            final double incomingValuePower = weightFuzzySets[i][code]
+                    + diminishingFactor * encoder.getDictionary(i).getFrequency(code);
+            weightFuzzySets[i][code] = incomingValuePower;
+            if (code == categoricalWeights[i]) {
+                weightsPower[i] = incomingValuePower;
+            }
+            else if (incomingValuePower > weightsPower[i]) {
+                weightsPower[i] = incomingValuePower;
+                categoricalWeights[i] = code;
+            }
+        }
+        weightsChanged = true;
+    }
+
+    /**
+     * Same as {@link FuzzyNeuron#changeWeights(NeuronBatchUpdate)}.
+     */
+    @Override
+    public void changeWeights(NeuronBatchUpdate update) {
+        final double weightSum = update.getWeightSum();
+        if (weightSum <= 0.) {
+            return;
+        }
+        for (int i = 0; i < numericWeights.length; i++) {
+            numericWeights[i] = update.getNumericSum(encoder.getNumericColumn(i)) / weightSum;
+        }
+        for (int i = 0; i < categoricalWeights.length; i++) {
+            final double[] votes = update.getCategoricalVotes(encoder.getCategoricalColumn(i));
+            final CategoricalDictionary dictionary = encoder.getDictionary(i);
+            for (int code = 0; code < votes.length; code++) {
+                weightFuzzySets[i][code] += votes[code] * dictionary.getFrequency(code);
+            }
+            weightsPower[i] = weightFuzzySets[i][categoricalWeights[i]];
+            for (int code = 0; code < weightFuzzySets[i].length; code++) {
+                if (weightFuzzySets[i][code] > weightsPower[i]) {
+                    weightsPower[i] = weightFuzzySets[i][code];
+                    categoricalWeights[i] = code;
+                }
+            }
+        }
+        weightsChanged = true;
+    }
+
+    /**
+     * Publishes changes of the epoch.
+     */
+    @Override
+    public void markEpochEnd() {
+        if (weightsChanged) {
+            weightsStale = true;
+        }
+    }
+
+    @Override
+    public void setNewWeights(Object[] newWeights) {
+        weights = newWeights.clone();
+        resetWeights();
+    }
+
+    /**
+     * Sets primitive weights and fuzzy sets out of boxed weights.
+     */
+    private void resetWeights() {
+        final EncodedRecord record = encoder.encode(weights);
+        System.arraycopy(record.getNumericValues(), 0, numericWeights, 0, numericWeights.length);
+        for (int i = 0; i < categoricalWeights.length; i++) {
+            final int code = record.getCategoricalCodes()[i];
+            if (code == CategoricalDictionary.UNKNOWN_CODE) {
+                throw new IllegalArgumentException("Weight value is absent in dictionary: "
+                        + weights[encoder.getCategoricalColumn(i)]);
+            }
+            Arrays.fill(weightFuzzySets[i], 0.);
+            weightFuzzySets[i][code] = INITIAL_CATEGORICAL_WEIGHT;
+            categoricalWeights[i] = code;
+            weightsPower[i] = INITIAL_CATEGORICAL_WEIGHT;
+        }
+        weightsChanged = false;
+        weightsStale = false;
+    }
+
+    /**
+     * Writes primitive weights to the boxed ones, unchanged values are not boxed again.
+     */
+    private void refreshWeights() {
+        for (int i = 0; i < numericWeights.length; i++) {
+            final int column = encoder.getNumericColumn(i);
+            if (tokenTypes[column] == TokenType.INTEGER) {
+                final int value = (int) Math.round(numericWeights[i]);
+                if ((Integer) weights[column] != value) {
+                    weights[column] = value;
+                }
+            }
+            else if ((Double) weights[column] != numericWeights[i]) {
+                weights[column] = numericWeights[i];
+            }
+        }
+        for (int i = 0; i < categoricalWeights.length; i++) {
+            weights[encoder.getCategoricalColumn(i)] = encoder.getDictionary(i).getValue(categoricalWeights[i]);
+        }
+    }
+
+    /**
+     * Factory for an encoded fuzzy neuron. Neurons created with the same
+     * dictionaries share the same encoder.
+     * @author atta_troll
+     *
+     */
+    public static class Factory implements FuzzyNeuronFactory<EncodedFuzzyNeuron> {
+
+        private CategoricalDictionary[] lastDictionaries;
+
+        private RecordEncoder lastEncoder;
+
+        @Override
+        public synchronized EncodedFuzzyNeuron createNeuron(Object[] initialWeights, Point position,
+                TokenType[] tokenTypes, CategoricalDictionary[] dictionaries) {
+            if (lastDictionaries != dictionaries) {
+                lastEncoder = new RecordEncoder(tokenTypes, dictionaries);
+                lastDictionaries = dictionaries;
+            }
+            return new EncodedFuzzyNeuron(initialWeights, position, tokenTypes, lastEncoder);
+        }
+    }
+}
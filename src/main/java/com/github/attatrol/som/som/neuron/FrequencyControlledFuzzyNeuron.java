@@ -1,8 +1,7 @@
 package com.github.attatrol.som.som.neuron;
 
-import java.util.Map;
-
 import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
+import com.github.attatrol.som.som.encoding.CategoricalDictionary;
 import com.github.attatrol.som.som.topology.Point;
 
 public class FrequencyControlledFuzzyNeuron extends FuzzyNeuron {
@@ -10,8 +9,8 @@ public class FrequencyControlledFuzzyNeuron extends FuzzyNeuron {
     protected double[] fuzzyWeightSum;
 
     public FrequencyControlledFuzzyNeuron(Object[] initialWeights, Point position,
-            TokenType[] tokenTypes, Map<Object, Double>[] sampleFrequencies) {
-        super(initialWeights, position, tokenTypes, sampleFrequencies);
+            TokenType[] tokenTypes, CategoricalDictionary[] dictionaries) {
+        super(initialWeights, position, tokenTypes, dictionaries);
         fuzzyWeightSum = new double[tokenTypes.length];
         for (int i = 0; i < tokenTypes.length; i++) {
             fuzzyWeightSum[i] = FuzzyNeuron.INITIAL_CATEGORICAL_WEIGHT;
@@ -34,59 +33,23 @@ public class FrequencyControlledFuzzyNeuron extends FuzzyNeuron {
     }
 
     /**
-     * Only the last but one brunch changed.
+     * Also keeps sum of the fuzzy set up to date.
      */
     @Override
-    public void changeWeights(Object[] newWeights, double diminishingFactor, boolean isBmu) {
-        for (int i = 0; i < tokenTypes.length; i++) {
-            switch (tokenTypes[i]) {
-            case FLOAT:
-                final double value = (Double) weights[i];
-                weights[i] = value + diminishingFactor * ((Double) newWeights[i] - value);
-                break;
-            case INTEGER:
-                weightsPower[i] += diminishingFactor * ((Integer) newWeights[i] - weightsPower[i]);
-                weights[i] = (int) Math.round(weightsPower[i]);
-                break;
-            case BINARY:
-            case BINARY_DIGITAL:
-            case CATEGORICAL_STRING:
-                double incomingValuePower = calculateIncomingTokenPower(
-                        newWeights[i], i, diminishingFactor, isBmu);
-                Double oldValue = weightFuzzySets[i].get(newWeights[i]);
-                if (oldValue == null) {
-                    oldValue = 0.;
-                }
-                // single change
-                fuzzyWeightSum[i] += incomingValuePower - oldValue;
-                weightFuzzySets[i].put(newWeights[i], incomingValuePower);
-                if (newWeights[i].equals(weights[i])) {
-                    weightsPower[i] = incomingValuePower;
-                }
-                else if (incomingValuePower > weightsPower[i]) {
-                    weightsPower[i] = incomingValuePower;
-                    weights[i] = newWeights[i];
-                }
-                break;
-            default:
-                // do nothing
-                break;
-            }
-        }
+    protected void putTokenPower(int index, int code, double power) {
+        fuzzyWeightSum[index] += power - weightFuzzySets[index][code];
+        weightFuzzySets[index][code] = power;
     }
 
-    protected double calculateIncomingTokenPower(Object newWeight, int index, double diminishingFactor,
+    @Override
+    protected double calculateIncomingTokenPower(int code, int index, double diminishingFactor,
             boolean isBmu) {
-        Double value = weightFuzzySets[index].get(newWeight);
-        if (value == null) {
-            value = 0.;
-        }
-        value += getFequencyAdjustment(value, index) * diminishingFactor
-                / sampleFrequencies[index].get(newWeight);
-        return value;
+        final double value = weightFuzzySets[index][code];
+        return value + getFequencyAdjustment(value, index) * diminishingFactor
+                / dictionaries[index].getFrequency(code);
     }
 
-    private Double getFequencyAdjustment(Double value, int index) {
+    private double getFequencyAdjustment(double value, int index) {
         final double adjustment = value / fuzzyWeightSum[index];
         final double function = 2. / 1. + Math.exp(-4. * adjustment);
         return function;
@@ -101,8 +64,8 @@ public class FrequencyControlledFuzzyNeuron extends FuzzyNeuron {
 
         @Override
         public FrequencyControlledFuzzyNeuron createNeuron(Object[] initialWeights, Point position,
-                TokenType[] tokenTypes, Map<Object, Double>[] sampleFrequencies) {
-            return new FrequencyControlledFuzzyNeuron(initialWeights, position, tokenTypes, sampleFrequencies);
+                TokenType[] tokenTypes, CategoricalDictionary[] dictionaries) {
+            return new FrequencyControlledFuzzyNeuron(initialWeights, position, tokenTypes, dictionaries);
         }
     }
 }
@@ -1,16 +1,17 @@
 package com.github.attatrol.som.som.neuron;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
+import com.github.attatrol.som.som.encoding.CategoricalDictionary;
 import com.github.attatrol.som.som.topology.Point;
 
 /**
  * FuzzyNeuron must work with numeric data exactly like
  * original Kohonen's SOM neuron should, but with mixed or categorical data
  * it will work in another way: for each such weight a fuzzy set is formed, and
- * its defuzzification is used as a weight value.
+ * its defuzzification is used as a weight value.<br/>
+ * Fuzzy sets are dense arrays indexed by dictionary codes of the values.
  * @author atta_troll
  *
  */
@@ -20,27 +21,34 @@ public class FuzzyNeuron extends AbstractNeuron {
 
     protected double[] weightsPower;
 
-    protected Map<Object, Double>[] weightFuzzySets;
+    /**
+     * Fuzzy set of every categorical token indexed by value code, null for other tokens.
+     */
+    protected double[][] weightFuzzySets;
+
+    /**
+     * Dictionary code of every categorical weight.
+     */
+    protected int[] weightCodes;
 
-    protected Map<Object, Double>[] sampleFrequencies;
+    /**
+     * Dictionaries of categorical tokens, they hold sample frequencies.
+     */
+    protected CategoricalDictionary[] dictionaries;
 
-    @SuppressWarnings("unchecked")
     public FuzzyNeuron(Object[] initialWeights, Point position, TokenType[] tokenTypes,
-            Map<Object, Double>[] sampleFrequencies) {
+            CategoricalDictionary[] dictionaries) {
         super(initialWeights, position, tokenTypes);
-        this.sampleFrequencies = sampleFrequencies;
-        weightFuzzySets = new Map[tokenTypes.length];
+        this.dictionaries = dictionaries;
+        weightFuzzySets = new double[tokenTypes.length][];
+        weightCodes = new int[tokenTypes.length];
         weightsPower = new double[tokenTypes.length];
         for (int i = 0; i < tokenTypes.length; i++) {
-            if (tokenTypes[i] != TokenType.FLOAT && tokenTypes[i] != TokenType.INTEGER) {
-                weightFuzzySets[i] = new HashMap<Object, Double>();
-                weightFuzzySets[i].put(weights[i], INITIAL_CATEGORICAL_WEIGHT);
-                weightsPower[i] = INITIAL_CATEGORICAL_WEIGHT;
-            }
-            else if (tokenTypes[i] == TokenType.INTEGER) {
-                weightsPower[i] = (Integer) weights[i];
+            if (isCategorical(i)) {
+                weightFuzzySets[i] = new double[dictionaries[i].size()];
             }
         }
+        resetWeights();
     }
 
     @Override
@@ -49,18 +57,21 @@ public class FuzzyNeuron extends AbstractNeuron {
             FuzzyNeuron fuzzyOther = (FuzzyNeuron) other;
             Object[] tempWeights = weights;
             double[] tempWeightsPower = weightsPower;
-            Map<Object, Double>[] tempWeightFuzzySets = weightFuzzySets;
-            Map<Object, Double>[] tempSampleFrequencies = sampleFrequencies;
+            double[][] tempWeightFuzzySets = weightFuzzySets;
+            int[] tempWeightCodes = weightCodes;
+            CategoricalDictionary[] tempDictionaries = dictionaries;
             TokenType[] tempTokenTypes = tokenTypes;
             weights = fuzzyOther.weights;
             weightsPower = fuzzyOther.weightsPower;
             weightFuzzySets = fuzzyOther.weightFuzzySets;
-            sampleFrequencies = fuzzyOther.sampleFrequencies;
+            weightCodes = fuzzyOther.weightCodes;
+            dictionaries = fuzzyOther.dictionaries;
             tokenTypes = fuzzyOther.tokenTypes;
             fuzzyOther.weights = tempWeights;
             fuzzyOther.weightsPower = tempWeightsPower;
             fuzzyOther.weightFuzzySets = tempWeightFuzzySets;
-            fuzzyOther.sampleFrequencies = tempSampleFrequencies;
+            fuzzyOther.weightCodes = tempWeightCodes;
+            fuzzyOther.dictionaries = tempDictionaries;
             fuzzyOther.tokenTypes = tempTokenTypes;
         }
         else {
@@ -82,16 +93,55 @@ public class FuzzyNeuron extends AbstractNeuron {
             case BINARY:
             case BINARY_DIGITAL:
             case CATEGORICAL_STRING:
-                final double incomingValuePower = calculateIncomingTokenPower(
-                        newWeights[i], i, diminishingFactor, isBmu);
-                weightFuzzySets[i].put(newWeights[i], incomingValuePower);
-                if (newWeights[i].equals(weights[i])) {
-                    weightsPower[i] = incomingValuePower;
+                final int code = dictionaries[i].getCode(newWeights[i]);
+                if (code != CategoricalDictionary.UNKNOWN_CODE) {
+                    putTokenPower(i, code, calculateIncomingTokenPower(code, i, diminishingFactor, isBmu));
+                    updateStrongestToken(i, code);
+                }
+                break;
+            default:
+                // do nothing
+                break;
+            }
+        }
+    }
+
+    /**
+     * Numeric weights become neighborhood weighted means of records, categorical votes are
+     * added to the fuzzy sets in the same manner as the online learning adds single tokens,
+     * then the strongest token of every fuzzy set is chosen as a weight.
+     */
+    @Override
+    public void changeWeights(NeuronBatchUpdate update) {
+        final double weightSum = update.getWeightSum();
+        if (weightSum <= 0.) {
+            return;
+        }
+        for (int i = 0; i < tokenTypes.length; i++) {
+            switch (tokenTypes[i]) {
+            case FLOAT:
+                weights[i] = update.getNumericSum(i) / weightSum;
+                break;
+            case INTEGER:
+                weightsPower[i] = update.getNumericSum(i) / weightSum;
+                weights[i] = (int) Math.round(weightsPower[i]);
+                break;
+            case BINARY:
+            case BINARY_DIGITAL:
+            case CATEGORICAL_STRING:
+                final double[] votes = update.getCategoricalVotes(i);
+                for (int code = 0; code < votes.length; code++) {
+                    if (votes[code] > 0.) {
+                        putTokenPower(i, code, calculateIncomingTokenPower(code, i, votes[code], false));
+                    }
                 }
-                else if (incomingValuePower > weightsPower[i]) {
-                    weightsPower[i] = incomingValuePower;
-                    weights[i] = newWeights[i];
-                    // System.out.println("Change!");
+                final double[] fuzzySet = weightFuzzySets[i];
+                weightsPower[i] = fuzzySet[weightCodes[i]];
+                for (int code = 0; code < fuzzySet.length; code++) {
+                    if (fuzzySet[code] > weightsPower[i]) {
+                        weightsPower[i] = fuzzySet[code];
+                        setWeightCode(i, code);
+                    }
                 }
                 break;
             default:
@@ -111,10 +161,21 @@ public class FuzzyNeuron extends AbstractNeuron {
     @Override
     public void setNewWeights(Object[] newWeights) {
         weights = newWeights;
+        resetWeights();
+    }
+
+    /**
+     * Sets fuzzy sets as if the learning process just started.
+     */
+    protected void resetWeights() {
         for (int i = 0; i < tokenTypes.length; i++) {
-            if (tokenTypes[i] != TokenType.FLOAT && tokenTypes[i] != TokenType.INTEGER) {
-                weightFuzzySets[i].clear();
-                weightFuzzySets[i].put(weights[i], INITIAL_CATEGORICAL_WEIGHT);
+            if (isCategorical(i)) {
+                weightCodes[i] = dictionaries[i].getCode(weights[i]);
+                if (weightCodes[i] == CategoricalDictionary.UNKNOWN_CODE) {
+                    throw new IllegalArgumentException("Weight value is absent in dictionary: " + weights[i]);
+                }
+                Arrays.fill(weightFuzzySets[i], 0.);
+                weightFuzzySets[i][weightCodes[i]] = INITIAL_CATEGORICAL_WEIGHT;
                 weightsPower[i] = INITIAL_CATEGORICAL_WEIGHT;
             }
             else if (tokenTypes[i] == TokenType.INTEGER) {
@@ -123,14 +184,53 @@ public class FuzzyNeuron extends AbstractNeuron {
         }
     }
 
-    protected double calculateIncomingTokenPower(Object newWeight, int index, double diminishingFactor,
-            boolean isBmu) {
-        Double value = weightFuzzySets[index].get(newWeight);
-        if (value == null) {
-            value = 0.;
+    /**
+     * @param index token index
+     * @return true if fuzzy set is formed for the token
+     */
+    protected boolean isCategorical(int index) {
+        return NeuronBatchUpdate.isCategorical(tokenTypes[index]);
+    }
+
+    /**
+     * Chooses the strongest token after single change of a fuzzy set.
+     * @param index token index
+     * @param code code of the changed token
+     */
+    protected void updateStrongestToken(int index, int code) {
+        final double power = weightFuzzySets[index][code];
+        if (code == weightCodes[index]) {
+            weightsPower[index] = power;
         }
-        value += diminishingFactor * sampleFrequencies[index].get(newWeight);
-        return value;
+        else if (power > weightsPower[index]) {
+            weightsPower[index] = power;
+            setWeightCode(index, code);
+        }
+    }
+
+    /**
+     * Sets new categorical weight.
+     * @param index token index
+     * @param code code of the new weight
+     */
+    protected void setWeightCode(int index, int code) {
+        weightCodes[index] = code;
+        weights[index] = dictionaries[index].getValue(code);
+    }
+
+    /**
+     * Sets new power of a token in a fuzzy set.
+     * @param index token index
+     * @param code token code
+     * @param power new power
+     */
+    protected void putTokenPower(int index, int code, double power) {
+        weightFuzzySets[index][code] = power;
+    }
+
+    protected double calculateIncomingTokenPower(int code, int index, double diminishingFactor,
+            boolean isBmu) {
+        return weightFuzzySets[index][code] + diminishingFactor * dictionaries[index].getFrequency(code);
     }
 
     /**
@@ -142,8 +242,8 @@ public class FuzzyNeuron extends AbstractNeuron {
 
         @Override
         public FuzzyNeuron createNeuron(Object[] initialWeights, Point position,
-                TokenType[] tokenTypes, Map<Object, Double>[] sampleFrequencies) {
-            return new FuzzyNeuron(initialWeights, position, tokenTypes, sampleFrequencies);
+                TokenType[] tokenTypes, CategoricalDictionary[] dictionaries) {
+            return new FuzzyNeuron(initialWeights, position, tokenTypes, dictionaries);
         }
     }
 
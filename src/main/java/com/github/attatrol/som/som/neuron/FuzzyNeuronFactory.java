@@ -1,8 +1,7 @@
 package com.github.attatrol.som.som.neuron;
 
-import java.util.Map;
-
 import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
+import com.github.attatrol.som.som.encoding.CategoricalDictionary;
 import com.github.attatrol.som.som.topology.Point;
 
 /**
@@ -10,17 +9,17 @@ import com.github.attatrol.som.som.topology.Point;
  * @author atta_troll
  *
  */
-public interface FuzzyNeuronFactory<V extends FuzzyNeuron> {
+public interface FuzzyNeuronFactory<V extends AbstractNeuron> {
 
     /**
      * Factory method for a fuzzy neuron.
      * @param initialWeights
      * @param position
      * @param tokenTypes
-     * @param sampleFrequencies
+     * @param dictionaries dictionaries of categorical tokens
      * @return
      */
     V createNeuron(Object[] initialWeights, Point position, TokenType[] tokenTypes,
-            Map<Object, Double>[] sampleFrequencies);
+            CategoricalDictionary[] dictionaries);
 
 }
@@ -0,0 +1,124 @@
+package com.github.attatrol.som.som.neuron;
+
+import java.util.Arrays;
+
+import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
+import com.github.attatrol.som.som.encoding.CategoricalDictionary;
+
+/**
+ * Holds all changes of a single neuron collected through a batch learning epoch:
+ * neighborhood weighted sum of numeric values and neighborhood weighted votes for
+ * categorical values. Instance is reusable, call {@link #clear()} before
+ * collecting data for the next neuron.
+ * @author atta_troll
+ *
+ */
+public class NeuronBatchUpdate {
+
+    /**
+     * Token types of the weights.
+     */
+    private final TokenType[] tokenTypes;
+
+    /**
+     * Sum of weights of all records.
+     */
+    private double weightSum;
+
+    /**
+     * Weighted sums of numeric tokens.
+     */
+    private final double[] numericSums;
+
+    /**
+     * Weighted votes for categorical tokens indexed by value codes.
+     */
+    private final double[][] categoricalVotes;
+
+    /**
+     * Default ctor.
+     * @param tokenTypes token types of the weights
+     * @param dictionaries dictionaries of categorical tokens
+     */
+    public NeuronBatchUpdate(TokenType[] tokenTypes, CategoricalDictionary[] dictionaries) {
+        this.tokenTypes = tokenTypes;
+        numericSums = new double[tokenTypes.length];
+        categoricalVotes = new double[tokenTypes.length][];
+        for (int i = 0; i < tokenTypes.length; i++) {
+            if (isCategorical(tokenTypes[i])) {
+                categoricalVotes[i] = new double[dictionaries[i].size()];
+            }
+        }
+    }
+
+    /**
+     * Erases all collected data.
+     */
+    public void clear() {
+        weightSum = 0.;
+        for (int i = 0; i < tokenTypes.length; i++) {
+            numericSums[i] = 0.;
+            if (categoricalVotes[i] != null) {
+                Arrays.fill(categoricalVotes[i], 0.);
+            }
+        }
+    }
+
+    /**
+     * Adds records won by some neuron, their categorical tokens are added
+     * by {@link #addVotes(int, int, double)}.
+     * @param factor neighborhood factor of the winner neuron
+     * @param count number of records won by the winner neuron
+     * @param sums sums of numeric tokens of these records
+     */
+    public void add(double factor, long count, double[] sums) {
+        weightSum += factor * count;
+        for (int i = 0; i < tokenTypes.length; i++) {
+            if (categoricalVotes[i] == null) {
+                numericSums[i] += factor * sums[i];
+            }
+        }
+    }
+
+    /**
+     * Adds votes for a categorical token value.
+     * @param index token index
+     * @param code value code
+     * @param votes weighted number of occurrences of the value
+     */
+    public void addVotes(int index, int code, double votes) {
+        categoricalVotes[index][code] += votes;
+    }
+
+    /**
+     * @return sum of weights of all records
+     */
+    public double getWeightSum() {
+        return weightSum;
+    }
+
+    /**
+     * @param index token index
+     * @return weighted sum of numeric token values
+     */
+    public double getNumericSum(int index) {
+        return numericSums[index];
+    }
+
+    /**
+     * @param index token index
+     * @return weighted votes for categorical token values indexed by value codes
+     */
+    public double[] getCategoricalVotes(int index) {
+        return categoricalVotes[index];
+    }
+
+    /**
+     * @param tokenType token type
+     * @return true if fuzzy set is used for the token type
+     */
+    public static boolean isCategorical(TokenType tokenType) {
+        return tokenType == TokenType.BINARY || tokenType == TokenType.BINARY_DIGITAL
+                || tokenType == TokenType.CATEGORICAL_STRING;
+    }
+}
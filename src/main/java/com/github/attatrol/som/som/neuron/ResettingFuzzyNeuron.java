@@ -1,8 +1,9 @@
 package com.github.attatrol.som.som.neuron;
 
-import java.util.Map;
+import java.util.Arrays;
 
 import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
+import com.github.attatrol.som.som.encoding.CategoricalDictionary;
 import com.github.attatrol.som.som.topology.Point;
 
 /**
@@ -13,8 +14,8 @@ import com.github.attatrol.som.som.topology.Point;
 public class ResettingFuzzyNeuron extends FuzzyNeuron {
 
     public ResettingFuzzyNeuron(Object[] initialWeights, Point position, TokenType[] tokenTypes,
-            Map<Object, Double>[] sampleFrequencies) {
-        super(initialWeights, position, tokenTypes, sampleFrequencies);
+            CategoricalDictionary[] dictionaries) {
+        super(initialWeights, position, tokenTypes, dictionaries);
     }
 
     /**
@@ -23,11 +24,9 @@ public class ResettingFuzzyNeuron extends FuzzyNeuron {
     @Override
     public void markEpochEnd() {
         for (int i = 0; i < tokenTypes.length; i++) {
-            if (tokenTypes[i] != TokenType.FLOAT && tokenTypes[i] != TokenType.INTEGER) {
-                for (Map.Entry<Object, Double> entry : weightFuzzySets[i].entrySet()) {
-                    entry.setValue(0.);
-                }
-                weightFuzzySets[i].put(weights[i], INITIAL_CATEGORICAL_WEIGHT);
+            if (isCategorical(i)) {
+                Arrays.fill(weightFuzzySets[i], 0.);
+                weightFuzzySets[i][weightCodes[i]] = INITIAL_CATEGORICAL_WEIGHT;
                 weightsPower[i] = INITIAL_CATEGORICAL_WEIGHT;
             }
         }
@@ -42,8 +41,8 @@ public class ResettingFuzzyNeuron extends FuzzyNeuron {
 
         @Override
         public ResettingFuzzyNeuron createNeuron(Object[] initialWeights, Point position,
-                TokenType[] tokenTypes, Map<Object, Double>[] sampleFrequencies) {
-            return new ResettingFuzzyNeuron(initialWeights, position, tokenTypes, sampleFrequencies);
+                TokenType[] tokenTypes, CategoricalDictionary[] dictionaries) {
+            return new ResettingFuzzyNeuron(initialWeights, position, tokenTypes, dictionaries);
         }
     }
 }
@@ -0,0 +1,45 @@
+package com.github.attatrol.som.som.stopping;
+
+/**
+ * Stops learning when the fraction of records whose BMU changed during
+ * the epoch falls to the threshold.
+ * @author atta_troll
+ *
+ */
+public class BmuChangePolicy implements StoppingPolicy {
+
+    public static final double DEFAULT_MAX_CHANGE_FRACTION = 0.01;
+
+    private final double maxChangeFraction;
+
+    /**
+     * Default ctor.
+     * @param maxChangeFraction fraction of records changing BMU that is considered as stable map
+     * @throws IllegalArgumentException if fraction is outside [0, 1] range
+     */
+    public BmuChangePolicy(double maxChangeFraction) throws IllegalArgumentException {
+        if (!(maxChangeFraction >= 0. && maxChangeFraction <= 1.)) {
+            throw new IllegalArgumentException("BMU change fraction is outside [0, 1]");
+        }
+        this.maxChangeFraction = maxChangeFraction;
+    }
+
+    @Override
+    public StopReason check(EpochStatistics statistics) {
+        // NaN fraction (not tracked) never stops learning
+        return statistics.getBmuChangeFraction() <= maxChangeFraction ? StopReason.BMU_STABLE : null;
+    }
+
+    @Override
+    public boolean isBmuChangeUsed() {
+        return true;
+    }
+
+    public static class Factory implements StoppingPolicyFactory<BmuChangePolicy> {
+
+        @Override
+        public BmuChangePolicy produceStoppingPolicy(long timeBudgetMillis) {
+            return new BmuChangePolicy(DEFAULT_MAX_CHANGE_FRACTION);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.attatrol.som.som.stopping;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stops learning as soon as any of its policies does. All policies check
+ * every epoch, so each keeps its history complete.
+ * @author atta_troll
+ *
+ */
+public class CompositeStoppingPolicy implements StoppingPolicy {
+
+    private final List<StoppingPolicy> policies;
+
+    /**
+     * Default ctor.
+     * @param policies policies, the first one to stop defines the reason
+     */
+    public CompositeStoppingPolicy(StoppingPolicy... policies) {
+        this.policies = Arrays.asList(policies.clone());
+    }
+
+    @Override
+    public StopReason check(EpochStatistics statistics) {
+        StopReason result = null;
+        for (StoppingPolicy policy : policies) {
+            final StopReason reason = policy.check(statistics);
+            if (result == null) {
+                result = reason;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        for (StoppingPolicy policy : policies) {
+            policy.reset();
+        }
+    }
+
+    @Override
+    public boolean isBmuChangeUsed() {
+        for (StoppingPolicy policy : policies) {
+            if (policy.isBmuChangeUsed()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Produces composite of error plateau and BMU stability policies
+     * with their default parameters, time budget policy is added
+     * if the time budget is set.
+     * @author atta_troll
+     *
+     */
+    public static class Factory implements StoppingPolicyFactory<CompositeStoppingPolicy> {
+
+        @Override
+        public CompositeStoppingPolicy produceStoppingPolicy(long timeBudgetMillis) {
+            final StoppingPolicy errorPlateauPolicy =
+                    new ErrorPlateauPolicy.Factory().produceStoppingPolicy(timeBudgetMillis);
+            final StoppingPolicy bmuChangePolicy =
+                    new BmuChangePolicy.Factory().produceStoppingPolicy(timeBudgetMillis);
+            if (timeBudgetMillis > 0L) {
+                return new CompositeStoppingPolicy(errorPlateauPolicy, bmuChangePolicy,
+                        new TimeBudgetPolicy.Factory().produceStoppingPolicy(timeBudgetMillis));
+            }
+            return new CompositeStoppingPolicy(errorPlateauPolicy, bmuChangePolicy);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.attatrol.som.som.stopping;
+
+/**
+ * Results of a single learning epoch.
+ * @author atta_troll
+ *
+ */
+public class EpochStatistics {
+
+    private final int epoch;
+
+    private final double averageError;
+
+    private final double bmuChangeFraction;
+
+    private final long elapsedMillis;
+
+    private final double topographicError;
+
+    private final double[] neuronErrors;
+
+    private final int deadNeuronCount;
+
+    /**
+     * Ctor of statistics without map quality measures.
+     * @param epoch epoch number
+     * @param averageError average distance between records and their BMUs
+     * @param bmuChangeFraction fraction of records whose BMU changed since the previous epoch,
+     *        NaN if it is not tracked
+     * @param elapsedMillis time passed since the start of learning
+     */
+    public EpochStatistics(int epoch, double averageError, double bmuChangeFraction, long elapsedMillis) {
+        this(epoch, averageError, bmuChangeFraction, elapsedMillis, Double.NaN, new double[0], 0);
+    }
+
+    /**
+     * Default ctor.
+     * @param epoch epoch number
+     * @param averageError average distance between records and their BMUs
+     * @param bmuChangeFraction fraction of records whose BMU changed since the previous epoch,
+     *        NaN if it is not tracked
+     * @param elapsedMillis time passed since the start of learning
+     * @param topographicError fraction of records whose best and second best matching units
+     *        are not adjacent, NaN if it is not tracked
+     * @param neuronErrors average distance between every neuron and records it won,
+     *        NaN for neurons which won nothing; indexed by neuron ids
+     * @param deadNeuronCount number of neurons which won nothing
+     */
+    public EpochStatistics(int epoch, double averageError, double bmuChangeFraction, long elapsedMillis,
+            double topographicError, double[] neuronErrors, int deadNeuronCount) {
+        this.epoch = epoch;
+        this.averageError = averageError;
+        this.bmuChangeFraction = bmuChangeFraction;
+        this.elapsedMillis = elapsedMillis;
+        this.topographicError = topographicError;
+        this.neuronErrors = neuronErrors;
+        this.deadNeuronCount = deadNeuronCount;
+    }
+
+    /**
+     * @return epoch number
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return average distance between records and their BMUs
+     */
+    public double getAverageError() {
+        return averageError;
+    }
+
+    /**
+     * @return fraction of records whose BMU changed since the previous epoch,
+     *         NaN if it is not tracked; it is 1 for the first epoch
+     */
+    public double getBmuChangeFraction() {
+        return bmuChangeFraction;
+    }
+
+    /**
+     * @return time in milliseconds passed since the start of learning
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return fraction of records whose best and second best matching units are not adjacent,
+     *         NaN if it is not tracked
+     */
+    public double getTopographicError() {
+        return topographicError;
+    }
+
+    /**
+     * @param neuronIndex neuron id
+     * @return average distance between the neuron and records it won, NaN if it won nothing
+     */
+    public double getNeuronError(int neuronIndex) {
+        return neuronErrors[neuronIndex];
+    }
+
+    /**
+     * @return number of neurons with known errors, 0 if they are not collected
+     */
+    public int getNeuronCount() {
+        return neuronErrors.length;
+    }
+
+    /**
+     * @return number of neurons which won no records in the epoch
+     */
+    public int getDeadNeuronCount() {
+        return deadNeuronCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Epoch %d: error %f, BMU changes %f, topographic error %f, dead neurons %d, %d ms",
+                epoch, averageError, bmuChangeFraction, topographicError, deadNeuronCount, elapsedMillis);
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.attatrol.som.som.stopping;
+
+/**
+ * Stops learning when average error changes by no more than the relative
+ * tolerance over the last few epochs, whether it decreases or grows.
+ * @author atta_troll
+ *
+ */
+public class ErrorPlateauPolicy implements StoppingPolicy {
+
+    public static final int DEFAULT_WINDOW = 10;
+
+    public static final double DEFAULT_RELATIVE_TOLERANCE = 0.001;
+
+    private final double relativeTolerance;
+
+    /**
+     * Errors of the last epochs, cyclic buffer.
+     */
+    private final double[] errors;
+
+    private int epochCount;
+
+    /**
+     * Default ctor.
+     * @param window number of epochs the error change is measured over
+     * @param relativeTolerance max relative change of error considered as plateau
+     * @throws IllegalArgumentException if window is not positive or tolerance is negative
+     */
+    public ErrorPlateauPolicy(int window, double relativeTolerance) throws IllegalArgumentException {
+        if (window < 1) {
+            throw new IllegalArgumentException("Plateau window is not positive");
+        }
+        if (relativeTolerance < 0.) {
+            throw new IllegalArgumentException("Plateau tolerance is negative");
+        }
+        this.relativeTolerance = relativeTolerance;
+        errors = new double[window + 1];
+    }
+
+    @Override
+    public StopReason check(EpochStatistics statistics) {
+        final double error = statistics.getAverageError();
+        final double oldError = errors[epochCount % errors.length];
+        final boolean isFull = epochCount >= errors.length;
+        errors[epochCount % errors.length] = error;
+        epochCount++;
+        if (isFull && Math.abs(oldError - error) <= relativeTolerance * Math.abs(oldError)) {
+            return StopReason.ERROR_PLATEAU;
+        }
+        return null;
+    }
+
+    @Override
+    public void reset() {
+        epochCount = 0;
+    }
+
+    public static class Factory implements StoppingPolicyFactory<ErrorPlateauPolicy> {
+
+        @Override
+        public ErrorPlateauPolicy produceStoppingPolicy(long timeBudgetMillis) {
+            return new ErrorPlateauPolicy(DEFAULT_WINDOW, DEFAULT_RELATIVE_TOLERANCE);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.attatrol.som.som.stopping;
+
+/**
+ * Reason of early learning stop.
+ * @author atta_troll
+ *
+ */
+public enum StopReason {
+
+    /**
+     * Average error doesn't decrease noticeably any more.
+     */
+    ERROR_PLATEAU,
+
+    /**
+     * Almost all records keep their BMUs from epoch to epoch.
+     */
+    BMU_STABLE,
+
+    /**
+     * Learning lasts longer than allowed.
+     */
+    TIME_BUDGET
+}
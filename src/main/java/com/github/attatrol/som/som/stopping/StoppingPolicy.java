@@ -0,0 +1,32 @@
+package com.github.attatrol.som.som.stopping;
+
+/**
+ * Decides whether learning may be stopped before the planned number of epochs.
+ * Policies may accumulate history of epochs, so an instance serves only one learning
+ * at a time.
+ * @author atta_troll
+ *
+ */
+public interface StoppingPolicy {
+
+    /**
+     * Checks results of the just finished epoch.
+     * @param statistics results of the epoch
+     * @return reason to stop learning, null if learning should go on
+     */
+    StopReason check(EpochStatistics statistics);
+
+    /**
+     * Forgets history of previous epochs before a new learning.
+     */
+    default void reset() {
+    }
+
+    /**
+     * @return true if policy checks fraction of records whose BMU changed,
+     *         then SOM has to remember BMUs of all records
+     */
+    default boolean isBmuChangeUsed() {
+        return false;
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.attatrol.som.som.stopping;
+
+/**
+ * Simple factory for a stopping policy.
+ * Must be implemented for every stopping policy for
+ * use in view. Policies keep history of epochs, so every
+ * learning gets a new instance.
+ * @author atta_troll
+ *
+ */
+public interface StoppingPolicyFactory<V extends StoppingPolicy> {
+
+    /**
+     * @param timeBudgetMillis max duration of learning in milliseconds,
+     *        0 if learning has no time budget
+     * @return stopping policy instance
+     */
+    V produceStoppingPolicy(long timeBudgetMillis);
+
+    /**
+     * @return true if produced policy can't work without a time budget
+     */
+    default boolean isTimeBudgetRequired() {
+        return false;
+    }
+
+}
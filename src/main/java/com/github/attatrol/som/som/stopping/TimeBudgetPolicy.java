@@ -0,0 +1,41 @@
+package com.github.attatrol.som.som.stopping;
+
+/**
+ * Stops learning when it lasts longer than the time budget.
+ * @author atta_troll
+ *
+ */
+public class TimeBudgetPolicy implements StoppingPolicy {
+
+    private final long budgetMillis;
+
+    /**
+     * Default ctor.
+     * @param budgetMillis max duration of learning in milliseconds
+     * @throws IllegalArgumentException if budget is not positive
+     */
+    public TimeBudgetPolicy(long budgetMillis) throws IllegalArgumentException {
+        if (budgetMillis <= 0L) {
+            throw new IllegalArgumentException("Time budget is not positive");
+        }
+        this.budgetMillis = budgetMillis;
+    }
+
+    @Override
+    public StopReason check(EpochStatistics statistics) {
+        return statistics.getElapsedMillis() >= budgetMillis ? StopReason.TIME_BUDGET : null;
+    }
+
+    public static class Factory implements StoppingPolicyFactory<TimeBudgetPolicy> {
+
+        @Override
+        public TimeBudgetPolicy produceStoppingPolicy(long timeBudgetMillis) {
+            return new TimeBudgetPolicy(timeBudgetMillis);
+        }
+
+        @Override
+        public boolean isTimeBudgetRequired() {
+            return true;
+        }
+    }
+}
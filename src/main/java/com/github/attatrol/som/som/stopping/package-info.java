@@ -0,0 +1,5 @@
+/**
+ * Policies of early learning stop are placed here.
+ */
+
+package com.github.attatrol.som.som.stopping;
@@ -0,0 +1,374 @@
+package com.github.attatrol.som.som.topology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.attatrol.preprocessing.distance.metric.Metric;
+
+/**
+ * Topology of SOM where neurons are placed in cells of a hexagonal grid,
+ * every inner neuron has 6 equidistant neighbors.<br/>
+ * Grid has rows of cells, odd rows are shifted right by half of a cell,
+ * so neuron (x, y) is displayed at point (x + 0.5, y) if y is odd and at (x, y) otherwise.
+ * Distance between neurons is the number of steps between adjacent cells, it is
+ * calculated from axial coordinates of cells, so all distances are integers and
+ * distance levels are 0, 1, 2 ...<br/>
+ * Neighbors of any neuron are found with the same list of axial offsets (rings)
+ * ordered by distance.
+ * @author atta_troll
+ *
+ */
+public class HexagonalTopology implements SomTopology {
+
+    /**
+     * Number of neurons in a row.
+     */
+    private final int maxX;
+
+    /**
+     * Number of rows.
+     */
+    private final int maxY;
+
+    /**
+     * True if opposite borders are glued together.
+     */
+    private final boolean wrapped;
+
+    private final double[] distanceLevels;
+
+    /**
+     * Number of distinct row offsets between neurons.
+     */
+    private final int offsetHeight;
+
+    /**
+     * Distances between neurons indexed by column offset, row offset and parity
+     * of the row of the 1st neuron, see {@link #getOffsetIndex(int, int, int, int)}.
+     */
+    private final int[] offsetLevels;
+
+    /**
+     * Axial q offsets of neighbors ordered by distance.
+     */
+    private int[] ringOffsetsQ;
+
+    /**
+     * Axial r offsets of neighbors ordered by distance.
+     */
+    private int[] ringOffsetsR;
+
+    /**
+     * Distances of offsets.
+     */
+    private int[] ringLevels;
+
+    /**
+     * Max distance level of adjacent neurons.
+     */
+    private final int adjacentLevel;
+
+    /**
+     * Number of leading ring offsets that lead to adjacent neurons and the neuron itself.
+     */
+    private final int adjacentRingSize;
+
+    /**
+     * Default ctor
+     * @param maxX number of neurons in a row
+     * @param maxY number of rows
+     */
+    HexagonalTopology(int maxX, int maxY) {
+        this.maxX = maxX;
+        this.maxY = maxY;
+        wrapped = isWrapped();
+        offsetHeight = wrapped ? maxY : 2 * maxY - 1;
+        offsetLevels = new int[(wrapped ? maxX : 2 * maxX - 1) * offsetHeight * 2];
+        setOffsetLevels();
+        setRings();
+        final int maxDistance = ringLevels[ringLevels.length - 1];
+        distanceLevels = new double[maxDistance + 1];
+        for (int i = 0; i <= maxDistance; i++) {
+            distanceLevels[i] = i;
+        }
+        int ringSize = 0;
+        while (ringSize < ringLevels.length && distanceLevels[ringLevels[ringSize]] < ADJACENCY_RADIUS) {
+            ringSize++;
+        }
+        adjacentRingSize = ringSize;
+        adjacentLevel = ringLevels[ringSize - 1];
+    }
+
+    @Override
+    public List<Point> getNeuronPositions() {
+        List<Point> positions = new ArrayList<>();
+        for (int i = 0; i < maxX; i++) {
+            for (int j = 0; j < maxY; j++) {
+                positions.add(new Point(i + .5 * (j & 1), j));
+            }
+        }
+        return positions;
+    }
+
+    @Override
+    public int getNeuronIndex(Point point) {
+        final int y = (int) Math.round(point.getY());
+        final int x = (int) Math.round(point.getX() - .5 * (y & 1));
+        return x * maxY + y;
+    }
+
+    @Override
+    public double getDistance(Point point1, Point point2) {
+        return getDistanceLevel(getNeuronIndex(point1), getNeuronIndex(point2));
+    }
+
+    @Override
+    public double getDistance(int index1, int index2) {
+        return getDistanceLevel(index1, index2);
+    }
+
+    @Override
+    public double[] getDistanceLevels() {
+        return distanceLevels;
+    }
+
+    @Override
+    public int getDistanceLevel(Point point1, Point point2) {
+        return getDistanceLevel(getNeuronIndex(point1), getNeuronIndex(point2));
+    }
+
+    @Override
+    public int getDistanceLevel(int index1, int index2) {
+        return offsetLevels[getOffsetIndex(index1 / maxY, index1 % maxY, index2 / maxY, index2 % maxY)];
+    }
+
+    @Override
+    public int collectNeighbors(int center, int maxLevel, int[] neighbors, int[] levels) {
+        final int x = center / maxY;
+        final int y = center % maxY;
+        final int q = toAxialQ(x, y);
+        int counter = 0;
+        for (int i = 0; i < ringLevels.length && ringLevels[i] <= maxLevel; i++) {
+            final int neighborR = y + ringOffsetsR[i];
+            int neighborX = toOffsetX(q + ringOffsetsQ[i], neighborR);
+            int neighborY = neighborR;
+            if (wrapped) {
+                neighborX = Math.floorMod(neighborX, maxX);
+                neighborY = Math.floorMod(neighborY, maxY);
+            }
+            else if (neighborX < 0 || neighborX >= maxX || neighborY < 0 || neighborY >= maxY) {
+                continue;
+            }
+            // same as getNeuronIndex
+            neighbors[counter] = neighborX * maxY + neighborY;
+            levels[counter] = ringLevels[i];
+            counter++;
+        }
+        return counter;
+    }
+
+    @Override
+    public int[] getAdjacentNeurons(int index) {
+        final int[] neighbors = new int[adjacentRingSize];
+        final int neighborCount = collectNeighbors(index, adjacentLevel, neighbors, new int[adjacentRingSize]);
+        // the neuron itself is the only neighbor of zero level
+        return Arrays.copyOfRange(neighbors, 1, neighborCount);
+    }
+
+    /**
+     * @return number of neurons in a row
+     */
+    public int getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * @return true if opposite borders of grid are glued together
+     */
+    protected boolean isWrapped() {
+        return false;
+    }
+
+    /**
+     * Calculates index of offset between 2 neurons in offset table.
+     * Axial offset between cells depends on parity of the 1st row as well
+     * as on coordinate offsets, because odd rows are shifted.
+     * @param x1 column of the 1st neuron
+     * @param y1 row of the 1st neuron
+     * @param x2 column of the 2nd neuron
+     * @param y2 row of the 2nd neuron
+     * @return offset index
+     */
+    private int getOffsetIndex(int x1, int y1, int x2, int y2) {
+        if (wrapped) {
+            return (Math.floorMod(x2 - x1, maxX) * offsetHeight + Math.floorMod(y2 - y1, maxY)) * 2 + (y1 & 1);
+        }
+        else {
+            return ((x2 - x1 + maxX - 1) * offsetHeight + y2 - y1 + maxY - 1) * 2 + (y1 & 1);
+        }
+    }
+
+    /**
+     * Fills offset table with distances. Distance on the wrapped grid
+     * is the distance to the closest image of the 2nd neuron on the plane.
+     */
+    private void setOffsetLevels() {
+        final int minOffsetX = wrapped ? 0 : -(maxX - 1);
+        final int minOffsetY = wrapped ? 0 : -(maxY - 1);
+        for (int i = 0; i < offsetLevels.length / (2 * offsetHeight); i++) {
+            for (int j = 0; j < offsetHeight; j++) {
+                for (int parity = 0; parity < 2; parity++) {
+                    final int x2 = minOffsetX + i;
+                    final int y2 = parity + minOffsetY + j;
+                    int distance = Integer.MAX_VALUE;
+                    if (!wrapped) {
+                        distance = calculateDistance(0, parity, x2, y2);
+                    }
+                    else {
+                        for (int shiftX = -maxX; shiftX <= maxX; shiftX += maxX) {
+                            for (int shiftY = -maxY; shiftY <= maxY; shiftY += maxY) {
+                                distance = Math.min(distance,
+                                        calculateDistance(0, parity, x2 + shiftX, y2 + shiftY));
+                            }
+                        }
+                    }
+                    offsetLevels[(i * offsetHeight + j) * 2 + parity] = distance;
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates number of steps between 2 cells of infinite grid.
+     * @param x1 column of the 1st cell
+     * @param y1 row of the 1st cell
+     * @param x2 column of the 2nd cell
+     * @param y2 row of the 2nd cell
+     * @return distance
+     */
+    private static int calculateDistance(int x1, int y1, int x2, int y2) {
+        final int dq = toAxialQ(x2, y2) - toAxialQ(x1, y1);
+        final int dr = y2 - y1;
+        return (Math.abs(dq) + Math.abs(dr) + Math.abs(dq + dr)) / 2;
+    }
+
+    /**
+     * Converts column of a cell into axial q coordinate, row is axial r coordinate itself.
+     * @param x column
+     * @param y row
+     * @return axial q coordinate
+     */
+    private static int toAxialQ(int x, int y) {
+        return x - Math.floorDiv(y, 2);
+    }
+
+    /**
+     * Converts axial coordinates of a cell into its column.
+     * @param q axial q coordinate
+     * @param r axial r coordinate
+     * @return column
+     */
+    private static int toOffsetX(int q, int r) {
+        return q + Math.floorDiv(r, 2);
+    }
+
+    /**
+     * Fills rings: axial offsets between neurons ordered by distance.
+     * Offsets to all neurons from the 1st one are enough for the wrapped grid.
+     * Otherwise, all offsets between cells of the bounding rectangle are taken.
+     */
+    private void setRings() {
+        final List<int[]> offsets = new ArrayList<>();
+        int maxDistance = 0;
+        if (wrapped) {
+            for (int x = 0; x < maxX; x++) {
+                for (int y = 0; y < maxY; y++) {
+                    // the closest image of the neuron on the plane
+                    int[] closest = null;
+                    for (int shiftX = -maxX; shiftX <= maxX; shiftX += maxX) {
+                        for (int shiftY = -maxY; shiftY <= maxY; shiftY += maxY) {
+                            final int distance = calculateDistance(0, 0, x + shiftX, y + shiftY);
+                            if (closest == null || distance < closest[2]) {
+                                closest = new int[] {toAxialQ(x + shiftX, y + shiftY), y + shiftY, distance};
+                            }
+                        }
+                    }
+                    offsets.add(closest);
+                    maxDistance = Math.max(maxDistance, closest[2]);
+                }
+            }
+        }
+        else {
+            final int maxOffsetQ = maxX - 1 + maxY / 2;
+            for (int dq = -maxOffsetQ; dq <= maxOffsetQ; dq++) {
+                for (int dr = -(maxY - 1); dr <= maxY - 1; dr++) {
+                    final int distance = (Math.abs(dq) + Math.abs(dr) + Math.abs(dq + dr)) / 2;
+                    offsets.add(new int[] {dq, dr, distance});
+                }
+            }
+            // the farthest neurons are corners
+            final int[] cornerX = {0, maxX - 1};
+            final int[] cornerY = {0, maxY - 1};
+            for (int x1 : cornerX) {
+                for (int y1 : cornerY) {
+                    for (int x2 : cornerX) {
+                        for (int y2 : cornerY) {
+                            maxDistance = Math.max(maxDistance, calculateDistance(x1, y1, x2, y2));
+                        }
+                    }
+                }
+            }
+        }
+        // counting sort by distance, offsets beyond max distance are useless
+        final int[] levelCounts = new int[maxDistance + 2];
+        for (int[] offset : offsets) {
+            if (offset[2] <= maxDistance) {
+                levelCounts[offset[2] + 1]++;
+            }
+        }
+        for (int i = 1; i < levelCounts.length; i++) {
+            levelCounts[i] += levelCounts[i - 1];
+        }
+        final int ringSize = levelCounts[maxDistance + 1];
+        ringOffsetsQ = new int[ringSize];
+        ringOffsetsR = new int[ringSize];
+        ringLevels = new int[ringSize];
+        for (int[] offset : offsets) {
+            if (offset[2] <= maxDistance) {
+                final int position = levelCounts[offset[2]]++;
+                ringOffsetsQ[position] = offset[0];
+                ringOffsetsR[position] = offset[1];
+                ringLevels[position] = offset[2];
+            }
+        }
+    }
+
+    /**
+     * Factory for current topology.
+     * Hexagonal distance replaces metric, so metric is ignored.
+     * @author atta_troll
+     *
+     */
+    public static class Factory implements RectangleTopologyFactory<HexagonalTopology> {
+
+        @Override
+        public HexagonalTopology createTopology(int width, int height, Metric metric)
+            throws IllegalArgumentException {
+            if (width < 1) {
+                throw new IllegalArgumentException("Width is not positive number");
+            }
+            if (height < 1) {
+                throw new IllegalArgumentException("Height is not positive number");
+            }
+            return new HexagonalTopology(width, height);
+        }
+    }
+}
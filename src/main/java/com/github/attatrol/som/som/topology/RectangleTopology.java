@@ -1,6 +1,7 @@
 package com.github.attatrol.som.som.topology;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import com.github.attatrol.preprocessing.distance.metric.Metric;
@@ -9,7 +10,11 @@ import com.github.attatrol.preprocessing.distance.metric.Metric;
  * Topology of SOM, used to calculate distances between neurons.
  * Assuming that all neurons are placed in nodes of a rectangular grid.
  * All realizations must be created via {@link RectangularTopologyFactory}
- * which ensures that only valid topology is created.
+ * which ensures that only valid topology is created.<br/>
+ * Metric is expected to be translation invariant, so distance between neurons
+ * depends only on their coordinate offset. Distances are stored per offset,
+ * which takes O(maxX * maxY) memory, and neighbors of any neuron are found with
+ * the same list of offsets (rings) ordered by distance.
  * @author atta_troll
  *
  */
@@ -33,9 +38,59 @@ public class RectangleTopology implements SomTopology {
     private final Metric metric;
 
     /**
-     * Matrix filled with distances between neurons.
+     * True if coordinate offsets wrap around borders.
      */
-    protected final double[][][][] distanceMatrix;
+    private final boolean wrapped;
+
+    /**
+     * Width of offset tables.
+     */
+    private final int offsetWidth;
+
+    /**
+     * Height of offset tables.
+     */
+    private final int offsetHeight;
+
+    /**
+     * Distances between neurons indexed by offsets, see {@link #getOffsetIndex(int, int, int, int)}.
+     */
+    private final double[] offsetDistances;
+
+    /**
+     * All distinct distances between neurons in ascending order.
+     */
+    private final double[] distanceLevels;
+
+    /**
+     * Levels of distances between neurons indexed by offsets.
+     */
+    private final int[] offsetLevels;
+
+    /**
+     * X offsets of neighbors ordered by distance level.
+     */
+    private int[] ringOffsetsX;
+
+    /**
+     * Y offsets of neighbors ordered by distance level.
+     */
+    private int[] ringOffsetsY;
+
+    /**
+     * Distance levels of offsets.
+     */
+    private int[] ringLevels;
+
+    /**
+     * Max distance level of adjacent neurons.
+     */
+    private final int adjacentLevel;
+
+    /**
+     * Number of leading ring offsets that lead to adjacent neurons and the neuron itself.
+     */
+    private final int adjacentRingSize;
 
     /**
      * Default ctor
@@ -47,16 +102,90 @@ public class RectangleTopology implements SomTopology {
         this.maxX = maxX;
         this.maxY = maxY;
         this.metric = metric;
-        distanceMatrix = new double[maxX][maxY][maxX][maxY];
-        setDistanceMatrix();
+        wrapped = isWrapped();
+        offsetWidth = wrapped ? maxX : 2 * maxX - 1;
+        offsetHeight = wrapped ? maxY : 2 * maxY - 1;
+        offsetDistances = new double[offsetWidth * offsetHeight];
+        setOffsetDistances();
+        distanceLevels = calculateDistanceLevels();
+        offsetLevels = new int[offsetDistances.length];
+        for (int i = 0; i < offsetDistances.length; i++) {
+            offsetLevels[i] = Arrays.binarySearch(distanceLevels, offsetDistances[i]);
+        }
+        setRings();
+        int ringSize = 0;
+        while (ringSize < ringLevels.length && distanceLevels[ringLevels[ringSize]] < ADJACENCY_RADIUS) {
+            ringSize++;
+        }
+        adjacentRingSize = ringSize;
+        adjacentLevel = ringLevels[ringSize - 1];
     }
 
     @Override
     public double getDistance(Point point1, Point point2) {
-        return distanceMatrix[(int) Math.round(point1.getX())]
-                [(int) Math.round(point1.getY())]
-                [(int) Math.round(point2.getX())]
-                [(int) Math.round(point2.getY())];
+        return offsetDistances[getOffsetIndex((int) Math.round(point1.getX()),
+                (int) Math.round(point1.getY()),
+                (int) Math.round(point2.getX()),
+                (int) Math.round(point2.getY()))];
+    }
+
+    @Override
+    public double getDistance(int index1, int index2) {
+        return offsetDistances[getOffsetIndex(index1 / maxY, index1 % maxY, index2 / maxY, index2 % maxY)];
+    }
+
+    @Override
+    public int getNeuronIndex(Point point) {
+        return (int) Math.round(point.getX()) * maxY + (int) Math.round(point.getY());
+    }
+
+    @Override
+    public double[] getDistanceLevels() {
+        return distanceLevels;
+    }
+
+    @Override
+    public int getDistanceLevel(Point point1, Point point2) {
+        return offsetLevels[getOffsetIndex((int) Math.round(point1.getX()),
+                (int) Math.round(point1.getY()),
+                (int) Math.round(point2.getX()),
+                (int) Math.round(point2.getY()))];
+    }
+
+    @Override
+    public int getDistanceLevel(int index1, int index2) {
+        return offsetLevels[getOffsetIndex(index1 / maxY, index1 % maxY, index2 / maxY, index2 % maxY)];
+    }
+
+    @Override
+    public int collectNeighbors(int center, int maxLevel, int[] neighbors, int[] levels) {
+        final int x = center / maxY;
+        final int y = center % maxY;
+        int counter = 0;
+        for (int i = 0; i < ringLevels.length && ringLevels[i] <= maxLevel; i++) {
+            int neighborX = x + ringOffsetsX[i];
+            int neighborY = y + ringOffsetsY[i];
+            if (wrapped) {
+                neighborX = Math.floorMod(neighborX, maxX);
+                neighborY = Math.floorMod(neighborY, maxY);
+            }
+            else if (neighborX < 0 || neighborX >= maxX || neighborY < 0 || neighborY >= maxY) {
+                continue;
+            }
+            // same as getNeuronIndex
+            neighbors[counter] = neighborX * maxY + neighborY;
+            levels[counter] = ringLevels[i];
+            counter++;
+        }
+        return counter;
+    }
+
+    @Override
+    public int[] getAdjacentNeurons(int index) {
+        final int[] neighbors = new int[adjacentRingSize];
+        final int neighborCount = collectNeighbors(index, adjacentLevel, neighbors, new int[adjacentRingSize]);
+        // the neuron itself is the only neighbor of zero level
+        return Arrays.copyOfRange(neighbors, 1, neighborCount);
     }
 
     @Override
@@ -92,27 +221,104 @@ public class RectangleTopology implements SomTopology {
     }
 
     /**
-     * Fills distance matrix with values.
-     */
-    protected void setDistanceMatrix() {
-        final Integer[] point1 = new Integer[2];
-        final Integer[] point2 = new Integer[2];
-        for (int x1 = 0; x1 < maxX; x1++) {
-            for (int y1 = 0; y1 < maxY; y1++) {
-                for (int x2 = 0; x2 < maxX; x2++) {
-                    for (int y2 = 0; y2 < maxY; y2++) {
-                        point1[0] = x1;
-                        point1[1] = y1;
-                        point2[0] = x2;
-                        point2[1] = y2;
-                        distanceMatrix[x1][y1][x2][y2] =
-                                metric.calculate(point1, point2);
-                    }
-                }
+     * Calculates distance between neurons with the given coordinate offset.
+     * @param dx offset of x coordinate, in [-(maxX - 1), maxX - 1] or, if offsets wrap,
+     *        in [0, maxX - 1]
+     * @param dy offset of y coordinate, in [-(maxY - 1), maxY - 1] or, if offsets wrap,
+     *        in [0, maxY - 1]
+     * @return distance
+     */
+    protected double calculateOffsetDistance(int dx, int dy) {
+        final Integer[] point1 = {Math.max(0, -dx), Math.max(0, -dy)};
+        final Integer[] point2 = {Math.max(0, dx), Math.max(0, dy)};
+        return metric.calculate(point1, point2);
+    }
+
+    /**
+     * Finds index of offset between 2 neurons in offset tables.
+     * @param x1 x coordinate of the 1st neuron
+     * @param y1 y coordinate of the 1st neuron
+     * @param x2 x coordinate of the 2nd neuron
+     * @param y2 y coordinate of the 2nd neuron
+     * @return offset index
+     */
+    private int getOffsetIndex(int x1, int y1, int x2, int y2) {
+        if (wrapped) {
+            return Math.floorMod(x2 - x1, maxX) * offsetHeight + Math.floorMod(y2 - y1, maxY);
+        }
+        else {
+            return (x2 - x1 + maxX - 1) * offsetHeight + y2 - y1 + maxY - 1;
+        }
+    }
+
+    /**
+     * Fills offset table with distances.
+     */
+    private void setOffsetDistances() {
+        final int minOffsetX = wrapped ? 0 : -(maxX - 1);
+        final int minOffsetY = wrapped ? 0 : -(maxY - 1);
+        for (int i = 0; i < offsetWidth; i++) {
+            for (int j = 0; j < offsetHeight; j++) {
+                offsetDistances[i * offsetHeight + j] = calculateOffsetDistance(minOffsetX + i, minOffsetY + j);
             }
         }
     }
 
+    /**
+     * Collects distinct distances of offset table.
+     * @return sorted distinct distances
+     */
+    private double[] calculateDistanceLevels() {
+        final double[] distances = offsetDistances.clone();
+        Arrays.sort(distances);
+        int levelCount = 0;
+        for (int i = 0; i < distances.length; i++) {
+            if (i == 0 || distances[i] != distances[levelCount - 1]) {
+                distances[levelCount++] = distances[i];
+            }
+        }
+        return Arrays.copyOf(distances, levelCount);
+    }
+
+    /**
+     * @return true if opposite borders of rectangle are glued together,
+     *         so coordinate offsets wrap around
+     */
+    protected boolean isWrapped() {
+        return false;
+    }
+
+    /**
+     * Fills rings: all coordinate offsets between neurons ordered by distance level.
+     */
+    private void setRings() {
+        final int minOffsetX = wrapped ? -((maxX - 1) / 2) : -(maxX - 1);
+        final int maxOffsetX = wrapped ? maxX / 2 : maxX - 1;
+        final int minOffsetY = wrapped ? -((maxY - 1) / 2) : -(maxY - 1);
+        final int maxOffsetY = wrapped ? maxY / 2 : maxY - 1;
+        final int height = maxOffsetY - minOffsetY + 1;
+        final long[] keys = new long[(maxOffsetX - minOffsetX + 1) * height];
+        int counter = 0;
+        for (int dx = minOffsetX; dx <= maxOffsetX; dx++) {
+            for (int dy = minOffsetY; dy <= maxOffsetY; dy++) {
+                final int level = offsetLevels[getOffsetIndex(0, 0, dx, dy)];
+                // level in high bits, offset index in low bits
+                keys[counter] = ((long) level << 32) | counter;
+                counter++;
+            }
+        }
+        Arrays.sort(keys);
+        ringOffsetsX = new int[keys.length];
+        ringOffsetsY = new int[keys.length];
+        ringLevels = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            final int offsetIndex = (int) keys[i];
+            ringOffsetsX[i] = minOffsetX + offsetIndex / height;
+            ringOffsetsY[i] = minOffsetY + offsetIndex % height;
+            ringLevels[i] = (int) (keys[i] >>> 32);
+        }
+    }
+
     /**
      * Factory for current topology
      * @author atta_troll
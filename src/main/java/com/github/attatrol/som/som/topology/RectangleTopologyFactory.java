@@ -4,11 +4,13 @@ import com.github.attatrol.preprocessing.distance.metric.Metric;
 
 /**
  * Topology factory makes sure all created topologies are valid.
+ * Neurons of created topologies fill a grid of width x height size,
+ * the grid itself may be not rectangular.
  * @author atta_troll
  *
  */
 @FunctionalInterface
-public interface RectangleTopologyFactory<V extends RectangleTopology> {
+public interface RectangleTopologyFactory<V extends SomTopology> {
 
     /**
      * Creates a topology.
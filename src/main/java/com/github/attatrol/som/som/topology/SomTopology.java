@@ -1,5 +1,6 @@
 package com.github.attatrol.som.som.topology;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -7,18 +8,33 @@ import java.util.List;
  * it depends on distances between neurons, so we have to define
  * positions of neurons as their topology. All issues with neuron
  * positions should be processed by this.<br/>
+ * Neurons are identified by their indexes in {@link #getNeuronPositions()},
+ * index methods are preferred in learning, points serve for layout and display.
  * 
  * @author atta_troll
  *
  */
 public interface SomTopology {
 
+    /**
+     * Neurons closer to each other than this distance are adjacent.
+     */
+    double ADJACENCY_RADIUS = 2.;
+
     /**
      * Produces list of neuron positions
      * @return positions of neurons
      */
     List<Point> getNeuronPositions();
 
+    /**
+     * Finds index of a neuron position in {@link #getNeuronPositions()}, it serves as
+     * a stable dense integer id of a neuron.
+     * @param point neuron position
+     * @return neuron index
+     */
+    int getNeuronIndex(Point point);
+
     /**
      * Calculates distance between 2 points.
      * @param point1 1st neuron
@@ -27,4 +43,97 @@ public interface SomTopology {
      */
     double getDistance(Point point1, Point point2);
 
+    /**
+     * Calculates distance between 2 neurons.
+     * @param index1 index of the 1st neuron
+     * @param index2 index of the 2nd neuron
+     * @return resulting distance
+     */
+    double getDistance(int index1, int index2);
+
+    /**
+     * Produces all distinct distances between neurons in ascending order.
+     * Index of a distance in this array is its level.
+     * @return distinct distances, not a copy
+     */
+    double[] getDistanceLevels();
+
+    /**
+     * Finds level of distance between 2 points, i.e. index of the distance
+     * in {@link #getDistanceLevels()}.
+     * @param point1 1st neuron
+     * @param point2 2nd neuron
+     * @return distance level
+     */
+    int getDistanceLevel(Point point1, Point point2);
+
+    /**
+     * Finds level of distance between 2 neurons, i.e. index of the distance
+     * in {@link #getDistanceLevels()}.
+     * @param index1 index of the 1st neuron
+     * @param index2 index of the 2nd neuron
+     * @return distance level
+     */
+    int getDistanceLevel(int index1, int index2);
+
+    /**
+     * Collects neurons whose distance level from the center neuron doesn't exceed
+     * the max level, the nearest neurons go first. Neurons are identified by
+     * their indexes in {@link #getNeuronPositions()}.
+     * @param center index of the center neuron
+     * @param maxLevel max distance level
+     * @param neighbors array to be filled with indexes of neighbors,
+     *        must have room for all neurons
+     * @param levels array to be filled with distance levels of neighbors,
+     *        must have room for all neurons
+     * @return number of collected neighbors
+     */
+    int collectNeighbors(int center, int maxLevel, int[] neighbors, int[] levels);
+
+    /**
+     * Finds neurons adjacent to the neuron, i.e. ones closer than {@link #ADJACENCY_RADIUS},
+     * the nearest neurons go first. Grid topologies find them in constant time,
+     * so adjacency of the whole map is built in O(N).
+     * @param index index of the neuron
+     * @return indexes of adjacent neurons, the neuron itself excluded
+     */
+    int[] getAdjacentNeurons(int index);
+
+    /**
+     * Checks adjacency of two neurons, see {@link #getAdjacentNeurons(int)}.
+     * @param index1 index of the 1st neuron
+     * @param index2 index of the 2nd neuron
+     * @return true if neurons are different and closer than {@link #ADJACENCY_RADIUS}
+     */
+    default boolean isAdjacent(int index1, int index2) {
+        return index1 != index2 && getDistanceLevels()[getDistanceLevel(index1, index2)] < ADJACENCY_RADIUS;
+    }
+
+    /**
+     * Finds neurons whose distance from the center neuron doesn't exceed the radius,
+     * the nearest neurons go first.
+     * @param center index of the center neuron
+     * @param radius max distance
+     * @return indexes of neighbors, the center neuron excluded
+     */
+    default int[] getNeighbors(int center, double radius) {
+        final double[] distanceLevels = getDistanceLevels();
+        int maxLevel = Arrays.binarySearch(distanceLevels, radius);
+        if (maxLevel < 0) {
+            // insertion point is the first level beyond radius
+            maxLevel = -maxLevel - 2;
+        }
+        final int neuronCount = getNeuronPositions().size();
+        final int[] neighbors = new int[neuronCount];
+        final int neighborCount = collectNeighbors(center, maxLevel, neighbors, new int[neuronCount]);
+        final int[] result = new int[Math.max(0, neighborCount - 1)];
+        int counter = 0;
+        for (int i = 0; i < neighborCount; i++) {
+            if (neighbors[i] != center) {
+                result[counter++] = neighbors[i];
+            }
+        }
+        return result;
+    }
+
 }
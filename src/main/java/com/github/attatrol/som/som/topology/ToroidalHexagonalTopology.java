@@ -0,0 +1,48 @@
+package com.github.attatrol.som.som.topology;
+
+import com.github.attatrol.preprocessing.distance.metric.Metric;
+
+/**
+ * Border-less version of {@link HexagonalTopology}, opposite borders of grid
+ * are glued together. Number of rows must be even, otherwise shifted rows
+ * wouldn't match on the glued border.
+ * @author atta_troll
+ *
+ */
+public class ToroidalHexagonalTopology extends HexagonalTopology {
+
+    /**
+     * Default ctor
+     * @param maxX number of neurons in a row
+     * @param maxY number of rows, even
+     */
+    ToroidalHexagonalTopology(int maxX, int maxY) {
+        super(maxX, maxY);
+    }
+
+    @Override
+    protected boolean isWrapped() {
+        return true;
+    }
+
+    /**
+     * Factory for current topology.
+     * Hexagonal distance replaces metric, so metric is ignored.
+     * @author atta_troll
+     *
+     */
+    public static class Factory implements RectangleTopologyFactory<ToroidalHexagonalTopology> {
+
+        @Override
+        public ToroidalHexagonalTopology createTopology(int width, int height, Metric metric)
+            throws IllegalArgumentException {
+            if (width < 1) {
+                throw new IllegalArgumentException("Width is not positive number");
+            }
+            if (height < 2 || height % 2 != 0) {
+                throw new IllegalArgumentException("Height is not positive even number");
+            }
+            return new ToroidalHexagonalTopology(width, height);
+        }
+    }
+}
@@ -21,24 +21,16 @@ public class ToroidalTopology extends RectangleTopology {
     }
 
     @Override
-    protected void setDistanceMatrix() {
-        double[] differences = new double[2];
-        for (int x1 = 0; x1 < getMaxX(); x1++) {
-            for (int y1 = 0; y1 < getMaxY(); y1++) {
-                for (int x2 = 0; x2 < getMaxX(); x2++) {
-                    for (int y2 = 0; y2 < getMaxY(); y2++) {
-                        final double diffX1 = Math.abs(x1 - x2);
-                        final double diffX2 = getMaxX() - diffX1;
-                        final double diffY1 = Math.abs(y1 - y2);
-                        final double diffY2 = getMaxY() - diffY1;
-                        differences[0] = diffX1 < diffX2 ? diffX1 : diffX2;
-                        differences[1] = diffY1 < diffY2 ? diffY1 : diffY2;
-                        distanceMatrix[x1][y1][x2][y2] =
-                                getMetric().calculate(differences);
-                    }
-                }
-            }
-        }
+    protected boolean isWrapped() {
+        return true;
+    }
+
+    @Override
+    protected double calculateOffsetDistance(int dx, int dy) {
+        final double[] differences = new double[2];
+        differences[0] = Math.min(dx, getMaxX() - dx);
+        differences[1] = Math.min(dy, getMaxY() - dy);
+        return getMetric().calculate(differences);
     }
 
     /**
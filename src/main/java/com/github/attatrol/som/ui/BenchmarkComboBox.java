@@ -2,9 +2,12 @@
 package com.github.attatrol.som.ui;
 
 import java.io.IOException;
+import java.util.Arrays;
 
+import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
 import com.github.attatrol.preprocessing.ui.misc.UiUtils;
 import com.github.attatrol.som.benchmark.ClusteringBenchmark;
+import com.github.attatrol.som.datasource.TokenDataSourceCache;
 import com.github.attatrol.som.som.SomClusterResult;
 import com.github.attatrol.som.ui.SetupSomPane.SetupFormState;
 import com.github.attatrol.som.ui.i18n.SomI18nComboBox;
@@ -20,14 +23,16 @@ public class BenchmarkComboBox extends SomI18nComboBox<BenchmarkUiFactory> {
             final BenchmarkUiFactory factory = getSelectionModel().getSelectedItem();
             try {
                 if (factory != null) {
+                    final AbstractTokenDataSource<?> dataSource =
+                            TokenDataSourceCache.getCachedDataSource(somData.getTdsm());
                     final ClusteringBenchmark benchmark = factory.getBenchmark(
-                            somData.getTdsm().getTokenDataSource(), somData.getTdsm().getTitles(),
-                            SomClusterResult.produceClusterResult(somData.getSom(),
-                            somData.getTdsm().getTokenDataSource()),
+                            dataSource, somData.getTdsm().getTitles(),
+                            SomClusterResult.produceClusterResult(somData.getSom(), dataSource),
                             somData.getDistanceFunction());
                     if (benchmark != null) {
                         String message = benchmark.hasFailed() ? factory.getFailureFormat()
-                                : String.format(factory.getSuccessFormat(), benchmark.getValue());
+                                : String.format(factory.getSuccessFormat(),
+                                        Arrays.stream(benchmark.getValues()).boxed().toArray());
                         UiUtils.showInfoMessage(message);
                     }
                 }
@@ -9,6 +9,7 @@ import java.util.TreeMap;
 
 import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
 import com.github.attatrol.preprocessing.ui.TokenDataSourceAndMisc;
+import com.github.attatrol.som.datasource.TokenDataSourceCache;
 import com.github.attatrol.som.som.initializers.SampleFrequencyCalculator;
 
 import javafx.scene.paint.Color;
@@ -86,7 +87,8 @@ final class ColorUtils {
     public static Map<Object, Color>[] getTokenColorsByFrequency(TokenDataSourceAndMisc tdsm) throws IOException {
         final TokenType[] tokenTypes = tdsm.getTokenTypes();
         final Map<Object, Double>[] frequencies =
-                SampleFrequencyCalculator.getSampleFrequencies(tdsm.getTokenDataSource(), tokenTypes);
+                SampleFrequencyCalculator.getSampleFrequencies(
+                        TokenDataSourceCache.getCachedDataSource(tdsm), tokenTypes);
         final int recordLength = tdsm.getTokenDataSource().getRecordLength();
         @SuppressWarnings("unchecked")
         Map<Object, Color>[] colors = new Map[recordLength];
@@ -1,9 +1,15 @@
 package com.github.attatrol.som.ui;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import com.github.attatrol.som.som.TrainingMode;
+import com.github.attatrol.som.som.bmu.BmuSearchFactory;
+import com.github.attatrol.som.som.bmu.LocalBmuSearch;
+import com.github.attatrol.som.som.bmu.ParallelBmuSearch;
+import com.github.attatrol.som.som.bmu.SequentialBmuSearch;
 import com.github.attatrol.som.som.functions.learning.HyperbolicLearningFunction;
 import com.github.attatrol.som.som.functions.learning.LearningFunctionFactory;
 import com.github.attatrol.som.som.functions.learning.LinearLearningFunction;
@@ -15,14 +21,23 @@ import com.github.attatrol.som.som.functions.neighbourhood.NeighborhoodFunctionF
 import com.github.attatrol.som.som.initializers.RandomRecordsInitializer;
 import com.github.attatrol.som.som.initializers.RandomWeightsInitializer;
 import com.github.attatrol.som.som.initializers.SomInitializer;
+import com.github.attatrol.som.som.neuron.EncodedFuzzyNeuron;
 import com.github.attatrol.som.som.neuron.FrequencyControlledFuzzyNeuron;
 import com.github.attatrol.som.som.neuron.FuzzyNeuron;
 import com.github.attatrol.som.som.neuron.FuzzyNeuronFactory;
 import com.github.attatrol.som.som.neuron.ResettingFuzzyNeuron;
+import com.github.attatrol.som.som.stopping.BmuChangePolicy;
+import com.github.attatrol.som.som.stopping.CompositeStoppingPolicy;
+import com.github.attatrol.som.som.stopping.ErrorPlateauPolicy;
+import com.github.attatrol.som.som.stopping.StoppingPolicyFactory;
+import com.github.attatrol.som.som.stopping.TimeBudgetPolicy;
+import com.github.attatrol.som.som.topology.HexagonalTopology;
 import com.github.attatrol.som.som.topology.RectangleTopology;
 import com.github.attatrol.som.som.topology.RectangleTopologyFactory;
+import com.github.attatrol.som.som.topology.ToroidalHexagonalTopology;
 import com.github.attatrol.som.som.topology.ToroidalTopology;
 import com.github.attatrol.som.ui.utils.benchmarkfactories.BenchmarkUiFactory;
+import com.github.attatrol.som.ui.utils.benchmarkfactories.ExternalIndicesBenchmarkFactory;
 import com.github.attatrol.som.ui.utils.benchmarkfactories.TrivialReferenceColumnBenchmarkFactory;
 
 /**
@@ -56,6 +71,8 @@ final class ModelRegisters {
         List<RectangleTopologyFactory<?>> set = new ArrayList<>();
         set.add(new RectangleTopology.Factory());
         set.add(new ToroidalTopology.Factory());
+        set.add(new HexagonalTopology.Factory());
+        set.add(new ToroidalHexagonalTopology.Factory());
         RECTANGLE_TOPOLOGY_FACTORIES = Collections.unmodifiableList(set);
     }
 
@@ -73,13 +90,37 @@ final class ModelRegisters {
         set.add(new FuzzyNeuron.Factory());
         set.add(new FrequencyControlledFuzzyNeuron.Factory());
         set.add(new ResettingFuzzyNeuron.Factory());
+        set.add(new EncodedFuzzyNeuron.Factory());
         FUZZY_NEURON_FACTORIES = Collections.unmodifiableList(set);
     }
 
+    public static final List<StoppingPolicyFactory<?>> STOPPING_POLICY_FACTORIES;
+    static {
+        List<StoppingPolicyFactory<?>> set = new ArrayList<>();
+        set.add(new ErrorPlateauPolicy.Factory());
+        set.add(new BmuChangePolicy.Factory());
+        set.add(new TimeBudgetPolicy.Factory());
+        set.add(new CompositeStoppingPolicy.Factory());
+        STOPPING_POLICY_FACTORIES = Collections.unmodifiableList(set);
+    }
+
+    public static final List<BmuSearchFactory<?>> BMU_SEARCH_FACTORIES;
+    static {
+        List<BmuSearchFactory<?>> set = new ArrayList<>();
+        set.add(new SequentialBmuSearch.Factory());
+        set.add(new ParallelBmuSearch.Factory());
+        set.add(new LocalBmuSearch.Factory());
+        BMU_SEARCH_FACTORIES = Collections.unmodifiableList(set);
+    }
+
+    public static final List<TrainingMode> TRAINING_MODES =
+            Collections.unmodifiableList(Arrays.asList(TrainingMode.values()));
+
     public static final List<BenchmarkUiFactory> BENCHMARK_FACTORIES;
     static {
         List<BenchmarkUiFactory> set = new ArrayList<>();
         set.add(new TrivialReferenceColumnBenchmarkFactory());
+        set.add(new ExternalIndicesBenchmarkFactory());
         BENCHMARK_FACTORIES = Collections.unmodifiableList(set);
     }
     
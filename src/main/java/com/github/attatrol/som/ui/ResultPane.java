@@ -10,23 +10,21 @@ import java.util.Map;
 import java.util.WeakHashMap;
 
 import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
-import com.github.attatrol.preprocessing.datasource.Record;
 import com.github.attatrol.preprocessing.datasource.parsing.TokenType;
 import com.github.attatrol.preprocessing.ui.TokenDataSourceAndMisc;
 import com.github.attatrol.preprocessing.ui.TokenDataSourceTableView;
 import com.github.attatrol.preprocessing.ui.misc.UiUtils;
+import com.github.attatrol.som.datasource.TokenDataSourceCache;
 import com.github.attatrol.som.som.Som;
 import com.github.attatrol.som.som.SomClusterResult;
 import com.github.attatrol.som.som.initializers.SampleFrequencyCalculator;
 import com.github.attatrol.som.som.neuron.AbstractNeuron;
 import com.github.attatrol.som.som.topology.Point;
 import com.github.attatrol.som.ui.i18n.SomI18nProvider;
-import com.github.attatrol.som.ui.utils.RamTokenDataSource;
 
 import javafx.scene.chart.Chart;
 import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
-import javafx.scene.control.Label;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.Priority;
@@ -43,11 +41,6 @@ import javafx.stage.Screen;
  */
 public class ResultPane extends GridPane {
 
-    /**
-     * Max number of neurons to be shown in table view
-     */
-    private static final int SHOWN_NUMBER_OF_NEURONS = 2500;
-
     /**
      * Minimal color brightness for a tile.
      */
@@ -170,8 +163,6 @@ public class ResultPane extends GridPane {
         add(loadNextTableViewButton, 1, 1);
         add(colorCheckBox, 2, 1);
         colorCheckBox.getSelectionModel().select(0);
-        add(new Label(String.format(SomI18nProvider.INSTANCE.getValue("result.label.table.info"),
-                SHOWN_NUMBER_OF_NEURONS)), 0, 2, 3, 1);
     }
 
     /**
@@ -319,24 +310,21 @@ public class ResultPane extends GridPane {
         }
 
         /**
-         * Copies all records that belong to this neuron into ram data source.
+         * Produces data source of all records that belong to this neuron,
+         * records are read from cached data source on demand.
          * Stores this data source into cache.
-         * @param neuron
-         * @return
-         * @throws IOException
+         * @return data source of the tile
+         * @throws IOException on data source i/o error
          */
         public AbstractTokenDataSource<?> getTileDataSource ()
                 throws IOException {
-            AbstractTokenDataSource<?> ramDataSource = neuronDataSources.get(neuron);
-            if (ramDataSource == null) {
-                final AbstractTokenDataSource<?> originalDataSource = tdsm.getTokenDataSource();
-                final List<Record<Object[]>> records = clusterResult.getClusterRecords(
-                        originalDataSource, neuron, SHOWN_NUMBER_OF_NEURONS);
-                ramDataSource = RamTokenDataSource
-                        .getClusterRamTokenSource(records, originalDataSource.getRecordLength());
-                neuronDataSources.put(neuron, ramDataSource);
+            AbstractTokenDataSource<?> tileDataSource = neuronDataSources.get(neuron);
+            if (tileDataSource == null) {
+                tileDataSource = clusterResult.getClusterDataSource(
+                        TokenDataSourceCache.getCachedDataSource(tdsm), neuron);
+                neuronDataSources.put(neuron, tileDataSource);
             }
-            return ramDataSource;
+            return tileDataSource;
         }
 
         /**
@@ -620,7 +608,7 @@ public class ResultPane extends GridPane {
                         getTileFrequencies(tiles, recordLength, tokenTypes);
                 SampleFrequencyCalculator.MinAndMax[] bounds =
                         SampleFrequencyCalculator.getNumericTokenBounds(
-                        tdsm.getTokenDataSource(), tokenTypes);
+                        TokenDataSourceCache.getCachedDataSource(tdsm), tokenTypes);
                 for (int i = 0; i < recordLength; i++) {
                     try {
                         ColorScheme scheme = null;
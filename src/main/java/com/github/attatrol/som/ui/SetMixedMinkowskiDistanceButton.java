@@ -0,0 +1,51 @@
+package com.github.attatrol.som.ui;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import com.github.attatrol.preprocessing.ui.TokenDataSourceAndMisc;
+import com.github.attatrol.preprocessing.ui.misc.UiUtils;
+import com.github.attatrol.som.som.distance.MixedMinkowskiDistance;
+import com.github.attatrol.som.ui.SetupSomPane.SetupFormState;
+import com.github.attatrol.som.ui.i18n.SomI18nProvider;
+
+import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceDialog;
+
+/**
+ * This button sets {@link MixedMinkowskiDistance} with chosen exponent as distance function.
+ * This distance is evaluated column by column, so BMU search abandons distant neurons early.
+ * @author atta_troll
+ *
+ */
+class SetMixedMinkowskiDistanceButton extends Button {
+
+    public SetMixedMinkowskiDistanceButton(SetupSomPane form) {
+        super(SomI18nProvider.INSTANCE.getValue("main.button.set.mixed.minkowski.distance"));
+        setOnAction(ev -> {
+            final SetupFormState previousState = form.getInternalState();
+            form.setInternalState(SetupFormState.DISTANCE_FUNCTION_IN_PRORESS_3);
+            final ChoiceDialog<Double> dialog = new ChoiceDialog<>(1., 1., 2., 3.);
+            dialog.setTitle(SomI18nProvider.INSTANCE.getValue("main.button.set.mixed.minkowski.distance"));
+            dialog.setHeaderText(null);
+            dialog.setContentText(SomI18nProvider.INSTANCE.getValue("main.label.choose.minkowski.exponent"));
+            Optional<Double> result = dialog.showAndWait();
+            if (result.isPresent()) {
+                final TokenDataSourceAndMisc tdsm = form.getSomComponents().getTdsm();
+                try {
+                    form.getSomComponents().setDistanceFunction(MixedMinkowskiDistance.produceDistance(
+                            tdsm.getTokenDataSource(), tdsm.getTokenTypes(), result.get()));
+                    form.setInternalState(SetupFormState.DISTANCE_FUNCTION_SET_4);
+                }
+                catch (IOException | IllegalArgumentException ex) {
+                    form.setInternalState(previousState);
+                    UiUtils.showExceptionMessage(ex);
+                }
+            }
+            else {
+                form.setInternalState(previousState);
+            }
+        });
+    }
+
+}
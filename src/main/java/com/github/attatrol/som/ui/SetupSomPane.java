@@ -2,10 +2,13 @@ package com.github.attatrol.som.ui;
 
 import com.github.attatrol.preprocessing.ui.TokenDataSourceTableView;
 import com.github.attatrol.preprocessing.ui.misc.UiUtils;
+import com.github.attatrol.som.som.TrainingMode;
+import com.github.attatrol.som.som.bmu.BmuSearchFactory;
 import com.github.attatrol.som.som.functions.learning.LearningFunctionFactory;
 import com.github.attatrol.som.som.functions.neighbourhood.NeighborhoodFunctionFactory;
 import com.github.attatrol.som.som.initializers.SomInitializer;
 import com.github.attatrol.som.som.neuron.FuzzyNeuronFactory;
+import com.github.attatrol.som.som.stopping.StoppingPolicyFactory;
 import com.github.attatrol.som.som.topology.RectangleTopologyFactory;
 import com.github.attatrol.som.ui.AvgErrorChart.ChartFiller;
 import com.github.attatrol.som.ui.i18n.SomI18nComboBox;
@@ -18,6 +21,7 @@ import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.ScrollPane;
@@ -27,6 +31,7 @@ import javafx.scene.layout.Priority;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.VBox;
 import javafx.stage.Screen;
+import javafx.util.StringConverter;
 
 public class SetupSomPane extends BorderPane {
 
@@ -75,6 +80,11 @@ public class SetupSomPane extends BorderPane {
      */
     private Button setDistanceFunctionButton = new SetDistanceFunctionButton(this);
 
+    /**
+     * Setups mixed Minkowski distance.
+     */
+    private Button setMixedMinkowskiDistanceButton = new SetMixedMinkowskiDistanceButton(this);
+
     /**
      * Creates untrained SOM.
      */
@@ -223,6 +233,96 @@ public class SetupSomPane extends BorderPane {
                 (observable, oldValue,newValue) -> somData.setSomInitializer(newValue));
     }
 
+    /**
+     * Early learning stop is optional, no selection means learning for all epochs.
+     */
+    private ComboBox<StoppingPolicyFactory<?>> stoppingPolicyFactoryComboBox = new SomI18nComboBox<>();
+    {
+        stoppingPolicyFactoryComboBox.getItems().addAll(ModelRegisters.STOPPING_POLICY_FACTORIES);
+        stoppingPolicyFactoryComboBox.valueProperty().addListener(
+                (observable, oldValue,newValue) -> somData.setStoppingPolicyFactory(newValue));
+    }
+
+    /**
+     * Time budget of learning text field.
+     */
+    private PositiveIntegerParsingTextField timeBudgetTextField =
+            new PositiveIntegerParsingTextField();
+    {
+        timeBudgetTextField.getValueProperty().addListener(
+                (observable, oldValue,newValue) -> somData.setTimeBudgetSeconds(newValue));
+    }
+
+    /**
+     * BMU search is optional, no selection means the default sequential search.
+     */
+    private ComboBox<BmuSearchFactory<?>> bmuSearchFactoryComboBox = new SomI18nComboBox<>();
+    {
+        bmuSearchFactoryComboBox.getItems().addAll(ModelRegisters.BMU_SEARCH_FACTORIES);
+        bmuSearchFactoryComboBox.valueProperty().addListener(
+                (observable, oldValue,newValue) -> somData.setBmuSearchFactory(newValue));
+    }
+
+    /**
+     * Training modes are constants of a single enum, so they are named by their names.
+     */
+    private ComboBox<TrainingMode> trainingModeComboBox = new ComboBox<>();
+    {
+        trainingModeComboBox.getItems().addAll(ModelRegisters.TRAINING_MODES);
+        trainingModeComboBox.setConverter(new StringConverter<TrainingMode>() {
+
+            @Override
+            public String toString(TrainingMode object) {
+                return object == null ? null
+                        : SomI18nProvider.INSTANCE.getValue("training.mode." + object.name());
+            }
+
+            @Override
+            public TrainingMode fromString(String string) {
+                throw new UnsupportedOperationException();
+            }
+        });
+        trainingModeComboBox.valueProperty().addListener(
+                (observable, oldValue,newValue) -> somData.setTrainingMode(newValue));
+    }
+
+    /**
+     * Neighborhood speed factor cutoff text field.
+     */
+    private PositiveDoubleParsingTextField neighborhoodCutoffTextField =
+            new PositiveDoubleParsingTextField();
+    {
+        neighborhoodCutoffTextField.getValueProperty().addListener(
+                (observable, oldValue,newValue) -> somData.setNeighborhoodCutoff(newValue));
+    }
+
+    /**
+     * Record prefetching capacity text field.
+     */
+    private PositiveIntegerParsingTextField prefetchCapacityTextField =
+            new PositiveIntegerParsingTextField();
+    {
+        prefetchCapacityTextField.getValueProperty().addListener(
+                (observable, oldValue,newValue) -> somData.setPrefetchCapacity(newValue));
+    }
+
+    /**
+     * Number of record prefetching threads text field.
+     */
+    private PositiveIntegerParsingTextField prefetchProducerCountTextField =
+            new PositiveIntegerParsingTextField();
+    {
+        prefetchProducerCountTextField.getValueProperty().addListener(
+                (observable, oldValue,newValue) -> somData.setPrefetchProducerCount(newValue));
+    }
+
+    private CheckBox topographicErrorCheckBox =
+            new CheckBox(SomI18nProvider.INSTANCE.getValue("main.checkbox.track.topographic.error"));
+    {
+        topographicErrorCheckBox.selectedProperty().addListener(
+                (observable, oldValue,newValue) -> somData.setTopographicErrorTracked(newValue));
+    }
+
     private ComboBox<BenchmarkUiFactory> benchmarkComboBox = new BenchmarkComboBox(this);
     {
         benchmarkComboBox.getItems().addAll(ModelRegisters.BENCHMARK_FACTORIES);
@@ -250,6 +350,7 @@ public class SetupSomPane extends BorderPane {
         buttonPane.setSpacing(10);
         buttonPane.getChildren().addAll(setDataSourceButton,
                 setDistanceFunctionButton,
+                setMixedMinkowskiDistanceButton,
                 new Label(SomI18nProvider.INSTANCE.getValue("main.label.enter.width")),
                 widthTextField,
                 new Label(SomI18nProvider.INSTANCE.getValue("main.label.enter.height")),
@@ -270,6 +371,21 @@ public class SetupSomPane extends BorderPane {
                 neuronFactoryComboBox,
                 new Label(SomI18nProvider.INSTANCE.getValue("main.label.choose.initializer")),
                 somInitializerComboBox,
+                new Label(SomI18nProvider.INSTANCE.getValue("main.label.choose.stopping.policy")),
+                stoppingPolicyFactoryComboBox,
+                new Label(SomI18nProvider.INSTANCE.getValue("main.label.enter.time.budget")),
+                timeBudgetTextField,
+                new Label(SomI18nProvider.INSTANCE.getValue("main.label.choose.bmu.search")),
+                bmuSearchFactoryComboBox,
+                new Label(SomI18nProvider.INSTANCE.getValue("main.label.choose.training.mode")),
+                trainingModeComboBox,
+                new Label(SomI18nProvider.INSTANCE.getValue("main.label.enter.neighborhood.cutoff")),
+                neighborhoodCutoffTextField,
+                new Label(SomI18nProvider.INSTANCE.getValue("main.label.enter.prefetch.capacity")),
+                prefetchCapacityTextField,
+                new Label(SomI18nProvider.INSTANCE.getValue("main.label.enter.prefetch.producers")),
+                prefetchProducerCountTextField,
+                topographicErrorCheckBox,
                 createSomButton,
                 learnSomButton,
                 cancelLearnSomButton,
@@ -315,6 +431,14 @@ public class SetupSomPane extends BorderPane {
         newState.applyState(this);
     }
 
+    /**
+     * Replaces status text of the current internal state, e.g. with progress of a long operation.
+     * @param statusText new status text
+     */
+    public void setStatusText(String statusText) {
+        statusLabel.setText(statusText);
+    }
+
     /**
      * @return model associated with this view. Model is a set of variables used
      * to create a single SOM and further SOM action.
@@ -354,6 +478,14 @@ public class SetupSomPane extends BorderPane {
                 form.neighborhoodFunctionFactoryComboBox.getSelectionModel().clearSelection();
                 form.neuronFactoryComboBox.getSelectionModel().clearSelection();
                 form.somInitializerComboBox.getSelectionModel().clearSelection();
+                form.stoppingPolicyFactoryComboBox.getSelectionModel().clearSelection();
+                form.timeBudgetTextField.setTextAndValue(0);
+                form.bmuSearchFactoryComboBox.getSelectionModel().clearSelection();
+                form.trainingModeComboBox.getSelectionModel().select(TrainingMode.ONLINE);
+                form.neighborhoodCutoffTextField.setTextAndValue(0.);
+                form.prefetchCapacityTextField.setTextAndValue(0);
+                form.prefetchProducerCountTextField.setTextAndValue(1);
+                form.topographicErrorCheckBox.setSelected(false);
                 disableControls(form, false, true, true, true, true, true, true, true);
             }
         },
@@ -488,6 +620,7 @@ public class SetupSomPane extends BorderPane {
                 boolean plotDisabled) {
             form.setDataSourceButton.setDisable(setDataSourceButtonDisabled);
             form.setDistanceFunctionButton.setDisable(setDistanceFunctionButtonDisabled);
+            form.setMixedMinkowskiDistanceButton.setDisable(setDistanceFunctionButtonDisabled);
             form.epochNumberTextField.setDisable(createSomButtonDisabled);
             form.heightTextField.setDisable(createSomButtonDisabled);
             form.widthTextField.setDisable(createSomButtonDisabled);
@@ -498,6 +631,14 @@ public class SetupSomPane extends BorderPane {
             form.rectangleTopologyFactoryComboBox.setDisable(createSomButtonDisabled);
             form.neuronFactoryComboBox.setDisable(createSomButtonDisabled);
             form.somInitializerComboBox.setDisable(createSomButtonDisabled);
+            form.stoppingPolicyFactoryComboBox.setDisable(createSomButtonDisabled);
+            form.timeBudgetTextField.setDisable(createSomButtonDisabled);
+            form.bmuSearchFactoryComboBox.setDisable(createSomButtonDisabled);
+            form.trainingModeComboBox.setDisable(createSomButtonDisabled);
+            form.neighborhoodCutoffTextField.setDisable(createSomButtonDisabled);
+            form.prefetchCapacityTextField.setDisable(createSomButtonDisabled);
+            form.prefetchProducerCountTextField.setDisable(createSomButtonDisabled);
+            form.topographicErrorCheckBox.setDisable(createSomButtonDisabled);
             form.createSomButton.setDisable(createSomButtonDisabled);
             form.learnSomButton.setDisable(learnSomButtonDisabled);
             form.cancelLearnSomButton.setDisable(cancelLearnSomButtonDisabled);
@@ -1,9 +1,13 @@
 package com.github.attatrol.som.ui;
 
 import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
 
 import com.github.attatrol.preprocessing.ui.TokenDataSourceAndMisc;
 import com.github.attatrol.preprocessing.ui.misc.UiUtils;
+import com.github.attatrol.som.datasource.TokenDataSourceCache;
+import com.github.attatrol.som.som.ClusterAssignment;
 import com.github.attatrol.som.som.Som;
 import com.github.attatrol.som.som.SomClusterResult;
 import com.github.attatrol.som.ui.SetupSomPane.SetupFormState;
@@ -32,7 +36,9 @@ class ShowResultFormButton extends Button {
     }
 
     /**
-     * Helper runnable, used to produce result form.
+     * Helper runnable, used to produce result form. Records are assigned to neurons
+     * in parallel, progress is shown in the status line, cancel learning button
+     * cancels the assignment.
      * @author atta_troll
      *
      */
@@ -49,9 +55,24 @@ class ShowResultFormButton extends Button {
             final SomComponents somData = form.getSomComponents();
             final Som som = somData.getSom();
             final TokenDataSourceAndMisc tdsm = somData.getTdsm();
+            somData.setLearnSomAbortFlag(false);
+            final ClusterAssignment assignment = new ClusterAssignment(som, ForkJoinPool.commonPool());
+            assignment.setProgressListener((assignedCount, recordCount) -> {
+                if (somData.isLearnSomAbortFlag()) {
+                    assignment.cancel();
+                }
+                final String statusText = String.format(
+                        SomI18nProvider.INSTANCE.getValue("main.state.9.progress"), assignedCount,
+                        recordCount < 0 ? "?" : Long.toString(recordCount));
+                Platform.runLater(() -> {
+                    if (form.getInternalState() == SetupFormState.RESULT_FORM_CRREATION_IN_PROGRESS_9) {
+                        form.setStatusText(statusText);
+                    }
+                });
+            });
             try {
-                final SomClusterResult clusterResult = SomClusterResult.produceClusterResult(som,
-                        tdsm.getTokenDataSource());
+                final SomClusterResult clusterResult = assignment.assign(
+                        TokenDataSourceCache.getCachedDataSource(tdsm));
                 Platform.runLater(() -> {
                     final ResultPane resultPane = new ResultPane(tdsm, clusterResult, som);
                     final Stage stage = new Stage();
@@ -62,6 +83,9 @@ class ShowResultFormButton extends Button {
                     form.setInternalState(SetupFormState.SOM_COMPLETED_8);
                 });
             }
+            catch (CancellationException ex) {
+                Platform.runLater(() -> form.setInternalState(SetupFormState.SOM_COMPLETED_8));
+            }
             catch (IOException ex) {
                 Platform.runLater(() -> {
                     form.setInternalState(SetupFormState.RESULT_FORM_PRODUCTION_ERROR);
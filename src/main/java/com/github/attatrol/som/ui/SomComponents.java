@@ -5,11 +5,15 @@ import java.io.IOException;
 
 import com.github.attatrol.preprocessing.distance.DistanceFunction;
 import com.github.attatrol.preprocessing.ui.TokenDataSourceAndMisc;
+import com.github.attatrol.som.datasource.TokenDataSourceCache;
 import com.github.attatrol.som.som.Som;
+import com.github.attatrol.som.som.TrainingMode;
+import com.github.attatrol.som.som.bmu.BmuSearchFactory;
 import com.github.attatrol.som.som.functions.learning.LearningFunctionFactory;
 import com.github.attatrol.som.som.functions.neighbourhood.NeighborhoodFunctionFactory;
 import com.github.attatrol.som.som.initializers.SomInitializer;
 import com.github.attatrol.som.som.neuron.FuzzyNeuronFactory;
+import com.github.attatrol.som.som.stopping.StoppingPolicyFactory;
 import com.github.attatrol.som.som.topology.RectangleTopologyFactory;
 
 /**
@@ -35,6 +39,34 @@ class SomComponents {
 
     private SomInitializer somInitializer;
 
+    /**
+     * Factory of policy of early learning stop, null if learning lasts for all epochs.
+     */
+    private StoppingPolicyFactory<?> stoppingPolicyFactory;
+
+    /**
+     * Max duration of learning in seconds, 0 if learning has no time budget.
+     */
+    private int timeBudgetSeconds;
+
+    /**
+     * Factory of BMU search, null if SOM keeps its default sequential search.
+     */
+    private BmuSearchFactory<?> bmuSearchFactory;
+
+    private TrainingMode trainingMode = TrainingMode.ONLINE;
+
+    private double neighborhoodCutoff;
+
+    /**
+     * Number of slots of the record prefetching ring, 0 disables prefetching.
+     */
+    private int prefetchCapacity;
+
+    private int prefetchProducerCount = 1;
+
+    private boolean topographicErrorTracked;
+
     private Som som;
 
     private int numberOfEpochs;
@@ -115,6 +147,70 @@ class SomComponents {
         this.somInitializer = somInitializer;
     }
 
+    public StoppingPolicyFactory<?> getStoppingPolicyFactory() {
+        return stoppingPolicyFactory;
+    }
+
+    public void setStoppingPolicyFactory(StoppingPolicyFactory<?> stoppingPolicyFactory) {
+        this.stoppingPolicyFactory = stoppingPolicyFactory;
+    }
+
+    public int getTimeBudgetSeconds() {
+        return timeBudgetSeconds;
+    }
+
+    public void setTimeBudgetSeconds(int timeBudgetSeconds) {
+        this.timeBudgetSeconds = timeBudgetSeconds;
+    }
+
+    public BmuSearchFactory<?> getBmuSearchFactory() {
+        return bmuSearchFactory;
+    }
+
+    public void setBmuSearchFactory(BmuSearchFactory<?> bmuSearchFactory) {
+        this.bmuSearchFactory = bmuSearchFactory;
+    }
+
+    public TrainingMode getTrainingMode() {
+        return trainingMode;
+    }
+
+    public void setTrainingMode(TrainingMode trainingMode) {
+        this.trainingMode = trainingMode;
+    }
+
+    public double getNeighborhoodCutoff() {
+        return neighborhoodCutoff;
+    }
+
+    public void setNeighborhoodCutoff(double neighborhoodCutoff) {
+        this.neighborhoodCutoff = neighborhoodCutoff;
+    }
+
+    public int getPrefetchCapacity() {
+        return prefetchCapacity;
+    }
+
+    public void setPrefetchCapacity(int prefetchCapacity) {
+        this.prefetchCapacity = prefetchCapacity;
+    }
+
+    public int getPrefetchProducerCount() {
+        return prefetchProducerCount;
+    }
+
+    public void setPrefetchProducerCount(int prefetchProducerCount) {
+        this.prefetchProducerCount = prefetchProducerCount;
+    }
+
+    public boolean isTopographicErrorTracked() {
+        return topographicErrorTracked;
+    }
+
+    public void setTopographicErrorTracked(boolean topographicErrorTracked) {
+        this.topographicErrorTracked = topographicErrorTracked;
+    }
+
     public Som getSom() {
         return som;
     }
@@ -191,6 +287,7 @@ class SomComponents {
     public void erase() {
         try {
             if (tdsm != null) {
+                TokenDataSourceCache.release(tdsm.getTokenDataSource());
                 tdsm.getTokenDataSource().close();
             }
         }
@@ -204,6 +301,9 @@ class SomComponents {
         topologyFactory = null;
         somInitializer = null;
         fuzzyNeuronFactory = null;
+        stoppingPolicyFactory = null;
+        bmuSearchFactory = null;
+        trainingMode = TrainingMode.ONLINE;
         som = null;
     }
 
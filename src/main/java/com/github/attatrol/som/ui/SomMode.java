@@ -5,11 +5,14 @@ import java.io.IOException;
 
 import com.github.attatrol.preprocessing.distance.metric.EuclideanMetric;
 import com.github.attatrol.preprocessing.ui.misc.UiUtils;
+import com.github.attatrol.som.som.PrefetchStatistics;
 import com.github.attatrol.som.som.Som;
+import com.github.attatrol.som.som.bmu.BmuSearchFactory;
 import com.github.attatrol.som.som.functions.learning.LearningFunction;
 import com.github.attatrol.som.som.functions.neighbourhood.NeighborhoodFunction;
 import com.github.attatrol.som.som.initializers.SomInitializer;
 import com.github.attatrol.som.som.neuron.FuzzyNeuronFactory;
+import com.github.attatrol.som.som.stopping.StoppingPolicyFactory;
 import com.github.attatrol.som.som.topology.SomTopology;
 import com.github.attatrol.som.ui.SetupSomPane.SetupFormState;
 import com.github.attatrol.som.ui.i18n.SomI18nProvider;
@@ -124,6 +127,51 @@ enum SomMode {
             throw new IllegalArgumentException(
                     SomI18nProvider.INSTANCE.getValue("ui.exception.median.factors.intersection"));
         }
+        if (somData.getTimeBudgetSeconds() < 0) {
+            throw new IllegalArgumentException(
+                    SomI18nProvider.INSTANCE.getValue("ui.exception.bad.time.budget"));
+        }
+        if (somData.getStoppingPolicyFactory() != null && somData.getTimeBudgetSeconds() == 0
+                && somData.getStoppingPolicyFactory().isTimeBudgetRequired()) {
+            throw new IllegalArgumentException(
+                    SomI18nProvider.INSTANCE.getValue("ui.exception.time.budget.missing"));
+        }
+        if (somData.getTrainingMode() == null) {
+            throw new IllegalArgumentException(
+                    SomI18nProvider.INSTANCE.getValue("ui.exception.training.mode.missing"));
+        }
+        if (somData.getNeighborhoodCutoff() < 0.) {
+            throw new IllegalArgumentException(
+                    SomI18nProvider.INSTANCE.getValue("ui.exception.bad.neighborhood.cutoff"));
+        }
+        if (somData.getPrefetchCapacity() < 0) {
+            throw new IllegalArgumentException(
+                    SomI18nProvider.INSTANCE.getValue("ui.exception.bad.prefetch.capacity"));
+        }
+        if (somData.getPrefetchProducerCount() < 1) {
+            throw new IllegalArgumentException(
+                    SomI18nProvider.INSTANCE.getValue("ui.exception.bad.prefetch.producers"));
+        }
+    }
+
+    /**
+     * Applies learning options of SOM components to a created SOM.
+     * 
+     * @param som
+     *        created SOM
+     * @param somData
+     *        SOM components, they must be checked already
+     */
+    private static void setLearningOptions(Som som, SomComponents somData) {
+        final BmuSearchFactory<?> bmuSearchFactory = somData.getBmuSearchFactory();
+        if (bmuSearchFactory != null) {
+            som.setBmuSearch(bmuSearchFactory.produceBmuSearch(som.getNeurons(),
+                    som.getDistanceFunction(), som.getTopology()));
+        }
+        som.setTrainingMode(somData.getTrainingMode());
+        som.setNeighborhoodCutoff(somData.getNeighborhoodCutoff());
+        som.setRecordPrefetching(somData.getPrefetchCapacity(), somData.getPrefetchProducerCount());
+        som.setTopographicErrorTracked(somData.isTopographicErrorTracked());
     }
 
     /**
@@ -175,6 +223,11 @@ enum SomMode {
                 final Som som = somInitializer.checkDataSourceAndCreateSom(somData.getTdsm(),
                         somData.getDistanceFunction(), topology, neighborhoodFunction,
                         learningFunction, neuronFactory, overMedianWeakFactor, overMedianStrongFactor);
+                final StoppingPolicyFactory<?> stoppingPolicyFactory = somData.getStoppingPolicyFactory();
+                som.setStoppingPolicy(stoppingPolicyFactory == null ? null
+                        : stoppingPolicyFactory.produceStoppingPolicy(
+                                somData.getTimeBudgetSeconds() * 1000L));
+                setLearningOptions(som, somData);
                 somData.setSom(som);
                 Platform.runLater(() -> form.setInternalState(SetupFormState.SOM_CREATED_6));
             }
@@ -225,15 +278,32 @@ enum SomMode {
             final AvgErrorChart.ChartFiller chartFiller = form.getNewChartFiller();
             try {
                 while (++epochCounter <= epochNumber
-                        && !somData.isLearnSomAbortFlag()) {
+                        && !somData.isLearnSomAbortFlag() && !som.isLearningStopped()) {
                     final double avgError = som.learnEpoch(epochCounter);
                     chartFiller.registerEpoch(avgError);
+                    final PrefetchStatistics prefetchStatistics = som.getLastPrefetchStatistics();
+                    if (prefetchStatistics != null && prefetchStatistics.getCapacity() > 0) {
+                        final int epoch = epochCounter;
+                        Platform.runLater(() -> form.setStatusText(String.format(
+                                SomI18nProvider.INSTANCE.getValue("main.state.7.prefetch"), epoch,
+                                prefetchStatistics.getAverageOccupancy(), prefetchStatistics.getCapacity(),
+                                prefetchStatistics.getConsumerWaitNanos() / 1000000L,
+                                prefetchStatistics.getProducerWaitNanos() / 1000000L)));
+                    }
                     //System.out.println(String.format("Epoch: %d, Error: %f",
                             //epochCounter, avgError));
                     //System.out.println(som);
                 }
                 chartFiller.dumpResidualToChart();
-                Platform.runLater(() -> form.setInternalState(SetupFormState.SOM_COMPLETED_8));
+                Platform.runLater(() -> {
+                    form.setInternalState(SetupFormState.SOM_COMPLETED_8);
+                    if (som.isLearningStopped()) {
+                        form.setStatusText(String.format(
+                                SomI18nProvider.INSTANCE.getValue("main.state.8.stopped"),
+                                som.getStopEpoch(), SomI18nProvider.INSTANCE.getValue(
+                                        "stop.reason." + som.getStopReason().name())));
+                    }
+                });
             }
             catch (IOException ex) {
                 Platform.runLater(() -> {
@@ -0,0 +1,41 @@
+package com.github.attatrol.som.ui.utils.benchmarkfactories;
+
+import com.github.attatrol.preprocessing.ui.misc.GenericValueReturnDialog;
+import com.github.attatrol.som.ui.ResultPane;
+import com.github.attatrol.som.ui.i18n.SomI18nProvider;
+
+import javafx.scene.control.ComboBox;
+
+/**
+ * Dialog that returns index of a reference column chosen by its title.
+ * @author atta_troll
+ *
+ */
+class ColumnChoosingDialog extends GenericValueReturnDialog<Integer> {
+
+    private ComboBox<String> titleChoosingComboBox = new ComboBox<>();
+
+    public ColumnChoosingDialog(String[] titles, int recordSize) {
+        setWidth(450);
+        setTitle(SomI18nProvider.INSTANCE.getValue("benchmark.trivial.choose.column.title"));
+        String[] columnTitles = new String[recordSize];
+        for (int i = 0; i < recordSize; i++) {
+            columnTitles[i] = ResultPane.getColumnName(i, titles);
+        }
+        titleChoosingComboBox.getItems().addAll(columnTitles);
+        this.getDialogPane().setContent(titleChoosingComboBox);
+    }
+
+    @Override
+    protected Integer createResult() {
+        return titleChoosingComboBox.getSelectionModel().getSelectedIndex();
+    }
+
+    @Override
+    protected void validate() throws Exception {
+        if (titleChoosingComboBox.getSelectionModel().getSelectedIndex() < 0) {
+            throw new IllegalArgumentException(SomI18nProvider
+                    .INSTANCE.getValue("benchmark.trivial.reference.bad.title"));
+        }
+    }
+}
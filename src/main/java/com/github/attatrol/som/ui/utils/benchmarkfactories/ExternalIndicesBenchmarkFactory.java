@@ -0,0 +1,46 @@
+package com.github.attatrol.som.ui.utils.benchmarkfactories;
+
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+
+import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
+import com.github.attatrol.preprocessing.distance.DistanceFunction;
+import com.github.attatrol.som.benchmark.ClusteringBenchmark;
+import com.github.attatrol.som.benchmark.ExternalIndex;
+import com.github.attatrol.som.benchmark.ExternalIndicesBenchmark;
+import com.github.attatrol.som.som.SomClusterResult;
+import com.github.attatrol.som.ui.i18n.SomI18nProvider;
+
+/**
+ * Calculates all external indices against a reference column in a single pass,
+ * their values are shown in order of {@link ExternalIndex} constants.
+ * @author atta_troll
+ *
+ */
+public class ExternalIndicesBenchmarkFactory implements BenchmarkUiFactory {
+
+    @Override
+    public ClusteringBenchmark getBenchmark(AbstractTokenDataSource<?> tokenDataSource,
+            String[] columnNames, SomClusterResult clusterResult,
+            DistanceFunction distanceFunction) {
+        Optional<Integer> columnIndex = (new ColumnChoosingDialog(columnNames,
+                tokenDataSource.getRecordLength())).showAndWait();
+        if (columnIndex.isPresent()) {
+            return new ExternalIndicesBenchmark(clusterResult, tokenDataSource, columnIndex.get(),
+                    ForkJoinPool.commonPool(), ExternalIndex.values());
+        }
+        else {
+            return null;
+        }
+    }
+
+    @Override
+    public String getSuccessFormat() {
+        return SomI18nProvider.INSTANCE.getValue("benchmark.external.indices.success");
+    }
+
+    @Override
+    public String getFailureFormat() {
+        return SomI18nProvider.INSTANCE.getValue("benchmark.external.indices.failure");
+    }
+}
@@ -4,15 +4,11 @@ import java.util.Optional;
 
 import com.github.attatrol.preprocessing.datasource.AbstractTokenDataSource;
 import com.github.attatrol.preprocessing.distance.DistanceFunction;
-import com.github.attatrol.preprocessing.ui.misc.GenericValueReturnDialog;
 import com.github.attatrol.som.benchmark.ClusteringBenchmark;
 import com.github.attatrol.som.benchmark.PurityColumnBenchmark;
 import com.github.attatrol.som.som.SomClusterResult;
-import com.github.attatrol.som.ui.ResultPane;
 import com.github.attatrol.som.ui.i18n.SomI18nProvider;
 
-import javafx.scene.control.ComboBox;
-
 public class TrivialReferenceColumnBenchmarkFactory implements BenchmarkUiFactory {
 
     @Override
@@ -37,33 +33,4 @@ public class TrivialReferenceColumnBenchmarkFactory implements BenchmarkUiFactor
     public String getFailureFormat() {
         return SomI18nProvider.INSTANCE.getValue("benchmark.trivial.reference.failure");
     }
-
-    private static class ColumnChoosingDialog extends GenericValueReturnDialog<Integer> {
-
-        private ComboBox<String> titleChoosingComboBox = new ComboBox<>();
-
-        public ColumnChoosingDialog(String[] titles, int recordSize) {
-            setWidth(450);
-            setTitle(SomI18nProvider.INSTANCE.getValue("benchmark.trivial.choose.column.title"));
-            String[] columnTitles = new String[recordSize];
-            for (int i = 0; i < recordSize; i++) {
-                columnTitles[i] = ResultPane.getColumnName(i, titles);
-            }
-            titleChoosingComboBox.getItems().addAll(columnTitles);
-            this.getDialogPane().setContent(titleChoosingComboBox);
-        }
-
-        @Override
-        protected Integer createResult() {
-            return titleChoosingComboBox.getSelectionModel().getSelectedIndex();
-        }
-
-        @Override
-        protected void validate() throws Exception {
-            if (titleChoosingComboBox.getSelectionModel().getSelectedIndex() < 0) {
-                throw new IllegalArgumentException(SomI18nProvider
-                        .INSTANCE.getValue("benchmark.trivial.reference.bad.title"));
-            }
-        }
-    }
 }
@@ -18,6 +18,7 @@ import com.github.attatrol.preprocessing.distance.nonmetric.gower.GowerTokenSimi
 import com.github.attatrol.preprocessing.distance.nonmetric.similarity.DissimilarityFunction;
 import com.github.attatrol.preprocessing.distance.nonmetric.similarity.SimilarityIndexFactory;
 import com.github.attatrol.preprocessing.ui.TokenDataSourceAndMisc;
+import com.github.attatrol.som.som.distance.MixedMinkowskiDistance;
 
 /**
  * Produces distances of any type.
@@ -26,6 +27,8 @@ import com.github.attatrol.preprocessing.ui.TokenDataSourceAndMisc;
  */
 public class DistanceProducer {
 
+    private AbstractTokenDataSource<?> dataSource;
+
     private AbstractTokenDataSource<?> maskedDataSource;
 
     private int[] mask;
@@ -35,6 +38,7 @@ public class DistanceProducer {
     @SuppressWarnings({ "unchecked", "rawtypes" })
     public DistanceProducer(TokenDataSourceAndMisc tdsm) {
         mask = produceMask(tdsm);
+        dataSource = tdsm.getTokenDataSource();
         maskedDataSource = new TokenDataSourceUtils
                 .MaskedTokenDataSource(tdsm.getTokenDataSource(), mask);
         tokenTypes = tdsm.getTokenTypes();
@@ -114,5 +118,13 @@ public class DistanceProducer {
         return distances;
     }
 
+    public Map<String, DistanceFunction> produceMixedMinkowskiDistances() throws IOException {
+        Map<String, DistanceFunction> distances = new HashMap<>();
+        distances.put("Mixed Minkowski 1", MixedMinkowskiDistance.produceDistance(dataSource, tokenTypes, 1.));
+        distances.put("Mixed Minkowski 2", MixedMinkowskiDistance.produceDistance(dataSource, tokenTypes, 2.));
+        distances.put("Mixed Minkowski 3", MixedMinkowskiDistance.produceDistance(dataSource, tokenTypes, 3.));
+        return distances;
+    }
+
     
 }
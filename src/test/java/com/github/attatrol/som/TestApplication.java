@@ -51,7 +51,7 @@ import javafx.stage.Stage;
                 Button callDataSourceDialogButton = new Button("Call data source dialog");
                 ComboBox<String> distanceTypeComboBox = new ComboBox<>();
                 distanceTypeComboBox.getItems().addAll(
-                        "Categorical","Numerical", "Gower"
+                        "Categorical","Numerical", "Gower", "Mixed Minkowski"
                         );
                 distanceTypeComboBox.getSelectionModel().select(0);
                 callDataSourceDialogButton.setOnAction(ev-> {
@@ -74,6 +74,9 @@ import javafx.stage.Stage;
                             else if (type.equals("Gower")) {
                                 distances = distanceFactory.produceGowerDistance();
                             }
+                            else if (type.equals("Mixed Minkowski")) {
+                                distances = distanceFactory.produceMixedMinkowskiDistances();
+                            }
                             else {
                                 throw new IllegalArgumentException("Bad");
                             }
@@ -26,6 +26,16 @@ public class TestResult {
 
     private int deadNeuronsCount;
 
+    /**
+     * Average fill ratio of prefetching ring in the last epoch, NaN if records weren't prefetched.
+     */
+    private double prefetchFillRatio = Double.NaN;
+
+    /**
+     * Wait time of learning thread for prefetched records in the last epoch.
+     */
+    private long prefetchWaitMillis;
+
     /**
      * Default ctor.
      * @param testIndex
@@ -118,18 +128,35 @@ public class TestResult {
         this.deadNeuronsCount = deadNeuronsCount;
     }
 
+    public double getPrefetchFillRatio() {
+        return prefetchFillRatio;
+    }
+
+    public void setPrefetchFillRatio(double prefetchFillRatio) {
+        this.prefetchFillRatio = prefetchFillRatio;
+    }
+
+    public long getPrefetchWaitMillis() {
+        return prefetchWaitMillis;
+    }
+
+    public void setPrefetchWaitMillis(long prefetchWaitMillis) {
+        this.prefetchWaitMillis = prefetchWaitMillis;
+    }
+
     @Override
     public String toString() {
-        return String.format("| %5d | %5f| %5d| %5d| %5d| %5f| %5f| %5f| %5f| %5f| %5f| %5d|\n",
+        return String.format("| %5d | %5f| %5d| %5d| %5d| %5f| %5f| %5f| %5f| %5f| %5f| %5d| %5f| %6d|\n",
                 testIndex, beta, height * width, height, width,
                 startAvgError, endAvgError, minAvgError,
-                maxAvgError, purity, visualQuality, deadNeuronsCount);
+                maxAvgError, purity, visualQuality, deadNeuronsCount,
+                prefetchFillRatio, prefetchWaitMillis);
     }
 
     public static String getHeader() {
-        return("----------------------------------------------------------------------------------------------------------\n"
-                + "|   #   |   beta  |Square|   H  |   W  |  start  |   end   |   min   |   max   |   pur   |   vis   | dead#|\n"
-                + "-----------------------------------------------------------------------------------------------------------\n");
+        return("----------------------------------------------------------------------------------------------------------------------------\n"
+                + "|   #   |   beta  |Square|   H  |   W  |  start  |   end   |   min   |   max   |   pur   |   vis   | dead#|   fill  |wait,ms|\n"
+                + "-----------------------------------------------------------------------------------------------------------------------------\n");
     }
 
 }
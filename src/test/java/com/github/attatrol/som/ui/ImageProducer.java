@@ -80,10 +80,16 @@ public class ImageProducer {
 
     public static double getVisualQualityIndex(SomTopology topology, Map<Point, Color> colors, int height, int width) {
         int differentColorBorderCount = 0;
-        for (Map.Entry<Point, Color> entry : colors.entrySet()) {
-            for (Map.Entry<Point, Color> entry1 : colors.entrySet()) {
-                final double distance = topology.getDistance(entry.getKey(), entry1.getKey());
-                if (distance < 1.01 && distance > .99 && !entry.getValue().equals(entry1.getValue())) {
+        final List<Point> positions = topology.getNeuronPositions();
+        for (int i = 0; i < positions.size(); i++) {
+            final Color color = colors.get(positions.get(i));
+            if (color == null) {
+                continue;
+            }
+            for (int neighbor : topology.getNeighbors(i, 1.01)) {
+                final Color neighborColor = colors.get(positions.get(neighbor));
+                if (topology.getDistance(i, neighbor) > .99 && neighborColor != null
+                        && !color.equals(neighborColor)) {
                     differentColorBorderCount++;
                 }
             }
@@ -19,8 +19,13 @@ import com.github.attatrol.preprocessing.ui.TokenDataSourceAndMisc;
 import com.github.attatrol.som.DistanceProducer;
 import com.github.attatrol.som.TestResult;
 import com.github.attatrol.som.benchmark.PurityColumnBenchmark;
+import com.github.attatrol.som.datasource.TokenDataSourceCache;
+import com.github.attatrol.som.som.PrefetchStatistics;
 import com.github.attatrol.som.som.Som;
 import com.github.attatrol.som.som.SomClusterResult;
+import com.github.attatrol.som.som.TrainingMode;
+import com.github.attatrol.som.som.bmu.BmuSearchFactory;
+import com.github.attatrol.som.som.bmu.SequentialBmuSearch;
 import com.github.attatrol.som.som.functions.learning.LearningFunction;
 import com.github.attatrol.som.som.functions.learning.LearningFunctionFactory;
 import com.github.attatrol.som.som.functions.learning.LinearLearningFunction;
@@ -31,6 +36,7 @@ import com.github.attatrol.som.som.initializers.RandomRecordsInitializer;
 import com.github.attatrol.som.som.initializers.SomInitializer;
 import com.github.attatrol.som.som.neuron.FuzzyNeuron;
 import com.github.attatrol.som.som.neuron.FuzzyNeuronFactory;
+import com.github.attatrol.som.som.stopping.StoppingPolicyFactory;
 import com.github.attatrol.som.som.topology.Point;
 import com.github.attatrol.som.som.topology.RectangleTopology;
 import com.github.attatrol.som.som.topology.RectangleTopologyFactory;
@@ -57,6 +63,25 @@ public class TestRunner {
 
     public static final double DEFAULT_ALPHA = 0.;
 
+    public static final StoppingPolicyFactory<?> DEFAULT_STOPPING_POLICY_FACTORY = null;
+
+    /**
+     * Max duration of a single test learning in seconds, 0 means no time budget.
+     */
+    public static final int DEFAULT_TIME_BUDGET_SECONDS = 0;
+
+    public static final BmuSearchFactory<?> DEFAULT_BMU_SEARCH_FACTORY = new SequentialBmuSearch.Factory();
+
+    public static final TrainingMode DEFAULT_TRAINING_MODE = TrainingMode.ONLINE;
+
+    public static final double DEFAULT_NEIGHBORHOOD_CUTOFF = 0.;
+
+    public static final int DEFAULT_PREFETCH_CAPACITY = 0;
+
+    public static final int DEFAULT_PREFETCH_PRODUCER_COUNT = 1;
+
+    public static final boolean DEFAULT_TOPOGRAPHIC_ERROR_TRACKED = false;
+
     public static final int REF_COLUMN_INDEX = 4;
 
     /**
@@ -90,6 +115,18 @@ public class TestRunner {
     public void run(Map<String, DistanceFunction> distances) throws IOException, NoSuchFieldException, SecurityException,
             IllegalArgumentException, IllegalAccessException {
         System.out.println("Tests begun");
+        // tests share a single cache of data source, it is released when they are done
+        try {
+            performTests(distances);
+        }
+        finally {
+            TokenDataSourceCache.release(tdsm.getTokenDataSource());
+        }
+        System.out.println("Tests ended");
+    }
+
+    private void performTests(Map<String, DistanceFunction> distances) throws IOException, NoSuchFieldException,
+            SecurityException, IllegalArgumentException, IllegalAccessException {
         try (FileWriter writer = new FileWriter(testPath.resolve("description.txt").toFile())) {
             printOutDescription(writer);
         }
@@ -115,7 +152,6 @@ public class TestRunner {
                }
            }
         }
-        System.out.println("Tests ended");
     }
 
     private void printOutDescription(FileWriter writer) throws IOException {
@@ -135,6 +171,15 @@ public class TestRunner {
         sb.append(String.format("Neighborhood function: %s\n", DEFAULT_NEIGHBORHOOD_FUNCTION_FACTORY.getClass().getName()));
         sb.append(String.format("Topology: %s\n", DEFAULT_TOPOLOGY_FACTORY.getClass().getName()));
         sb.append(String.format("Way of picking initial values: %s\n", DEFAULT_SOM_INITIALIZER.getClass().getName()));
+        sb.append(String.format("Early learning stop: %s\n", DEFAULT_STOPPING_POLICY_FACTORY == null ? "none"
+                : DEFAULT_STOPPING_POLICY_FACTORY.getClass().getName()));
+        sb.append(String.format("Time budget, s: %d\n", DEFAULT_TIME_BUDGET_SECONDS));
+        sb.append(String.format("BMU search: %s\n", DEFAULT_BMU_SEARCH_FACTORY.getClass().getName()));
+        sb.append(String.format("Training mode: %s\n", DEFAULT_TRAINING_MODE));
+        sb.append(String.format("Neighborhood cutoff: %f\n", DEFAULT_NEIGHBORHOOD_CUTOFF));
+        sb.append(String.format("Prefetch capacity: %d\n", DEFAULT_PREFETCH_CAPACITY));
+        sb.append(String.format("Prefetch producers: %d\n", DEFAULT_PREFETCH_PRODUCER_COUNT));
+        sb.append(String.format("Topographic error tracked: %b\n", DEFAULT_TOPOGRAPHIC_ERROR_TRACKED));
         writer.append(sb.toString());
     }
 
@@ -156,18 +201,26 @@ public class TestRunner {
         somData.setTdsm(tdsm);
         somData.setTopologyFactory(DEFAULT_TOPOLOGY_FACTORY);
         somData.setSomInitializer(DEFAULT_SOM_INITIALIZER);
+        somData.setStoppingPolicyFactory(DEFAULT_STOPPING_POLICY_FACTORY);
+        somData.setTimeBudgetSeconds(DEFAULT_TIME_BUDGET_SECONDS);
+        somData.setBmuSearchFactory(DEFAULT_BMU_SEARCH_FACTORY);
+        somData.setTrainingMode(DEFAULT_TRAINING_MODE);
+        somData.setNeighborhoodCutoff(DEFAULT_NEIGHBORHOOD_CUTOFF);
+        somData.setPrefetchCapacity(DEFAULT_PREFETCH_CAPACITY);
+        somData.setPrefetchProducerCount(DEFAULT_PREFETCH_PRODUCER_COUNT);
+        somData.setTopographicErrorTracked(DEFAULT_TOPOGRAPHIC_ERROR_TRACKED);
         somData.registerLastCreatedSomParameters(); // som parameters set
         somData.setSom(produceSom(somData)); // som created
         TestResult result = new TestResult(uniqueTestIndex, height, width, beta, sifName);
         learnSom(somData, result); // som learned
         final SomClusterResult clusterResult = SomClusterResult.produceClusterResult(
                 somData.getSom(),
-                tdsm.getTokenDataSource());
+                TokenDataSourceCache.getCachedDataSource(tdsm));
         // dead neurons
         result.setDeadNeuronsCount(countDeadNeurons(clusterResult));
         // add purity
         PurityColumnBenchmark purityBenchmark = new PurityColumnBenchmark(clusterResult,
-                somData.getDistanceFunction(), somData.getTdsm().getTokenDataSource(),
+                somData.getDistanceFunction(), TokenDataSourceCache.getCachedDataSource(tdsm),
                 REF_COLUMN_INDEX);
         if (purityBenchmark.hasFailed()) {
             throw new IllegalStateException("Purity failed");
@@ -175,7 +228,7 @@ public class TestRunner {
         result.setPurity(purityBenchmark.getValue());
         // add buffered image
         Map<Point, Color> colors = ImageProducer.getColorScheme(somData.getSom().getNeurons(),
-                clusterResult, refColumnColorMap, somData.getTdsm().getTokenDataSource(),
+                clusterResult, refColumnColorMap, TokenDataSourceCache.getCachedDataSource(tdsm),
                 REF_COLUMN_INDEX);
         RenderedImage image = ImageProducer.produceImage(colors, height, width);
         Path file = Files.createFile(sifTestPath.resolve(String.format("Test no.%d.png", uniqueTestIndex))) ;
@@ -219,6 +272,31 @@ public class TestRunner {
             throw new IllegalArgumentException(
                     SomI18nProvider.INSTANCE.getValue("ui.exception.median.factors.intersection"));
         }
+        if (somData.getTimeBudgetSeconds() < 0) {
+            throw new IllegalArgumentException(
+                    SomI18nProvider.INSTANCE.getValue("ui.exception.bad.time.budget"));
+        }
+        if (somData.getStoppingPolicyFactory() != null && somData.getTimeBudgetSeconds() == 0
+                && somData.getStoppingPolicyFactory().isTimeBudgetRequired()) {
+            throw new IllegalArgumentException(
+                    SomI18nProvider.INSTANCE.getValue("ui.exception.time.budget.missing"));
+        }
+        if (somData.getTrainingMode() == null) {
+            throw new IllegalArgumentException(
+                    SomI18nProvider.INSTANCE.getValue("ui.exception.training.mode.missing"));
+        }
+        if (somData.getNeighborhoodCutoff() < 0.) {
+            throw new IllegalArgumentException(
+                    SomI18nProvider.INSTANCE.getValue("ui.exception.bad.neighborhood.cutoff"));
+        }
+        if (somData.getPrefetchCapacity() < 0) {
+            throw new IllegalArgumentException(
+                    SomI18nProvider.INSTANCE.getValue("ui.exception.bad.prefetch.capacity"));
+        }
+        if (somData.getPrefetchProducerCount() < 1) {
+            throw new IllegalArgumentException(
+                    SomI18nProvider.INSTANCE.getValue("ui.exception.bad.prefetch.producers"));
+        }
     }
 
     private static Som produceSom(SomComponents somData) throws IllegalStateException, IOException {
@@ -238,15 +316,30 @@ public class TestRunner {
         final double overMedianWeakFactor = somData.getOverMedianWeakFactor();
         final double overMedianStrongFactor = somData.getOverMedianStrongFactor();
         final SomInitializer somInitializer = somData.getSomInitializer();
-        return somInitializer.checkDataSourceAndCreateSom(somData.getTdsm(), somData.getDistanceFunction(), topology,
-                neighborhoodFunction, learningFunction, neuronFactory, overMedianWeakFactor, overMedianStrongFactor);
+        final Som som = somInitializer.checkDataSourceAndCreateSom(somData.getTdsm(), somData.getDistanceFunction(),
+                topology, neighborhoodFunction, learningFunction, neuronFactory, overMedianWeakFactor,
+                overMedianStrongFactor);
+        final StoppingPolicyFactory<?> stoppingPolicyFactory = somData.getStoppingPolicyFactory();
+        som.setStoppingPolicy(stoppingPolicyFactory == null ? null
+                : stoppingPolicyFactory.produceStoppingPolicy(
+                        somData.getTimeBudgetSeconds() * 1000L));
+        final BmuSearchFactory<?> bmuSearchFactory = somData.getBmuSearchFactory();
+        if (bmuSearchFactory != null) {
+            som.setBmuSearch(bmuSearchFactory.produceBmuSearch(som.getNeurons(),
+                    som.getDistanceFunction(), som.getTopology()));
+        }
+        som.setTrainingMode(somData.getTrainingMode());
+        som.setNeighborhoodCutoff(somData.getNeighborhoodCutoff());
+        som.setRecordPrefetching(somData.getPrefetchCapacity(), somData.getPrefetchProducerCount());
+        som.setTopographicErrorTracked(somData.isTopographicErrorTracked());
+        return som;
     }
 
     private static void learnSom(SomComponents somData, TestResult testResult) throws IOException {
         final Som som = somData.getSom();
         final int epochNumber = somData.getLastCreatedNumberOfEpochs();
         int epochCounter = 0;
-        while (++epochCounter <= epochNumber) {
+        while (++epochCounter <= epochNumber && !som.isLearningStopped()) {
             final double avgError = som.learnEpoch(epochCounter);
             if (epochCounter == 1) {
                 testResult.setStartAvgError(avgError);
@@ -259,9 +352,12 @@ public class TestRunner {
             if (avgError < testResult.getMinAvgError()) {
                 testResult.setMinAvgError(avgError);
             }
-            if (epochCounter == epochNumber) {
-                testResult.setEndAvgError(avgError);
-            }
+            testResult.setEndAvgError(avgError);
+        }
+        final PrefetchStatistics prefetchStatistics = som.getLastPrefetchStatistics();
+        if (prefetchStatistics != null) {
+            testResult.setPrefetchFillRatio(prefetchStatistics.getFillRatio());
+            testResult.setPrefetchWaitMillis(prefetchStatistics.getConsumerWaitNanos() / 1000000L);
         }
     }
 